@@ -24,6 +24,8 @@ import org.crsh.plugin.CRaSHPlugin;
 import org.crsh.plugin.PropertyDescriptor;
 import org.crsh.plugin.ResourceKind;
 import org.crsh.ssh.term.SSHLifeCycle;
+import org.crsh.ssh.term.subsystem.SubsystemFactoryPlugin;
+import org.crsh.term.spi.TermIOHandler;
 import org.crsh.vfs.Resource;
 
 import java.io.File;
@@ -56,6 +58,11 @@ public class SSHPlugin extends CRaSHPlugin<SSHPlugin> {
     return Arrays.<PropertyDescriptor<?>>asList(SSH_PORT, SSH_SERVER_KEYPATH, AuthenticationPlugin.AUTH);
   }
 
+  @Override
+  public Iterable<Class<?>> getDependencies() {
+    return Arrays.<Class<?>>asList(AuthenticationPlugin.class, TermIOHandler.class, SubsystemFactoryPlugin.class);
+  }
+
   @Override
   public void init() {
 
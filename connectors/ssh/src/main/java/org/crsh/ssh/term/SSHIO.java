@@ -20,58 +20,28 @@
 package org.crsh.ssh.term;
 
 import org.crsh.term.CodeType;
-import org.crsh.term.spi.TermIO;
+import org.crsh.term.spi.InputDecoder;
+import org.crsh.term.spi.ExtendedTermIO;
 import org.crsh.text.Style;
+import org.crsh.util.AggregatingOutputStream;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class SSHIO implements TermIO {
-
-  /** Copied from net.wimpi.telnetd.io.TerminalIO. */
-  private static final int UP = 1001;
-
-  /** Copied from net.wimpi.telnetd.io.TerminalIO. */
-  private static final int DOWN = 1002;
-
-  /** Copied from net.wimpi.telnetd.io.TerminalIO. */
-  private static final int RIGHT = 1003;
-
-  /** Copied from net.wimpi.telnetd.io.TerminalIO. */
-  private static final int LEFT = 1004;
-
-  /** Copied from net.wimpi.telnetd.io.TerminalIO. */
-  private static final int HANDLED = 1305;
-
-  /** . */
-  private static final int BACKWARD_WORD = -1;
-
-  /** . */
-  private static final int FORWARD_WORD = -2;
+public class SSHIO implements ExtendedTermIO {
 
   /** . */
   private static final Logger log = Logger.getLogger(SSHIO.class.getName());
 
   /** . */
-  private final Reader reader;
+  private final InputDecoder input;
 
   /** . */
   private final Writer writer;
 
-  /** . */
-  private static final int STATUS_NORMAL = 0;
-
-  /** . */
-  private static final int STATUS_READ_ESC_1 = 1;
-
-  /** . */
-  private static final int STATUS_READ_ESC_2 = 2;
-
-  /** . */
-  private int status;
-
   /** . */
   private final CRaSHCommand command;
 
@@ -82,71 +52,40 @@ public class SSHIO implements TermIO {
   private boolean useAlternate;
 
   public SSHIO(CRaSHCommand command) {
+    final InputStream in = command.in;
     this.command = command;
-    this.writer = new OutputStreamWriter(command.out);
-    this.reader = new InputStreamReader(command.in);
-    this.status = STATUS_NORMAL;
+    this.writer = new OutputStreamWriter(new AggregatingOutputStream(command.out));
+    this.input = new InputDecoder(Charset.defaultCharset()) {
+      @Override
+      protected int receive(byte[] b, int off, int len) throws IOException {
+        return in.read(b, off, len);
+      }
+    };
     this.closed = new AtomicBoolean(false);
     this.useAlternate = false;
+
+    // Enable bracketed paste mode
+    try {
+      writer.write("\033[?2004h");
+    }
+    catch (IOException e) {
+      log.log(Level.FINE, "Could not enable bracketed paste", e);
+    }
   }
 
   public int read() throws IOException {
-    while (true) {
-      if (closed.get()) {
-        return HANDLED;
-      } else {
-        int r;
-        try {
-          r = reader.read();
-        } catch (IOException e) {
-          // This would likely happen when the client close the connection
-          // when we are blocked on a read operation by the
-          // CRaShCommand#destroy() method
-          close();
-          return HANDLED;
-        }
-        if (r == -1) {
-          return HANDLED;
-        } else {
-          switch (status) {
-            case STATUS_NORMAL:
-              if (r == 27) {
-                status = STATUS_READ_ESC_1;
-              } else {
-                return r;
-              }
-              break;
-            case STATUS_READ_ESC_1:
-              if (r == 91) {
-                status = STATUS_READ_ESC_2;
-              } else if (r == 98) {
-                status = STATUS_NORMAL;
-                return BACKWARD_WORD;
-              } else if (r == 102) {
-                status = STATUS_NORMAL;
-                return FORWARD_WORD;
-              } else {
-                status = STATUS_NORMAL;
-                log.log(Level.SEVERE, "Unrecognized stream data " + r + " after reading ESC code");
-              }
-              break;
-            case STATUS_READ_ESC_2:
-              status = STATUS_NORMAL;
-              switch (r) {
-                case 65:
-                  return UP;
-                case 66:
-                  return DOWN;
-                case 67:
-                  return RIGHT;
-                case 68:
-                  return LEFT;
-                default:
-                  log.log(Level.SEVERE, "Unrecognized stream data " + r + " after reading ESC+91 code");
-                  break;
-              }
-          }
-        }
+    if (closed.get()) {
+      return InputDecoder.HANDLED;
+    } else {
+      try {
+        return input.read();
+      }
+      catch (IOException e) {
+        // This would likely happen when the client close the connection
+        // when we are blocked on a read operation by the
+        // CRaShCommand#destroy() method
+        close();
+        return InputDecoder.HANDLED;
       }
     }
   }
@@ -163,6 +102,10 @@ public class SSHIO implements TermIO {
     return command.getContext().getProperty(name);
   }
 
+  public String getConnector() {
+    return "ssh";
+  }
+
   public boolean takeAlternateBuffer() throws IOException {
     if (!useAlternate) {
       useAlternate = true;
@@ -183,32 +126,7 @@ public class SSHIO implements TermIO {
     if (code == command.getContext().verase) {
       return CodeType.BACKSPACE;
     } else {
-      switch (code) {
-        case HANDLED:
-          return CodeType.CLOSE;
-        case 1:
-          return CodeType.BEGINNING_OF_LINE;
-        case 5:
-          return CodeType.END_OF_LINE;
-        case 3:
-          return CodeType.BREAK;
-        case 9:
-          return CodeType.TAB;
-        case UP:
-          return CodeType.UP;
-        case DOWN:
-          return CodeType.DOWN;
-        case LEFT:
-          return CodeType.LEFT;
-        case RIGHT:
-          return CodeType.RIGHT;
-        case BACKWARD_WORD:
-          return CodeType.BACKWARD_WORD;
-        case FORWARD_WORD:
-          return CodeType.FORWARD_WORD;
-        default:
-          return CodeType.CHAR;
-      }
+      return input.decode(code);
     }
   }
 
@@ -217,6 +135,13 @@ public class SSHIO implements TermIO {
       log.log(Level.FINE, "Attempt to closed again");
     } else {
       log.log(Level.FINE, "Closing SSHIO");
+      try {
+        writer.write("\033[?2004l");
+        writer.flush();
+      }
+      catch (IOException e) {
+        log.log(Level.FINE, "Could not disable bracketed paste", e);
+      }
       command.session.close(false);
     }
   }
@@ -256,6 +181,21 @@ public class SSHIO implements TermIO {
     return true;
   }
 
+  public boolean moveLeft(int n) throws IOException {
+    writer.write("\033[");
+    writer.write(Integer.toString(n));
+    writer.write('D');
+    return true;
+  }
+
+  public void moveTo(int row, int col) throws IOException {
+    writer.write("\033[");
+    writer.write(Integer.toString(row + 1));
+    writer.write(';');
+    writer.write(Integer.toString(col + 1));
+    writer.write('H');
+  }
+
   public void cls() throws IOException {
     writer.write("\033[");
     writer.write("2J");
@@ -2,6 +2,7 @@ package org.crsh.ssh.term.inline;
 
 import org.apache.sshd.server.Environment;
 import org.crsh.plugin.PluginContext;
+import org.crsh.shell.ConnectorShellFactory;
 import org.crsh.shell.Shell;
 import org.crsh.shell.ShellFactory;
 import org.crsh.shell.ShellProcess;
@@ -66,7 +67,13 @@ public class SSHInlineCommand extends AbstractCommand implements Runnable {
         return userName;
       }
     };
-    Shell shell = pluginContext.getPlugin(ShellFactory.class).create(user);
+    ShellFactory factory = pluginContext.getPlugin(ShellFactory.class);
+    Shell shell;
+    if (factory instanceof ConnectorShellFactory) {
+      shell = ((ConnectorShellFactory)factory).create(user, "ssh");
+    } else {
+      shell = factory.create(user);
+    }
     ShellProcess shellProcess = shell.createProcess(command);
 
     //
@@ -30,6 +30,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class SSHTestCase extends Assert {
@@ -104,17 +105,75 @@ public class SSHTestCase extends Assert {
   @Test
   public void testClientWrite() throws Exception {
     client.write("HELLO").flush();
-    handler.add(IOAction.read());
-    handler.add(IOAction.read());
-    handler.add(IOAction.read());
-    handler.add(IOAction.read());
-    handler.add(IOAction.read());
+    for (int i = 0;i < 7;i++) {
+      handler.add(IOAction.read());
+    }
     handler.add(IOAction.end());
+
+    // The chars received together are read as a paste
+    handler.assertEvent(new IOEvent.IO(CodeType.PASTE_START));
     handler.assertEvent(new IOEvent.IO('H'));
     handler.assertEvent(new IOEvent.IO('E'));
     handler.assertEvent(new IOEvent.IO('L'));
     handler.assertEvent(new IOEvent.IO('L'));
     handler.assertEvent(new IOEvent.IO('O'));
+    handler.assertEvent(new IOEvent.IO(CodeType.PASTE_END));
+
+    //
+    client.close();
+    lifeCycle.stop();
+  }
+
+  @Test
+  public void testClientWriteMultiByteSplitAcrossReads() throws Exception {
+    byte[] bytes = "\u00e9".getBytes(Charset.defaultCharset().name());
+    for (byte b : bytes) {
+      client.write(b).flush();
+      Thread.sleep(100);
+    }
+    handler.add(IOAction.read()).add(IOAction.end());
+    handler.assertEvent(new IOEvent.IO('\u00e9'));
+
+    //
+    client.close();
+    lifeCycle.stop();
+  }
+
+  @Test
+  public void testClientWriteEscapeSplitAcrossReads() throws Exception {
+    client.write("\033").flush();
+    Thread.sleep(100);
+    client.write("[").flush();
+    Thread.sleep(100);
+    client.write("A").flush();
+    handler.add(IOAction.read()).add(IOAction.end());
+    handler.assertEvent(new IOEvent.IO(CodeType.UP));
+
+    //
+    client.close();
+    lifeCycle.stop();
+  }
+
+  @Test
+  public void testClientWriteRunsAndEscapes() throws Exception {
+    client.write("ab\033[Dc\033[200~d\te\033[201~").flush();
+    for (int i = 0;i < 11;i++) {
+      handler.add(IOAction.read());
+    }
+    handler.add(IOAction.end());
+    handler.assertEvent(new IOEvent.IO(CodeType.PASTE_START));
+    handler.assertEvent(new IOEvent.IO('a'));
+    handler.assertEvent(new IOEvent.IO('b'));
+    handler.assertEvent(new IOEvent.IO(CodeType.PASTE_END));
+    handler.assertEvent(new IOEvent.IO(CodeType.LEFT));
+    handler.assertEvent(new IOEvent.IO('c'));
+
+    // A bracketed paste is not split into runs
+    handler.assertEvent(new IOEvent.IO(CodeType.PASTE_START));
+    handler.assertEvent(new IOEvent.IO('d'));
+    handler.assertEvent(new IOEvent.IO(CodeType.TAB));
+    handler.assertEvent(new IOEvent.IO('e'));
+    handler.assertEvent(new IOEvent.IO(CodeType.PASTE_END));
 
     //
     client.close();
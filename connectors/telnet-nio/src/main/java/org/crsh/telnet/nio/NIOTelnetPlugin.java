@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.telnet.nio;
+
+import org.crsh.plugin.CRaSHPlugin;
+import org.crsh.plugin.PluginContext;
+import org.crsh.plugin.PropertyDescriptor;
+import org.crsh.term.spi.TermIO;
+import org.crsh.term.spi.TermIOHandler;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.logging.Level;
+
+/**
+ * The telnet connector based on a non blocking selector loop, it replaces the <code>crash.connectors.telnet</code>
+ * connector and is configured by its own <code>telnet.nio.*</code> properties. The two connectors are mutually
+ * exclusive: this connector is not started when the <code>crash.connectors.telnet</code> plugin is deployed.
+ */
+public class NIOTelnetPlugin extends CRaSHPlugin<NIOTelnetPlugin> {
+
+  /** . */
+  public static final PropertyDescriptor<Integer> TELNET_PORT = PropertyDescriptor.create("telnet.nio.port", 5000, "The telnet port");
+
+  /** . */
+  public static final PropertyDescriptor<Integer> TELNET_MAX_CONNECTIONS = PropertyDescriptor.create("telnet.nio.max_connections", 256, "The max number of telnet connections, the connections exceeding it are refused");
+
+  /** The class name of the plugin of the <code>crash.connectors.telnet</code> connector. */
+  static final String TELNET_PLUGIN = "org.crsh.telnet.TelnetPlugin";
+
+  /** . */
+  private TelnetServer server;
+
+  @Override
+  public NIOTelnetPlugin getImplementation() {
+    return this;
+  }
+
+  @Override
+  protected Iterable<PropertyDescriptor<?>> createConfigurationCapabilities() {
+    return Arrays.<PropertyDescriptor<?>>asList(TELNET_PORT, TELNET_MAX_CONNECTIONS);
+  }
+
+  @Override
+  public void init() {
+    for (CRaSHPlugin<?> plugin : getContext().getPlugins()) {
+      if (plugin.getClass().getName().equals(TELNET_PLUGIN)) {
+        log.log(Level.WARNING, "The telnet connector " + TELNET_PLUGIN + " is deployed, the nio telnet connector will not be started");
+        return;
+      }
+    }
+
+    //
+    Integer port = getContext().getProperty(TELNET_PORT);
+    if (port == null) {
+      port = TELNET_PORT.defaultValue;
+    }
+    Integer maxConnections = getContext().getProperty(TELNET_MAX_CONNECTIONS);
+    if (maxConnections == null || maxConnections < 1) {
+      maxConnections = TELNET_MAX_CONNECTIONS.defaultValue;
+    }
+
+    // The handler is resolved for each connection
+    final PluginContext context = getContext();
+    TelnetServer server = new TelnetServer(port, maxConnections, new TermIOHandler() {
+      public void handle(TermIO io, Principal user) {
+        Iterator<TermIOHandler> handlers = context.getPlugins(TermIOHandler.class).iterator();
+        if (handlers.hasNext()) {
+          handlers.next().handle(io, user);
+        } else {
+          log.log(Level.SEVERE, "No term io handler available for telnet connection");
+        }
+      }
+    });
+
+    //
+    try {
+      server.start();
+      this.server = server;
+    }
+    catch (IOException e) {
+      log.log(Level.SEVERE, "Could not start telnet server on port " + port, e);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (server != null) {
+      server.stop();
+      server = null;
+    }
+  }
+}
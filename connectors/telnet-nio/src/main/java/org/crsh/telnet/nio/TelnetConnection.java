@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.telnet.nio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A telnet connection: the telnet protocol (option negotiation, subnegotiation, CR handling) is decoded by the
+ * selector thread with a non blocking state machine, the resulting data bytes are buffered until they are
+ * taken by the term thread. The output is written directly to the channel when possible, otherwise it is queued
+ * and written by the selector thread.
+ */
+class TelnetConnection {
+
+  /** . */
+  static final int IAC = 255;
+
+  /** . */
+  static final int DONT = 254;
+
+  /** . */
+  static final int DO = 253;
+
+  /** . */
+  static final int WONT = 252;
+
+  /** . */
+  static final int WILL = 251;
+
+  /** . */
+  static final int SB = 250;
+
+  /** . */
+  static final int EC = 247;
+
+  /** . */
+  static final int IP = 244;
+
+  /** . */
+  static final int BRK = 243;
+
+  /** . */
+  static final int SE = 240;
+
+  /** . */
+  static final int ECHO = 1;
+
+  /** . */
+  static final int SGA = 3;
+
+  /** . */
+  static final int TTYPE = 24;
+
+  /** . */
+  static final int NAWS = 31;
+
+  /** . */
+  static final int TTYPE_IS = 0;
+
+  /** . */
+  static final int TTYPE_SEND = 1;
+
+  /** . */
+  private static final int STATE_DATA = 0;
+
+  /** . */
+  private static final int STATE_CR = 1;
+
+  /** . */
+  private static final int STATE_IAC = 2;
+
+  /** . */
+  private static final int STATE_OPTION = 3;
+
+  /** . */
+  private static final int STATE_SB = 4;
+
+  /** . */
+  private static final int STATE_SB_IAC = 5;
+
+  /** The max size of the input not yet taken, the connection is not read anymore when it is reached. */
+  static final int INPUT_SIZE = 8192;
+
+  /** The max size of the output not yet written, the writer blocks when it is reached. */
+  static final int OUTPUT_LIMIT = 65536;
+
+  /** The max size of a subnegotiation. */
+  private static final int SB_SIZE = 256;
+
+  /** . */
+  private static final Logger log = Logger.getLogger(TelnetConnection.class.getName());
+
+  /** . */
+  final TelnetServer server;
+
+  /** . */
+  final SocketChannel channel;
+
+  /** The selection key, set by the server after the registration. */
+  SelectionKey key;
+
+  /** The read buffer, used only by the selector thread. */
+  private final ByteBuffer buffer;
+
+  /** The protocol state, used only by the selector thread. */
+  private int state;
+
+  /** The negotiation verb being read. */
+  private int verb;
+
+  /** The subnegotiation being read. */
+  private final byte[] sb;
+
+  /** . */
+  private int sbLength;
+
+  /** The input ring, guarded by this object. */
+  private final byte[] input;
+
+  /** . */
+  private int inputStart;
+
+  /** . */
+  private int inputLength;
+
+  /** True when the connection is read by the selector. */
+  private boolean reading;
+
+  /** The output queue, guarded by itself. */
+  private final LinkedList<ByteBuffer> output;
+
+  /** The amount of bytes in the output queue. */
+  private int pending;
+
+  /** True when the connection should be closed once the output queue is written. */
+  private boolean closing;
+
+  /** . */
+  volatile boolean closed;
+
+  /** . */
+  volatile int width;
+
+  /** . */
+  volatile int height;
+
+  /** . */
+  volatile String termType;
+
+  /** . */
+  private final Runnable resumeReading = new Runnable() {
+    public void run() {
+      if (key.isValid()) {
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+      }
+    }
+  };
+
+  /** . */
+  private final Runnable resumeWriting = new Runnable() {
+    public void run() {
+      if (key.isValid()) {
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+      }
+    }
+  };
+
+  TelnetConnection(TelnetServer server, SocketChannel channel) {
+    this.server = server;
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocate(4096);
+    this.state = STATE_DATA;
+    this.sb = new byte[SB_SIZE];
+    this.input = new byte[INPUT_SIZE];
+    this.reading = true;
+    this.output = new LinkedList<ByteBuffer>();
+    this.closed = false;
+    this.width = 80;
+    this.height = 24;
+  }
+
+  /**
+   * Start the option negotiation: the server echoes and suppresses go ahead, the client is asked to send
+   * its window size and its terminal type.
+   *
+   * @throws IOException any io exception
+   */
+  void open() throws IOException {
+    send(ByteBuffer.wrap(new byte[]{
+        (byte)IAC, (byte)WILL, ECHO,
+        (byte)IAC, (byte)WILL, SGA,
+        (byte)IAC, (byte)DO, NAWS,
+        (byte)IAC, (byte)DO, TTYPE
+    }), false);
+  }
+
+  /**
+   * Read and decode the available bytes, invoked by the selector thread.
+   *
+   * @throws IOException any io exception
+   */
+  void read() throws IOException {
+    int free;
+    synchronized (this) {
+      free = input.length - inputLength;
+    }
+
+    // Decoding never produces more bytes than read, so we read at most the free space of the input
+    buffer.clear();
+    buffer.limit(Math.min(buffer.capacity(), free));
+    int n = channel.read(buffer);
+    if (n == -1) {
+      close();
+    } else if (n > 0) {
+      int length = decode(buffer.array(), n);
+      synchronized (this) {
+        if (length > 0) {
+          int end = (inputStart + inputLength) % input.length;
+          int amount = Math.min(length, input.length - end);
+          System.arraycopy(buffer.array(), 0, input, end, amount);
+          System.arraycopy(buffer.array(), amount, input, 0, length - amount);
+          inputLength += length;
+          notifyAll();
+        }
+        if (inputLength == input.length) {
+          reading = false;
+          key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+      }
+    }
+  }
+
+  /**
+   * Decode the telnet protocol, the data bytes are written back at the beginning of the array.
+   *
+   * @param bytes the bytes
+   * @param length the amount of bytes
+   * @return the amount of data bytes
+   * @throws IOException any io exception
+   */
+  private int decode(byte[] bytes, int length) throws IOException {
+    int to = 0;
+    for (int i = 0;i < length;i++) {
+      int b = bytes[i] & 0xFF;
+      switch (state) {
+        case STATE_CR:
+          // CR NUL and CR LF are decoded as CR
+          state = STATE_DATA;
+          if (b == 0 || b == '\n') {
+            break;
+          }
+          // fall through
+        case STATE_DATA:
+          if (b == IAC) {
+            state = STATE_IAC;
+          } else {
+            bytes[to++] = (byte)b;
+            if (b == '\r') {
+              state = STATE_CR;
+            }
+          }
+          break;
+        case STATE_IAC:
+          state = STATE_DATA;
+          switch (b) {
+            case IAC:
+              bytes[to++] = (byte)IAC;
+              break;
+            case WILL:
+            case WONT:
+            case DO:
+            case DONT:
+              verb = b;
+              state = STATE_OPTION;
+              break;
+            case SB:
+              sbLength = 0;
+              state = STATE_SB;
+              break;
+            case IP:
+            case BRK:
+              bytes[to++] = 3;
+              break;
+            case EC:
+              bytes[to++] = 127;
+              break;
+            default:
+              // NOP, GA, AYT, ... are ignored
+              break;
+          }
+          break;
+        case STATE_OPTION:
+          state = STATE_DATA;
+          negotiate(verb, b);
+          break;
+        case STATE_SB:
+          if (b == IAC) {
+            state = STATE_SB_IAC;
+          } else if (sbLength < sb.length) {
+            sb[sbLength++] = (byte)b;
+          }
+          break;
+        case STATE_SB_IAC:
+          if (b == IAC) {
+            state = STATE_SB;
+            if (sbLength < sb.length) {
+              sb[sbLength++] = (byte)IAC;
+            }
+          } else {
+            state = STATE_DATA;
+            if (b == SE) {
+              subnegotiate();
+            } else {
+              log.log(Level.FINE, "Unterminated subnegotiation followed by " + b);
+            }
+          }
+          break;
+        default:
+          throw new AssertionError();
+      }
+    }
+    return to;
+  }
+
+  private void negotiate(int verb, int option) throws IOException {
+    switch (verb) {
+      case WILL:
+        if (option == TTYPE) {
+          send(ByteBuffer.wrap(new byte[]{(byte)IAC, (byte)SB, TTYPE, TTYPE_SEND, (byte)IAC, (byte)SE}), false);
+        } else if (option != NAWS) {
+          send(ByteBuffer.wrap(new byte[]{(byte)IAC, (byte)DONT, (byte)option}), false);
+        }
+        break;
+      case DO:
+        if (option != ECHO && option != SGA) {
+          send(ByteBuffer.wrap(new byte[]{(byte)IAC, (byte)WONT, (byte)option}), false);
+        }
+        break;
+      default:
+        // The refusals are not acknowledged to avoid negotiation loops
+        break;
+    }
+  }
+
+  private void subnegotiate() {
+    if (sbLength > 0) {
+      int option = sb[0] & 0xFF;
+      if (option == NAWS && sbLength == 5) {
+        int width = ((sb[1] & 0xFF) << 8) | (sb[2] & 0xFF);
+        int height = ((sb[3] & 0xFF) << 8) | (sb[4] & 0xFF);
+        if (width > 0) {
+          this.width = width;
+        }
+        if (height > 0) {
+          this.height = height;
+        }
+      } else if (option == TTYPE && sbLength > 1 && sb[1] == TTYPE_IS) {
+        StringBuilder sb = new StringBuilder(sbLength - 2);
+        for (int i = 2;i < sbLength;i++) {
+          sb.append(Character.toLowerCase((char)(this.sb[i] & 0xFF)));
+        }
+        termType = sb.toString();
+      }
+    }
+  }
+
+  /**
+   * Take the available data bytes, this method blocks until data is available or the connection is closed.
+   *
+   * @param bytes the destination
+   * @param off the destination offset
+   * @param len the max amount of bytes to take
+   * @return the amount of bytes taken or -1 when the connection is closed
+   * @throws InterruptedIOException if the thread is interrupted
+   */
+  synchronized int take(byte[] bytes, int off, int len) throws InterruptedIOException {
+    while (inputLength == 0) {
+      if (closed) {
+        return -1;
+      }
+      try {
+        wait();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+    int n = Math.min(len, inputLength);
+    int amount = Math.min(n, input.length - inputStart);
+    System.arraycopy(input, inputStart, bytes, off, amount);
+    System.arraycopy(input, 0, bytes, off + amount, n - amount);
+    inputStart = (inputStart + n) % input.length;
+    inputLength -= n;
+    if (!reading && inputLength <= input.length / 2) {
+      reading = true;
+      server.execute(resumeReading);
+    }
+    return n;
+  }
+
+  /**
+   * Send the bytes, they are written directly when no output is pending otherwise they are queued for the
+   * selector thread.
+   *
+   * @param bytes the bytes to send
+   * @param block true when the caller should block while the output queue is full
+   * @throws IOException any io exception
+   */
+  void send(ByteBuffer bytes, boolean block) throws IOException {
+    synchronized (output) {
+      if (block) {
+        while (pending > OUTPUT_LIMIT && !closed) {
+          try {
+            output.wait();
+          }
+          catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+          }
+        }
+      }
+      if (closed) {
+        throw new IOException("Connection closed");
+      }
+      if (output.isEmpty()) {
+        channel.write(bytes);
+      }
+      if (bytes.hasRemaining()) {
+        output.addLast(bytes);
+        pending += bytes.remaining();
+        if (output.size() == 1) {
+          server.execute(resumeWriting);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the output queue, invoked by the selector thread.
+   *
+   * @throws IOException any io exception
+   */
+  void write() throws IOException {
+    synchronized (output) {
+      while (output.size() > 0) {
+        ByteBuffer bytes = output.getFirst();
+        pending -= channel.write(bytes);
+        if (bytes.hasRemaining()) {
+          break;
+        }
+        output.removeFirst();
+      }
+      if (output.isEmpty()) {
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (closing) {
+          close();
+        }
+      }
+      output.notifyAll();
+    }
+  }
+
+  /**
+   * Close the connection once the pending output is written.
+   */
+  void shutdown() {
+    synchronized (output) {
+      if (output.isEmpty()) {
+        close();
+      } else {
+        closing = true;
+      }
+    }
+  }
+
+  void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+    }
+    synchronized (output) {
+      output.clear();
+      pending = 0;
+      output.notifyAll();
+    }
+    try {
+      channel.close();
+    }
+    catch (IOException e) {
+      log.log(Level.FINE, "Could not close telnet channel", e);
+    }
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.telnet.nio;
+
+import org.crsh.term.spi.TermIOHandler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A telnet server performing the network io of all its connections with a single selector thread. The telnet
+ * protocol is decoded by the selector thread and the terms are handled by the {@link TermIOHandler} on a
+ * separate thread per connection, the connections exceeding the max number of connections are refused.
+ *
+ * <p>The handler reads its term with blocking calls, so a session holds its handler thread for its whole
+ * duration: n sessions cost n handler threads plus the selector thread. The selector only removes the io
+ * threads, the max number of connections bounds the number of handler threads.</p>
+ */
+public class TelnetServer {
+
+  /** . */
+  private static final Logger log = Logger.getLogger(TelnetServer.class.getName());
+
+  /** . */
+  private final int port;
+
+  /** . */
+  private final TermIOHandler handler;
+
+  /** . */
+  private final int maxConnections;
+
+  /** The number of connections being handled. */
+  private final AtomicInteger connections;
+
+  /** The tasks to execute on the selector thread. */
+  private final ConcurrentLinkedQueue<Runnable> tasks;
+
+  /** . */
+  private Selector selector;
+
+  /** . */
+  private ServerSocketChannel server;
+
+  /** . */
+  private Thread thread;
+
+  /** . */
+  private ExecutorService executor;
+
+  /** . */
+  private volatile boolean running;
+
+  public TelnetServer(int port, TermIOHandler handler) {
+    this(port, NIOTelnetPlugin.TELNET_MAX_CONNECTIONS.defaultValue, handler);
+  }
+
+  public TelnetServer(int port, int maxConnections, TermIOHandler handler) throws NullPointerException, IllegalArgumentException {
+    if (handler == null) {
+      throw new NullPointerException("No null handler accepted");
+    }
+    if (maxConnections < 1) {
+      throw new IllegalArgumentException("The max number of connections must be positive");
+    }
+    this.port = port;
+    this.maxConnections = maxConnections;
+    this.connections = new AtomicInteger();
+    this.handler = handler;
+    this.tasks = new ConcurrentLinkedQueue<Runnable>();
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public synchronized void start() throws IOException {
+    if (running) {
+      throw new IllegalStateException("Already started");
+    }
+
+    //
+    Selector selector = Selector.open();
+    ServerSocketChannel server = ServerSocketChannel.open();
+    try {
+      server.configureBlocking(false);
+      server.socket().setReuseAddress(true);
+      server.socket().bind(new InetSocketAddress(port));
+      server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+    catch (IOException e) {
+      server.close();
+      selector.close();
+      throw e;
+    }
+
+    //
+    final AtomicInteger count = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConnections, maxConnections, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "CRaSH telnet session #" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.allowCoreThreadTimeOut(true);
+    this.executor = executor;
+    this.selector = selector;
+    this.server = server;
+    this.running = true;
+    this.thread = new Thread("CRaSH telnet selector") {
+      @Override
+      public void run() {
+        loop();
+      }
+    };
+    this.thread.setDaemon(true);
+    this.thread.start();
+    log.log(Level.INFO, "Telnet server listening on port " + port);
+  }
+
+  public void stop() {
+    Thread thread;
+    synchronized (this) {
+      if (!running) {
+        return;
+      }
+      running = false;
+      thread = this.thread;
+      this.thread = null;
+      selector.wakeup();
+    }
+    try {
+      thread.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    executor.shutdown();
+  }
+
+  /**
+   * Execute a task on the selector thread.
+   *
+   * @param task the task
+   */
+  void execute(Runnable task) {
+    tasks.add(task);
+    selector.wakeup();
+  }
+
+  private void loop() {
+    try {
+      while (running) {
+        selector.select();
+
+        //
+        for (Runnable task = tasks.poll();task != null;task = tasks.poll()) {
+          task.run();
+        }
+
+        //
+        for (Iterator<SelectionKey> i = selector.selectedKeys().iterator();i.hasNext();) {
+          SelectionKey key = i.next();
+          i.remove();
+          if (key.isValid()) {
+            if (key.isAcceptable()) {
+              accept();
+            } else {
+              TelnetConnection connection = (TelnetConnection)key.attachment();
+              try {
+                if (key.isReadable()) {
+                  connection.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                  connection.write();
+                }
+              }
+              catch (IOException e) {
+                log.log(Level.FINE, "Closing telnet connection after io error", e);
+                connection.close();
+              }
+            }
+          }
+        }
+      }
+    }
+    catch (IOException e) {
+      log.log(Level.SEVERE, "Telnet selector failure", e);
+    }
+    finally {
+      for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+        if (key.attachment() instanceof TelnetConnection) {
+          ((TelnetConnection)key.attachment()).close();
+        }
+      }
+      try {
+        server.close();
+      }
+      catch (IOException ignore) {
+      }
+      try {
+        selector.close();
+      }
+      catch (IOException ignore) {
+      }
+      log.log(Level.INFO, "Telnet server stopped on port " + port);
+    }
+  }
+
+  /**
+   * Accept a pending connection, a failure only affects the connection being accepted.
+   */
+  private void accept() {
+    SocketChannel channel;
+    try {
+      channel = server.accept();
+    }
+    catch (IOException e) {
+      log.log(Level.WARNING, "Could not accept telnet connection", e);
+      return;
+    }
+    if (channel != null) {
+      final TelnetConnection connection = new TelnetConnection(this, channel);
+      if (connections.incrementAndGet() > maxConnections) {
+        connections.decrementAndGet();
+        log.log(Level.WARNING, "Refusing telnet connection, the max number of connections " + maxConnections + " is reached");
+        connection.close();
+        return;
+      }
+      try {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connection.open();
+      }
+      catch (IOException e) {
+        connections.decrementAndGet();
+        log.log(Level.WARNING, "Could not open telnet connection", e);
+        connection.close();
+        return;
+      }
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            handler.handle(new TelnetTermIO(connection), null);
+          }
+          finally {
+            connections.decrementAndGet();
+            connection.shutdown();
+          }
+        }
+      });
+    }
+  }
+}
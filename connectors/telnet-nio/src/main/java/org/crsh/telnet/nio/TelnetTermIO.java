@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.telnet.nio;
+
+import org.crsh.term.CodeType;
+import org.crsh.term.spi.InputDecoder;
+import org.crsh.term.spi.ExtendedTermIO;
+import org.crsh.text.Style;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The term io of a telnet connection.
+ */
+class TelnetTermIO implements ExtendedTermIO {
+
+  /** . */
+  private static final Logger log = Logger.getLogger(TelnetTermIO.class.getName());
+
+  /** . */
+  private final TelnetConnection connection;
+
+  /** . */
+  private final InputDecoder input;
+
+  /** . */
+  private final CharsetEncoder encoder;
+
+  /** The chars written and not yet flushed. */
+  private final StringBuilder text;
+
+  /** The last char written. */
+  private char last;
+
+  /** . */
+  private boolean useAlternate;
+
+  TelnetTermIO(final TelnetConnection connection) {
+    Charset charset = Charset.defaultCharset();
+    this.connection = connection;
+    this.input = new InputDecoder(charset) {
+      @Override
+      protected int receive(byte[] b, int off, int len) throws IOException {
+        return connection.take(b, off, len);
+      }
+    };
+    this.encoder = charset.newEncoder().
+        onMalformedInput(CodingErrorAction.REPLACE).
+        onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.text = new StringBuilder();
+    this.useAlternate = false;
+
+    // Enable bracketed paste mode
+    text.append("\033[?2004h");
+  }
+
+  public int read() throws IOException {
+    return input.read();
+  }
+
+  public int getWidth() {
+    return connection.width;
+  }
+
+  public int getHeight() {
+    return connection.height;
+  }
+
+  public String getProperty(String name) {
+    if ("TERM".equals(name)) {
+      return connection.termType;
+    } else {
+      return null;
+    }
+  }
+
+  public String getConnector() {
+    return "telnet";
+  }
+
+  public boolean takeAlternateBuffer() throws IOException {
+    if (!useAlternate) {
+      useAlternate = true;
+      text.append("\033[?47h");
+    }
+    return true;
+  }
+
+  public boolean releaseAlternateBuffer() throws IOException {
+    if (useAlternate) {
+      useAlternate = false;
+      text.append("\033[?47l"); // Switches back to the normal screen
+    }
+    return true;
+  }
+
+  public CodeType decode(int code) {
+    switch (code) {
+      case 8:
+      case 127:
+        return CodeType.BACKSPACE;
+      default:
+        return input.decode(code);
+    }
+  }
+
+  public void close() {
+    if (!connection.closed) {
+      text.append("\033[?2004l");
+      try {
+        flush();
+      }
+      catch (IOException e) {
+        log.log(Level.FINE, "Could not disable bracketed paste", e);
+      }
+      connection.shutdown();
+    }
+  }
+
+  public void flush() throws IOException {
+    if (text.length() > 0) {
+      ByteBuffer encoded = encoder.encode(CharBuffer.wrap(text));
+      text.setLength(0);
+      connection.send(escape(encoded), true);
+    }
+  }
+
+  /**
+   * Double the IAC bytes of the output.
+   *
+   * @param bytes the bytes
+   * @return the escaped bytes
+   */
+  private static ByteBuffer escape(ByteBuffer bytes) {
+    int count = 0;
+    for (int i = bytes.position();i < bytes.limit();i++) {
+      if ((bytes.get(i) & 0xFF) == TelnetConnection.IAC) {
+        count++;
+      }
+    }
+    if (count == 0) {
+      return bytes;
+    } else {
+      ByteBuffer escaped = ByteBuffer.allocate(bytes.remaining() + count);
+      while (bytes.hasRemaining()) {
+        byte b = bytes.get();
+        escaped.put(b);
+        if ((b & 0xFF) == TelnetConnection.IAC) {
+          escaped.put(b);
+        }
+      }
+      escaped.flip();
+      return escaped;
+    }
+  }
+
+  public void write(CharSequence s) throws IOException {
+    for (int i = 0;i < s.length();i++) {
+      write(s.charAt(i));
+    }
+  }
+
+  public void write(char c) throws IOException {
+    // The network virtual terminal requires CR LF to start a new line
+    if (c == '\n' && last != '\r') {
+      text.append('\r');
+    }
+    text.append(c);
+    last = c;
+  }
+
+  public void write(Style d) throws IOException {
+    d.writeAnsiTo(text);
+  }
+
+  public void writeDel() throws IOException {
+    text.append("\033[D \033[D");
+  }
+
+  public void writeCRLF() throws IOException {
+    text.append("\r\n");
+    last = '\n';
+  }
+
+  public boolean moveRight(char c) throws IOException {
+    write(c);
+    return true;
+  }
+
+  public boolean moveLeft() throws IOException {
+    text.append("\033[1D");
+    return true;
+  }
+
+  public boolean moveLeft(int n) throws IOException {
+    text.append("\033[").append(n).append('D');
+    return true;
+  }
+
+  public void moveTo(int row, int col) throws IOException {
+    text.append("\033[").append(row + 1).append(';').append(col + 1).append('H');
+  }
+
+  public void cls() throws IOException {
+    text.append("\033[2J\033[1;1H");
+  }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.telnet.nio;
+
+import org.crsh.term.CodeType;
+import org.crsh.term.spi.ExtendedTermIO;
+import org.crsh.term.spi.TermIO;
+import org.crsh.term.spi.TermIOHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TelnetServerTestCase extends Assert {
+
+  /** . */
+  private static final AtomicInteger PORTS = new AtomicInteger(5100);
+
+  /** . */
+  private static final byte IAC = (byte)TelnetConnection.IAC;
+
+  /** . */
+  private static final byte[] NEGOTIATION = {
+      IAC, (byte)TelnetConnection.WILL, TelnetConnection.ECHO,
+      IAC, (byte)TelnetConnection.WILL, TelnetConnection.SGA,
+      IAC, (byte)TelnetConnection.DO, TelnetConnection.NAWS,
+      IAC, (byte)TelnetConnection.DO, TelnetConnection.TTYPE
+  };
+
+  /** . */
+  private final BlockingQueue<TermIO> ios = new LinkedBlockingQueue<TermIO>();
+
+  /** . */
+  private final List<Socket> sockets = new ArrayList<Socket>();
+
+  /** . */
+  private TelnetServer server;
+
+  /** . */
+  private final CountDownLatch done = new CountDownLatch(1);
+
+  /** . */
+  private volatile TermIOHandler handler;
+
+  @Before
+  public void setUp() throws Exception {
+    handler = new TermIOHandler() {
+      public void handle(TermIO io, Principal user) {
+        ios.add(io);
+        try {
+          done.await();
+        }
+        catch (InterruptedException ignore) {
+        }
+      }
+    };
+    server = new TelnetServer(PORTS.getAndIncrement(), new TermIOHandler() {
+      public void handle(TermIO io, Principal user) {
+        handler.handle(io, user);
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    done.countDown();
+    for (Socket socket : sockets) {
+      socket.close();
+    }
+    server.stop();
+  }
+
+  private Socket connect() throws IOException {
+    Socket socket = new Socket("localhost", server.getPort());
+    socket.setSoTimeout(10000);
+    sockets.add(socket);
+    return socket;
+  }
+
+  private void assertRead(InputStream in, byte... expected) throws IOException {
+    byte[] bytes = new byte[expected.length];
+    for (int i = 0;i < bytes.length;i++) {
+      int b = in.read();
+      assertTrue("Unexpected end of stream", b != -1);
+      bytes[i] = (byte)b;
+    }
+    assertEquals(new String(expected, "ISO-8859-1"), new String(bytes, "ISO-8859-1"));
+  }
+
+  private TermIO takeIO() throws InterruptedException {
+    TermIO io = ios.poll(10, TimeUnit.SECONDS);
+    assertNotNull(io);
+    return io;
+  }
+
+  @Test
+  public void testNegotiation() throws Exception {
+    Socket socket = connect();
+    InputStream in = socket.getInputStream();
+    OutputStream out = socket.getOutputStream();
+    assertRead(in, NEGOTIATION);
+
+    // Window size and terminal type
+    out.write(new byte[]{
+        IAC, (byte)TelnetConnection.WILL, TelnetConnection.NAWS,
+        IAC, (byte)TelnetConnection.SB, TelnetConnection.NAWS, 0, 120, 0, 40, IAC, (byte)TelnetConnection.SE,
+        IAC, (byte)TelnetConnection.WILL, TelnetConnection.TTYPE
+    });
+    out.flush();
+    assertRead(in, IAC, (byte)TelnetConnection.SB, (byte)TelnetConnection.TTYPE, (byte)TelnetConnection.TTYPE_SEND, IAC, (byte)TelnetConnection.SE);
+    out.write(new byte[]{IAC, (byte)TelnetConnection.SB, TelnetConnection.TTYPE, TelnetConnection.TTYPE_IS, 'X', 'T', 'E', 'R', 'M', IAC, (byte)TelnetConnection.SE});
+
+    // Unsupported options are refused
+    out.write(new byte[]{IAC, (byte)TelnetConnection.DO, 34});
+    out.write('a');
+    out.flush();
+    assertRead(in, IAC, (byte)TelnetConnection.WONT, (byte)34);
+
+    //
+    TermIO io = takeIO();
+    assertEquals('a', io.read());
+    assertEquals(120, io.getWidth());
+    assertEquals(40, io.getHeight());
+    assertEquals("xterm", io.getProperty("TERM"));
+
+    // A resize is seen by the term
+    out.write(new byte[]{IAC, (byte)TelnetConnection.SB, TelnetConnection.NAWS, 0, 100, 0, 30, IAC, (byte)TelnetConnection.SE, 'b'});
+    out.flush();
+    assertEquals('b', io.read());
+    assertEquals(100, io.getWidth());
+    assertEquals(30, io.getHeight());
+  }
+
+  @Test
+  public void testRead() throws Exception {
+    Socket socket = connect();
+    OutputStream out = socket.getOutputStream();
+    TermIO io = takeIO();
+
+    // CR NUL and CR LF are read as CR
+    out.write(new byte[]{'\r', 0});
+    out.flush();
+    assertEquals('\r', io.read());
+    out.write(new byte[]{'\r', '\n'});
+    out.flush();
+    assertEquals('\r', io.read());
+
+    // Escaped IAC and interrupt
+    out.write(new byte[]{IAC, (byte)TelnetConnection.IP});
+    out.flush();
+    assertEquals(CodeType.BREAK, io.decode(io.read()));
+    out.write(new byte[]{'\t'});
+    out.flush();
+    assertEquals(CodeType.TAB, io.decode(io.read()));
+    out.write("\033[A".getBytes());
+    out.flush();
+    assertEquals(CodeType.UP, io.decode(io.read()));
+
+    // A run of chars is read as a paste
+    out.write("abc".getBytes());
+    out.flush();
+    assertEquals(CodeType.PASTE_START, io.decode(io.read()));
+    assertEquals('a', io.read());
+    assertEquals('b', io.read());
+    assertEquals('c', io.read());
+    assertEquals(CodeType.PASTE_END, io.decode(io.read()));
+
+    // Closed by the client
+    socket.close();
+    assertEquals(CodeType.CLOSE, io.decode(io.read()));
+  }
+
+  @Test
+  public void testWrite() throws Exception {
+    Socket socket = connect();
+    InputStream in = socket.getInputStream();
+    assertRead(in, NEGOTIATION);
+    TermIO io = takeIO();
+    io.write("a\nb");
+    io.writeCRLF();
+    io.flush();
+    assertRead(in, "\033[?2004ha\r\nb\r\n".getBytes());
+
+    // The cursor moves left by several columns with a single sequence
+    ((ExtendedTermIO)io).moveLeft(3);
+    io.flush();
+    assertRead(in, "\033[3D".getBytes());
+
+    // Pending output is written before the connection is closed
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < TelnetConnection.OUTPUT_LIMIT * 2) {
+      sb.append("0123456789");
+    }
+    io.write(sb);
+    io.close();
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    for (int b = in.read();b != -1;b = in.read()) {
+      received.write(b);
+    }
+    assertEquals(sb + "\033[?2004l", received.toString());
+  }
+
+  @Test
+  public void testConcurrentSessions() throws Exception {
+    final int size = 200;
+    final CountDownLatch closed = new CountDownLatch(size);
+    final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+    handler = new TermIOHandler() {
+      public void handle(TermIO io, Principal user) {
+        try {
+          // Echo the chars until the connection is closed
+          while (true) {
+            int code = io.read();
+            CodeType type = io.decode(code);
+            if (type == CodeType.CLOSE) {
+              break;
+            } else if (type == CodeType.CHAR) {
+              io.write((char)code);
+              io.flush();
+            }
+          }
+        }
+        catch (IOException e) {
+          failure.set(e);
+        }
+        finally {
+          closed.countDown();
+        }
+      }
+    };
+    Socket[] sockets = new Socket[size];
+    for (int i = 0;i < size;i++) {
+      sockets[i] = connect();
+      sockets[i].getOutputStream().write('x');
+    }
+    for (Socket socket : sockets) {
+      InputStream in = socket.getInputStream();
+      assertRead(in, NEGOTIATION);
+      assertRead(in, "\033[?2004hx".getBytes());
+    }
+
+    // A single thread performs the network io of all the connections, the handlers block in the term reads
+    // so each session holds its own handler thread
+    int selectors = 0;
+    int sessions = 0;
+    for (Thread thread : getThreads()) {
+      if (thread.getName().equals("CRaSH telnet selector")) {
+        selectors++;
+      } else if (thread.getName().startsWith("CRaSH telnet session #")) {
+        sessions++;
+      }
+    }
+    assertEquals(1, selectors);
+    // The threads of the servers of the previous tests may not have terminated yet
+    assertTrue(sessions >= size);
+
+    //
+    for (Socket socket : sockets) {
+      socket.close();
+    }
+    assertTrue(closed.await(10, TimeUnit.SECONDS));
+    assertNull(failure.get());
+  }
+
+  @Test
+  public void testMaxConnections() throws Exception {
+    server.stop();
+    server = new TelnetServer(PORTS.getAndIncrement(), 1, handler);
+    server.start();
+    Socket first = connect();
+    assertRead(first.getInputStream(), NEGOTIATION);
+    takeIO();
+
+    // The second connection is refused while the first one is handled
+    Socket second = connect();
+    assertEquals(-1, second.getInputStream().read());
+
+    // Until the first one is closed
+    done.countDown();
+    first.close();
+    long timeout = System.currentTimeMillis() + 10000;
+    while (true) {
+      Socket third = connect();
+      int b = third.getInputStream().read();
+      if (b != -1) {
+        assertEquals(IAC, (byte)b);
+        break;
+      }
+      assertTrue(System.currentTimeMillis() < timeout);
+      Thread.sleep(10);
+    }
+  }
+
+  private static Thread[] getThreads() {
+    Thread[] threads = new Thread[Thread.activeCount() * 2];
+    return Arrays.copyOf(threads, Thread.enumerate(threads));
+  }
+}
@@ -27,14 +27,14 @@ import org.crsh.text.Color;
 import org.crsh.text.Decoration;
 import org.crsh.text.Style;
 import org.crsh.term.*;
-import org.crsh.term.spi.TermIO;
+import org.crsh.term.spi.ExtendedTermIO;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.SocketException;
 import java.util.HashMap;
 
-public class TelnetIO implements TermIO {
+public class TelnetIO implements ExtendedTermIO {
 
   /** . */
   private final Connection conn;
@@ -86,6 +86,10 @@ public class TelnetIO implements TermIO {
     return null;
   }
 
+  public String getConnector() {
+    return "telnet";
+  }
+
   public boolean takeAlternateBuffer() throws IOException {
     if (!useAlternate) {
       useAlternate = true;
@@ -198,6 +202,15 @@ public class TelnetIO implements TermIO {
     return true;
   }
 
+  public boolean moveLeft(int n) throws IOException {
+    termIO.moveLeft(n);
+    return true;
+  }
+
+  public void moveTo(int row, int col) throws IOException {
+    termIO.setCursor(row + 1, col + 1);
+  }
+
   public void cls() throws IOException {
     termIO.eraseScreen();
     termIO.setCursor(0, 0);
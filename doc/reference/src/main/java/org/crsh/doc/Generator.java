@@ -24,6 +24,7 @@ import org.crsh.command.BaseShellCommand;
 import org.crsh.command.CRaSHCommand;
 import org.crsh.command.DescriptionFormat;
 import org.crsh.command.ShellCommand;
+import org.crsh.lang.groovy.GenerationCommand;
 import org.crsh.plugin.PluginContext;
 import org.crsh.plugin.ResourceKind;
 import org.crsh.plugin.ServiceLoaderDiscovery;
@@ -61,6 +62,9 @@ public class Generator {
     StringBuilder buffer = new StringBuilder();
     for (String s : crash.getCommandNames()) {
       ShellCommand cmd = crash.getCommand(s);
+      if (cmd instanceof GenerationCommand) {
+        cmd = ((GenerationCommand)cmd).getCommand();
+      }
       if (cmd instanceof BaseShellCommand) {
         BaseShellCommand cc = (BaseShellCommand)cmd;
         CommandDescriptor<?> desc = cc.getDescriptor();
@@ -19,6 +19,7 @@
 package org.crsh.cron;
 
 import it.sauronsoftware.cron4j.SchedulingPattern;
+import org.crsh.shell.ConnectorShellFactory;
 import org.crsh.shell.Shell;
 import org.crsh.shell.ShellProcess;
 import org.crsh.shell.ShellProcessContext;
@@ -74,7 +75,12 @@ public class CRaSHTaskProcess {
   }
 
   void run() {
-    Shell sh = task.factory.create(null);
+    Shell sh;
+    if (task.factory instanceof ConnectorShellFactory) {
+      sh = ((ConnectorShellFactory)task.factory).create(null, ConnectorShellFactory.CRON);
+    } else {
+      sh = task.factory.create(null);
+    }
     ShellProcess sp = sh.createProcess(task.def.getLine());
     task.plugin.processes.add(this);
     task.plugin.history.add(this);
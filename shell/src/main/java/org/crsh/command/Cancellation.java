@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.command;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The cancellation of a command invocation, it is bound to the thread executing the invocation. The invocation
+ * is cancelled when the user interrupts it or when it exceeds its deadline or its cpu budget. Interrupting the
+ * thread is not enough for a command blocked in a call that ignores interruption, such command registers a listener
+ * that aborts the call, for instance with <code>Statement#cancel()</code>.
+ */
+public final class Cancellation {
+
+  /** . */
+  private static final Logger log = Logger.getLogger(Cancellation.class.getName());
+
+  /** . */
+  private static final ThreadLocal<Cancellation> current = new ThreadLocal<Cancellation>();
+
+  /** . */
+  private static final Closeable NOOP = new Closeable() {
+    public void close() {
+    }
+  };
+
+  /**
+   * Returns the cancellation of the invocation executed by the current thread.
+   *
+   * @return the current cancellation or null
+   */
+  public static Cancellation current() {
+    return current.get();
+  }
+
+  /**
+   * Register a listener on the cancellation of the current invocation, it does nothing when the current thread does
+   * not execute an invocation.
+   *
+   * @param listener the listener
+   * @return the registration to close once the listener is not needed anymore
+   * @throws NullPointerException if the listener is null
+   */
+  public static Closeable onCancel(Runnable listener) throws NullPointerException {
+    Cancellation cancellation = current.get();
+    return cancellation != null ? cancellation.addListener(listener) : NOOP;
+  }
+
+  /** . */
+  private final ArrayList<Runnable> listeners;
+
+  /** . */
+  private volatile boolean cancelled;
+
+  public Cancellation() {
+    this.listeners = new ArrayList<Runnable>();
+    this.cancelled = false;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Add a cancellation listener, the listener is invoked immediately when the invocation is already cancelled.
+   *
+   * @param listener the listener
+   * @return the registration to close once the listener is not needed anymore
+   * @throws NullPointerException if the listener is null
+   */
+  public Closeable addListener(final Runnable listener) throws NullPointerException {
+    if (listener == null) {
+      throw new NullPointerException("No null listener accepted");
+    }
+    synchronized (listeners) {
+      if (!cancelled) {
+        listeners.add(listener);
+        return new Closeable() {
+          public void close() {
+            synchronized (listeners) {
+              listeners.remove(listener);
+            }
+          }
+        };
+      }
+    }
+    fire(listener);
+    return NOOP;
+  }
+
+  /**
+   * Cancel the invocation and invoke the listeners, it can be called from any thread.
+   *
+   * @return true if the invocation was cancelled by this call
+   */
+  public boolean cancel() {
+    Runnable[] fired;
+    synchronized (listeners) {
+      if (cancelled) {
+        return false;
+      }
+      cancelled = true;
+      fired = listeners.toArray(new Runnable[listeners.size()]);
+      listeners.clear();
+    }
+    for (Runnable listener : fired) {
+      fire(listener);
+    }
+    return true;
+  }
+
+  /**
+   * Bind the cancellation to the current thread until {@link #unbind()} is called.
+   */
+  public void bind() {
+    current.set(this);
+  }
+
+  /**
+   * Unbind the cancellation from the current thread.
+   */
+  public void unbind() {
+    if (current.get() == this) {
+      current.remove();
+    }
+  }
+
+  private void fire(Runnable listener) {
+    try {
+      listener.run();
+    }
+    catch (Throwable t) {
+      log.log(Level.FINE, "Cancellation listener failed", t);
+    }
+  }
+}
@@ -28,14 +28,42 @@ import java.io.IOException;
 public class PipeLine extends CommandInvoker<Void, Chunk> {
 
   /** . */
-  private final CommandInvoker[] invokers;
+  private final CommandInvoker<?, ?>[] invokers;
+
+  /** The names of the stages. */
+  private final String[] names;
 
   /** . */
   private CommandContext<?> current;
 
-  public PipeLine(CommandInvoker[] invokers) {
+  /** The trace of the invocation or null when it is not traced. */
+  private PipeLineTrace trace;
+
+  public PipeLine(CommandInvoker<?, ?>[] invokers) {
+    this(invokers, null);
+  }
+
+  public PipeLine(CommandInvoker<?, ?>[] invokers, String[] names) {
     this.invokers = invokers;
+    this.names = names;
     this.current = null;
+    this.trace = null;
+  }
+
+  /**
+   * Trace the invocation of the pipeline, it must be called before the invocation.
+   *
+   * @return the trace
+   */
+  public PipeLineTrace trace() {
+    if (trace == null) {
+      String[] stages = new String[invokers.length];
+      for (int i = 0;i < invokers.length;i++) {
+        stages[i] = names != null && i < names.length ? names[i] : invokers[i].getClass().getSimpleName();
+      }
+      trace = new PipeLineTrace(stages);
+    }
+    return trace;
   }
 
   public Class<Void> getConsumedType() {
@@ -50,6 +78,16 @@ public class PipeLine extends CommandInvoker<Void, Chunk> {
     open(0, consumer);
   }
 
+  /**
+   * Open the stages from the index to the end of the pipeline. The element types of the stages are only known at
+   * runtime: the pipes adapt the elements according to the types returned by the invokers and the contexts, so the
+   * contexts are linked with raw types.
+   *
+   * @param index the index of the first stage to open
+   * @param last the context consuming the output of the pipeline
+   * @return the context consuming the input of the first stage
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
   private CommandContext open(final int index, final CommandContext last) {
     if (index < invokers.length) {
 
@@ -73,14 +111,28 @@ public class PipeLine extends CommandInvoker<Void, Chunk> {
 
       //
       PipeLineElement filterContext = new PipeLineElement(invoker);
-      filterContext.open(next);
+      CommandContext context = filterContext;
+      if (trace != null) {
+        PipeLineTrace.Stage stage = trace.getStage(index);
+        next = new TracingContext(next, trace, stage, false, trace.getRender());
+        context = new TracingContext(filterContext, trace, stage, true, stage);
+        trace.enter(stage, PipeLineTrace.OPEN);
+        try {
+          filterContext.open(next);
+        }
+        finally {
+          trace.exit();
+        }
+      } else {
+        filterContext.open(next);
+      }
 
       // Save current filter in field
       // so if anything wrong happens it will be closed
-      current = filterContext;
+      current = context;
 
       //
-      return filterContext;
+      return context;
     } else {
       current = last;
       return last;
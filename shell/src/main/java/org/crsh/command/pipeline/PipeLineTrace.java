@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.command.pipeline;
+
+import org.crsh.text.Decoration;
+import org.crsh.text.Style;
+import org.crsh.text.ui.Element;
+import org.crsh.text.ui.LabelElement;
+import org.crsh.text.ui.RowElement;
+import org.crsh.text.ui.TableElement;
+
+import java.util.ArrayList;
+
+/**
+ * The trace of a pipeline invocation: for each stage the elements it consumed and produced and the time spent in
+ * the stage itself. The stages are invoked by each other, the time of a stage does not include the time spent in the
+ * stages it provides elements to. The conversion and the rendering of the elements between the stages and to the
+ * output are accounted to a last stage.
+ */
+public class PipeLineTrace {
+
+  /** . */
+  static final int OPEN = 0, PROVIDE = 1, FLUSH = 2, CLOSE = 3;
+
+  /** A stage of the pipeline. */
+  public static class Stage {
+
+    /** . */
+    private final String name;
+
+    /** . */
+    long in;
+
+    /** . */
+    long out;
+
+    /** The time in nanoseconds spent in open, provide, flush and close. */
+    final long[] time;
+
+    private Stage(String name) {
+      this.name = name;
+      this.time = new long[4];
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getIn() {
+      return in;
+    }
+
+    public long getOut() {
+      return out;
+    }
+
+    public long getProvideTime() {
+      return time[PROVIDE];
+    }
+
+    public long getFlushTime() {
+      return time[FLUSH];
+    }
+
+    public long getTime() {
+      return time[OPEN] + time[PROVIDE] + time[FLUSH] + time[CLOSE];
+    }
+  }
+
+  /** . */
+  private final Stage[] stages;
+
+  /** . */
+  private final Stage render;
+
+  /** The stack of the active stages. */
+  private final ArrayList<Stage> active;
+
+  /** The kind of call of the active stages. */
+  private int[] kinds;
+
+  /** . */
+  private long last;
+
+  PipeLineTrace(String[] names) {
+    Stage[] stages = new Stage[names.length];
+    for (int i = 0;i < names.length;i++) {
+      stages[i] = new Stage(names[i]);
+    }
+    this.stages = stages;
+    this.render = new Stage("(render)");
+    this.active = new ArrayList<Stage>();
+    this.kinds = new int[8];
+  }
+
+  Stage getStage(int index) {
+    return stages[index];
+  }
+
+  Stage getRender() {
+    return render;
+  }
+
+  /**
+   * @return the stages of the pipeline followed by the rendering stage
+   */
+  public Stage[] getStages() {
+    Stage[] all = new Stage[stages.length + 1];
+    System.arraycopy(stages, 0, all, 0, stages.length);
+    all[stages.length] = render;
+    return all;
+  }
+
+  void enter(Stage stage, int kind) {
+    long now = System.nanoTime();
+    int size = active.size();
+    if (size > 0) {
+      active.get(size - 1).time[kinds[size - 1]] += now - last;
+    }
+    if (size == kinds.length) {
+      int[] tmp = new int[size * 2];
+      System.arraycopy(kinds, 0, tmp, 0, size);
+      kinds = tmp;
+    }
+    active.add(stage);
+    kinds[size] = kind;
+    last = now;
+  }
+
+  void exit() {
+    long now = System.nanoTime();
+    int size = active.size();
+    active.remove(size - 1).time[kinds[size - 1]] += now - last;
+    last = now;
+  }
+
+  /**
+   * @return the trace as a table
+   */
+  public Element toElement() {
+    long total = 0;
+    for (Stage stage : getStages()) {
+      total += stage.getTime();
+    }
+    TableElement table = new TableElement().rightCellPadding(1);
+    table.add(row(new RowElement(true).style(Style.style(Decoration.bold)), "STAGE", "IN", "OUT", "PROVIDE", "FLUSH", "TIME", "%"));
+    for (Stage stage : getStages()) {
+      table.add(row(new RowElement(),
+          stage.name,
+          Long.toString(stage.in),
+          Long.toString(stage.out),
+          millis(stage.getProvideTime()),
+          millis(stage.getFlushTime()),
+          millis(stage.getTime()),
+          total > 0 ? Long.toString(stage.getTime() * 100 / total) : "0"));
+    }
+    return table;
+  }
+
+  private static RowElement row(RowElement row, String... values) {
+    for (String value : values) {
+      row.add(new LabelElement(value));
+    }
+    return row;
+  }
+
+  private static String millis(long nanos) {
+    return String.format("%.3f", nanos / 1000000d);
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.command.pipeline;
+
+import org.crsh.command.CommandContext;
+import org.crsh.text.Chunk;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Traces the calls to a context of the pipeline: the elements are counted by a stage and the time is accounted
+ * to another stage.
+ */
+class TracingContext<C> implements CommandContext<C> {
+
+  /** . */
+  private final CommandContext<C> context;
+
+  /** . */
+  private final PipeLineTrace trace;
+
+  /** The stage counting the elements. */
+  private final PipeLineTrace.Stage counter;
+
+  /** Whether the elements are the input or the output of the counting stage, an output is an input of the timed stage. */
+  private final boolean input;
+
+  /** The stage the time is accounted to. */
+  private final PipeLineTrace.Stage stage;
+
+  TracingContext(CommandContext<C> context, PipeLineTrace trace, PipeLineTrace.Stage counter, boolean input, PipeLineTrace.Stage stage) {
+    this.context = context;
+    this.trace = trace;
+    this.counter = counter;
+    this.input = input;
+    this.stage = stage;
+  }
+
+  public boolean isPiped() {
+    return context.isPiped();
+  }
+
+  public boolean takeAlternateBuffer() throws IOException {
+    return context.takeAlternateBuffer();
+  }
+
+  public boolean releaseAlternateBuffer() throws IOException {
+    return context.releaseAlternateBuffer();
+  }
+
+  public String getProperty(String propertyName) {
+    return context.getProperty(propertyName);
+  }
+
+  public String readLine(String msg, boolean echo) {
+    return context.readLine(msg, echo);
+  }
+
+  public int getWidth() {
+    return context.getWidth();
+  }
+
+  public int getHeight() {
+    return context.getHeight();
+  }
+
+  public Map<String, Object> getSession() {
+    return context.getSession();
+  }
+
+  public Map<String, Object> getAttributes() {
+    return context.getAttributes();
+  }
+
+  public Class<C> getConsumedType() {
+    return context.getConsumedType();
+  }
+
+  public void provide(C element) throws IOException {
+    count();
+    trace.enter(stage, PipeLineTrace.PROVIDE);
+    try {
+      context.provide(element);
+    }
+    finally {
+      trace.exit();
+    }
+  }
+
+  public void write(Chunk chunk) throws IOException {
+    count();
+    trace.enter(stage, PipeLineTrace.PROVIDE);
+    try {
+      context.write(chunk);
+    }
+    finally {
+      trace.exit();
+    }
+  }
+
+  public void flush() throws IOException {
+    trace.enter(stage, PipeLineTrace.FLUSH);
+    try {
+      context.flush();
+    }
+    finally {
+      trace.exit();
+    }
+  }
+
+  public void close() throws IOException {
+    trace.enter(stage, PipeLineTrace.CLOSE);
+    try {
+      context.close();
+    }
+    finally {
+      trace.exit();
+    }
+  }
+
+  private void count() {
+    if (input) {
+      counter.in++;
+    } else {
+      counter.out++;
+      stage.in++;
+    }
+  }
+}
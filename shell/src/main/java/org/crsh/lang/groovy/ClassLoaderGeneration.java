@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.lang.groovy;
+
+import groovy.lang.GroovyClassLoader;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+
+import java.security.CodeSource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A generation of compiled classes sharing the same class loader. A generation is referenced by its
+ * {@link GroovyClassFactory} while it is the current one, by each class it defined until the class is
+ * replaced by a new version and by each invocation in progress of a command it defined. The generation
+ * is released when the last reference is gone, its loader caches are then cleared so the generation
+ * can be collected.
+ */
+public final class ClassLoaderGeneration {
+
+  /**
+   * Returns the generation of a class.
+   *
+   * @param clazz the class
+   * @return the generation or null if the class was not compiled by a generation
+   */
+  public static ClassLoaderGeneration get(Class<?> clazz) {
+    for (ClassLoader loader = clazz.getClassLoader();loader != null;loader = loader.getParent()) {
+      if (loader instanceof Loader) {
+        return ((Loader)loader).generation;
+      }
+    }
+    return null;
+  }
+
+  /** . */
+  final Loader loader;
+
+  /** . */
+  private final int id;
+
+  /** . */
+  private final AtomicInteger references;
+
+  ClassLoaderGeneration(int id, ClassLoader parent) {
+    this.id = id;
+    this.loader = new Loader(parent, this);
+    this.references = new AtomicInteger(1);
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public int getReferences() {
+    return references.get();
+  }
+
+  public boolean isReleased() {
+    return references.get() == 0;
+  }
+
+  /**
+   * Acquire a reference on this generation.
+   *
+   * @return false if the generation is already released
+   */
+  public boolean acquire() {
+    while (true) {
+      int current = references.get();
+      if (current == 0) {
+        return false;
+      } else if (references.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Release a reference on this generation.
+   *
+   * @throws IllegalStateException if the generation is already released
+   */
+  public void release() throws IllegalStateException {
+    while (true) {
+      int current = references.get();
+      if (current == 0) {
+        throw new IllegalStateException("Generation " + id + " already released");
+      } else if (references.compareAndSet(current, current - 1)) {
+        if (current == 1) {
+          loader.clearCache();
+        }
+        return;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ClassLoaderGeneration[id=" + id + ",references=" + references.get() + "]";
+  }
+
+  /**
+   * The loader of a generation, the configuration of each compilation is set by the factory.
+   */
+  static class Loader extends GroovyClassLoader {
+
+    /** . */
+    final ClassLoaderGeneration generation;
+
+    /** . */
+    CompilerConfiguration config;
+
+    Loader(ClassLoader parent, ClassLoaderGeneration generation) {
+      super(parent);
+
+      //
+      this.generation = generation;
+    }
+
+    @Override
+    protected CompilationUnit createCompilationUnit(CompilerConfiguration config, CodeSource source) {
+      return super.createCompilationUnit(this.config != null ? this.config : config, source);
+    }
+  }
+}
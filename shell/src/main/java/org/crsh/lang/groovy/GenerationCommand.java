@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.lang.groovy;
+
+import org.crsh.cli.impl.completion.CompletionMatch;
+import org.crsh.command.CommandContext;
+import org.crsh.command.CommandCreationException;
+import org.crsh.command.CommandInvoker;
+import org.crsh.command.DescriptionFormat;
+import org.crsh.command.RuntimeContext;
+import org.crsh.command.ShellCommand;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A command compiled by a {@link ClassLoaderGeneration}, its invocations reference the generation from the
+ * moment they are opened until they are closed.
+ */
+public class GenerationCommand implements ShellCommand {
+
+  /** . */
+  private final ShellCommand command;
+
+  /** . */
+  private final ClassLoaderGeneration generation;
+
+  GenerationCommand(ShellCommand command, ClassLoaderGeneration generation) {
+    this.command = command;
+    this.generation = generation;
+  }
+
+  /**
+   * @return the wrapped command
+   */
+  public ShellCommand getCommand() {
+    return command;
+  }
+
+  public ClassLoaderGeneration getGeneration() {
+    return generation;
+  }
+
+  public CompletionMatch complete(RuntimeContext context, String line) throws CommandCreationException {
+    return command.complete(context, line);
+  }
+
+  public String describe(String line, DescriptionFormat mode) throws CommandCreationException {
+    return command.describe(line, mode);
+  }
+
+  public CommandInvoker<?, ?> resolveInvoker(String line) throws CommandCreationException {
+    return wrap(command.resolveInvoker(line));
+  }
+
+  public CommandInvoker<?, ?> resolveInvoker(String name, Map<String, ?> options, List<?> args) throws CommandCreationException {
+    return wrap(command.resolveInvoker(name, options, args));
+  }
+
+  private <C, P> CommandInvoker<C, P> wrap(final CommandInvoker<C, P> invoker) {
+    return new CommandInvoker<C, P>() {
+
+      /** . */
+      private boolean acquired;
+
+      public Class<P> getProducedType() {
+        return invoker.getProducedType();
+      }
+
+      public Class<C> getConsumedType() {
+        return invoker.getConsumedType();
+      }
+
+      public void open(CommandContext<? super P> consumer) {
+        acquired = generation.acquire();
+        boolean opened = false;
+        try {
+          invoker.open(consumer);
+          opened = true;
+        }
+        finally {
+          if (!opened) {
+            release();
+          }
+        }
+      }
+
+      public void provide(C element) throws IOException {
+        invoker.provide(element);
+      }
+
+      public void flush() throws IOException {
+        invoker.flush();
+      }
+
+      public void close() throws IOException {
+        try {
+          invoker.close();
+        }
+        finally {
+          release();
+        }
+      }
+
+      private void release() {
+        if (acquired) {
+          acquired = false;
+          generation.release();
+        }
+      }
+    };
+  }
+}
@@ -18,7 +18,6 @@
  */
 package org.crsh.lang.groovy;
 
-import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyCodeSource;
 import groovy.lang.Script;
 import org.codehaus.groovy.control.CompilationFailedException;
@@ -27,7 +26,15 @@ import org.crsh.command.CommandCreationException;
 import org.crsh.util.ClassFactory;
 import org.crsh.shell.ErrorType;
 
-/** @author Julien Viet */
+import java.util.HashMap;
+
+/**
+ * Compiles the groovy classes, the classes compiled during the same refresh generation share the same class
+ * loader. Compiling again a class of the current generation means that the sources were refreshed and starts
+ * a new generation, see {@link ClassLoaderGeneration}.
+ *
+ * @author Julien Viet
+ */
 public class GroovyClassFactory<T> extends ClassFactory<T> {
 
   /** . */
@@ -36,36 +43,92 @@ public class GroovyClassFactory<T> extends ClassFactory<T> {
   /** . */
   private final Class<T> baseClass;
 
+  /** . */
+  private final Class<? extends Script> baseScriptClass;
+
+  /** . */
+  private final GroovyCompilation compilation;
+
   /** . */
   final CompilerConfiguration config;
 
+  /** The current generation. */
+  private ClassLoaderGeneration generation;
+
+  /** The generation of the current version of each class. */
+  private final HashMap<String, ClassLoaderGeneration> owners;
+
   public GroovyClassFactory(ClassLoader baseLoader, Class<T> baseClass, Class<? extends Script> baseScriptClass) {
-    CompilerConfiguration config = new CompilerConfiguration();
-    config.setRecompileGroovySource(true);
-    config.setScriptBaseClass(baseScriptClass.getName());
+    this(baseLoader, baseClass, baseScriptClass, GroovyCompilation.DEFAULT);
+  }
 
-    //
+  public GroovyClassFactory(ClassLoader baseLoader, Class<T> baseClass, Class<? extends Script> baseScriptClass, GroovyCompilation compilation) {
     this.baseLoader = baseLoader;
     this.baseClass = baseClass;
-    this.config = config;
+    this.baseScriptClass = baseScriptClass;
+    this.compilation = compilation;
+    this.config = createConfig();
+    this.generation = new ClassLoaderGeneration(0, baseLoader);
+    this.owners = new HashMap<String, ClassLoaderGeneration>();
+  }
+
+  /**
+   * @return the current generation
+   */
+  public synchronized ClassLoaderGeneration getGeneration() {
+    return generation;
+  }
+
+  private CompilerConfiguration createConfig() {
+    CompilerConfiguration config = new CompilerConfiguration();
+    config.setRecompileGroovySource(true);
+    config.setScriptBaseClass(baseScriptClass.getName());
+    return config;
   }
 
   @Override
-  public Class<? extends T> parse(String name, String source) throws CommandCreationException {
+  public synchronized Class<? extends T> parse(String name, String source) throws CommandCreationException {
+    ClassLoaderGeneration previous = owners.get(name);
+    if (previous == generation) {
+      generation.release();
+      generation = new ClassLoaderGeneration(generation.getId() + 1, baseLoader);
+    }
+
+    //
+    GroovyCompilation.Mode mode = compilation.getMode(name);
     Class<?> clazz;
     try {
+      CompilerConfiguration config = createConfig();
+      compilation.customize(name, config);
       GroovyCodeSource gcs = new GroovyCodeSource(source, name, "/groovy/shell");
-      GroovyClassLoader gcl = new GroovyClassLoader(baseLoader, config);
-      clazz = gcl.parseClass(gcs, false);
+      generation.loader.config = config;
+      try {
+        clazz = generation.loader.parseClass(gcs, false);
+      }
+      finally {
+        generation.loader.config = null;
+      }
+    }
+    catch (IllegalStateException e) {
+      throw new CommandCreationException(name, ErrorType.INTERNAL, "Could not compile command script " + name + ": " + e.getMessage(), e);
     }
     catch (NoClassDefFoundError e) {
       throw new CommandCreationException(name, ErrorType.INTERNAL, "Could not compile command script " + name, e);
     }
     catch (CompilationFailedException e) {
-      throw new CommandCreationException(name, ErrorType.INTERNAL, "Could not compile command script " + name, e);
+      if (mode != GroovyCompilation.Mode.DYNAMIC) {
+        throw new CommandCreationException(name, ErrorType.INTERNAL, "Could not compile command script " + name + " in " + mode + " mode: " + e.getMessage(), e);
+      } else {
+        throw new CommandCreationException(name, ErrorType.INTERNAL, "Could not compile command script " + name, e);
+      }
     }
 
     if (baseClass.isAssignableFrom(clazz)) {
+      generation.acquire();
+      owners.put(name, generation);
+      if (previous != null) {
+        previous.release();
+      }
       return clazz.asSubclass(baseClass);
     } else {
       throw new CommandCreationException(name, ErrorType.INTERNAL, "Parsed script " + clazz.getName() +
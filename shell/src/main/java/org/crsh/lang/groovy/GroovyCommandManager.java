@@ -44,11 +44,16 @@ import org.crsh.shell.impl.command.CommandManager;
 import org.crsh.lang.groovy.command.GroovyScript;
 import org.crsh.lang.groovy.command.GroovyScriptCommand;
 import org.crsh.plugin.PluginContext;
+import org.crsh.plugin.PropertyDescriptor;
 import org.crsh.plugin.ResourceKind;
 import org.crsh.shell.ErrorType;
 import org.crsh.util.TimestampedObject;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -65,12 +70,35 @@ public class GroovyCommandManager extends CRaSHPlugin<CommandManager> implements
   /** . */
   static final Set<String> EXT = Collections.singleton("groovy");
 
+  /** The compilation mode of the commands. */
+  public static final PropertyDescriptor<String> COMPILATION = PropertyDescriptor.create("groovy.compilation", "dynamic", "The compilation mode of the groovy commands: dynamic, type_checked or static, for instance dynamic,thread=static");
+
+  /** . */
+  public static final PropertyDescriptor<Boolean> INDY = new PropertyDescriptor<Boolean>(Boolean.class, "groovy.indy", false, "Compile the groovy commands with invokedynamic call sites") {
+    @Override
+    protected Boolean doParse(String s) throws Exception {
+      return Boolean.parseBoolean(s.trim());
+    }
+  };
+
+  /** . */
+  public static final PropertyDescriptor<String> IMPORTS = PropertyDescriptor.create("groovy.imports", (String)null, "The default imports of the groovy commands, for instance java.util.concurrent.*,java.lang.management.ManagementFactory");
+
+  /** The max number of compiled REPL scripts. */
+  public static final PropertyDescriptor<Integer> REPL_CACHE_SIZE = PropertyDescriptor.create("groovy.repl.cache_size", 256, "The max number of compiled groovy REPL scripts kept in the cache");
+
   /** . */
   private AbstractClassCache<GroovyScript> scriptCache;
 
   /** . */
   private GroovyClassFactory<Object> objectGroovyClassFactory;
 
+  /** . */
+  private ScriptCache replCache;
+
+  /** . */
+  private ObjectName replCacheName;
+
   public GroovyCommandManager() {
   }
 
@@ -83,13 +111,64 @@ public class GroovyCommandManager extends CRaSHPlugin<CommandManager> implements
     return EXT;
   }
 
+  @Override
+  protected Iterable<PropertyDescriptor<?>> createConfigurationCapabilities() {
+    return Arrays.<PropertyDescriptor<?>>asList(COMPILATION, INDY, IMPORTS, REPL_CACHE_SIZE);
+  }
+
   @Override
   public void init() {
     PluginContext context = getContext();
 
     //
-    this.objectGroovyClassFactory = new GroovyClassFactory<Object>(context.getLoader(), Object.class, GroovyScriptCommand.class);
+    GroovyCompilation compilation;
+    try {
+      Boolean indy = context.getProperty(INDY);
+      compilation = GroovyCompilation.create(context.getProperty(COMPILATION), indy != null && indy, context.getProperty(IMPORTS));
+    }
+    catch (IllegalArgumentException e) {
+      log.log(Level.SEVERE, "Invalid groovy compilation configuration, the commands will be compiled dynamically", e);
+      compilation = GroovyCompilation.DEFAULT;
+    }
+
+    //
+    this.objectGroovyClassFactory = new GroovyClassFactory<Object>(context.getLoader(), Object.class, GroovyScriptCommand.class, compilation);
     this.scriptCache = new ClassCache<GroovyScript>(context, new GroovyClassFactory<GroovyScript>(context.getLoader(), GroovyScript.class, GroovyScript.class), ResourceKind.LIFECYCLE);
+
+    //
+    Integer size = context.getProperty(REPL_CACHE_SIZE);
+    this.replCache = new ScriptCache(context.getLoader(), size != null && size > 0 ? size : REPL_CACHE_SIZE.getDefaultValue());
+    try {
+      ObjectName name = ObjectName.getInstance("org.crsh:type=ScriptCache,name=groovy");
+      ManagementFactory.getPlatformMBeanServer().registerMBean(replCache, name);
+      this.replCacheName = name;
+    }
+    catch (InstanceAlreadyExistsException e) {
+      log.log(Level.FINE, "Groovy script cache already registered by another shell");
+    }
+    catch (Exception e) {
+      log.log(Level.FINE, "Could not register the groovy script cache", e);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (replCacheName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(replCacheName);
+      }
+      catch (Exception e) {
+        log.log(Level.FINE, "Could not unregister " + replCacheName, e);
+      }
+      replCacheName = null;
+    }
+  }
+
+  /**
+   * @return the cache of the scripts compiled by the groovy REPL
+   */
+  public ScriptCache getREPLCache() {
+    return replCache;
   }
 
   public String doCallBack(HashMap<String, Object> session, String name, String defaultValue) {
@@ -100,7 +179,6 @@ public class GroovyCommandManager extends CRaSHPlugin<CommandManager> implements
     try {
       GroovyScript login = getLifeCycle(session, "login");
       if (login != null) {
-        login.setBinding(new Binding(session));
         login.run();
       }
     }
@@ -113,7 +191,6 @@ public class GroovyCommandManager extends CRaSHPlugin<CommandManager> implements
     try {
       GroovyScript logout = getLifeCycle(session, "logout");
       if (logout != null) {
-        logout.setBinding(new Binding(session));
         logout.run();
       }
     }
@@ -145,8 +222,8 @@ public class GroovyCommandManager extends CRaSHPlugin<CommandManager> implements
 
   private String eval(HashMap<String, Object> session, String name, String def) {
     try {
-      GroovyShell shell = getGroovyShell(session);
-      Object ret = shell.getContext().getVariable(name);
+      // The lifecycle variables are read from the session directly, the groovy shell is only created by the REPL
+      Object ret = session.get(name);
       if (ret instanceof Closure) {
         log.log(Level.FINEST, "Invoking " + name + " closure");
         Closure c = (Closure)ret;
@@ -167,9 +244,7 @@ public class GroovyCommandManager extends CRaSHPlugin<CommandManager> implements
     TimestampedObject<Class<? extends GroovyScript>> ref = scriptCache.getClass(name);
     if (ref != null) {
       Class<? extends GroovyScript> scriptClass = ref.getObject();
-      GroovyScript script = (GroovyScript)InvokerHelper.createScript(scriptClass, new Binding(session));
-      script.setBinding(new Binding(session));
-      return script;
+      return (GroovyScript)InvokerHelper.createScript(scriptClass, new Binding(session));
     } else {
       return null;
     }
@@ -248,6 +323,10 @@ public class GroovyCommandManager extends CRaSHPlugin<CommandManager> implements
           else {
             throw new CommandCreationException(name, ErrorType.INTERNAL, "Could not create command " + name + " instance");
           }
+          ClassLoaderGeneration generation = ClassLoaderGeneration.get(clazz);
+          if (generation != null) {
+            command = new GenerationCommand(command, generation);
+          }
         }
         return command;
       }
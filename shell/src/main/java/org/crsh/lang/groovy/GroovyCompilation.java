@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.lang.groovy;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The compilation settings of the groovy commands: the compilation mode of the commands, the invokedynamic
+ * call sites and the default imports. The mode is configured with a default value for all the commands and
+ * the values of specific commands, for instance <code>dynamic,thread=static,sort=type_checked</code>. A script can
+ * also choose its own mode with the <code>@CompileStatic</code>, <code>@TypeChecked</code> or
+ * <code>@CompileDynamic</code> annotations.
+ *
+ * <p>The compilation customizers appeared in groovy 1.8 and the compilation annotations in groovy 2.0, they
+ * are looked up by reflection so that the class works with older groovy versions as long as the features
+ * requiring them are not configured.</p>
+ */
+public final class GroovyCompilation {
+
+  /** . */
+  private static final Logger log = Logger.getLogger(GroovyCompilation.class.getName());
+
+  /** . */
+  private static final String COMPILATION_CUSTOMIZER = "org.codehaus.groovy.control.customizers.CompilationCustomizer";
+
+  /** . */
+  private static final String AST_TRANSFORMATION_CUSTOMIZER = "org.codehaus.groovy.control.customizers.ASTTransformationCustomizer";
+
+  /** . */
+  private static final String IMPORT_CUSTOMIZER = "org.codehaus.groovy.control.customizers.ImportCustomizer";
+
+  /** The default compilation. */
+  public static final GroovyCompilation DEFAULT = new GroovyCompilation(
+      Mode.DYNAMIC,
+      Collections.<String, Mode>emptyMap(),
+      false,
+      Collections.<String>emptyList());
+
+  /**
+   * The compilation mode of a command.
+   */
+  public enum Mode {
+
+    DYNAMIC(null),
+
+    TYPE_CHECKED("groovy.transform.TypeChecked"),
+
+    STATIC("groovy.transform.CompileStatic");
+
+    /** . */
+    final String annotation;
+
+    Mode(String annotation) {
+      this.annotation = annotation;
+    }
+
+    public static Mode parse(String s) throws IllegalArgumentException {
+      try {
+        return valueOf(s.trim().toUpperCase());
+      }
+      catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Invalid groovy compilation mode " + s.trim());
+      }
+    }
+
+    @Override
+    public String toString() {
+      return name().toLowerCase();
+    }
+  }
+
+  /**
+   * Create a compilation.
+   *
+   * @param modes the compilation modes, for instance <code>dynamic,thread=static</code>
+   * @param indy true when the invokedynamic call sites are enabled
+   * @param imports the comma separated list of default imports, a star import ends with <code>.*</code>
+   * @return the compilation
+   * @throws IllegalArgumentException if a value is not valid
+   */
+  public static GroovyCompilation create(String modes, boolean indy, String imports) throws IllegalArgumentException {
+    Mode defaultMode = Mode.DYNAMIC;
+    HashMap<String, Mode> values = new HashMap<String, Mode>();
+    if (modes != null) {
+      for (String entry : modes.split(",")) {
+        entry = entry.trim();
+        if (entry.length() > 0) {
+          int pos = entry.indexOf('=');
+          if (pos == -1) {
+            defaultMode = Mode.parse(entry);
+          } else {
+            values.put(entry.substring(0, pos).trim(), Mode.parse(entry.substring(pos + 1)));
+          }
+        }
+      }
+    }
+    ArrayList<String> list = new ArrayList<String>();
+    if (imports != null) {
+      for (String entry : imports.split(",")) {
+        entry = entry.trim();
+        if (entry.length() > 0) {
+          list.add(entry);
+        }
+      }
+    }
+    return new GroovyCompilation(defaultMode, values, indy, list);
+  }
+
+  /** . */
+  private final Mode defaultMode;
+
+  /** . */
+  private final Map<String, Mode> modes;
+
+  /** . */
+  private final boolean indy;
+
+  /** . */
+  private final List<String> imports;
+
+  private GroovyCompilation(Mode defaultMode, Map<String, Mode> modes, boolean indy, List<String> imports) {
+    this.defaultMode = defaultMode;
+    this.modes = Collections.unmodifiableMap(modes);
+    this.indy = indy;
+    this.imports = Collections.unmodifiableList(imports);
+  }
+
+  /**
+   * Returns the compilation mode of a command.
+   *
+   * @param command the command name
+   * @return the mode
+   */
+  public Mode getMode(String command) {
+    Mode mode = modes.get(command);
+    return mode != null ? mode : defaultMode;
+  }
+
+  public boolean isIndy() {
+    return indy;
+  }
+
+  public List<String> getImports() {
+    return imports;
+  }
+
+  /**
+   * Customize the configuration used to compile a command.
+   *
+   * @param command the command name
+   * @param config the configuration to customize
+   * @throws IllegalStateException if the mode of the command is not supported by the groovy runtime
+   */
+  public void customize(String command, CompilerConfiguration config) throws IllegalStateException {
+    Mode mode = getMode(command);
+    if (mode.annotation != null) {
+      Class<? extends Annotation> annotation;
+      try {
+        annotation = GroovyCompilation.class.getClassLoader().loadClass(mode.annotation).asSubclass(Annotation.class);
+      }
+      catch (ClassNotFoundException e) {
+        throw new IllegalStateException("The " + mode + " compilation mode requires groovy 2.0 or later");
+      }
+      try {
+        Class<?> type = loadClass(AST_TRANSFORMATION_CUSTOMIZER);
+        addCustomizer(config, type.getConstructor(Class.class).newInstance(annotation));
+      }
+      catch (ClassNotFoundException e) {
+        throw new IllegalStateException("The " + mode + " compilation mode requires groovy 2.0 or later");
+      }
+      catch (Exception e) {
+        throw new IllegalStateException("Could not configure the " + mode + " compilation mode", e);
+      }
+    }
+    if (indy) {
+      if (isIndySupported()) {
+        // The optimization options exist since groovy 1.8 and invokedynamic requires groovy 2.0
+        try {
+          @SuppressWarnings("unchecked")
+          Map<String, Boolean> options = (Map<String, Boolean>)CompilerConfiguration.class.getMethod("getOptimizationOptions").invoke(config);
+          options.put("indy", Boolean.TRUE);
+        }
+        catch (Exception e) {
+          throw new IllegalStateException("Could not enable invokedynamic", e);
+        }
+      } else {
+        log.log(Level.FINE, "Invokedynamic is not supported by the groovy runtime, " + command + " will use call site caching");
+      }
+    }
+    if (imports.size() > 0) {
+      try {
+        Class<?> type = loadClass(IMPORT_CUSTOMIZER);
+        Object customizer = type.newInstance();
+        Method addStarImports = type.getMethod("addStarImports", String[].class);
+        Method addImports = type.getMethod("addImports", String[].class);
+        for (String i : imports) {
+          if (i.endsWith(".*")) {
+            addStarImports.invoke(customizer, (Object)new String[]{i.substring(0, i.length() - 2)});
+          } else {
+            addImports.invoke(customizer, (Object)new String[]{i});
+          }
+        }
+        addCustomizer(config, customizer);
+      }
+      catch (ClassNotFoundException e) {
+        throw new IllegalStateException("The default imports require groovy 1.8 or later");
+      }
+      catch (Exception e) {
+        throw new IllegalStateException("Could not configure the default imports", e);
+      }
+    }
+  }
+
+  private static Class<?> loadClass(String name) throws ClassNotFoundException {
+    return GroovyCompilation.class.getClassLoader().loadClass(name);
+  }
+
+  /**
+   * Invoke <code>CompilerConfiguration#addCompilationCustomizers</code>, it exists since groovy 1.8.
+   *
+   * @param config the configuration
+   * @param customizer the customizer
+   * @throws Exception any exception
+   */
+  private static void addCustomizer(CompilerConfiguration config, Object customizer) throws Exception {
+    Class<?> type = loadClass(COMPILATION_CUSTOMIZER);
+    Object customizers = Array.newInstance(type, 1);
+    Array.set(customizers, 0, customizer);
+    Method method = CompilerConfiguration.class.getMethod("addCompilationCustomizers", customizers.getClass());
+    try {
+      method.invoke(config, customizers);
+    }
+    catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof Exception ? (Exception)cause : e;
+    }
+  }
+
+  private static boolean isIndySupported() {
+    ClassLoader loader = GroovyCompilation.class.getClassLoader();
+    for (String name : new String[]{"org.codehaus.groovy.vmplugin.v8.IndyInterface", "org.codehaus.groovy.vmplugin.v7.IndyInterface"}) {
+      try {
+        loader.loadClass(name);
+        return true;
+      }
+      catch (ClassNotFoundException ignore) {
+      }
+    }
+    return false;
+  }
+}
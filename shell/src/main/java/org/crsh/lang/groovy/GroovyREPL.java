@@ -19,6 +19,7 @@
 package org.crsh.lang.groovy;
 
 import groovy.lang.GroovyShell;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.crsh.cli.impl.Delimiter;
 import org.crsh.cli.impl.completion.CompletionMatch;
 import org.crsh.cli.spi.Completion;
@@ -27,9 +28,11 @@ import org.crsh.command.CommandInvoker;
 import org.crsh.command.InvocationContextImpl;
 import org.crsh.lang.groovy.closure.PipeLineInvoker;
 import org.crsh.plugin.CRaSHPlugin;
+import org.crsh.plugin.PluginContext;
 import org.crsh.repl.EvalResponse;
 import org.crsh.repl.REPL;
 import org.crsh.repl.REPLSession;
+import org.crsh.shell.impl.command.CommandManager;
 
 import java.io.IOException;
 
@@ -68,9 +71,15 @@ public class GroovyREPL extends CRaSHPlugin<REPL> implements  REPL {
         GroovyShell shell = GroovyCommandManager.getGroovyShell(session.getContext(), session);
         ShellBinding binding = (ShellBinding)shell.getContext();
         binding.setCurrent(foo);
+        ScriptCache cache = getCache(session.getContext());
         Object o;
         try {
-          o = shell.evaluate(request);
+          if (cache != null) {
+            Class<?> clazz = cache.getScriptClass(request, shell.getClassLoader());
+            o = InvokerHelper.createScript(clazz, binding).run();
+          } else {
+            o = shell.evaluate(request);
+          }
         }
         finally {
           binding.setCurrent(null);
@@ -102,6 +111,15 @@ public class GroovyREPL extends CRaSHPlugin<REPL> implements  REPL {
     return new EvalResponse.Invoke(invoker);
   }
 
+  private static ScriptCache getCache(PluginContext context) {
+    for (CommandManager manager : context.getPlugins(CommandManager.class)) {
+      if (manager instanceof GroovyCommandManager) {
+        return ((GroovyCommandManager)manager).getREPLCache();
+      }
+    }
+    return null;
+  }
+
   public CompletionMatch complete(REPLSession session, String prefix) {
     return new CompletionMatch(Delimiter.EMPTY, Completion.create());
   }
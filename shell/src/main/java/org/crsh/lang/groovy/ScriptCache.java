@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.lang.groovy;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of the classes compiled by the groovy REPL, the classes are keyed by their
+ * source text and shared by all the sessions, each evaluation creates a script instance bound to the session.
+ * A groovy class loader retains every class it compiles, so each entry is compiled by its own short lived class
+ * loader: an evicted class and its loader can be unloaded once its last script instance is gone.
+ *
+ * The classes declared by a script must remain visible to the next evaluations of the same session, such a script
+ * is compiled by the session class loader instead and is not cached, once a session has declared classes its
+ * scripts are always compiled by the session class loader as they may refer to them.
+ */
+public class ScriptCache implements ScriptCacheMBean {
+
+  /** . */
+  private final ClassLoader baseLoader;
+
+  /** . */
+  private final CompilerConfiguration config;
+
+  /** . */
+  private final int maxSize;
+
+  /** . */
+  private final LinkedHashMap<String, Class<?>> classes;
+
+  /** . */
+  private long hits;
+
+  /** . */
+  private long compilations;
+
+  /** . */
+  private long evictions;
+
+  public ScriptCache(ClassLoader baseLoader, int maxSize) throws IllegalArgumentException {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("Invalid cache size " + maxSize);
+    }
+
+    //
+    this.baseLoader = baseLoader;
+    this.config = new CompilerConfiguration();
+    this.maxSize = maxSize;
+    this.classes = new LinkedHashMap<String, Class<?>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+        if (size() > ScriptCache.this.maxSize) {
+          evictions++;
+          return true;
+        } else {
+          return false;
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the class of a source text, the source is compiled when the class is not in the cache.
+   *
+   * @param source the script source
+   * @return the class
+   * @throws CompilationFailedException when the source cannot be compiled
+   */
+  public Class<?> getScriptClass(String source) throws CompilationFailedException {
+    return getScriptClass(source, null);
+  }
+
+  /**
+   * Returns the class of a source text evaluated by a session, the classes declared by the session scripts
+   * are compiled by the session loader.
+   *
+   * @param source the script source
+   * @param sessionLoader the session loader
+   * @return the class
+   * @throws CompilationFailedException when the source cannot be compiled
+   */
+  public Class<?> getScriptClass(String source, GroovyClassLoader sessionLoader) throws CompilationFailedException {
+    if (sessionLoader != null && sessionLoader.getLoadedClasses().length > 0) {
+      return compile(source, sessionLoader);
+    }
+
+    //
+    String name;
+    synchronized (this) {
+      Class<?> clazz = classes.get(source);
+      if (clazz != null) {
+        hits++;
+        return clazz;
+      }
+      name = "Script" + ++compilations + ".groovy";
+    }
+
+    // Compile outside of the lock as it may take a while
+    GroovyCodeSource gcs = new GroovyCodeSource(source, name, "/groovy/shell");
+    GroovyClassLoader loader = new GroovyClassLoader(baseLoader, config);
+    Class<?> clazz = loader.parseClass(gcs, false);
+
+    //
+    if (sessionLoader != null && declaresClasses(loader, clazz)) {
+      return compile(source, sessionLoader);
+    }
+
+    //
+    synchronized (this) {
+      Class<?> existing = classes.get(source);
+      if (existing != null) {
+        return existing;
+      }
+      classes.put(source, clazz);
+      return clazz;
+    }
+  }
+
+  private Class<?> compile(String source, GroovyClassLoader sessionLoader) {
+    String name;
+    synchronized (this) {
+      name = "Script" + ++compilations + ".groovy";
+    }
+    return sessionLoader.parseClass(new GroovyCodeSource(source, name, "/groovy/shell"), false);
+  }
+
+  private static boolean declaresClasses(GroovyClassLoader loader, Class<?> scriptClass) {
+    if (!Script.class.isAssignableFrom(scriptClass)) {
+      // A source declaring only classes
+      return true;
+    }
+    String prefix = scriptClass.getName() + "$";
+    for (Class<?> loaded : loader.getLoadedClasses()) {
+      if (loaded != scriptClass && !loaded.getName().startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public synchronized int getSize() {
+    return classes.size();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getCompilations() {
+    return compilations;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  public synchronized void clear() {
+    classes.clear();
+  }
+}
@@ -61,6 +61,10 @@ public class PipeLineFactory {
     }
   }
 
+  public String getName() {
+    return name;
+  }
+
   public String getLine() {
     return line;
   }
@@ -70,19 +74,21 @@ public class PipeLineFactory {
   }
 
   public CommandInvoker<Void, Chunk> create(REPLSession session) throws CommandCreationException {
-    LinkedList<CommandInvoker> pipes = new LinkedList<CommandInvoker>();
+    LinkedList<CommandInvoker<?, ?>> pipes = new LinkedList<CommandInvoker<?, ?>>();
+    LinkedList<String> names = new LinkedList<String>();
     for (PipeLineFactory current = this;current != null;current = current.next) {
+      names.add(current.line.trim());
       ShellCommand command = session.getCommand(current.name);
       if (command == null) {
         throw new CommandCreationException(current.name, ErrorType.EVALUATION, "Unknown command");
       }
-      CommandInvoker commandInvoker = command.resolveInvoker(current.rest);
+      CommandInvoker<?, ?> commandInvoker = command.resolveInvoker(current.rest);
       if (commandInvoker == null) {
         throw new CommandCreationException(current.name, ErrorType.EVALUATION, "Command " + current.rest + " cannot not be invoked");
       }
       pipes.add(commandInvoker);
     }
-    return new PipeLine(pipes.toArray(new CommandInvoker[pipes.size()]));
+    return new PipeLine(pipes.toArray(new CommandInvoker<?, ?>[pipes.size()]), names.toArray(new String[names.size()]));
   }
 
   public PipeLineFactory getLast() {
@@ -111,6 +111,16 @@ public abstract class CRaSHPlugin<P> {
     return configurationCapabilities;
   }
 
+  /**
+   * Returns the plugin types this plugin looks up during its initialization, the plugins implementing
+   * these types are initialized before this plugin when the context starts.
+   *
+   * @return the dependencies
+   */
+  public Iterable<Class<?>> getDependencies() {
+    return Collections.emptyList();
+  }
+
   /**
    * Returns the implementation.
    *
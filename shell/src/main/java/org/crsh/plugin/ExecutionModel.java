@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.plugin;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The execution model of the shared executor, selected by the {@link PropertyDescriptor#EXECUTOR} property.
+ * The work stealing and virtual models rely on classes of recent JDKs, they are looked up by reflection and
+ * fall back to the fixed model when they are not available. These two models create their own threads, the
+ * threads are configured after a thread of the provided factory: its name, daemon status, priority and context
+ * class loader.
+ */
+public enum ExecutionModel {
+
+  /** A fixed pool of platform threads with an unbounded queue. */
+  FIXED() {
+    @Override
+    ExecutorService doCreate(int poolSize, int queueSize, ThreadFactory factory) {
+      return new ThreadPoolExecutor(
+          poolSize,
+          poolSize,
+          0L,
+          TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          factory);
+    }
+  },
+
+  /** A pool of platform threads with a bounded queue, the tasks are rejected when the queue is full. */
+  BOUNDED() {
+    @Override
+    ExecutorService doCreate(int poolSize, int queueSize, ThreadFactory factory) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+          poolSize,
+          poolSize,
+          60L,
+          TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(queueSize),
+          factory,
+          new ThreadPoolExecutor.AbortPolicy());
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  },
+
+  /** A work stealing fork join pool. */
+  WORK_STEALING() {
+    @Override
+    ExecutorService doCreate(int poolSize, int queueSize, ThreadFactory factory) throws Exception {
+      Class<?> type = Class.forName("java.util.concurrent.ForkJoinPool");
+      Class<?> factoryType = Class.forName("java.util.concurrent.ForkJoinPool$ForkJoinWorkerThreadFactory");
+      final Object defaultFactory = type.getField("defaultForkJoinWorkerThreadFactory").get(null);
+      final Method newThread = factoryType.getMethod("newThread", type);
+      final ThreadFactory template = factory;
+      Object workerFactory = Proxy.newProxyInstance(ExecutionModel.class.getClassLoader(), new Class<?>[]{factoryType}, new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          if (method.equals(newThread)) {
+            Thread worker = (Thread)newThread.invoke(defaultFactory, args);
+            configure(worker, template, true);
+            return worker;
+          } else {
+            return method.invoke(this, args);
+          }
+        }
+      });
+      Constructor<?> ctor = type.getConstructor(int.class, factoryType, Thread.UncaughtExceptionHandler.class, boolean.class);
+      return (ExecutorService)ctor.newInstance(poolSize, workerFactory, null, false);
+    }
+  },
+
+  /** A new virtual thread per task. */
+  VIRTUAL() {
+    @Override
+    ExecutorService doCreate(int poolSize, int queueSize, ThreadFactory factory) throws Exception {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      final ThreadFactory virtual = (ThreadFactory)Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+      final ThreadFactory template = factory;
+      Method method = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      return (ExecutorService)method.invoke(null, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = virtual.newThread(r);
+          configure(thread, template, false);
+          return thread;
+        }
+      });
+    }
+  };
+
+  /** . */
+  private static final Logger log = Logger.getLogger(ExecutionModel.class.getName());
+
+  /** . */
+  private static final Runnable NOOP = new Runnable() {
+    public void run() {
+    }
+  };
+
+  /**
+   * Create an executor for this model.
+   *
+   * @param poolSize the pool size
+   * @param queueSize the queue size
+   * @param factory the thread factory
+   * @return the executor
+   */
+  public ExecutorService create(int poolSize, int queueSize, ThreadFactory factory) {
+    try {
+      return doCreate(poolSize, queueSize, factory);
+    }
+    catch (Exception e) {
+      log.log(Level.WARNING, "Execution model " + name().toLowerCase() + " is not available, will use fixed instead");
+      log.log(Level.FINE, "Could not create " + name().toLowerCase() + " executor", e);
+      return FIXED.create(poolSize, queueSize, factory);
+    }
+  }
+
+  /**
+   * Configure a thread created by an executor after a thread of the factory.
+   *
+   * @param thread the thread to configure
+   * @param factory the factory
+   * @param platform false for a virtual thread, its daemon status and priority cannot be changed
+   */
+  private static void configure(Thread thread, ThreadFactory factory, boolean platform) {
+    Thread template = factory.newThread(NOOP);
+    thread.setName(template.getName());
+    thread.setContextClassLoader(template.getContextClassLoader());
+    if (platform) {
+      thread.setDaemon(template.isDaemon());
+      thread.setPriority(template.getPriority());
+    }
+  }
+
+  abstract ExecutorService doCreate(int poolSize, int queueSize, ThreadFactory factory) throws Exception;
+
+}
@@ -18,6 +18,8 @@
  */
 package org.crsh.plugin;
 
+import org.crsh.util.MeasuredExecutorService;
+import org.crsh.util.TimerWheel;
 import org.crsh.util.Utils;
 import org.crsh.vfs.FS;
 import org.crsh.vfs.Resource;
@@ -25,11 +27,12 @@ import org.crsh.vfs.Resource;
 import java.io.InputStream;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -53,8 +56,11 @@ public final class PluginContext {
   /** . */
   private final Map<String, Object> attributes;
 
-  /** The shared executor. */
-  private final ExecutorService executor;
+  /** The shared executor, created from the configuration when it was not provided. */
+  private volatile MeasuredExecutorService executor;
+
+  /** The timer for the command deadlines, its thread is started on demand. */
+  private final TimerWheel timer;
 
   /** . */
   private boolean started;
@@ -62,6 +68,9 @@ public final class PluginContext {
   /** . */
   private ScheduledFuture scannerFuture;
 
+  /** Guards the scanner future, the refresh is rescheduled by property listeners that must not take the context lock. */
+  private final Object refreshLock = new Object();
+
   /** . */
   private final ResourceManager resourceManager;
 
@@ -69,16 +78,9 @@ public final class PluginContext {
   private final PropertyManager propertyManager;
 
   /**
-   * Create a new plugin context with preconfigured executor and scanner, this is equivalent to invoking:
-   *
-   * <code><pre>new PluginContext(
-   *    Executors.newFixedThreadPool(20),
-   *    new ScheduledThreadPoolExecutor(1),
-   *    discovery,
-   *    attributes,
-   *    cmdFS,
-   *    confFS,
-   *    loader);</pre></code>
+   * Create a new plugin context with a preconfigured scanner, the shared executor is created when the context
+   * starts according to the {@link PropertyDescriptor#EXECUTOR}, {@link PropertyDescriptor#EXECUTOR_POOL_SIZE}
+   * and {@link PropertyDescriptor#EXECUTOR_QUEUE_SIZE} properties, by default it is a fixed pool of 20 threads.
    *
    * @param discovery the plugin discovery
    * @param cmdFS the command file system
@@ -94,13 +96,14 @@ public final class PluginContext {
       FS confFS,
       ClassLoader loader) throws NullPointerException {
     this(
-        Executors.newFixedThreadPool(20),
+        null,
         new ScheduledThreadPoolExecutor(1),
         discovery,
         attributes,
         cmdFS,
         confFS,
-        loader);
+        loader,
+        false);
   }
 
   /**
@@ -123,7 +126,19 @@ public final class PluginContext {
     FS cmdFS,
     FS confFS,
     ClassLoader loader) throws NullPointerException {
-    if (executor == null) {
+    this(executor, scanner, discovery, attributes, cmdFS, confFS, loader, true);
+  }
+
+  private PluginContext(
+    ExecutorService executor,
+    ScheduledExecutorService scanner,
+    PluginDiscovery discovery,
+    Map<String, Object> attributes,
+    FS cmdFS,
+    FS confFS,
+    ClassLoader loader,
+    boolean provided) throws NullPointerException {
+    if (provided && executor == null) {
       throw new NullPointerException("No null executor accepted");
     }
     if (scanner == null) {
@@ -170,8 +185,9 @@ public final class PluginContext {
     this.version = version;
     this.started = false;
     this.manager = new PluginManager(this, discovery);
-    this.executor = executor;
+    this.executor = executor != null ? new MeasuredExecutorService("shared", executor) : null;
     this.scanner = scanner;
+    this.timer = new TimerWheel(100, TimeUnit.MILLISECONDS, 512);
     this.resourceManager = new ResourceManager(cmdFS, confFS);
     this.propertyManager = new PropertyManager();
   }
@@ -184,10 +200,43 @@ public final class PluginContext {
     return attributes;
   }
 
+  /**
+   * Returns the shared executor. When it was not provided it is created from the configuration by the start of
+   * the context or by the first call to this method when it happens before.
+   *
+   * @return the shared executor
+   */
   public ExecutorService getExecutor() {
+    return getExecutorMetrics();
+  }
+
+  /**
+   * Returns the shared executor with its counters, see {@link #getExecutor()}.
+   *
+   * @return the measured shared executor
+   */
+  public MeasuredExecutorService getExecutorMetrics() {
+    MeasuredExecutorService executor = this.executor;
+    if (executor == null) {
+      synchronized (this) {
+        executor = this.executor;
+        if (executor == null) {
+          this.executor = executor = createExecutor();
+        }
+      }
+    }
     return executor;
   }
 
+  /**
+   * Returns the timer of the context.
+   *
+   * @return the timer
+   */
+  public TimerWheel getTimer() {
+    return timer;
+  }
+
   /**
    * @return the property manager
    */
@@ -245,6 +294,28 @@ public final class PluginContext {
     propertyManager.parseProperty(desc, value);
   }
 
+  /**
+   * Add a listener notified when a context property changes.
+   *
+   * @param desc the property descriptor
+   * @param listener the listener
+   * @throws NullPointerException if any argument is null
+   */
+  public void addPropertyListener(PropertyDescriptor<?> desc, PropertyListener listener) throws NullPointerException {
+    propertyManager.addListener(desc, listener);
+  }
+
+  /**
+   * Remove a context property listener.
+   *
+   * @param desc the property descriptor
+   * @param listener the listener
+   * @throws NullPointerException if any argument is null
+   */
+  public void removePropertyListener(PropertyDescriptor<?> desc, PropertyListener listener) throws NullPointerException {
+    propertyManager.removeListener(desc, listener);
+  }
+
   /**
    * Load a resource from the context.
    *
@@ -324,20 +395,21 @@ public final class PluginContext {
   synchronized void start() {
     if (!started) {
 
-      // Start refresh
-      Integer refreshRate = getProperty(PropertyDescriptor.VFS_REFRESH_PERIOD);
-      TimeUnit timeUnit = getProperty(PropertyDescriptor.VFS_REFRESH_UNIT);
-      if (refreshRate != null && refreshRate > 0) {
-        TimeUnit tu = timeUnit != null ? timeUnit : TimeUnit.SECONDS;
-        scannerFuture = scanner.scheduleWithFixedDelay(new Runnable() {
-          public void run() {
-            refresh();
-          }
-        }, 0, refreshRate, tu);
-      }
+      // Start refresh, it is rescheduled when the refresh properties change
+      scheduleRefresh();
+      PropertyListener listener = new PropertyListener() {
+        public void propertyChanged(PropertyDescriptor<?> descriptor, Property<?> property) {
+          scheduleRefresh();
+        }
+      };
+      addPropertyListener(PropertyDescriptor.VFS_REFRESH_PERIOD, listener);
+      addPropertyListener(PropertyDescriptor.VFS_REFRESH_UNIT, listener);
+
+      // Create the executor from the configuration before the plugins use it
+      getExecutorMetrics();
 
       // Init plugins
-      manager.getPlugins(Object.class);
+      manager.start();
 
       //
       started = true;
@@ -346,6 +418,51 @@ public final class PluginContext {
     }
   }
 
+  private void scheduleRefresh() {
+    synchronized (refreshLock) {
+      if (scannerFuture != null) {
+        scannerFuture.cancel(false);
+        scannerFuture = null;
+      }
+      if (!scanner.isShutdown()) {
+        Integer refreshRate = getProperty(PropertyDescriptor.VFS_REFRESH_PERIOD);
+        TimeUnit timeUnit = getProperty(PropertyDescriptor.VFS_REFRESH_UNIT);
+        if (refreshRate != null && refreshRate > 0) {
+          TimeUnit tu = timeUnit != null ? timeUnit : TimeUnit.SECONDS;
+          scannerFuture = scanner.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+              refresh();
+            }
+          }, 0, refreshRate, tu);
+        }
+      }
+    }
+  }
+
+  private MeasuredExecutorService createExecutor() {
+    ExecutionModel model = getProperty(PropertyDescriptor.EXECUTOR);
+    Integer poolSize = getProperty(PropertyDescriptor.EXECUTOR_POOL_SIZE);
+    Integer queueSize = getProperty(PropertyDescriptor.EXECUTOR_QUEUE_SIZE);
+    if (model == null) {
+      model = PropertyDescriptor.EXECUTOR.defaultValue;
+    }
+    if (poolSize == null || poolSize < 1) {
+      poolSize = PropertyDescriptor.EXECUTOR_POOL_SIZE.defaultValue;
+    }
+    if (queueSize == null || queueSize < 1) {
+      queueSize = PropertyDescriptor.EXECUTOR_QUEUE_SIZE.defaultValue;
+    }
+    ThreadFactory factory = new ThreadFactory() {
+      final AtomicInteger count = new AtomicInteger();
+      public Thread newThread(Runnable r) {
+        // Non daemon threads like the threads of Executors.newFixedThreadPool
+        return new Thread(r, "CRaSH shared #" + count.incrementAndGet());
+      }
+    };
+    log.log(Level.FINE, "Creating " + model.name().toLowerCase() + " executor with pool size " + poolSize + " and queue size " + queueSize);
+    return new MeasuredExecutorService(model.name().toLowerCase(), model.create(poolSize, queueSize, factory));
+  }
+
   synchronized void stop() {
 
     //
@@ -355,15 +472,20 @@ public final class PluginContext {
       manager.shutdown();
 
       // Shutdown scanner
-      if (scannerFuture != null) {
-        scannerFuture.cancel(true);
+      synchronized (refreshLock) {
+        if (scannerFuture != null) {
+          scannerFuture.cancel(true);
+        }
+        scanner.shutdownNow();
       }
 
-      //
-      scanner.shutdownNow();
-
       // Shutdown executor
-      executor.shutdownNow();
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+
+      // Stop timer
+      timer.stop();
     } else {
       log.log(Level.WARNING, "Attempt to stop when stopped");
     }
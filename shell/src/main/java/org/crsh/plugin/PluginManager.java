@@ -16,17 +16,35 @@
  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
-
 package org.crsh.plugin;
 
 import org.crsh.util.Utils;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Manages the plugins of a context. The plugins are initialized lazily when they are looked up until the
+ * context starts, the start initializes the remaining plugins in parallel: a plugin is initialized after the
+ * plugins implementing its {@link CRaSHPlugin#getDependencies() dependencies}. Once started, the lookups use an
+ * immutable index of the initialized plugins by type.
+ *
+ * <p>A plugin is initialized outside of any lock, a thread looking up a plugin initialized by another thread waits
+ * for it. The manager records the thread initializing each plugin and the plugin each thread waits for, a wait
+ * that would close a cycle between threads fails immediately instead of deadlocking.</p>
+ */
 class PluginManager {
 
+  /** The delay in seconds after which the plugins still initializing are logged. */
+  private static final int STUCK_DELAY = 30;
+
   /** . */
   private final Logger log = Logger.getLogger(PluginManager.class.getName());
 
@@ -34,67 +52,66 @@ class PluginManager {
   private final PluginContext context;
 
   /** . */
-  private List<CRaSHPlugin<?>> plugins;
+  private volatile List<CRaSHPlugin<?>> plugins;
 
   /** . */
   private PluginDiscovery discovery;
 
+  /** The initialized plugins by the types they implement, built by {@link #start()}. */
+  private volatile Map<Class<?>, List<?>> index;
+
+  /** Guards the plugin status changes, the owners and the waiters. */
+  private final Object lock = new Object();
+
+  /** The thread initializing a plugin. */
+  private final IdentityHashMap<CRaSHPlugin<?>, Thread> owners = new IdentityHashMap<CRaSHPlugin<?>, Thread>();
+
+  /** The plugin a thread waits for. */
+  private final HashMap<Thread, CRaSHPlugin<?>> waiters = new HashMap<Thread, CRaSHPlugin<?>>();
+
   PluginManager(PluginContext context, PluginDiscovery discovery) {
     this.context = context;
     this.plugins = null;
     this.discovery = discovery;
+    this.index = null;
   }
 
-  synchronized Iterable<CRaSHPlugin<?>> getPlugins() {
+  Iterable<CRaSHPlugin<?>> getPlugins() {
+    List<CRaSHPlugin<?>> plugins = this.plugins;
     if (plugins == null) {
-      List<CRaSHPlugin<?>> plugins = Utils.list(discovery.getPlugins());
-      for (CRaSHPlugin<?> plugin : plugins) {
-        plugin.context = context;
-        plugin.status = CRaSHPlugin.CONSTRUCTED;
+      synchronized (this) {
+        plugins = this.plugins;
+        if (plugins == null) {
+          plugins = Utils.list(discovery.getPlugins());
+          for (CRaSHPlugin<?> plugin : plugins) {
+            plugin.context = context;
+            plugin.status = CRaSHPlugin.CONSTRUCTED;
+          }
+          this.plugins = plugins;
+        }
       }
-      this.plugins = plugins;
     }
     return plugins;
   }
 
-  synchronized <T> Iterable<T> getPlugins(Class<T> wantedType) {
+  @SuppressWarnings("unchecked")
+  <T> Iterable<T> getPlugins(Class<T> wantedType) {
 
     //
-    Iterable<CRaSHPlugin<?>> plugins = getPlugins();
+    Map<Class<?>, List<?>> index = this.index;
+    if (index != null) {
+      List<?> found = index.get(wantedType);
+      return found != null ? (List<T>)found : Collections.<T>emptyList();
+    }
 
     //
     List<T> tmp = Collections.emptyList();
 
     //
-    for (CRaSHPlugin<?> plugin : plugins) {
+    for (CRaSHPlugin<?> plugin : getPlugins()) {
       Class<?> pluginType = plugin.getType();
       if (wantedType.isAssignableFrom(pluginType)) {
-
-        switch (plugin.status) {
-          default:
-          case CRaSHPlugin.FAILED:
-          case CRaSHPlugin.INITIALIZED:
-            // Do nothing
-            break;
-          case CRaSHPlugin.CONSTRUCTED:
-            int status = CRaSHPlugin.FAILED;
-            try {
-              plugin.status = CRaSHPlugin.INITIALIZING;
-              plugin.init();
-              log.log(Level.INFO, "Initialized plugin " + plugin);
-              status = CRaSHPlugin.INITIALIZED;
-            }
-            catch (Exception e) {
-              log.log(Level.SEVERE, "Could not initialize plugin " + plugin, e);
-            } finally {
-              plugin.status = status;
-            }
-            break;
-          case CRaSHPlugin.INITIALIZING:
-            throw new RuntimeException("Circular dependency");
-        }
-
-        //
+        init(plugin);
         if (plugin.status == CRaSHPlugin.INITIALIZED) {
           if (tmp.isEmpty()) {
             tmp = new ArrayList<T>();
@@ -109,7 +126,256 @@ class PluginManager {
     return tmp;
   }
 
+  /**
+   * Initialize a plugin, a plugin being initialized by another thread is waited for.
+   *
+   * @param plugin the plugin
+   * @throws RuntimeException when the plugin is being initialized by the current thread or when waiting for it
+   *         would deadlock
+   */
+  private void init(CRaSHPlugin<?> plugin) throws RuntimeException {
+    Thread current = Thread.currentThread();
+    synchronized (lock) {
+      while (plugin.status == CRaSHPlugin.INITIALIZING) {
+        Thread owner = owners.get(plugin);
+        if (owner == current) {
+          throw new RuntimeException("Circular dependency on plugin " + plugin);
+        }
+        for (Thread thread = owner;thread != null;) {
+          CRaSHPlugin<?> awaited = waiters.get(thread);
+          thread = awaited != null ? owners.get(awaited) : null;
+          if (thread == current) {
+            throw new RuntimeException("Circular dependency on plugin " + plugin + " initialized by " + owner.getName());
+          }
+        }
+        waiters.put(current, plugin);
+        try {
+          lock.wait();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException("Interrupted while waiting for plugin " + plugin, e);
+        }
+        finally {
+          waiters.remove(current);
+        }
+      }
+      if (plugin.status != CRaSHPlugin.CONSTRUCTED) {
+        return;
+      }
+      plugin.status = CRaSHPlugin.INITIALIZING;
+      owners.put(plugin, current);
+    }
+    int status = CRaSHPlugin.FAILED;
+    try {
+      plugin.init();
+      log.log(Level.INFO, "Initialized plugin " + plugin);
+      status = CRaSHPlugin.INITIALIZED;
+    }
+    catch (Exception e) {
+      log.log(Level.SEVERE, "Could not initialize plugin " + plugin, e);
+    }
+    finally {
+      synchronized (lock) {
+        plugin.status = status;
+        owners.remove(plugin);
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Initialize the plugins and build the lookup index.
+   */
+  void start() {
+    List<CRaSHPlugin<?>> plugins = (List<CRaSHPlugin<?>>)getPlugins();
+
+    // Build the dependency graph
+    final IdentityHashMap<CRaSHPlugin<?>, List<CRaSHPlugin<?>>> dependents = new IdentityHashMap<CRaSHPlugin<?>, List<CRaSHPlugin<?>>>();
+    final IdentityHashMap<CRaSHPlugin<?>, AtomicInteger> pending = new IdentityHashMap<CRaSHPlugin<?>, AtomicInteger>();
+    for (CRaSHPlugin<?> plugin : plugins) {
+      dependents.put(plugin, new ArrayList<CRaSHPlugin<?>>());
+      pending.put(plugin, new AtomicInteger());
+    }
+    for (CRaSHPlugin<?> plugin : plugins) {
+      for (CRaSHPlugin<?> dependency : plugins) {
+        if (dependency != plugin) {
+          for (Class<?> type : plugin.getDependencies()) {
+            if (type.isAssignableFrom(dependency.getType())) {
+              dependents.get(dependency).add(plugin);
+              pending.get(plugin).incrementAndGet();
+              break;
+            }
+          }
+        }
+      }
+    }
+
+    // Find the plugins involved in a dependency cycle, they will be initialized after the others
+    List<CRaSHPlugin<?>> sorted = sort(plugins, dependents);
+    List<CRaSHPlugin<?>> cyclic = new ArrayList<CRaSHPlugin<?>>();
+    for (CRaSHPlugin<?> plugin : plugins) {
+      if (!sorted.contains(plugin)) {
+        log.log(Level.WARNING, "Plugin " + plugin + " is part of a dependency cycle");
+        cyclic.add(plugin);
+      }
+    }
+
+    // Initialize in parallel the plugins whose dependencies are initialized
+    if (sorted.size() > 0) {
+      final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+      int size = Math.min(sorted.size(), Math.max(2, Runtime.getRuntime().availableProcessors()));
+      final ExecutorService executor = Executors.newFixedThreadPool(size, new ThreadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "CRaSH plugin init #" + count.incrementAndGet());
+          thread.setDaemon(true);
+          thread.setContextClassLoader(loader);
+          return thread;
+        }
+      });
+      final CountDownLatch latch = new CountDownLatch(sorted.size());
+      class Task implements Runnable {
+        final CRaSHPlugin<?> plugin;
+        Task(CRaSHPlugin<?> plugin) {
+          this.plugin = plugin;
+        }
+        public void run() {
+          try {
+            init(plugin);
+          }
+          catch (RuntimeException e) {
+            log.log(Level.SEVERE, "Could not initialize plugin " + plugin, e);
+          }
+          finally {
+            for (CRaSHPlugin<?> dependent : dependents.get(plugin)) {
+              if (pending.get(dependent).decrementAndGet() == 0) {
+                executor.execute(new Task(dependent));
+              }
+            }
+            latch.countDown();
+          }
+        }
+      }
+      try {
+        for (CRaSHPlugin<?> plugin : sorted) {
+          if (pending.get(plugin).get() == 0) {
+            executor.execute(new Task(plugin));
+          }
+        }
+        while (!latch.await(STUCK_DELAY, TimeUnit.SECONDS)) {
+          List<String> stuck = new ArrayList<String>();
+          synchronized (lock) {
+            for (Map.Entry<CRaSHPlugin<?>, Thread> entry : owners.entrySet()) {
+              stuck.add(entry.getKey() + " (" + entry.getValue().getName() + ")");
+            }
+          }
+          log.log(Level.WARNING, "Still initializing the plugins " + stuck + " after " + STUCK_DELAY + " seconds");
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.log(Level.WARNING, "Interrupted while initializing the plugins");
+      }
+      finally {
+        executor.shutdown();
+      }
+    }
+
+    //
+    for (CRaSHPlugin<?> plugin : cyclic) {
+      try {
+        init(plugin);
+      }
+      catch (RuntimeException e) {
+        log.log(Level.SEVERE, "Could not initialize plugin " + plugin, e);
+      }
+    }
+
+    // Build the index
+    HashMap<Class<?>, List<Object>> tmp = new HashMap<Class<?>, List<Object>>();
+    for (CRaSHPlugin<?> plugin : plugins) {
+      if (plugin.status == CRaSHPlugin.INITIALIZED) {
+        for (Class<?> type : getTypes(plugin.getType())) {
+          List<Object> list = tmp.get(type);
+          if (list == null) {
+            tmp.put(type, list = new ArrayList<Object>());
+          }
+          list.add(plugin);
+        }
+      }
+    }
+    HashMap<Class<?>, List<?>> index = new HashMap<Class<?>, List<?>>();
+    for (Map.Entry<Class<?>, List<Object>> entry : tmp.entrySet()) {
+      index.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+    }
+    this.index = index;
+  }
+
+  /**
+   * Sort the plugins so that a plugin is after its dependencies, the plugins part of a dependency cycle
+   * are omitted.
+   *
+   * @param plugins the plugins
+   * @param dependents the dependents of each plugin
+   * @return the sorted plugins
+   */
+  private static List<CRaSHPlugin<?>> sort(List<CRaSHPlugin<?>> plugins, Map<CRaSHPlugin<?>, List<CRaSHPlugin<?>>> dependents) {
+    IdentityHashMap<CRaSHPlugin<?>, Integer> counts = new IdentityHashMap<CRaSHPlugin<?>, Integer>();
+    for (CRaSHPlugin<?> plugin : plugins) {
+      counts.put(plugin, 0);
+    }
+    for (CRaSHPlugin<?> plugin : plugins) {
+      for (CRaSHPlugin<?> dependent : dependents.get(plugin)) {
+        counts.put(dependent, counts.get(dependent) + 1);
+      }
+    }
+    LinkedList<CRaSHPlugin<?>> ready = new LinkedList<CRaSHPlugin<?>>();
+    for (CRaSHPlugin<?> plugin : plugins) {
+      if (counts.get(plugin) == 0) {
+        ready.add(plugin);
+      }
+    }
+    ArrayList<CRaSHPlugin<?>> sorted = new ArrayList<CRaSHPlugin<?>>();
+    while (ready.size() > 0) {
+      CRaSHPlugin<?> plugin = ready.removeFirst();
+      sorted.add(plugin);
+      for (CRaSHPlugin<?> dependent : dependents.get(plugin)) {
+        int count = counts.get(dependent) - 1;
+        counts.put(dependent, count);
+        if (count == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+    return sorted;
+  }
+
+  /**
+   * Returns all the types a class can be looked up with: the class, its super classes and its interfaces.
+   *
+   * @param type the class
+   * @return the types
+   */
+  private static Set<Class<?>> getTypes(Class<?> type) {
+    LinkedHashSet<Class<?>> types = new LinkedHashSet<Class<?>>();
+    LinkedList<Class<?>> queue = new LinkedList<Class<?>>();
+    queue.add(type);
+    while (queue.size() > 0) {
+      Class<?> current = queue.removeFirst();
+      if (types.add(current)) {
+        if (current.getSuperclass() != null) {
+          queue.add(current.getSuperclass());
+        }
+        queue.addAll(Arrays.asList(current.getInterfaces()));
+      }
+    }
+    types.add(Object.class);
+    return types;
+  }
+
   void shutdown() {
+    List<CRaSHPlugin<?>> plugins = this.plugins;
     if (plugins != null) {
       for (CRaSHPlugin<?> plugin : plugins) {
         plugin.destroy();
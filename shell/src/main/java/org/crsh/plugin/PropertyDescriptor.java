@@ -22,6 +22,7 @@ package org.crsh.plugin;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 public abstract class PropertyDescriptor<T> {
@@ -59,6 +60,33 @@ public abstract class PropertyDescriptor<T> {
   /** . */
   private static final Map<String, PropertyDescriptor<?>> INTERNAL_ALL = new HashMap<String, PropertyDescriptor<?>>();
 
+  /** The slot index of each property name. */
+  private static final ConcurrentHashMap<String, Integer> INDEXES = new ConcurrentHashMap<String, Integer>();
+
+  /**
+   * Returns the slot index of a property name, the descriptors with the same name share the same index.
+   *
+   * @param name the property name
+   * @return the index or -1 if no descriptor has this name
+   */
+  static int indexOf(String name) {
+    Integer index = INDEXES.get(name);
+    return index != null ? index : -1;
+  }
+
+  private static int index(String name) {
+    Integer index = INDEXES.get(name);
+    if (index == null) {
+      synchronized (INDEXES) {
+        index = INDEXES.get(name);
+        if (index == null) {
+          INDEXES.put(name, index = INDEXES.size());
+        }
+      }
+    }
+    return index;
+  }
+
   /** . */
   public static final Map<String, PropertyDescriptor<?>> ALL = Collections.unmodifiableMap(INTERNAL_ALL);
 
@@ -73,6 +101,26 @@ public abstract class PropertyDescriptor<T> {
   /** . */
   public static final PropertyDescriptor<Integer> VFS_REFRESH_PERIOD = PropertyDescriptor.create("vfs.refresh_period", (Integer)null, "The refresh rate period");
 
+  /** . */
+  public static final PropertyDescriptor<ExecutionModel> EXECUTOR = new PropertyDescriptor<ExecutionModel>(ExecutionModel.class, "executor", ExecutionModel.FIXED, "The execution model of the shared executor: fixed, bounded, work_stealing or virtual") {
+    @Override
+    protected ExecutionModel doParse(String s) throws Exception {
+      return ExecutionModel.valueOf(s.trim().toUpperCase());
+    }
+  };
+
+  /** . */
+  public static final PropertyDescriptor<Integer> EXECUTOR_POOL_SIZE = PropertyDescriptor.create("executor.pool_size", 20, "The number of threads of the shared executor");
+
+  /** . */
+  public static final PropertyDescriptor<Integer> EXECUTOR_QUEUE_SIZE = PropertyDescriptor.create("executor.queue_size", 100, "The max number of queued tasks of the bounded shared executor");
+
+  /** . */
+  public static final PropertyDescriptor<Integer> REMOTING_BATCH_SIZE = PropertyDescriptor.create("remoting.batch_size", 8192, "The size above which the output aggregated by the attach mode remoting is sent");
+
+  /** . */
+  public static final PropertyDescriptor<Integer> REMOTING_COMPRESSION_THRESHOLD = PropertyDescriptor.create("remoting.compression_threshold", (Integer)null, "The size above which the aggregated remoting output is compressed, no compression is done when it is not set");
+
   /** . */
   public final Class<T> type;
 
@@ -88,6 +136,9 @@ public abstract class PropertyDescriptor<T> {
   /** . */
   public final boolean secret;
 
+  /** The slot index of the property in the property manager. */
+  final int index;
+
   /**
    * Create a new property descriptor.
    *
@@ -127,6 +178,7 @@ public abstract class PropertyDescriptor<T> {
     this.defaultValue = defaultValue;
     this.description = description;
     this.secret = secret;
+    this.index = index(name);
 
     //
     INTERNAL_ALL.put(name, this);
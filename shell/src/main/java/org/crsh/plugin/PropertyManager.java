@@ -19,22 +19,84 @@
 
 package org.crsh.plugin;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-/** @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a> */
+/**
+ * The properties are stored in a copy on write array indexed by the slot index of their descriptor, a read is
+ * a volatile array load and a write replaces the array. The writes and the notification of the listeners are
+ * serialized so that the listeners are notified in the order of the writes, a listener must not wait for another
+ * thread setting a property.
+ *
+ * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
+ */
 class PropertyManager {
 
   /** . */
   private static final Logger log = Logger.getLogger(PropertyManager.class.getName());
 
   /** . */
-  private final Map<String, Property<?>> properties;
+  private volatile Property<?>[] properties;
+
+  /** The listeners by property index. */
+  private final ConcurrentHashMap<Integer, List<PropertyListener>> listeners;
 
   PropertyManager() {
-    this.properties = new HashMap<String, Property<?>>();
+    this.properties = new Property<?>[0];
+    this.listeners = new ConcurrentHashMap<Integer, List<PropertyListener>>();
+  }
+
+  /**
+   * Add a listener notified when a property changes.
+   *
+   * @param desc the property descriptor
+   * @param listener the listener
+   * @throws NullPointerException if any argument is null
+   */
+  public void addListener(PropertyDescriptor<?> desc, PropertyListener listener) throws NullPointerException {
+    if (desc == null) {
+      throw new NullPointerException("No null descriptor allowed");
+    }
+    if (listener == null) {
+      throw new NullPointerException("No null listener allowed");
+    }
+    List<PropertyListener> list = listeners.get(desc.index);
+    if (list == null) {
+      List<PropertyListener> created = new CopyOnWriteArrayList<PropertyListener>();
+      list = listeners.putIfAbsent(desc.index, created);
+      if (list == null) {
+        list = created;
+      }
+    }
+    list.add(listener);
+  }
+
+  /**
+   * Remove a property listener.
+   *
+   * @param desc the property descriptor
+   * @param listener the listener
+   * @throws NullPointerException if any argument is null
+   */
+  public void removeListener(PropertyDescriptor<?> desc, PropertyListener listener) throws NullPointerException {
+    if (desc == null) {
+      throw new NullPointerException("No null descriptor allowed");
+    }
+    if (listener == null) {
+      throw new NullPointerException("No null listener allowed");
+    }
+    List<PropertyListener> list = listeners.get(desc.index);
+    if (list != null) {
+      list.remove(listener);
+    }
+  }
+
+  private Property<?> get(int index) {
+    Property<?>[] properties = this.properties;
+    return index >= 0 && index < properties.length ? properties[index] : null;
   }
 
   /**
@@ -49,7 +111,14 @@ class PropertyManager {
     if (desc == null) {
       throw new NullPointerException();
     }
-    return getProperty(desc.getName(), desc.getType());
+    Property<?> property = get(desc.index);
+    if (property != null && desc.type.equals(property.getDescriptor().type)) {
+      // The property has the descriptor type
+      @SuppressWarnings("unchecked")
+      Property<T> typed = (Property<T>)property;
+      return typed;
+    }
+    return null;
   }
 
   /**
@@ -68,11 +137,14 @@ class PropertyManager {
     if (type == null) {
       throw new NullPointerException("No null property type accepted");
     }
-    Property<?> property = properties.get(propertyName);
+    Property<?> property = get(PropertyDescriptor.indexOf(propertyName));
     if (property != null) {
       PropertyDescriptor<?> descriptor = property.getDescriptor();
       if (type.equals(descriptor.getType())) {
-        return (Property<T>)property;
+        // The property has the requested type
+        @SuppressWarnings("unchecked")
+        Property<T> typed = (Property<T>)property;
+        return typed;
       }
     }
     return null;
@@ -90,7 +162,11 @@ class PropertyManager {
     if (desc == null) {
       throw new NullPointerException();
     }
-    return resolvePropertyValue(desc.getName(), desc.getType());
+    Property<?> property = get(desc.index);
+    if (property != null && desc.type.isAssignableFrom(property.getDescriptor().type)) {
+      return desc.type.cast(property.getValue());
+    }
+    return null;
   }
 
   /**
@@ -125,10 +201,7 @@ class PropertyManager {
    * @throws NullPointerException if the descriptor argument is null
    */
   public <T> Property<? extends T> resolveProperty(PropertyDescriptor<T> desc) throws NullPointerException {
-    if (desc == null) {
-      throw new NullPointerException();
-    }
-    return getProperty(desc.getName(), desc.getType());
+    return getProperty(desc);
   }
 
   /**
@@ -147,11 +220,14 @@ class PropertyManager {
     if (type == null) {
       throw new NullPointerException("No null property type accepted");
     }
-    Property<?> property = properties.get(propertyName);
+    Property<?> property = get(PropertyDescriptor.indexOf(propertyName));
     if (property != null) {
       PropertyDescriptor<?> descriptor = property.getDescriptor();
       if (type.isAssignableFrom(descriptor.getType())) {
-        return (Property<? extends T>)property;
+        // The property type is a subtype of the requested type
+        @SuppressWarnings("unchecked")
+        Property<? extends T> typed = (Property<? extends T>)property;
+        return typed;
       }
     }
     return null;
@@ -171,11 +247,11 @@ class PropertyManager {
     }
     if (value == null) {
       log.log(Level.FINE, "Removing property " + desc.name);
-      properties.remove(desc.getName());
+      put(desc, null);
     } else {
       Property<T> property = new Property<T>(desc, value);
       log.log(Level.FINE, "Setting property " + desc.name + " to value " + property.getValue());
-      properties.put(desc.getName(), property);
+      put(desc, property);
     }
   }
 
@@ -197,7 +273,34 @@ class PropertyManager {
     } else {
       Property<T> property = desc.toProperty(value);
       log.log(Level.FINE, "Setting property " + desc.name + " to value " + property.getValue());
-      properties.put(desc.getName(), property);
+      put(desc, property);
+    }
+  }
+
+  private synchronized void put(PropertyDescriptor<?> desc, Property<?> property) {
+    Property<?>[] properties = this.properties;
+    Property<?> previous = desc.index < properties.length ? properties[desc.index] : null;
+    if (previous == null && property == null) {
+      return;
+    }
+    Property<?>[] copy = new Property<?>[Math.max(properties.length, desc.index + 1)];
+    System.arraycopy(properties, 0, copy, 0, properties.length);
+    copy[desc.index] = property;
+    this.properties = copy;
+
+    // Notify the listeners when the value has changed, before the next write
+    if (previous == null || property == null || !previous.getValue().equals(property.getValue())) {
+      List<PropertyListener> list = listeners.get(desc.index);
+      if (list != null) {
+        for (PropertyListener listener : list) {
+          try {
+            listener.propertyChanged(desc, property);
+          }
+          catch (Exception e) {
+            log.log(Level.WARNING, "Property listener " + listener + " failed for " + desc.name, e);
+          }
+        }
+      }
     }
   }
 }
@@ -24,13 +24,14 @@ import org.crsh.shell.ShellProcessContext;
 import org.crsh.shell.ShellResponse;
 import org.crsh.text.Chunk;
 import org.crsh.term.TermEvent;
+import org.crsh.text.RunConsumer;
 import org.crsh.text.Text;
 import org.crsh.util.Safe;
 
 import java.io.IOException;
 import java.util.logging.Level;
 
-class ProcessContext implements ShellProcessContext, Runnable {
+class ProcessContext implements ShellProcessContext, RunConsumer, Runnable {
 
   /** . */
   final Processor processor;
@@ -83,8 +84,8 @@ class ProcessContext implements ShellProcessContext, Runnable {
           case CANCELLING:
             return null;
           case PROCESSING:
-            if (processor.queue.size() > 0) {
-              TermEvent event = processor.queue.removeFirst();
+            TermEvent event = processor.queue.poll();
+            if (event != null) {
               if (event instanceof TermEvent.ReadLine) {
                 return ((TermEvent.ReadLine)event).getLine().toString();
               }
@@ -127,6 +128,14 @@ class ProcessContext implements ShellProcessContext, Runnable {
     processor.term.write(element);
   }
 
+  public void provide(CharSequence text, int start, int end) throws IOException {
+    if (processor.term instanceof RunConsumer) {
+      ((RunConsumer)processor.term).provide(text, start, end);
+    } else {
+      processor.term.write(Text.create(text, start, end));
+    }
+  }
+
   public void flush() throws IOException {
     processor.term.flush();
   }
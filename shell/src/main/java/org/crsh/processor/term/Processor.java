@@ -35,8 +35,10 @@ import org.crsh.util.Strings;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -78,10 +80,10 @@ public final class Processor implements Runnable, Consumer<Chunk> {
   /** . */
   final Shell shell;
 
-  /** . */
-  final LinkedList<TermEvent> queue;
+  /** The pending events, the term reader appends to it without taking the lock. */
+  final ConcurrentLinkedQueue<TermEvent> queue;
 
-  /** . */
+  /** Guards the status transitions. */
   final Object lock;
 
   /** . */
@@ -99,7 +101,7 @@ public final class Processor implements Runnable, Consumer<Chunk> {
   public Processor(Term term, Shell shell) {
     this.term = term;
     this.shell = shell;
-    this.queue = new LinkedList<TermEvent>();
+    this.queue = new ConcurrentLinkedQueue<TermEvent>();
     this.lock = new Object();
     this.status = Status.AVAILABLE;
     this.listeners = new CloseableList();
@@ -171,13 +173,14 @@ public final class Processor implements Runnable, Consumer<Chunk> {
     return true;
   }
 
-  // We assume this is called under lock synchronization
+  // We assume this is called under lock synchronization, all the events buffered are drained in one pass
+  // until the next process is found
   ProcessContext peekProcess() {
     while (true) {
       synchronized (lock) {
         if (status == Status.AVAILABLE) {
-          if (queue.size() > 0) {
-            TermEvent event = queue.removeFirst();
+          TermEvent event = queue.poll();
+          if (event != null) {
             if (event instanceof TermEvent.Complete) {
               complete(((TermEvent.Complete)event).getLine());
             } else {
@@ -201,26 +204,36 @@ public final class Processor implements Runnable, Consumer<Chunk> {
     return null;
   }
 
-  /** . */
-  private final Object termLock = new Object();
+  /** The term read state: an odd value means a thread is reading the term. */
+  private final AtomicInteger readState = new AtomicInteger();
 
-  private boolean reading = false;
+  /** The threads parked until the current term read is done. */
+  private final ConcurrentLinkedQueue<Thread> readWaiters = new ConcurrentLinkedQueue<Thread>();
 
   void readTerm() {
 
-    //
-    synchronized (termLock) {
-      if (reading) {
+    // Only one thread reads the term, the other ones are parked until the read is done
+    while (true) {
+      int state = readState.get();
+      if ((state & 1) == 0) {
+        if (readState.compareAndSet(state, state + 1)) {
+          break;
+        }
+      } else {
+        Thread current = Thread.currentThread();
+        readWaiters.add(current);
         try {
-          termLock.wait();
-          return;
+          while (readState.get() == state) {
+            LockSupport.park(this);
+            if (current.isInterrupted()) {
+              throw new AssertionError(new InterruptedException());
+            }
+          }
         }
-        catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-          throw new AssertionError(e);
+        finally {
+          readWaiters.remove(current);
         }
-      } else {
-        reading = true;
+        return;
       }
     }
 
@@ -267,10 +280,8 @@ public final class Processor implements Runnable, Consumer<Chunk> {
           status = Status.CLOSED;
         }
       } else {
-        synchronized (queue) {
-          queue.addLast(event);
-          runnable = NOOP;
-        }
+        queue.add(event);
+        runnable = NOOP;
       }
 
       //
@@ -280,9 +291,9 @@ public final class Processor implements Runnable, Consumer<Chunk> {
       log.log(Level.SEVERE, "Error when reading term", e);
     }
     finally {
-      synchronized (termLock) {
-        reading = false;
-        termLock.notifyAll();
+      readState.incrementAndGet();
+      for (Thread waiter : readWaiters) {
+        LockSupport.unpark(waiter);
       }
     }
   }
@@ -20,13 +20,16 @@
 package org.crsh.processor.term;
 
 import org.crsh.plugin.CRaSHPlugin;
+import org.crsh.shell.ConnectorShellFactory;
 import org.crsh.shell.Shell;
 import org.crsh.shell.ShellFactory;
 import org.crsh.term.console.ConsoleTerm;
+import org.crsh.term.spi.ExtendedTermIO;
 import org.crsh.term.spi.TermIO;
 import org.crsh.term.spi.TermIOHandler;
 
 import java.security.Principal;
+import java.util.Collections;
 
 public class ProcessorIOHandler extends CRaSHPlugin<TermIOHandler> implements TermIOHandler {
 
@@ -38,6 +41,11 @@ public class ProcessorIOHandler extends CRaSHPlugin<TermIOHandler> implements Te
     return this;
   }
 
+  @Override
+  public Iterable<Class<?>> getDependencies() {
+    return Collections.<Class<?>>singletonList(ShellFactory.class);
+  }
+
   @Override
   public void init() {
     this.factory = getContext().getPlugin(ShellFactory.class);
@@ -48,7 +56,12 @@ public class ProcessorIOHandler extends CRaSHPlugin<TermIOHandler> implements Te
   }
 
   public void handle(final TermIO io, Principal user) {
-    Shell shell = factory.create(user);
+    Shell shell;
+    if (factory instanceof ConnectorShellFactory && io instanceof ExtendedTermIO) {
+      shell = ((ConnectorShellFactory)factory).create(user, ((ExtendedTermIO)io).getConnector());
+    } else {
+      shell = factory.create(user);
+    }
     ConsoleTerm term = new ConsoleTerm(io);
     Processor processor = new Processor(term, shell);
     processor.addListener(io);
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell;
+
+import java.security.Principal;
+
+/**
+ * A shell factory aware of the connectors, the shells created by a factory not implementing this interface
+ * are all scheduled together.
+ */
+public interface ConnectorShellFactory extends ShellFactory {
+
+  /** The connector name of the shells executing the cron tasks. */
+  String CRON = "cron";
+
+  /**
+   * Create a shell object ready to be used for a connector, the commands of the shell are scheduled with the
+   * other shells of the same connector and user.
+   *
+   * @param principal the user principal it may be null in case of an unauthenticated user
+   * @param connector the connector name it may be null
+   * @return the shell instance
+   */
+  Shell create(Principal principal, String connector);
+
+}
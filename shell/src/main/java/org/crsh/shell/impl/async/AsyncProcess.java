@@ -23,9 +23,11 @@ import org.crsh.shell.ShellProcess;
 import org.crsh.shell.ShellProcessContext;
 import org.crsh.shell.ShellResponse;
 import org.crsh.text.Chunk;
+import org.crsh.text.RunConsumer;
+import org.crsh.text.Text;
 
 import java.io.IOException;
-import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 public class AsyncProcess implements ShellProcess {
 
@@ -61,7 +63,10 @@ public class AsyncProcess implements ShellProcess {
   }
 
   /** . */
-  private final ShellProcessContext context = new ShellProcessContext() {
+  private final ShellProcessContext context = new Context();
+
+  private class Context implements ShellProcessContext, RunConsumer {
+
     public int getWidth() {
       return caller.getWidth();
     }
@@ -94,6 +99,14 @@ public class AsyncProcess implements ShellProcess {
       caller.write(chunk);
     }
 
+    public void provide(CharSequence text, int start, int end) throws IOException {
+      if (caller instanceof RunConsumer) {
+        ((RunConsumer)caller).provide(text, start, end);
+      } else {
+        caller.write(Text.create(text, start, end));
+      }
+    }
+
     public void flush() throws IOException {
       caller.flush();
     }
@@ -124,7 +137,7 @@ public class AsyncProcess implements ShellProcess {
       //
       caller.end(response);
     }
-  };
+  }
 
   public void execute(ShellProcessContext processContext) {
 
@@ -140,9 +153,15 @@ public class AsyncProcess implements ShellProcess {
       caller = processContext;
     }
 
-    // Create the task
-    Callable<AsyncProcess> task = new Callable<AsyncProcess>() {
-      public AsyncProcess call() throws Exception {
+    // Create the task, it is ended when the scheduler rejects it later
+    FairScheduler.Task task = new FairScheduler.Task() {
+      public void rejected(RejectedExecutionException e) {
+        synchronized (shell.lock) {
+          shell.processes.remove(AsyncProcess.this);
+        }
+        terminate(ShellResponse.internalError("The command could not be scheduled for execution", e));
+      }
+      public void run() {
         try {
           // Cancelled -> Cancelled
           // Queued -> Evaluating
@@ -188,8 +207,6 @@ public class AsyncProcess implements ShellProcess {
             // Log it
           }
 
-          // We return this but we don't really care for now
-          return AsyncProcess.this;
         }
         finally {
           synchronized (shell.lock) {
@@ -199,22 +216,39 @@ public class AsyncProcess implements ShellProcess {
       }
     };
 
-    //
+    // The process is added before the task is handed to the executor since the task can be executed or
+    // rejected synchronously by the executor, both remove the process
+    ShellResponse response = null;
     synchronized (shell.lock) {
       if (!shell.closed) {
-        shell.executor.submit(task);
         shell.processes.add(this);
-      } else {
-        boolean invokeEnd;
-        synchronized (lock) {
-          invokeEnd = status != Status.TERMINATED;
-          status = Status.TERMINATED;
+        try {
+          shell.executor.execute(task);
         }
-        if (invokeEnd) {
-          caller.end(ShellResponse.cancelled());
+        catch (RejectedExecutionException e) {
+          shell.processes.remove(this);
+          response = ShellResponse.internalError("The command could not be scheduled for execution", e);
         }
+      } else {
+        response = ShellResponse.cancelled();
       }
     }
+
+    //
+    if (response != null) {
+      terminate(response);
+    }
+  }
+
+  private void terminate(ShellResponse response) {
+    boolean invokeEnd;
+    synchronized (lock) {
+      invokeEnd = status != Status.TERMINATED;
+      status = Status.TERMINATED;
+    }
+    if (invokeEnd) {
+      caller.end(response);
+    }
   }
 
   public void cancel() {
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.shell.impl.async;
+
+import org.crsh.shell.ConnectorShellFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Schedules the execution of the shell processes on a shared executor. The tasks are queued per flow (a user
+ * of a connector) and at most <code>capacity</code> tasks are handed to the executor at the same time, the
+ * next task is taken from the flow with the lowest pass (stride scheduling, a flow with a weight of
+ * <code>2</code> is served twice as often as a flow with a weight of <code>1</code>) among the flows that
+ * are not capped by the per user or per connector limits.
+ */
+public class FairScheduler {
+
+  /**
+   * A task notified when the executor rejects it, a rejected task is never executed.
+   */
+  public interface Task extends Runnable {
+
+    /**
+     * Signals the task was rejected by the executor.
+     *
+     * @param e the rejection
+     */
+    void rejected(RejectedExecutionException e);
+
+  }
+
+  /** . */
+  private static final long STRIDE = 1 << 20;
+
+  /** . */
+  private static final Logger log = Logger.getLogger(FairScheduler.class.getName());
+
+  /** . */
+  private final Executor executor;
+
+  /** . */
+  private final int capacity;
+
+  /** . */
+  private final int userLimit;
+
+  /** . */
+  private final int connectorLimit;
+
+  /** . */
+  private final int cronWeight;
+
+  /** The flows by key. */
+  private final Map<String, Flow> flows;
+
+  /** The flows having queued tasks. */
+  private final List<Flow> backlogged;
+
+  /** The running tasks by user. */
+  private final Map<String, Integer> users;
+
+  /** The running tasks by connector. */
+  private final Map<String, Integer> connectors;
+
+  /** The pass of the last dispatched task. */
+  private long pass;
+
+  /** . */
+  private int running;
+
+  /** . */
+  private long completed;
+
+  /** . */
+  private long rejected;
+
+  /**
+   * Create a new scheduler.
+   *
+   * @param executor the executor
+   * @param capacity the max number of tasks executed at the same time
+   * @param userLimit the max number of tasks of a user executed at the same time
+   * @param connectorLimit the max number of tasks of a connector executed at the same time
+   * @param cronWeight the weight of the cron flows, the other flows have a weight of 1
+   * @throws NullPointerException if the executor is null
+   * @throws IllegalArgumentException if any limit or weight is not positive
+   */
+  public FairScheduler(Executor executor, int capacity, int userLimit, int connectorLimit, int cronWeight) throws NullPointerException, IllegalArgumentException {
+    if (executor == null) {
+      throw new NullPointerException("No null executor accepted");
+    }
+    if (capacity < 1 || userLimit < 1 || connectorLimit < 1) {
+      throw new IllegalArgumentException("Limits must be positive");
+    }
+    if (cronWeight < 1) {
+      throw new IllegalArgumentException("Cron weight must be positive");
+    }
+    this.executor = executor;
+    this.capacity = capacity;
+    this.userLimit = userLimit;
+    this.connectorLimit = connectorLimit;
+    this.cronWeight = cronWeight;
+    this.flows = new HashMap<String, Flow>();
+    this.backlogged = new ArrayList<Flow>();
+    this.users = new HashMap<String, Integer>();
+    this.connectors = new HashMap<String, Integer>();
+  }
+
+  /**
+   * Returns an executor service view scheduling its tasks in the flow of a user of a connector, the returned
+   * executor cannot be shutdown.
+   *
+   * @param user the user name or null
+   * @param connector the connector name or null
+   * @return the executor service
+   */
+  public ExecutorService getExecutor(final String user, final String connector) {
+    return new AbstractExecutorService() {
+      public void execute(Runnable command) {
+        enqueue(user != null ? user : "", connector != null ? connector : "", command);
+      }
+      public void shutdown() {
+        throw new UnsupportedOperationException("The scheduler executor cannot be shutdown");
+      }
+      public List<Runnable> shutdownNow() {
+        throw new UnsupportedOperationException("The scheduler executor cannot be shutdown");
+      }
+      public boolean isShutdown() {
+        return false;
+      }
+      public boolean isTerminated() {
+        return false;
+      }
+      public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @return the max number of tasks executed at the same time
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of tasks being executed
+   */
+  public synchronized int getRunning() {
+    return running;
+  }
+
+  /**
+   * @return the number of tasks waiting for their execution
+   */
+  public synchronized int getQueued() {
+    int queued = 0;
+    for (Flow flow : backlogged) {
+      queued += flow.queue.size();
+    }
+    return queued;
+  }
+
+  /**
+   * @return the number of tasks executed
+   */
+  public synchronized long getCompleted() {
+    return completed;
+  }
+
+  /**
+   * @return the number of tasks rejected by the executor
+   */
+  public synchronized long getRejected() {
+    return rejected;
+  }
+
+  private void enqueue(String user, String connector, Runnable command) {
+    if (command == null) {
+      throw new NullPointerException("No null command accepted");
+    }
+    synchronized (this) {
+      String key = connector + "/" + user;
+      Flow flow = flows.get(key);
+      if (flow == null) {
+        flow = new Flow(user, connector, ConnectorShellFactory.CRON.equals(connector) ? cronWeight : 1);
+        flows.put(key, flow);
+      }
+      if (flow.queue.isEmpty()) {
+        // An idle flow does not accumulate credit
+        flow.pass = Math.max(flow.pass, pass);
+        backlogged.add(flow);
+      }
+      flow.queue.addLast(command);
+    }
+    dispatch();
+  }
+
+  private void dispatch() {
+    while (true) {
+      final Flow flow;
+      final Runnable task;
+      synchronized (this) {
+        if (running >= capacity) {
+          return;
+        }
+        Flow next = null;
+        for (Flow candidate : backlogged) {
+          if ((next == null || candidate.pass < next.pass) &&
+              count(users, candidate.user) < userLimit &&
+              count(connectors, candidate.connector) < connectorLimit) {
+            next = candidate;
+          }
+        }
+        if (next == null) {
+          return;
+        }
+        flow = next;
+        task = flow.queue.removeFirst();
+        if (flow.queue.isEmpty()) {
+          backlogged.remove(flow);
+        }
+        pass = flow.pass;
+        flow.pass += STRIDE / flow.weight;
+        flow.running++;
+        running++;
+        users.put(flow.user, count(users, flow.user) + 1);
+        connectors.put(flow.connector, count(connectors, flow.connector) + 1);
+      }
+      try {
+        executor.execute(new Runnable() {
+          public void run() {
+            try {
+              task.run();
+            }
+            finally {
+              release(flow, true);
+              dispatch();
+            }
+          }
+        });
+      }
+      catch (RejectedExecutionException e) {
+        log.log(Level.SEVERE, "Task of user " + flow.user + " on connector " + flow.connector + " rejected by the executor", e);
+        release(flow, false);
+        reject(task, e);
+      }
+    }
+  }
+
+  /**
+   * Notify the submitter of a rejected task, a task submitted as a future is cancelled so its waiters are released.
+   *
+   * @param task the rejected task
+   * @param e the rejection
+   */
+  private static void reject(Runnable task, RejectedExecutionException e) {
+    try {
+      if (task instanceof Task) {
+        ((Task)task).rejected(e);
+      } else if (task instanceof Future<?>) {
+        ((Future<?>)task).cancel(false);
+      }
+    }
+    catch (Throwable t) {
+      log.log(Level.SEVERE, "Rejected task failed to handle its rejection", t);
+    }
+  }
+
+  private synchronized void release(Flow flow, boolean executed) {
+    if (executed) {
+      completed++;
+    } else {
+      rejected++;
+    }
+    flow.running--;
+    running--;
+    decrement(users, flow.user);
+    decrement(connectors, flow.connector);
+    if (flow.running == 0 && flow.queue.isEmpty()) {
+      flows.remove(flow.connector + "/" + flow.user);
+    }
+  }
+
+  private static void decrement(Map<String, Integer> counts, String key) {
+    int count = count(counts, key) - 1;
+    if (count > 0) {
+      counts.put(key, count);
+    } else {
+      counts.remove(key);
+    }
+  }
+
+  private static int count(Map<String, Integer> counts, String key) {
+    Integer count = counts.get(key);
+    return count != null ? count : 0;
+  }
+
+  /** A flow of tasks. */
+  private static class Flow {
+
+    /** . */
+    final String user;
+
+    /** . */
+    final String connector;
+
+    /** . */
+    final int weight;
+
+    /** . */
+    final LinkedList<Runnable> queue = new LinkedList<Runnable>();
+
+    /** . */
+    long pass;
+
+    /** . */
+    int running;
+
+    private Flow(String user, String connector, int weight) {
+      this.user = user;
+      this.connector = connector;
+      this.weight = weight;
+    }
+  }
+}
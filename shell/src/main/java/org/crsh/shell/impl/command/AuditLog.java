@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.command;
+
+import org.crsh.util.RingBuffer;
+import org.crsh.util.Safe;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The audit log records the executed commands as JSON lines in a rolling file. The executing threads only offer
+ * the events to a ring buffer, a background thread writes them to the file: when the writer does not keep up the
+ * buffer fills and the new events are dropped, the amount of dropped events is written in the log. When the file
+ * cannot be written the failure is logged, the events that could not be written are counted as dropped and the
+ * file is opened again for the next event.
+ */
+public class AuditLog {
+
+  /** . */
+  private static final Logger log = Logger.getLogger(AuditLog.class.getName());
+
+  /** . */
+  private static final AtomicInteger count = new AtomicInteger();
+
+  /** An audit event. */
+  static class Event {
+
+    /** . */
+    final long time;
+
+    /** . */
+    final String user;
+
+    /** . */
+    final String connector;
+
+    /** . */
+    final String line;
+
+    /** The duration in nanoseconds. */
+    final long duration;
+
+    /** . */
+    final String status;
+
+    /** . */
+    final long chars;
+
+    Event(long time, String user, String connector, String line, long duration, String status, long chars) {
+      this.time = time;
+      this.user = user;
+      this.connector = connector;
+      this.line = line;
+      this.duration = duration;
+      this.status = status;
+      this.chars = chars;
+    }
+  }
+
+  /** . */
+  private final File file;
+
+  /** . */
+  private final long maxSize;
+
+  /** . */
+  private final int maxFiles;
+
+  /** . */
+  private final RingBuffer<Event> buffer;
+
+  /** . */
+  private final Thread writer;
+
+  /** . */
+  private final SimpleDateFormat format;
+
+  /** . */
+  private volatile boolean stopped;
+
+  /** The events lost because the file could not be written. */
+  private final AtomicLong lost;
+
+  /** The dropped events already written in the log. */
+  private long reportedDropped;
+
+  /** . */
+  private Writer out;
+
+  /** The size of the file in bytes. */
+  private long size;
+
+  /** The events written since the last flush. */
+  private int pending;
+
+  /** True when the last write failed. */
+  private boolean failing;
+
+  /**
+   * Create and start an audit log.
+   *
+   * @param file the log file
+   * @param maxSize the max size of the log file before it is rolled
+   * @param maxFiles the max number of rolled files kept
+   * @param capacity the max number of pending events
+   */
+  public AuditLog(File file, long maxSize, int maxFiles, int capacity) {
+    this.file = file;
+    this.maxSize = maxSize;
+    this.maxFiles = maxFiles;
+    this.buffer = new RingBuffer<Event>(capacity);
+    this.format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    this.format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    this.stopped = false;
+    this.lost = new AtomicLong();
+    this.writer = new Thread("CRaSH audit writer #" + count.incrementAndGet()) {
+      @Override
+      public void run() {
+        loop();
+      }
+    };
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return the number of events dropped because the writer did not keep up or could not write them
+   */
+  public long getDropped() {
+    return buffer.getDropped() + lost.get();
+  }
+
+  /**
+   * Record an event, it never blocks.
+   *
+   * @param user the user name or null
+   * @param connector the connector or null
+   * @param line the command line
+   * @param duration the duration in nanoseconds
+   * @param status the status
+   * @param chars the chars emitted
+   * @return true if the event was recorded, false if it was dropped
+   */
+  public boolean log(String user, String connector, String line, long duration, String status, long chars) {
+    return !stopped && buffer.offer(new Event(System.currentTimeMillis(), user, connector, line, duration, status, chars));
+  }
+
+  /**
+   * Stop the writer once the pending events are written.
+   */
+  public void stop() {
+    stopped = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void loop() {
+    try {
+      while (true) {
+        boolean done = stopped;
+        for (Event event = buffer.poll();event != null;event = buffer.poll()) {
+          try {
+            write(event);
+            pending++;
+          }
+          catch (IOException e) {
+            failed(e, 1);
+          }
+        }
+        long dropped = getDropped();
+        if (dropped > reportedDropped) {
+          try {
+            write("{\"time\":\"" + format.format(new Date()) + "\",\"dropped\":" + (dropped - reportedDropped) + "}");
+            reportedDropped = dropped;
+          }
+          catch (IOException e) {
+            failed(e, 0);
+          }
+        }
+        if (out != null) {
+          try {
+            out.flush();
+            pending = 0;
+            if (failing) {
+              failing = false;
+              log.log(Level.INFO, "Resumed writing audit log " + file.getAbsolutePath());
+            }
+          }
+          catch (IOException e) {
+            failed(e, 0);
+          }
+        }
+        if (done) {
+          break;
+        }
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(50));
+      }
+    }
+    finally {
+      Safe.close(out);
+    }
+  }
+
+  /**
+   * Handles a write failure: the events not flushed yet are counted as lost and the file is closed, it will
+   * be opened again for the next write. Only the first failure of a series is logged.
+   *
+   * @param e the failure
+   * @param events the number of events that failed besides the pending ones
+   */
+  private void failed(IOException e, int events) {
+    lost.addAndGet(pending + events);
+    pending = 0;
+    Safe.close(out);
+    out = null;
+    if (!failing) {
+      failing = true;
+      log.log(Level.SEVERE, "Could not write audit log " + file.getAbsolutePath() + ", the events are dropped until it can be written again", e);
+    }
+  }
+
+  private void write(Event event) throws IOException {
+    StringBuilder sb = new StringBuilder(128 + event.line.length());
+    sb.append("{\"time\":\"").append(format.format(new Date(event.time))).append('"');
+    sb.append(",\"user\":");
+    quote(event.user, sb);
+    sb.append(",\"connector\":");
+    quote(event.connector, sb);
+    sb.append(",\"line\":");
+    quote(event.line, sb);
+    sb.append(",\"duration\":").append(String.format(Locale.ROOT, "%.3f", event.duration / 1000000d));
+    sb.append(",\"status\":");
+    quote(event.status, sb);
+    sb.append(",\"chars\":").append(event.chars);
+    sb.append('}');
+    write(sb.toString());
+  }
+
+  private void write(String line) throws IOException {
+    if (out == null || size >= maxSize) {
+      roll();
+    }
+    out.write(line);
+    out.write('\n');
+    size += utf8Length(line) + 1;
+  }
+
+  private void roll() throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+      for (int i = maxFiles - 1;i > 0;i--) {
+        File from = new File(file.getPath() + "." + i);
+        if (from.exists()) {
+          File to = new File(file.getPath() + "." + (i + 1));
+          to.delete();
+          from.renameTo(to);
+        }
+      }
+      File first = new File(file.getPath() + ".1");
+      first.delete();
+      if (maxFiles > 0) {
+        file.renameTo(first);
+      } else {
+        file.delete();
+      }
+    }
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+    size = file.length();
+    out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+  }
+
+  /**
+   * Returns the number of bytes of a string encoded in UTF-8.
+   *
+   * @param s the string
+   * @return the encoded length
+   */
+  static int utf8Length(String s) {
+    int length = 0;
+    for (int i = 0;i < s.length();i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  static void quote(String s, StringBuilder sb) {
+    if (s == null) {
+      sb.append("null");
+    } else {
+      sb.append('"');
+      for (int i = 0;i < s.length();i++) {
+        char c = s.charAt(i);
+        switch (c) {
+          case '"':
+            sb.append("\\\"");
+            break;
+          case '\\':
+            sb.append("\\\\");
+            break;
+          case '\n':
+            sb.append("\\n");
+            break;
+          case '\r':
+            sb.append("\\r");
+            break;
+          case '\t':
+            sb.append("\\t");
+            break;
+          default:
+            if (c < 0x20) {
+              sb.append(String.format(Locale.ROOT, "\\u%04x", (int)c));
+            } else {
+              sb.append(c);
+            }
+        }
+      }
+      sb.append('"');
+    }
+  }
+}
@@ -26,6 +26,7 @@ import org.crsh.plugin.ResourceKind;
 import org.crsh.util.TimestampedObject;
 import org.crsh.vfs.Resource;
 
+import java.io.File;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -40,6 +41,12 @@ public class CRaSH {
   /** . */
   final HashMap<String, CommandManager> managers;
 
+  /** . */
+  final CommandStatistics statistics;
+
+  /** The audit log or null when the commands are not audited. */
+  final AuditLog audit;
+
   /** . */
   private final Map<String, TimestampedObject<CommandResolution>> commandCache = new ConcurrentHashMap<String, TimestampedObject<CommandResolution>>();
 
@@ -62,10 +69,58 @@ public class CRaSH {
 
     this.context = context;
     this.managers = managers;
+    this.statistics = new CommandStatistics();
+    this.audit = createAuditLog(context);
+  }
+
+  private static AuditLog createAuditLog(PluginContext context) {
+    String file = context.getProperty(CRaSHShellFactory.AUDIT_FILE);
+    if (file != null && file.length() > 0) {
+      Integer maxSize = context.getProperty(CRaSHShellFactory.AUDIT_MAX_SIZE);
+      Integer maxFiles = context.getProperty(CRaSHShellFactory.AUDIT_MAX_FILES);
+      Integer bufferSize = context.getProperty(CRaSHShellFactory.AUDIT_BUFFER_SIZE);
+      return new AuditLog(
+          new File(file),
+          maxSize != null && maxSize > 0 ? maxSize : CRaSHShellFactory.AUDIT_MAX_SIZE.defaultValue,
+          maxFiles != null && maxFiles >= 0 ? maxFiles : CRaSHShellFactory.AUDIT_MAX_FILES.defaultValue,
+          bufferSize != null && bufferSize > 0 ? bufferSize : CRaSHShellFactory.AUDIT_BUFFER_SIZE.defaultValue);
+    } else {
+      return null;
+    }
   }
 
   public CRaSHSession createSession(Principal user) {
-    return new CRaSHSession(this, user);
+    return createSession(user, null);
+  }
+
+  /**
+   * Create a session.
+   *
+   * @param user the user or null
+   * @param connector the name of the connector creating the session or null
+   * @return the session
+   */
+  public CRaSHSession createSession(Principal user, String connector) {
+    return new CRaSHSession(this, user, connector);
+  }
+
+  /**
+   * Release the resources: the metrics are unregistered and the pending audit events are written.
+   */
+  public void close() {
+    statistics.close();
+    if (audit != null) {
+      audit.stop();
+    }
+  }
+
+  /**
+   * Returns the audit log.
+   *
+   * @return the audit log or null when the commands are not audited
+   */
+  public AuditLog getAuditLog() {
+    return audit;
   }
 
   /**
@@ -77,6 +132,15 @@ public class CRaSH {
     return context;
   }
 
+  /**
+   * Returns the statistics of the commands.
+   *
+   * @return the command statistics
+   */
+  public CommandStatistics getStatistics() {
+    return statistics;
+  }
+
   /**
    * Attempt to obtain a command description. Null is returned when such command does not exist.
    *
@@ -18,29 +18,80 @@
  */
 package org.crsh.shell.impl.command;
 
+import org.crsh.command.Cancellation;
+import org.crsh.shell.ErrorType;
 import org.crsh.shell.ShellProcess;
 import org.crsh.shell.ShellProcessContext;
 import org.crsh.shell.ShellResponse;
+import org.crsh.text.Text;
+import org.crsh.util.ThreadUsage;
+import org.crsh.util.TimerWheel;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 abstract class CRaSHProcess implements ShellProcess {
 
+  /** The max period between two checks of the cpu budget. */
+  private static final long CPU_CHECK_PERIOD = 100;
+
   /** . */
   protected final CRaSHSession crash;
 
   /** . */
   protected final String request;
 
+  /** The names of the commands of the process. */
+  private final String[] names;
+
+  /** Whether the usage of the process is displayed after its output. */
+  private final boolean profile;
+
+  /** The chars written by the process. */
+  private volatile long written;
+
+  /** The deadline of the process in milliseconds or -1. */
+  private final long timeout;
+
+  /** The cpu budget of the process in milliseconds or -1. */
+  private final long cpuBudget;
+
+  /** . */
+  private final Cancellation cancellation;
+
   /** . */
   private volatile Thread thread;
 
   /** . */
   private volatile boolean cancelled;
 
+  /** The reason of the cancellation when the process exceeded its deadline or its cpu budget. */
+  private volatile String exceeded;
+
+  /** True once the invocation ended, the limits cannot cancel the process anymore. */
+  private volatile boolean ended;
+
+  /** . */
+  private TimerWheel.Timeout deadline;
+
+  /** . */
+  private volatile TimerWheel.Timeout cpuCheck;
+
   protected CRaSHProcess(CRaSHSession crash, String request) {
+    this(crash, request, new String[0], -1, -1, false);
+  }
+
+  protected CRaSHProcess(CRaSHSession crash, String request, String[] names, long timeout, long cpuBudget, boolean profile) {
     this.crash = crash;
     this.request = request;
+    this.names = names;
+    this.profile = profile;
+    this.timeout = timeout;
+    this.cpuBudget = cpuBudget;
+    this.cancellation = new Cancellation();
   }
 
   public void execute(ShellProcessContext processContext) {
@@ -51,11 +102,16 @@ abstract class CRaSHProcess implements ShellProcess {
 
       //
       String userName = crash.user != null ? crash.user.getName() : "unauthenticated";
-      CRaSHSession.accessLog.log(Level.FINE, "User " + userName + " executes " + request);
+      if (CRaSHSession.accessLog.isLoggable(Level.FINE)) {
+        CRaSHSession.accessLog.log(Level.FINE, "User " + userName + " executes " + request);
+      }
 
       //
+      long time = System.nanoTime();
+      ThreadUsage usage = ThreadUsage.current();
       try {
         try {
+          begin();
           resp = doInvoke(processContext);
           if (Thread.interrupted() || cancelled) {
             throw new InterruptedException("like a goto");
@@ -65,12 +121,46 @@ abstract class CRaSHProcess implements ShellProcess {
           Thread.currentThread().interrupt();
           resp = ShellResponse.cancelled();
         }
+        finally {
+          end();
+        }
+        if (exceeded != null) {
+          resp = ShellResponse.error(ErrorType.EVALUATION, request + ": " + exceeded);
+        }
       } catch (Throwable t) {
         resp = ShellResponse.internalError("Unexpected error when executing process", t);
       } finally {
         thread = null;
       }
 
+      //
+      long elapsed = System.nanoTime() - time;
+      usage = usage.elapsed();
+      if (CRaSHSession.accessLog.isLoggable(Level.FINE)) {
+        CRaSHSession.accessLog.log(Level.FINE, "User " + userName + " executed " + request + " in " + formatMillis(elapsed) + ", " + usage);
+      }
+      if (names.length > 0) {
+        crash.crash.statistics.record(
+            names,
+            elapsed,
+            resp instanceof ShellResponse.Error,
+            resp instanceof ShellResponse.Cancelled,
+            written,
+            usage);
+      }
+      AuditLog audit = crash.crash.audit;
+      if (audit != null) {
+        audit.log(crash.user != null ? crash.user.getName() : null, crash.connector, request, elapsed, status(resp), written);
+      }
+      if (profile) {
+        try {
+          processContext.write(Text.create("\n" + formatMillis(elapsed) + " elapsed, " + usage + "\n"));
+        }
+        catch (IOException e) {
+          CRaSHSession.log.log(Level.FINE, "Could not write profile of " + request, e);
+        }
+      }
+
       //
       processContext.end(resp);
 
@@ -90,16 +180,112 @@ abstract class CRaSHProcess implements ShellProcess {
     }
   }
 
+  private static String status(ShellResponse resp) {
+    if (resp instanceof ShellResponse.Error) {
+      return "error." + ((ShellResponse.Error)resp).getType().name().toLowerCase();
+    } else {
+      String name = resp.getClass().getSimpleName();
+      return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+  }
+
+  private static String formatMillis(long nanos) {
+    return String.format("%.3f ms", nanos / 1000000d);
+  }
+
   abstract ShellResponse doInvoke(ShellProcessContext context) throws InterruptedException;
 
+  /**
+   * Account the chars written by the process.
+   *
+   * @param chars the amount of chars
+   */
+  void written(int chars) {
+    written += chars;
+  }
+
+  /**
+   * @return true when the process is cancelled
+   */
+  boolean isCancelled() {
+    return cancelled;
+  }
+
+  private void begin() {
+    cancellation.bind();
+    TimerWheel timer = crash.crash.context.getTimer();
+    if (timeout >= 0) {
+      deadline = timer.schedule(new Runnable() {
+        public void run() {
+          exceed("timed out after " + ExecutionLimit.formatDuration(timeout));
+        }
+      }, timeout, TimeUnit.MILLISECONDS);
+    }
+    if (cpuBudget >= 0) {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      long id = thread.getId();
+      if (bean.isThreadCpuTimeSupported() && bean.isThreadCpuTimeEnabled()) {
+        long start = bean.getThreadCpuTime(id);
+        if (start != -1) {
+          checkCPU(timer, bean, id, start);
+        }
+      } else {
+        CRaSHSession.log.log(Level.FINE, "Thread cpu time not available, the cpu budget of " + request + " is ignored");
+      }
+    }
+  }
+
+  private void checkCPU(final TimerWheel timer, final ThreadMXBean bean, final long id, final long start) {
+    long used = ended ? -1 : bean.getThreadCpuTime(id);
+    if (used == -1) {
+      // Ended
+    } else if (used - start > TimeUnit.MILLISECONDS.toNanos(cpuBudget)) {
+      exceed("exceeded its cpu budget of " + ExecutionLimit.formatDuration(cpuBudget));
+    } else {
+      // The budget cannot be exhausted before the remaining cpu time elapsed
+      long remaining = cpuBudget - TimeUnit.NANOSECONDS.toMillis(used - start);
+      cpuCheck = timer.schedule(new Runnable() {
+        public void run() {
+          checkCPU(timer, bean, id, start);
+        }
+      }, Math.min(CPU_CHECK_PERIOD, remaining + 1), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void end() {
+    if (deadline != null) {
+      deadline.cancel();
+    }
+    TimerWheel.Timeout check = cpuCheck;
+    if (check != null) {
+      check.cancel();
+    }
+    cancellation.unbind();
+    synchronized (this) {
+      ended = true;
+      if (exceeded != null) {
+        // The interruption comes from the process itself, it must not leak
+        Thread.interrupted();
+      }
+    }
+  }
+
+  private synchronized void exceed(String reason) {
+    if (!ended && !cancelled) {
+      exceeded = reason;
+      cancel();
+    }
+  }
+
   public void cancel() {
     ClassLoader previous = crash.setCRaSHLoader();
     try {
+      cancelled = true;
       Thread t = thread;
       if (t != null) {
         t.interrupt();
       }
-      cancelled = true;
+      cancellation.cancel();
     }
     finally {
       crash.setPreviousLoader(previous);
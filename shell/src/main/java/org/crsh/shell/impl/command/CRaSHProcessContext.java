@@ -26,9 +26,12 @@ import org.crsh.shell.ShellProcessContext;
 import org.crsh.text.Chunk;
 import org.crsh.text.ChunkAdapter;
 import org.crsh.text.ChunkBuffer;
+import org.crsh.text.RunConsumer;
+import org.crsh.text.Text;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Map;
 
 class CRaSHProcessContext implements CommandContext<Object>, Closeable {
@@ -36,6 +39,9 @@ class CRaSHProcessContext implements CommandContext<Object>, Closeable {
   /** . */
   private final CRaSHSession session;
 
+  /** . */
+  private final CRaSHProcess process;
+
   /** . */
   private final ShellProcessContext processContext;
 
@@ -45,22 +51,12 @@ class CRaSHProcessContext implements CommandContext<Object>, Closeable {
   /** . */
   private boolean useAlternateBuffer;
 
-  CRaSHProcessContext(CRaSHSession session, final ShellProcessContext processContext) {
+  CRaSHProcessContext(CRaSHSession session, final CRaSHProcess process, final ShellProcessContext processContext) {
 
     // We use this chunk buffer to buffer stuff
     // but also because it optimises the chunks
     // which provides better perormances on the client
-    final ChunkBuffer buffer = new ChunkBuffer(new Consumer<Chunk>() {
-      public void provide(Chunk element) throws IOException {
-        processContext.write(element);
-      }
-      public Class<Chunk> getConsumedType() {
-        return Chunk.class;
-      }
-      public void flush() throws IOException {
-        processContext.flush();
-      }
-    });
+    final ChunkBuffer buffer = new ChunkBuffer(new Output(process, processContext));
 
     //
     final ChunkAdapter adapter = new ChunkAdapter(new ScreenContext() {
@@ -91,6 +87,7 @@ class CRaSHProcessContext implements CommandContext<Object>, Closeable {
 
     //
     this.session = session;
+    this.process = process;
     this.processContext = processContext;
     this.adapter = adapter;
     this.useAlternateBuffer = false;
@@ -129,17 +126,31 @@ class CRaSHProcessContext implements CommandContext<Object>, Closeable {
   }
 
   public void write(Chunk chunk) throws IOException {
+    checkCancelled();
     adapter.provide(chunk);
   }
 
   public void provide(Object element) throws IOException {
+    checkCancelled();
     adapter.provide(element);
   }
 
   public void flush() throws IOException {
+    checkCancelled();
     adapter.flush();
   }
 
+  /**
+   * The output of a cancelled process fails so the commands of the pipeline producing it stop.
+   *
+   * @throws InterruptedIOException when the process is cancelled
+   */
+  private void checkCancelled() throws InterruptedIOException {
+    if (process.isCancelled()) {
+      throw new InterruptedIOException("Process cancelled");
+    }
+  }
+
   public Map<String, Object> getSession() {
     return session;
   }
@@ -153,4 +164,46 @@ class CRaSHProcessContext implements CommandContext<Object>, Closeable {
       releaseAlternateBuffer();
     }
   }
+
+  /**
+   * Forwards the buffered output to the process context and accounts the chars written by the process,
+   * text runs are forwarded as ranges when the process context is a {@link RunConsumer}.
+   */
+  private static class Output implements Consumer<Chunk>, RunConsumer {
+
+    /** . */
+    private final CRaSHProcess process;
+
+    /** . */
+    private final ShellProcessContext processContext;
+
+    Output(CRaSHProcess process, ShellProcessContext processContext) {
+      this.process = process;
+      this.processContext = processContext;
+    }
+
+    public void provide(Chunk element) throws IOException {
+      if (element instanceof Text) {
+        process.written(((Text)element).getText().length());
+      }
+      processContext.write(element);
+    }
+
+    public void provide(CharSequence text, int start, int end) throws IOException {
+      process.written(end - start);
+      if (processContext instanceof RunConsumer) {
+        ((RunConsumer)processContext).provide(text, start, end);
+      } else {
+        processContext.write(Text.create(text, start, end));
+      }
+    }
+
+    public Class<Chunk> getConsumedType() {
+      return Chunk.class;
+    }
+
+    public void flush() throws IOException {
+      processContext.flush();
+    }
+  }
 }
@@ -24,7 +24,10 @@ import org.crsh.command.RuntimeContext;
 import org.crsh.command.CommandInvoker;
 import org.crsh.command.ScriptException;
 import org.crsh.command.ShellCommand;
+import org.crsh.command.pipeline.PipeLine;
+import org.crsh.command.pipeline.PipeLineTrace;
 import org.crsh.plugin.PluginContext;
+import org.crsh.plugin.PropertyDescriptor;
 import org.crsh.repl.REPL;
 import org.crsh.shell.ErrorType;
 import org.crsh.shell.Shell;
@@ -32,6 +35,8 @@ import org.crsh.shell.ShellProcess;
 import org.crsh.shell.ShellProcessContext;
 import org.crsh.shell.ShellResponse;
 import org.crsh.repl.EvalResponse;
+import org.crsh.lang.script.PipeLineFactory;
+import org.crsh.lang.script.PipeLineParser;
 import org.crsh.lang.script.ScriptREPL;
 import org.crsh.repl.REPLSession;
 import org.crsh.text.Text;
@@ -41,6 +46,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.ServiceLoader;
@@ -61,17 +67,30 @@ public class CRaSHSession extends HashMap<String, Object> implements Shell, Clos
   /** . */
   final Principal user;
 
+  /** The connector of the session or null. */
+  final String connector;
+
+  /** Incremented each time the session attributes are modified. */
+  private volatile int version;
+
+  /** The cached welcome message. */
+  private final CallBack welcome = new CallBack("welcome", "");
+
+  /** The cached prompt. */
+  private final CallBack prompt = new CallBack("prompt", "% ");
+
   public CommandManager getCommandManager() {
     return crash.managers.get("groovy");
   }
 
-  CRaSHSession(final CRaSH crash, Principal user) {
+  CRaSHSession(final CRaSH crash, Principal user, String connector) {
     // Set variable available to all scripts
     put("crash", crash);
 
     //
     this.crash = crash;
     this.user = user;
+    this.connector = connector;
 
     //
     ClassLoader previous = setCRaSHLoader();
@@ -120,25 +139,93 @@ public class CRaSHSession extends HashMap<String, Object> implements Shell, Clos
   // Shell implementation **********************************************************************************************
 
   public String getWelcome() {
-    ClassLoader previous = setCRaSHLoader();
-    try {
-      return crash.managers.get("groovy").doCallBack(this, "welcome", "");
-    }
-    finally {
-      setPreviousLoader(previous);
-    }
+    return welcome.get();
   }
 
   public String getPrompt() {
-    ClassLoader previous = setCRaSHLoader();
-    try {
-      return crash.managers.get("groovy").doCallBack(this, "prompt", "% ");
+    return prompt.get();
+  }
+
+  /**
+   * A lifecycle callback value, the callback is evaluated again only when the session attributes
+   * have been modified since the last evaluation.
+   */
+  private class CallBack {
+
+    /** . */
+    private final String name;
+
+    /** . */
+    private final String defaultValue;
+
+    /** . */
+    private String value;
+
+    /** . */
+    private int valueVersion;
+
+    private CallBack(String name, String defaultValue) {
+      this.name = name;
+      this.defaultValue = defaultValue;
     }
-    finally {
-      setPreviousLoader(previous);
+
+    synchronized String get() {
+      int current = version;
+      if (value == null || valueVersion != current) {
+        ClassLoader previous = setCRaSHLoader();
+        try {
+          value = crash.managers.get("groovy").doCallBack(CRaSHSession.this, name, defaultValue);
+          valueVersion = current;
+        }
+        finally {
+          setPreviousLoader(previous);
+        }
+      }
+      return value;
     }
   }
 
+  // HashMap overrides *************************************************************************************************
+
+  @Override
+  public Object put(String key, Object value) {
+    version++;
+    return super.put(key, value);
+  }
+
+  @Override
+  public void putAll(Map<? extends String, ?> m) {
+    version++;
+    super.putAll(m);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    version++;
+    return super.remove(key);
+  }
+
+  @Override
+  public void clear() {
+    version++;
+    super.clear();
+  }
+
+  /** . */
+  private static final String TIMEOUT_OPTION = "--timeout=";
+
+  /** . */
+  private static final String CPU_BUDGET_OPTION = "--cpu-budget=";
+
+  /** . */
+  private static final String PROFILE_OPTION = "--profile";
+
+  /** . */
+  private static final String TRACE_OPTION = "--trace";
+
+  /** Whether the pipelines are traced, it is toggled with trace on and trace off. */
+  private boolean tracing = false;
+
   /** . */
   private REPL repl = ScriptREPL.getInstance();
 
@@ -147,8 +234,48 @@ public class CRaSHSession extends HashMap<String, Object> implements Shell, Clos
     String trimmedRequest = request.trim();
     final StringBuilder msg = new StringBuilder();
     final ShellResponse response;
-    if ("bye".equals(trimmedRequest) || "exit".equals(trimmedRequest)) {
+
+    // The limits, the profiling and the tracing of the invocation can be specified before the command
+    long timeout = -1;
+    long cpuBudget = -1;
+    String invalidLimit = null;
+    String line = request;
+    boolean profile = false;
+    boolean trace = tracing;
+    while (trimmedRequest.startsWith("--")) {
+      int pos = trimmedRequest.indexOf(' ');
+      String option = pos == -1 ? trimmedRequest : trimmedRequest.substring(0, pos);
+      if (option.equals(PROFILE_OPTION)) {
+        profile = true;
+      } else if (option.equals(TRACE_OPTION)) {
+        trace = true;
+      } else if (option.startsWith(TIMEOUT_OPTION) || option.startsWith(CPU_BUDGET_OPTION)) {
+        try {
+          if (option.startsWith(TIMEOUT_OPTION)) {
+            timeout = ExecutionLimit.parseDuration(option.substring(TIMEOUT_OPTION.length()));
+          } else {
+            cpuBudget = ExecutionLimit.parseDuration(option.substring(CPU_BUDGET_OPTION.length()));
+          }
+        }
+        catch (IllegalArgumentException e) {
+          invalidLimit = e.getMessage();
+        }
+      } else {
+        break;
+      }
+      trimmedRequest = pos == -1 ? "" : trimmedRequest.substring(pos + 1).trim();
+      line = trimmedRequest;
+    }
+
+    //
+    if (invalidLimit != null) {
+      response = ShellResponse.error(ErrorType.EVALUATION, invalidLimit);
+    } else if ("bye".equals(trimmedRequest) || "exit".equals(trimmedRequest)) {
       response = ShellResponse.close();
+    } else if (trimmedRequest.equals("trace on") || trimmedRequest.equals("trace off")) {
+      tracing = trimmedRequest.equals("trace on");
+      msg.append("Pipeline tracing ").append(tracing ? "enabled" : "disabled");
+      response = ShellResponse.ok();
     } else if (trimmedRequest.equals("repl")) {
       msg.append("Current repl ").append(repl.getName());
       response = ShellResponse.ok();
@@ -177,17 +304,25 @@ public class CRaSHSession extends HashMap<String, Object> implements Shell, Clos
         }
       }
     } else {
-      EvalResponse r = repl.eval(this, request);
+      EvalResponse r = repl.eval(this, line);
       if (r instanceof EvalResponse.Response) {
         EvalResponse.Response rr = (EvalResponse.Response)r;
         response = rr.response;
       } else {
         final CommandInvoker<Void, ?> pipeLine = ((EvalResponse.Invoke)r).invoker;
-        return new CRaSHProcess(this, request) {
+        final PipeLineTrace pipeLineTrace = trace && pipeLine instanceof PipeLine ? ((PipeLine)pipeLine).trace() : null;
+        String[] names = getCommandNames(line);
+        if (timeout == -1) {
+          timeout = getLimit(CRaSHShellFactory.COMMAND_TIMEOUT, names);
+        }
+        if (cpuBudget == -1) {
+          cpuBudget = getLimit(CRaSHShellFactory.COMMAND_CPU_BUDGET, names);
+        }
+        return new CRaSHProcess(this, request, names, timeout, cpuBudget, profile) {
 
           @Override
           ShellResponse doInvoke(final ShellProcessContext context) throws InterruptedException {
-            CRaSHProcessContext invocationContext = new CRaSHProcessContext(CRaSHSession.this, context);
+            CRaSHProcessContext invocationContext = new CRaSHProcessContext(CRaSHSession.this, this, context);
             try {
               pipeLine.invoke(invocationContext);
               return ShellResponse.ok();
@@ -197,6 +332,15 @@ public class CRaSHSession extends HashMap<String, Object> implements Shell, Clos
             } catch (Throwable t) {
               return build(t);
             } finally {
+              if (pipeLineTrace != null && !isCancelled()) {
+                try {
+                  invocationContext.provide(pipeLineTrace.toElement());
+                  invocationContext.flush();
+                }
+                catch (IOException e) {
+                  log.log(Level.FINE, "Could not display the trace of " + request, e);
+                }
+              }
               Safe.close(invocationContext);
             }
           }
@@ -255,6 +399,48 @@ public class CRaSHSession extends HashMap<String, Object> implements Shell, Clos
     };
   }
 
+  /**
+   * Returns the names of the commands of a request, the name of the repl is used when it does not evaluate
+   * commands.
+   *
+   * @param request the request
+   * @return the command names
+   */
+  private String[] getCommandNames(String request) {
+    if (repl == ScriptREPL.getInstance()) {
+      ArrayList<String> names = new ArrayList<String>();
+      for (PipeLineFactory factory = new PipeLineParser(request).parse();factory != null;factory = factory.getNext()) {
+        if (!names.contains(factory.getName())) {
+          names.add(factory.getName());
+        }
+      }
+      return names.toArray(new String[names.size()]);
+    } else {
+      return new String[]{repl.getName()};
+    }
+  }
+
+  /**
+   * Returns the configured limit of a request, the limit of a pipeline is the lowest limit of its commands.
+   *
+   * @param desc the limit property
+   * @param names the command names
+   * @return the limit in milliseconds or -1
+   */
+  private long getLimit(PropertyDescriptor<ExecutionLimit> desc, String[] names) {
+    ExecutionLimit limit = crash.context.getProperty(desc);
+    long value = -1;
+    if (limit != null) {
+      for (String name : names) {
+        long l = limit.get(name);
+        if (l >= 0 && (value == -1 || l < value)) {
+          value = l;
+        }
+      }
+    }
+    return value;
+  }
+
   /**
    * For now basic implementation
    */
@@ -21,24 +21,104 @@ package org.crsh.shell.impl.command;
 
 import org.crsh.plugin.CRaSHPlugin;
 import org.crsh.plugin.PluginContext;
+import org.crsh.plugin.PropertyDescriptor;
+import org.crsh.shell.ConnectorShellFactory;
 import org.crsh.shell.Shell;
 import org.crsh.shell.ShellFactory;
 import org.crsh.shell.impl.async.AsyncShell;
+import org.crsh.shell.impl.async.FairScheduler;
+import org.crsh.util.MeasuredExecutorService;
 
 import java.security.Principal;
+import java.util.Arrays;
+import java.util.Collections;
 
-public class CRaSHShellFactory extends CRaSHPlugin<ShellFactory> implements ShellFactory {
+public class CRaSHShellFactory extends CRaSHPlugin<ShellFactory> implements ConnectorShellFactory {
+
+  /** . */
+  public static final PropertyDescriptor<Integer> SCHEDULER_USER_LIMIT = PropertyDescriptor.create("scheduler.user_limit", (Integer)null, "The max number of commands of a user executed at the same time");
+
+  /** . */
+  public static final PropertyDescriptor<Integer> SCHEDULER_CONNECTOR_LIMIT = PropertyDescriptor.create("scheduler.connector_limit", (Integer)null, "The max number of commands of a connector executed at the same time");
+
+  /** . */
+  public static final PropertyDescriptor<Integer> SCHEDULER_CRON_WEIGHT = PropertyDescriptor.create("scheduler.cron_weight", 1, "The scheduling weight of the cron tasks, the interactive sessions have a weight of 1");
+
+  /** . */
+  public static final PropertyDescriptor<ExecutionLimit> COMMAND_TIMEOUT = new PropertyDescriptor<ExecutionLimit>(ExecutionLimit.class, "command.timeout", null, "The max duration of the commands, for instance 60s,jdbc=5m,thread=5s") {
+    @Override
+    protected ExecutionLimit doParse(String s) throws Exception {
+      return ExecutionLimit.parse(s);
+    }
+  };
+
+  /** . */
+  public static final PropertyDescriptor<ExecutionLimit> COMMAND_CPU_BUDGET = new PropertyDescriptor<ExecutionLimit>(ExecutionLimit.class, "command.cpu_budget", null, "The max cpu time of the commands, for instance 10s,jdbc=1m") {
+    @Override
+    protected ExecutionLimit doParse(String s) throws Exception {
+      return ExecutionLimit.parse(s);
+    }
+  };
+
+  /** . */
+  public static final PropertyDescriptor<String> AUDIT_FILE = PropertyDescriptor.create("audit.file", (String)null, "The file of the audit log, the commands are not audited when it is not set");
+
+  /** . */
+  public static final PropertyDescriptor<Integer> AUDIT_MAX_SIZE = PropertyDescriptor.create("audit.max_size", 10 * 1024 * 1024, "The size of the audit log file before it is rolled");
+
+  /** . */
+  public static final PropertyDescriptor<Integer> AUDIT_MAX_FILES = PropertyDescriptor.create("audit.max_files", 5, "The number of rolled audit log files kept");
+
+  /** . */
+  public static final PropertyDescriptor<Integer> AUDIT_BUFFER_SIZE = PropertyDescriptor.create("audit.buffer_size", 8192, "The max number of audit events waiting to be written, the new events are dropped when it is reached");
 
   /** . */
   private CRaSH crash;
 
+  /** . */
+  private FairScheduler scheduler;
+
   public CRaSHShellFactory() {
   }
 
+  @Override
+  public Iterable<Class<?>> getDependencies() {
+    return Collections.<Class<?>>singletonList(CommandManager.class);
+  }
+
   @Override
   public void init() {
     PluginContext context = getContext();
     crash = new CRaSH(context);
+
+    // The commands are handed to the executor up to the capacity of the executor actually used
+    MeasuredExecutorService executor = context.getExecutorMetrics();
+    scheduler = new FairScheduler(
+        executor,
+        executor.getCapacity(),
+        positive(context.getProperty(SCHEDULER_USER_LIMIT), Integer.MAX_VALUE),
+        positive(context.getProperty(SCHEDULER_CONNECTOR_LIMIT), Integer.MAX_VALUE),
+        positive(context.getProperty(SCHEDULER_CRON_WEIGHT), 1));
+  }
+
+  @Override
+  public void destroy() {
+    if (crash != null) {
+      crash.close();
+    }
+  }
+
+  private static int positive(Integer value, int defaultValue) {
+    return value != null && value > 0 ? value : defaultValue;
+  }
+
+  @Override
+  protected Iterable<PropertyDescriptor<?>> createConfigurationCapabilities() {
+    return Arrays.<PropertyDescriptor<?>>asList(SCHEDULER_USER_LIMIT, SCHEDULER_CONNECTOR_LIMIT, SCHEDULER_CRON_WEIGHT, COMMAND_TIMEOUT, COMMAND_CPU_BUDGET, AUDIT_FILE, AUDIT_MAX_SIZE, AUDIT_MAX_FILES, AUDIT_BUFFER_SIZE);
+  }
+
+  public FairScheduler getScheduler() {
+    return scheduler;
   }
 
   @Override
@@ -46,16 +126,25 @@ public class CRaSHShellFactory extends CRaSHPlugin<ShellFactory> implements Shel
     return this;
   }
 
-  public Shell create(Principal principal, boolean async) {
-    CRaSHSession session = crash.createSession(principal);
+  public Shell create(Principal principal, String connector, boolean async) {
+    CRaSHSession session = crash.createSession(principal, connector);
     if (async) {
-      return new AsyncShell(getContext().getExecutor(), session);
+      String user = principal != null ? principal.getName() : null;
+      return new AsyncShell(scheduler.getExecutor(user, connector), session);
     } else {
       return session;
     }
   }
 
+  public Shell create(Principal principal, boolean async) {
+    return create(principal, null, async);
+  }
+
+  public Shell create(Principal principal, String connector) {
+    return create(principal, connector, true);
+  }
+
   public Shell create(Principal principal) {
-    return create(principal, true);
+    return create(principal, null, true);
   }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.command;
+
+import org.crsh.util.Histogram;
+import org.crsh.util.ThreadUsage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of a command: the latency histogram of its invocations, the invocation, error and cancellation
+ * counts, the amount of chars it emitted and the cpu time and bytes allocated by its invocations.
+ */
+public class CommandMetrics implements CommandMetricsMBean {
+
+  /** . */
+  private final String name;
+
+  /** The latency in microseconds. */
+  private final Histogram latency;
+
+  /** . */
+  private final AtomicLong errors;
+
+  /** . */
+  private final AtomicLong cancellations;
+
+  /** . */
+  private final AtomicLong outputChars;
+
+  /** The cpu time in nanoseconds. */
+  private final AtomicLong cpuTime;
+
+  /** . */
+  private final AtomicLong allocatedBytes;
+
+  CommandMetrics(String name) {
+    this.name = name;
+    this.latency = new Histogram();
+    this.errors = new AtomicLong();
+    this.cancellations = new AtomicLong();
+    this.outputChars = new AtomicLong();
+    this.cpuTime = new AtomicLong();
+    this.allocatedBytes = new AtomicLong();
+  }
+
+  void record(long nanos, boolean error, boolean cancelled, long chars, ThreadUsage usage) {
+    latency.record(nanos / 1000);
+    if (error) {
+      errors.incrementAndGet();
+    }
+    if (cancelled) {
+      cancellations.incrementAndGet();
+    }
+    outputChars.addAndGet(chars);
+    if (usage.getCpuTime() > 0) {
+      cpuTime.addAndGet(usage.getCpuTime());
+    }
+    if (usage.getAllocatedBytes() > 0) {
+      allocatedBytes.addAndGet(usage.getAllocatedBytes());
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Histogram getLatency() {
+    return latency;
+  }
+
+  public long getInvocations() {
+    return latency.getCount();
+  }
+
+  public long getErrors() {
+    return errors.get();
+  }
+
+  public long getCancellations() {
+    return cancellations.get();
+  }
+
+  public long getOutputChars() {
+    return outputChars.get();
+  }
+
+  public double getCpuTime() {
+    return cpuTime.get() / 1000000d;
+  }
+
+  public long getAllocatedBytes() {
+    return allocatedBytes.get();
+  }
+
+  public double getMeanLatency() {
+    return latency.getMean() / 1000;
+  }
+
+  public double getMedianLatency() {
+    return getLatencyAtPercentile(50);
+  }
+
+  public double get90thPercentileLatency() {
+    return getLatencyAtPercentile(90);
+  }
+
+  public double get99thPercentileLatency() {
+    return getLatencyAtPercentile(99);
+  }
+
+  public double get999thPercentileLatency() {
+    return getLatencyAtPercentile(99.9);
+  }
+
+  public double getMaxLatency() {
+    return latency.getMax() / 1000d;
+  }
+
+  /**
+   * Returns the latency at a percentile.
+   *
+   * @param percentile the percentile between 0 and 100
+   * @return the latency in milliseconds
+   */
+  public double getLatencyAtPercentile(double percentile) {
+    return latency.getValueAtPercentile(percentile) / 1000d;
+  }
+
+  public void reset() {
+    latency.reset();
+    errors.set(0);
+    cancellations.set(0);
+    outputChars.set(0);
+    cpuTime.set(0);
+    allocatedBytes.set(0);
+  }
+}
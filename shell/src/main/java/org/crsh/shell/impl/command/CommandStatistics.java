@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.command;
+
+import org.crsh.util.ThreadUsage;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The statistics of the commands executed by the shell, the metrics of a command are created on its first
+ * invocation and published in the platform MBean server as <code>org.crsh:type=CommandMetrics,name=...</code>.
+ * An invocation of a pipeline is recorded by each of its commands.
+ */
+public class CommandStatistics {
+
+  /** . */
+  private static final Logger log = Logger.getLogger(CommandStatistics.class.getName());
+
+  /** . */
+  private final ConcurrentHashMap<String, CommandMetrics> metrics;
+
+  /** The names of the registered MBeans. */
+  private final ConcurrentHashMap<String, ObjectName> registrations;
+
+  /** . */
+  private volatile boolean closed;
+
+  public CommandStatistics() {
+    this.metrics = new ConcurrentHashMap<String, CommandMetrics>();
+    this.registrations = new ConcurrentHashMap<String, ObjectName>();
+    this.closed = false;
+  }
+
+  /**
+   * Returns the metrics of a command.
+   *
+   * @param name the command name
+   * @return the metrics or null when the command was never invoked
+   */
+  public CommandMetrics get(String name) {
+    return metrics.get(name);
+  }
+
+  /**
+   * @return the metrics of all the invoked commands sorted by name
+   */
+  public Map<String, CommandMetrics> getAll() {
+    return new TreeMap<String, CommandMetrics>(metrics);
+  }
+
+  /**
+   * Clear the metrics of all commands.
+   */
+  public void reset() {
+    for (CommandMetrics m : metrics.values()) {
+      m.reset();
+    }
+  }
+
+  void record(String[] names, long nanos, boolean error, boolean cancelled, long chars, ThreadUsage usage) {
+    for (String name : names) {
+      CommandMetrics m = metrics.get(name);
+      if (m == null) {
+        CommandMetrics created = new CommandMetrics(name);
+        m = metrics.putIfAbsent(name, created);
+        if (m == null) {
+          m = created;
+          register(created);
+        }
+      }
+      m.record(nanos, error, cancelled, chars, usage);
+    }
+  }
+
+  private void register(CommandMetrics m) {
+    if (!closed) {
+      try {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = ObjectName.getInstance("org.crsh:type=CommandMetrics,name=" + ObjectName.quote(m.getName()));
+        server.registerMBean(m, name);
+        registrations.put(m.getName(), name);
+      }
+      catch (InstanceAlreadyExistsException e) {
+        log.log(Level.FINE, "Command metrics of " + m.getName() + " already registered by another shell");
+      }
+      catch (Exception e) {
+        log.log(Level.FINE, "Could not register command metrics of " + m.getName(), e);
+      }
+    }
+  }
+
+  /**
+   * Unregister the MBeans of the commands.
+   */
+  public void close() {
+    closed = true;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName name : registrations.values()) {
+      try {
+        server.unregisterMBean(name);
+      }
+      catch (Exception e) {
+        log.log(Level.FINE, "Could not unregister " + name, e);
+      }
+    }
+    registrations.clear();
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.command;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A limit on the execution of the commands expressed as a duration: a default value for all the commands and
+ * the values of specific commands, for instance <code>60s,jdbc=5m,thread=5s</code>. A duration is a number
+ * followed by a unit among <code>ms</code>, <code>s</code>, <code>m</code> or <code>h</code>, the unit defaults
+ * to seconds.
+ */
+public final class ExecutionLimit {
+
+  /**
+   * Parse a limit.
+   *
+   * @param s the limit value
+   * @return the limit
+   * @throws IllegalArgumentException if the value is not valid
+   */
+  public static ExecutionLimit parse(String s) throws IllegalArgumentException {
+    long defaultValue = -1;
+    HashMap<String, Long> values = new HashMap<String, Long>();
+    for (String entry : s.split(",")) {
+      entry = entry.trim();
+      if (entry.length() > 0) {
+        int pos = entry.indexOf('=');
+        if (pos == -1) {
+          defaultValue = parseDuration(entry);
+        } else {
+          values.put(entry.substring(0, pos).trim(), parseDuration(entry.substring(pos + 1)));
+        }
+      }
+    }
+    return new ExecutionLimit(defaultValue, values);
+  }
+
+  /**
+   * Parse a duration.
+   *
+   * @param s the duration
+   * @return the duration in milliseconds
+   * @throws IllegalArgumentException if the duration is not valid
+   */
+  public static long parseDuration(String s) throws IllegalArgumentException {
+    s = s.trim();
+    int pos = 0;
+    while (pos < s.length() && Character.isDigit(s.charAt(pos))) {
+      pos++;
+    }
+    if (pos == 0) {
+      throw new IllegalArgumentException("Invalid duration " + s);
+    }
+    long value = Long.parseLong(s.substring(0, pos));
+    String unit = s.substring(pos).trim();
+    if (unit.length() == 0 || unit.equals("s")) {
+      return value * 1000;
+    } else if (unit.equals("ms")) {
+      return value;
+    } else if (unit.equals("m")) {
+      return value * 60 * 1000;
+    } else if (unit.equals("h")) {
+      return value * 60 * 60 * 1000;
+    } else {
+      throw new IllegalArgumentException("Invalid duration unit " + unit);
+    }
+  }
+
+  /**
+   * Format a duration.
+   *
+   * @param millis the duration in milliseconds
+   * @return the formatted duration
+   */
+  public static String formatDuration(long millis) {
+    if (millis % (60 * 60 * 1000) == 0) {
+      return millis / (60 * 60 * 1000) + "h";
+    } else if (millis % (60 * 1000) == 0) {
+      return millis / (60 * 1000) + "m";
+    } else if (millis % 1000 == 0) {
+      return millis / 1000 + "s";
+    } else {
+      return millis + "ms";
+    }
+  }
+
+  /** The default value or -1. */
+  private final long defaultValue;
+
+  /** . */
+  private final Map<String, Long> values;
+
+  private ExecutionLimit(long defaultValue, Map<String, Long> values) {
+    this.defaultValue = defaultValue;
+    this.values = Collections.unmodifiableMap(values);
+  }
+
+  /**
+   * Returns the limit of a command.
+   *
+   * @param command the command name
+   * @return the limit in milliseconds or -1 when the command is not limited
+   */
+  public long get(String command) {
+    Long value = values.get(command);
+    return value != null ? value : defaultValue;
+  }
+
+  public long getDefaultValue() {
+    return defaultValue;
+  }
+
+  public Map<String, Long> getValues() {
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    if (defaultValue >= 0) {
+      sb.append(formatDuration(defaultValue));
+    }
+    for (Map.Entry<String, Long> entry : values.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(entry.getKey()).append('=').append(formatDuration(entry.getValue()));
+    }
+    return sb.toString();
+  }
+}
@@ -20,6 +20,7 @@
 package org.crsh.shell.impl.remoting;
 
 import org.crsh.cli.impl.completion.CompletionMatch;
+import org.crsh.shell.ErrorType;
 import org.crsh.shell.Shell;
 import org.crsh.shell.ShellResponse;
 import org.crsh.util.CloseableList;
@@ -28,37 +29,48 @@ import org.crsh.util.Statement;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The client side of the remoting protocol, it reads the messages of the server with the thread running it. The
+ * processes are executed by separate threads so a process blocked on the flow control window of its channel does
+ * not prevent the window updates from being read, whether the shell executes its processes synchronously or not.
+ */
 public class ClientAutomaton implements Runnable {
 
   /** . */
   final Shell shell;
 
   /** . */
-  final ObjectOutputStream out;
+  final MessageOutput out;
 
   /** . */
-  final ObjectInputStream in;
+  final MessageInput in;
 
-  /** . */
-  ClientProcessContext current;
+  /** The processes in execution by channel id. */
+  final ConcurrentHashMap<Integer, ClientProcessContext> processes;
 
   /** . */
   final CloseableList listeners;
 
+  /** The threads executing the processes. */
+  final ExecutorService executor;
+
+  /** The thread reading the messages. */
+  private volatile Thread reader;
+
   /** . */
   Integer width;
 
   /** . */
   Integer height;
 
-  /** . */
-  long last;
-
-  public ClientAutomaton(ObjectOutputStream out, ObjectInputStream in, Shell shell) {
+  public ClientAutomaton(MessageOutput out, MessageInput in, Shell shell) {
     CloseableList listeners = new CloseableList();
     listeners.add(in);
     listeners.add(out);
@@ -68,12 +80,20 @@ public class ClientAutomaton implements Runnable {
     this.out = out;
     this.shell = shell;
     this.listeners = listeners;
+    this.processes = new ConcurrentHashMap<Integer, ClientProcessContext>();
+    this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "CRaSH remote process");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
     this.width = null;
     this.height = null;
   }
 
   public ClientAutomaton(InputStream in,OutputStream out, Shell shell) throws IOException {
-    this(new ObjectOutputStream(out), new ObjectInputStream(in), shell);
+    this(new MessageOutput(out), new MessageInput(in), shell);
   }
 
   public ClientAutomaton addCloseListener(Closeable closeable) {
@@ -82,38 +102,58 @@ public class ClientAutomaton implements Runnable {
   }
 
   public void run() {
+    reader = Thread.currentThread();
     try {
       while (!listeners.isClosed()) {
-        ClientMessage msg = (ClientMessage)in.readObject();
+        ClientMessage msg = (ClientMessage)in.read();
+        int channel = in.getChannel();
 
         //
         if (msg instanceof ClientMessage.GetWelcome) {
           String welcome = shell.getWelcome();
-          out.writeObject(new ServerMessage.Welcome(welcome));
+          out.write(channel, new ServerMessage.Welcome(welcome));
           out.flush();
         } else if (msg instanceof ClientMessage.GetPrompt) {
           String prompt = shell.getPrompt();
-          out.writeObject(new ServerMessage.Prompt(prompt));
+          out.write(channel, new ServerMessage.Prompt(prompt));
           out.flush();
         } else if (msg instanceof ClientMessage.GetCompletion) {
           String prefix = ((ClientMessage.GetCompletion)msg).prefix;
           CompletionMatch completion = shell.complete(prefix);
-          out.writeObject(new ServerMessage.Completion(completion));
+          out.write(channel, new ServerMessage.Completion(completion));
           out.flush();
         } else if (msg instanceof ClientMessage.SetSize) {
           ClientMessage.SetSize setSize = (ClientMessage.SetSize)msg;
+          ClientProcessContext context = processes.get(channel);
+          if (context != null) {
+            context.setSize(setSize.width, setSize.height);
+          }
           width = setSize.width;
           height = setSize.height;
-          last = System.currentTimeMillis();
         } else if (msg instanceof ClientMessage.Execute) {
           ClientMessage.Execute execute = (ClientMessage.Execute)msg;
           width = execute.width;
           height = execute.height;
-          last = System.currentTimeMillis();
-          current = new ClientProcessContext(this, shell.createProcess(execute.line));
-          current.execute();
+          final ClientProcessContext context = new ClientProcessContext(this, channel, shell.createProcess(execute.line), execute.width, execute.height);
+          processes.put(channel, context);
+          try {
+            executor.execute(new Runnable() {
+              public void run() {
+                context.execute();
+              }
+            });
+          }
+          catch (RejectedExecutionException e) {
+            context.end(ShellResponse.error(ErrorType.INTERNAL, "The process could not be executed", e));
+          }
+        } else if (msg instanceof ClientMessage.WindowUpdate) {
+          ClientProcessContext context = processes.get(channel);
+          if (context != null) {
+            context.window.grant(((ClientMessage.WindowUpdate)msg).increment);
+          }
         } else if (msg instanceof ClientMessage.Cancel) {
-          if (current != null) {
+          final ClientProcessContext context = processes.get(channel);
+          if (context != null) {
 
             // For now we
             // 1/ end the context
@@ -123,7 +163,6 @@ public class ClientAutomaton implements Runnable {
             // 2/ wait a few milli seconds
             // 3/ if it's not ended then we end it
 
-            final ClientProcessContext context = current;
             Statement statements = new Statement() {
               @Override
               protected void run() throws Throwable {
@@ -153,6 +192,18 @@ public class ClientAutomaton implements Runnable {
 
   void close() {
     listeners.close();
+    executor.shutdown();
+
+    // Wake up the reader when a process closes the client
+    Thread reader = this.reader;
+    if (reader != null && reader != Thread.currentThread()) {
+      reader.interrupt();
+    }
+
+    // Release the processes waiting for a window update
+    for (ClientProcessContext context : processes.values()) {
+      context.window.close();
+    }
   }
 
   public int getWidth() {
@@ -74,6 +74,16 @@ public abstract class ClientMessage implements Serializable {
   public static class Cancel extends ClientMessage {
   }
 
+  public static class WindowUpdate extends ClientMessage {
+
+    /** . */
+    public final int increment;
+
+    public WindowUpdate(int increment) {
+      this.increment = increment;
+    }
+  }
+
   public static class Close extends ClientMessage {
   }
 }
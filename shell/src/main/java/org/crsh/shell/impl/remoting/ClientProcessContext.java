@@ -27,48 +27,50 @@ import org.crsh.text.Chunk;
 import org.crsh.util.Statement;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 class ClientProcessContext implements ShellProcessContext {
 
   /** . */
   final ClientAutomaton client;
 
+  /** . */
+  final int channel;
+
   /** . */
   final ShellProcess process;
 
   /** . */
-  final ArrayList<Chunk> buffer;
+  final Window window;
+
+  /** The terminal width pushed by the peer. */
+  private volatile int width;
+
+  /** The terminal height pushed by the peer. */
+  private volatile int height;
 
   /** . */
   private boolean closed;
 
-  ClientProcessContext(ClientAutomaton client, ShellProcess process) {
+  /** True when chunks were provided since the last flush. */
+  private volatile boolean pending;
+
+  ClientProcessContext(ClientAutomaton client, int channel, ShellProcess process, int width, int height) {
     this.client = client;
+    this.channel = channel;
+    this.width = width;
+    this.height = height;
     this.process = process;
-    this.buffer = new ArrayList<Chunk>(1000);
+    this.window = new Window(Window.DEFAULT_SIZE);
     this.closed = false;
   }
 
-  /**
-   * Ensure we have a recent size, the size is considered as recent if it's younger than 2 second, otherwise
-   * send a get size message.
-   */
-  private void ensureSize() {
-    if (System.currentTimeMillis() - client.last > 2000) {
-      synchronized (this) {
-        try {
-          client.out.writeObject(new ServerMessage.GetSize());
-          client.out.flush();
-        }
-        catch (Exception e) {
-          //
-        }
+  void execute() {
+    synchronized (this) {
+      if (closed) {
+        // Cancelled before it started
+        return;
       }
     }
-  }
-
-  void execute() {
     try {
       process.execute(this);
     }
@@ -83,28 +85,29 @@ class ClientProcessContext implements ShellProcessContext {
     }
   }
 
+  /**
+   * Update the size, the peer pushes the size when it changes.
+   *
+   * @param width the new width
+   * @param height the new height
+   */
+  void setSize(int width, int height) {
+    this.width = width;
+    this.height = height;
+  }
+
   public int getWidth() {
-    if (!closed) {
-      ensureSize();
-      return client.getWidth();
-    } else {
-      return -1;
-    }
+    return closed ? -1 : width;
   }
 
   public int getHeight() {
-    if (!closed) {
-      ensureSize();
-      return client.getHeight();
-    } else {
-      return -1;
-    }
+    return closed ? -1 : height;
   }
 
   public boolean takeAlternateBuffer() {
     if (!closed) {
       try {
-        client.out.writeObject(new ServerMessage.UseAlternateBuffer());
+        client.out.write(channel, new ServerMessage.UseAlternateBuffer());
         client.out.flush();
       }
       catch (Exception e) {
@@ -119,7 +122,7 @@ class ClientProcessContext implements ShellProcessContext {
   public boolean releaseAlternateBuffer() {
     if (!closed) {
       try {
-        client.out.writeObject(new ServerMessage.UseMainBuffer());
+        client.out.write(channel, new ServerMessage.UseMainBuffer());
         client.out.flush();
       }
       catch (Exception e) {
@@ -137,11 +140,11 @@ class ClientProcessContext implements ShellProcessContext {
 
   public String readLine(String msg, boolean echo) {
 //    try {
-//      client.out.writeObject(ServerMessage.READLINE);
-//      client.out.writeObject(msg);
-//      client.out.writeObject(echo);
+//      client.out.write(ServerMessage.READLINE);
+//      client.out.write(msg);
+//      client.out.write(echo);
 //      client.out.flush();
-//      return (String)client.in.readObject();
+//      return (String)client.in.read();
 //    }
 //    catch (Exception e) {
 //      return null;
@@ -155,7 +158,16 @@ class ClientProcessContext implements ShellProcessContext {
 
   public void provide(Chunk element) throws IOException {
     if (!closed) {
-      buffer.add(element);
+      int size = Window.sizeOf(element);
+      if (!window.tryAcquire(size)) {
+        // Send what is batched so the receiver can update the window
+        client.out.flush();
+        window.acquire(size);
+      }
+
+      // The chunks are batched by the message output
+      client.out.write(channel, new ServerMessage.Chunk(element));
+      pending = true;
     }
   }
 
@@ -164,21 +176,14 @@ class ClientProcessContext implements ShellProcessContext {
   }
 
   public synchronized void flush() {
-    if (!closed) {
-      if (buffer.size() > 0) {
-        try {
-          for (Chunk chunk : buffer) {
-            client.out.writeObject(new ServerMessage.Chunk(chunk));
-          }
-          client.out.writeObject(new ServerMessage.Flush());
-          client.out.flush();
-        }
-        catch (IOException ignore) {
-          //
-        }
-        finally {
-          buffer.clear();
-        }
+    if (!closed && pending) {
+      pending = false;
+      try {
+        client.out.write(channel, new ServerMessage.Flush());
+        client.out.flush();
+      }
+      catch (IOException ignore) {
+        //
       }
     }
   }
@@ -186,15 +191,14 @@ class ClientProcessContext implements ShellProcessContext {
   public synchronized void end(ShellResponse response) {
 
     // It may have been cancelled concurrently
-    if (client.current == this) {
+    if (client.processes.remove(channel, this)) {
 
       // Flush what we have in buffer first
       flush();
 
       // Send end message
       try {
-        client.current = null;
-        client.out.writeObject(new ServerMessage.End(response));
+        client.out.write(channel, new ServerMessage.End(response));
         client.out.flush();
       }
       catch (IOException ignore) {
@@ -202,6 +206,7 @@ class ClientProcessContext implements ShellProcessContext {
       }
       finally {
         closed = true;
+        window.close();
         if (response instanceof ShellResponse.Close) {
           client.close();
         }
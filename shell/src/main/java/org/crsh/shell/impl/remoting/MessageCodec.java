@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.remoting;
+
+import org.crsh.text.Color;
+import org.crsh.text.Style;
+import org.crsh.text.Text;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/**
+ * Encodes and decodes the payload of a remoting frame. The control messages, the size messages and the text chunks
+ * have a dedicated binary codec, any other message or chunk is encoded with Java serialization. Each frame uses its
+ * own object stream so that no state is retained between two frames.
+ *
+ * @param <M> the message type
+ */
+abstract class MessageCodec<M> {
+
+  /** The protocol magic number: "CRSH". */
+  static final int MAGIC = 0x43525348;
+
+  /** The protocol version. */
+  static final int VERSION = 4;
+
+  /** The size of a frame header: the payload length, the frame type and the channel id. */
+  static final int FRAME_HEADER_SIZE = 7;
+
+  /** The maximum size of a frame payload, it also bounds the size of an inflated batch. */
+  static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+  /** The type of a frame aggregating several frames. */
+  static final int BATCH = 64;
+
+  /** The type of a frame aggregating several frames compressed with deflate. */
+  static final int DEFLATED_BATCH = 65;
+
+  /** . */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /** . */
+  private static final Color[] COLORS = Color.values();
+
+  /** . */
+  private static final MessageCodec<?>[] BY_TYPE = new MessageCodec<?>[256];
+
+  /** . */
+  private static final HashMap<Class<?>, MessageCodec<?>> BY_CLASS = new HashMap<Class<?>, MessageCodec<?>>();
+
+  // Client messages ***************************************************************************************************
+
+  static final MessageCodec<ClientMessage.GetWelcome> GET_WELCOME = new Empty<ClientMessage.GetWelcome>(1, ClientMessage.GetWelcome.class) {
+    ClientMessage.GetWelcome create() {
+      return new ClientMessage.GetWelcome();
+    }
+  };
+
+  static final MessageCodec<ClientMessage.GetPrompt> GET_PROMPT = new Empty<ClientMessage.GetPrompt>(2, ClientMessage.GetPrompt.class) {
+    ClientMessage.GetPrompt create() {
+      return new ClientMessage.GetPrompt();
+    }
+  };
+
+  static final MessageCodec<ClientMessage.GetCompletion> GET_COMPLETION = new MessageCodec<ClientMessage.GetCompletion>(3, ClientMessage.GetCompletion.class) {
+    void encode(DataOutputStream out, ClientMessage.GetCompletion message) throws IOException {
+      writeString(out, message.prefix);
+    }
+    ClientMessage.GetCompletion decode(DataInputStream in) throws IOException {
+      return new ClientMessage.GetCompletion(readString(in));
+    }
+  };
+
+  static final MessageCodec<ClientMessage.SetSize> SET_SIZE = new MessageCodec<ClientMessage.SetSize>(4, ClientMessage.SetSize.class) {
+    void encode(DataOutputStream out, ClientMessage.SetSize message) throws IOException {
+      out.writeInt(message.width);
+      out.writeInt(message.height);
+    }
+    ClientMessage.SetSize decode(DataInputStream in) throws IOException {
+      return new ClientMessage.SetSize(in.readInt(), in.readInt());
+    }
+  };
+
+  static final MessageCodec<ClientMessage.Execute> EXECUTE = new MessageCodec<ClientMessage.Execute>(5, ClientMessage.Execute.class) {
+    void encode(DataOutputStream out, ClientMessage.Execute message) throws IOException {
+      out.writeInt(message.width);
+      out.writeInt(message.height);
+      writeString(out, message.line);
+    }
+    ClientMessage.Execute decode(DataInputStream in) throws IOException {
+      return new ClientMessage.Execute(in.readInt(), in.readInt(), readString(in));
+    }
+  };
+
+  static final MessageCodec<ClientMessage.Cancel> CANCEL = new Empty<ClientMessage.Cancel>(6, ClientMessage.Cancel.class) {
+    ClientMessage.Cancel create() {
+      return new ClientMessage.Cancel();
+    }
+  };
+
+  static final MessageCodec<ClientMessage.Close> CLOSE = new Empty<ClientMessage.Close>(7, ClientMessage.Close.class) {
+    ClientMessage.Close create() {
+      return new ClientMessage.Close();
+    }
+  };
+
+  static final MessageCodec<ClientMessage.WindowUpdate> WINDOW_UPDATE = new MessageCodec<ClientMessage.WindowUpdate>(8, ClientMessage.WindowUpdate.class) {
+    void encode(DataOutputStream out, ClientMessage.WindowUpdate message) throws IOException {
+      out.writeInt(message.increment);
+    }
+    ClientMessage.WindowUpdate decode(DataInputStream in) throws IOException {
+      return new ClientMessage.WindowUpdate(in.readInt());
+    }
+  };
+
+  // Server messages ***************************************************************************************************
+
+  static final MessageCodec<ServerMessage.Welcome> WELCOME = new MessageCodec<ServerMessage.Welcome>(16, ServerMessage.Welcome.class) {
+    void encode(DataOutputStream out, ServerMessage.Welcome message) throws IOException {
+      writeString(out, message.value);
+    }
+    ServerMessage.Welcome decode(DataInputStream in) throws IOException {
+      return new ServerMessage.Welcome(readString(in));
+    }
+  };
+
+  static final MessageCodec<ServerMessage.Prompt> PROMPT = new MessageCodec<ServerMessage.Prompt>(17, ServerMessage.Prompt.class) {
+    void encode(DataOutputStream out, ServerMessage.Prompt message) throws IOException {
+      writeString(out, message.value);
+    }
+    ServerMessage.Prompt decode(DataInputStream in) throws IOException {
+      return new ServerMessage.Prompt(readString(in));
+    }
+  };
+
+  static final MessageCodec<ServerMessage.UseMainBuffer> USE_MAIN_BUFFER = new Empty<ServerMessage.UseMainBuffer>(18, ServerMessage.UseMainBuffer.class) {
+    ServerMessage.UseMainBuffer create() {
+      return new ServerMessage.UseMainBuffer();
+    }
+  };
+
+  static final MessageCodec<ServerMessage.UseAlternateBuffer> USE_ALTERNATE_BUFFER = new Empty<ServerMessage.UseAlternateBuffer>(19, ServerMessage.UseAlternateBuffer.class) {
+    ServerMessage.UseAlternateBuffer create() {
+      return new ServerMessage.UseAlternateBuffer();
+    }
+  };
+
+  static final MessageCodec<ServerMessage.ReadLine> READ_LINE = new Empty<ServerMessage.ReadLine>(21, ServerMessage.ReadLine.class) {
+    ServerMessage.ReadLine create() {
+      return new ServerMessage.ReadLine();
+    }
+  };
+
+  static final MessageCodec<ServerMessage.Flush> FLUSH = new Empty<ServerMessage.Flush>(22, ServerMessage.Flush.class) {
+    ServerMessage.Flush create() {
+      return new ServerMessage.Flush();
+    }
+  };
+
+  // Chunks ************************************************************************************************************
+
+  static final MessageCodec<ServerMessage.Chunk> TEXT = new MessageCodec<ServerMessage.Chunk>(32, null) {
+    void encode(DataOutputStream out, ServerMessage.Chunk message) throws IOException {
+      writeString(out, ((Text)message.payload).getText().toString());
+    }
+    ServerMessage.Chunk decode(DataInputStream in) throws IOException {
+      return new ServerMessage.Chunk(Text.create(readString(in)));
+    }
+  };
+
+  static final MessageCodec<ServerMessage.Chunk> STYLE = new MessageCodec<ServerMessage.Chunk>(33, null) {
+    void encode(DataOutputStream out, ServerMessage.Chunk message) throws IOException {
+      Style style = (Style)message.payload;
+      if (style instanceof Style.Composite) {
+        Style.Composite composite = (Style.Composite)style;
+        out.writeByte(1);
+        out.writeByte(encodeBoolean(composite.getBold()));
+        out.writeByte(encodeBoolean(composite.getUnderline()));
+        out.writeByte(encodeBoolean(composite.getBlink()));
+        out.writeByte(encodeColor(composite.getForeground()));
+        out.writeByte(encodeColor(composite.getBackground()));
+      } else {
+        out.writeByte(0);
+      }
+    }
+    ServerMessage.Chunk decode(DataInputStream in) throws IOException {
+      Style style;
+      if (in.readByte() == 1) {
+        Boolean bold = decodeBoolean(in.readByte());
+        Boolean underline = decodeBoolean(in.readByte());
+        Boolean blink = decodeBoolean(in.readByte());
+        Color foreground = decodeColor(in.readByte());
+        Color background = decodeColor(in.readByte());
+        style = Style.style(bold, underline, blink, foreground, background);
+      } else {
+        style = Style.reset;
+      }
+      return new ServerMessage.Chunk(style);
+    }
+  };
+
+  static final MessageCodec<ServerMessage.Chunk> CLS = new MessageCodec<ServerMessage.Chunk>(34, null) {
+    void encode(DataOutputStream out, ServerMessage.Chunk message) throws IOException {
+    }
+    ServerMessage.Chunk decode(DataInputStream in) throws IOException {
+      return new ServerMessage.Chunk(org.crsh.text.CLS.INSTANCE);
+    }
+  };
+
+  // Fallback **********************************************************************************************************
+
+  static final MessageCodec<Object> SERIALIZED = new MessageCodec<Object>(127, null) {
+    void encode(DataOutputStream out, Object message) throws IOException {
+      ObjectOutputStream oos = new ObjectOutputStream(out);
+      oos.writeObject(message);
+      oos.flush();
+    }
+    Object decode(DataInputStream in) throws IOException, ClassNotFoundException {
+      return new ObjectInputStream(in).readObject();
+    }
+  };
+
+  /**
+   * Returns the codec of a frame type.
+   *
+   * @param type the frame type
+   * @return the codec or null when the type is unknown
+   */
+  static MessageCodec<?> forType(int type) {
+    return type >= 0 && type < BY_TYPE.length ? BY_TYPE[type] : null;
+  }
+
+  /**
+   * Returns the codec for encoding a message, when the message has no dedicated codec the serialization codec
+   * is returned.
+   *
+   * @param message the message
+   * @return the codec
+   */
+  static MessageCodec<?> forMessage(Object message) {
+    if (message instanceof ServerMessage.Chunk) {
+      org.crsh.text.Chunk payload = ((ServerMessage.Chunk)message).payload;
+      if (payload instanceof Text) {
+        return TEXT;
+      } else if (payload instanceof Style) {
+        return STYLE;
+      } else if (payload instanceof org.crsh.text.CLS) {
+        return CLS;
+      } else {
+        return SERIALIZED;
+      }
+    } else {
+      MessageCodec<?> codec = BY_CLASS.get(message.getClass());
+      return codec != null ? codec : SERIALIZED;
+    }
+  }
+
+  /** The frame type. */
+  final int type;
+
+  MessageCodec(int type, Class<M> messageType) {
+    if (BY_TYPE[type] != null) {
+      throw new AssertionError("Duplicate frame type " + type);
+    }
+    BY_TYPE[type] = this;
+    if (messageType != null) {
+      BY_CLASS.put(messageType, this);
+    }
+    this.type = type;
+  }
+
+  abstract void encode(DataOutputStream out, M message) throws IOException;
+
+  abstract M decode(DataInputStream in) throws IOException, ClassNotFoundException;
+
+  /**
+   * A codec for a message without state.
+   */
+  private static abstract class Empty<M> extends MessageCodec<M> {
+
+    Empty(int type, Class<M> messageType) {
+      super(type, messageType);
+    }
+
+    abstract M create();
+
+    void encode(DataOutputStream out, M message) {
+    }
+
+    M decode(DataInputStream in) {
+      return create();
+    }
+  }
+
+  static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = s.getBytes(UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    } else {
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return new String(bytes, UTF_8);
+    }
+  }
+
+  private static int encodeBoolean(Boolean value) {
+    return value == null ? 0 : value ? 1 : 2;
+  }
+
+  private static Boolean decodeBoolean(int value) {
+    return value == 0 ? null : value == 1;
+  }
+
+  private static int encodeColor(Color color) {
+    return color == null ? -1 : color.ordinal();
+  }
+
+  private static Color decodeColor(int value) {
+    return value < 0 ? null : COLORS[value];
+  }
+}
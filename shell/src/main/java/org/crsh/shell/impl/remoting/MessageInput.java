@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.remoting;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the remoting messages written by a {@link MessageOutput}. The protocol header is checked when the first
+ * message is read and each frame payload is read fully before it is decoded. A batch is read at once and its frames
+ * are then decoded one by one as messages are read.
+ */
+public class MessageInput implements Closeable {
+
+  /** . */
+  private final DataInputStream in;
+
+  /** . */
+  private byte[] buffer;
+
+  /** The frames of the current batch. */
+  private byte[] batchBuffer;
+
+  /** The current batch or null. */
+  private DataInputStream batch;
+
+  /** . */
+  private Inflater inflater;
+
+  /** . */
+  private boolean started;
+
+  /** Guards the closed and reading state, the inflater is released by the last of the reader and the closer. */
+  private final Object state = new Object();
+
+  /** . */
+  private boolean closed;
+
+  /** . */
+  private boolean reading;
+
+  /** The channel of the last message read. */
+  private int channel;
+
+  public MessageInput(InputStream in) {
+    this.in = new DataInputStream(in);
+    this.buffer = new byte[256];
+    this.batchBuffer = new byte[MessageOutput.DEFAULT_BATCH_SIZE];
+    this.started = false;
+  }
+
+  /**
+   * Read the next message.
+   *
+   * @return the message
+   * @throws IOException any io exception
+   * @throws ClassNotFoundException when a serialized message cannot be resolved
+   */
+  public synchronized Object read() throws IOException, ClassNotFoundException {
+    synchronized (state) {
+      if (closed) {
+        throw new IOException("Closed");
+      }
+      reading = true;
+    }
+    try {
+      return doRead();
+    }
+    finally {
+      synchronized (state) {
+        reading = false;
+        if (closed) {
+          release();
+        }
+      }
+    }
+  }
+
+  private Object doRead() throws IOException, ClassNotFoundException {
+    if (!started) {
+      int magic = in.readInt();
+      if (magic != MessageCodec.MAGIC) {
+        throw new StreamCorruptedException("Invalid remoting stream header " + Integer.toHexString(magic));
+      }
+      int version = in.readUnsignedShort();
+      if (version != MessageCodec.VERSION) {
+        throw new StreamCorruptedException("Unsupported remoting protocol version " + version);
+      }
+      started = true;
+    }
+    while (true) {
+      DataInputStream from;
+      if (batch != null && batch.available() > 0) {
+        from = batch;
+      } else {
+        from = in;
+        batch = null;
+      }
+      int length = from.readInt();
+      int type = from.readUnsignedByte();
+      int channel = from.readUnsignedShort();
+      if (length < 0 || length > MessageCodec.MAX_FRAME_SIZE) {
+        throw new StreamCorruptedException("Invalid frame length " + length);
+      }
+      if (type == MessageCodec.BATCH || type == MessageCodec.DEFLATED_BATCH) {
+        if (from == batch) {
+          throw new StreamCorruptedException("Invalid nested batch");
+        }
+        int size;
+        if (type == MessageCodec.BATCH) {
+          batchBuffer = ensureCapacity(batchBuffer, length);
+          in.readFully(batchBuffer, 0, length);
+          size = length;
+        } else {
+          if (length < 4) {
+            throw new StreamCorruptedException("Invalid compressed batch length " + length);
+          }
+          size = in.readInt();
+          if (size < 0 || size > MessageCodec.MAX_FRAME_SIZE) {
+            throw new StreamCorruptedException("Invalid compressed batch size " + size);
+          }
+          buffer = ensureCapacity(buffer, length - 4);
+          in.readFully(buffer, 0, length - 4);
+          batchBuffer = ensureCapacity(batchBuffer, size);
+          inflate(length - 4, size);
+        }
+        batch = new DataInputStream(new ByteArrayInputStream(batchBuffer, 0, size));
+      } else {
+        MessageCodec<?> codec = MessageCodec.forType(type);
+        if (codec == null) {
+          throw new StreamCorruptedException("Unknown frame type " + type);
+        }
+        buffer = ensureCapacity(buffer, length);
+        from.readFully(buffer, 0, length);
+        this.channel = channel;
+        return codec.decode(new DataInputStream(new ByteArrayInputStream(buffer, 0, length)));
+      }
+    }
+  }
+
+  /**
+   * Returns the channel id of the last message read.
+   *
+   * @return the channel id
+   */
+  public int getChannel() {
+    return channel;
+  }
+
+  /**
+   * Close the input and release the inflater.
+   *
+   * @throws IOException any io exception
+   */
+  public void close() throws IOException {
+    try {
+      // Not synchronized, it must be possible to close the stream while a reader is blocked
+      in.close();
+    }
+    finally {
+      // A blocked reader may not be woken up, it will release the inflater when it returns
+      synchronized (state) {
+        closed = true;
+        if (!reading) {
+          release();
+        }
+      }
+    }
+  }
+
+  private void release() {
+    if (inflater != null) {
+      inflater.end();
+      inflater = null;
+    }
+  }
+
+  private void inflate(int length, int size) throws IOException {
+    if (inflater == null) {
+      inflater = new Inflater();
+    } else {
+      inflater.reset();
+    }
+    inflater.setInput(buffer, 0, length);
+    try {
+      int count = 0;
+      while (count < size && !inflater.finished()) {
+        int len = inflater.inflate(batchBuffer, count, size - count);
+        if (len == 0 && inflater.needsInput()) {
+          break;
+        }
+        count += len;
+      }
+      if (count != size) {
+        throw new StreamCorruptedException("Invalid compressed batch size " + count + " instead of " + size);
+      }
+    }
+    catch (DataFormatException e) {
+      StreamCorruptedException sce = new StreamCorruptedException("Invalid compressed batch");
+      sce.initCause(e);
+      throw sce;
+    }
+  }
+
+  private static byte[] ensureCapacity(byte[] buffer, int length) {
+    return buffer.length < length ? new byte[Math.max(length, buffer.length * 2)] : buffer;
+  }
+}
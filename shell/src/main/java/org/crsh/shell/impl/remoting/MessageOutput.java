@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.remoting;
+
+import org.crsh.util.AggregatingOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Writes remoting messages as length prefixed frames. The stream starts with the protocol magic number and version,
+ * then each frame is made of the payload length, the frame type, the channel id and the payload. The channel 0 is
+ * the connection channel, the other channels are used by the processes.
+ *
+ * The frames are aggregated in a batch sent as a single frame when it reaches the batch size or when the output is
+ * flushed, the flushes themselves are coalesced by an {@link AggregatingOutputStream}. When a compression threshold
+ * is set, the batches larger than the threshold are compressed with deflate.
+ */
+public class MessageOutput implements Closeable, Flushable {
+
+  /** The default batch size. */
+  public static final int DEFAULT_BATCH_SIZE = 8192;
+
+  /** The highest channel id. */
+  public static final int MAX_CHANNEL = 0xFFFF;
+
+  /** . */
+  private final DataOutputStream out;
+
+  /** The payload of the frame being written. */
+  private final Buffer payload;
+
+  /** . */
+  private final DataOutputStream data;
+
+  /** The frames of the current batch. */
+  private final Buffer batch;
+
+  /** . */
+  private final DataOutputStream batchData;
+
+  /** The number of frames in the current batch. */
+  private int count;
+
+  /** . */
+  private final int batchSize;
+
+  /** The compression threshold or -1 when compression is disabled. */
+  private final int compressionThreshold;
+
+  /** . */
+  private final Deflater deflater;
+
+  /** . */
+  private final Buffer compressed;
+
+  /** . */
+  private final byte[] chunk;
+
+  /** . */
+  private boolean closed;
+
+  public MessageOutput(OutputStream out) throws IOException {
+    this(out, DEFAULT_BATCH_SIZE, -1);
+  }
+
+  public MessageOutput(OutputStream out, int batchSize, int compressionThreshold) throws IOException, IllegalArgumentException {
+    this(out, batchSize, compressionThreshold, AggregatingOutputStream.DEFAULT_DELAY);
+  }
+
+  /**
+   * Create a new message output.
+   *
+   * @param out the underlying stream
+   * @param batchSize the size above which a batch is sent without waiting for a flush
+   * @param compressionThreshold the size above which a batch is compressed or a negative value to disable compression
+   * @param flushDelay the delay in nanoseconds during which consecutive flushes are coalesced
+   * @throws IOException any io exception
+   * @throws IllegalArgumentException if the batch size is not positive or greater than the maximum frame size or
+   *         the delay is negative
+   */
+  public MessageOutput(OutputStream out, int batchSize, int compressionThreshold, long flushDelay) throws IOException, IllegalArgumentException {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be positive");
+    }
+    if (batchSize > MessageCodec.MAX_FRAME_SIZE) {
+      throw new IllegalArgumentException("Batch size must not be greater than " + MessageCodec.MAX_FRAME_SIZE);
+    }
+    this.out = new DataOutputStream(new AggregatingOutputStream(out, batchSize, flushDelay));
+    this.payload = new Buffer(256);
+    this.data = new DataOutputStream(payload);
+    this.batch = new Buffer(batchSize);
+    this.batchData = new DataOutputStream(batch);
+    this.count = 0;
+    this.batchSize = batchSize;
+    this.compressionThreshold = compressionThreshold < 0 ? -1 : compressionThreshold;
+    this.deflater = compressionThreshold < 0 ? null : new Deflater(Deflater.BEST_SPEED);
+    this.compressed = compressionThreshold < 0 ? null : new Buffer(batchSize);
+    this.chunk = compressionThreshold < 0 ? null : new byte[4096];
+
+    // Send the header now so the peer can check it
+    this.out.writeInt(MessageCodec.MAGIC);
+    this.out.writeShort(MessageCodec.VERSION);
+    this.out.flush();
+  }
+
+  /**
+   * Write a message on the connection channel.
+   *
+   * @param message the message
+   * @throws IOException any io exception
+   */
+  public void write(Object message) throws IOException {
+    write(0, message);
+  }
+
+  /**
+   * Write a message, the message is sent when the batch is full or when the output is flushed.
+   *
+   * @param channel the channel id
+   * @param message the message
+   * @throws IOException any io exception or when the encoded message is larger than the maximum frame size
+   * @throws IllegalArgumentException if the channel id is not an unsigned short
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized void write(int channel, Object message) throws IOException, IllegalArgumentException {
+    if (channel < 0 || channel > MAX_CHANNEL) {
+      throw new IllegalArgumentException("Invalid channel id " + channel);
+    }
+    MessageCodec<Object> codec = (MessageCodec<Object>)MessageCodec.forMessage(message);
+    payload.reset();
+    codec.encode(data, message);
+    data.flush();
+    int length = payload.size();
+    if (length > MessageCodec.MAX_FRAME_SIZE - MessageCodec.FRAME_HEADER_SIZE) {
+      throw new IOException("Message size " + length + " exceeds the maximum frame size");
+    }
+    if (batch.size() + MessageCodec.FRAME_HEADER_SIZE + length > MessageCodec.MAX_FRAME_SIZE) {
+      send();
+    }
+    batchData.writeInt(length);
+    batchData.writeByte(codec.type);
+    batchData.writeShort(channel);
+    payload.writeTo(batchData);
+    count++;
+    if (batch.size() >= batchSize) {
+      send();
+    }
+  }
+
+  public synchronized void flush() throws IOException {
+    send();
+    out.flush();
+  }
+
+  /**
+   * Close the output, the messages written since the last flush are discarded and the deflater is released.
+   *
+   * @throws IOException any io exception
+   */
+  public void close() throws IOException {
+    try {
+      // Not synchronized, it must be possible to close the stream while a writer is blocked
+      out.close();
+    }
+    finally {
+      // Closing the stream fails a blocked writer, then the deflater can be released
+      synchronized (this) {
+        if (!closed) {
+          closed = true;
+          if (deflater != null) {
+            deflater.end();
+          }
+        }
+      }
+    }
+  }
+
+  private void send() throws IOException {
+    if (closed) {
+      throw new IOException("Closed");
+    }
+    if (count > 0) {
+      try {
+        int size = batch.size();
+        if (deflater == null || size < compressionThreshold || !deflate(size)) {
+          if (count > 1) {
+            out.writeInt(size);
+            out.writeByte(MessageCodec.BATCH);
+            out.writeShort(0);
+          }
+          out.write(batch.array(), 0, size);
+        }
+      }
+      finally {
+        batch.reset();
+        count = 0;
+      }
+    }
+  }
+
+  /**
+   * Send the current batch compressed.
+   *
+   * @param size the batch size
+   * @return false when compression does not reduce the batch size and nothing was sent
+   * @throws IOException any io exception
+   */
+  private boolean deflate(int size) throws IOException {
+    deflater.reset();
+    deflater.setInput(batch.array(), 0, size);
+    deflater.finish();
+    compressed.reset();
+    while (!deflater.finished()) {
+      int len = deflater.deflate(chunk);
+      compressed.write(chunk, 0, len);
+      if (compressed.size() + 4 >= size) {
+        return false;
+      }
+    }
+    out.writeInt(compressed.size() + 4);
+    out.writeByte(MessageCodec.DEFLATED_BATCH);
+    out.writeShort(0);
+    out.writeInt(size);
+    out.write(compressed.array(), 0, compressed.size());
+    return true;
+  }
+
+  /**
+   * A byte array output stream giving access to its array.
+   */
+  private static class Buffer extends ByteArrayOutputStream {
+
+    Buffer(int size) {
+      super(size);
+    }
+
+    byte[] array() {
+      return buf;
+    }
+  }
+}
@@ -34,16 +34,29 @@ public class RemoteClient extends AbstractSocketClient {
   /** . */
   private final Shell shell;
 
+  /** . */
+  private final int batchSize;
+
+  /** . */
+  private final int compressionThreshold;
+
   public RemoteClient(int port, Shell shell) {
+    this(port, shell, MessageOutput.DEFAULT_BATCH_SIZE, -1);
+  }
+
+  public RemoteClient(int port, Shell shell, int batchSize, int compressionThreshold) {
     super(port);
 
     //
     this.shell = shell;
+    this.batchSize = batchSize;
+    this.compressionThreshold = compressionThreshold;
   }
 
   @Override
   protected void handle(InputStream in, OutputStream out) throws IOException {
-    this.automaton = new ClientAutomaton(in, out, shell).addCloseListener(this);;
+    MessageOutput output = new MessageOutput(out, batchSize, compressionThreshold);
+    this.automaton = new ClientAutomaton(output, new MessageInput(in), shell).addCloseListener(this);
   }
 
   public Runnable getRunnable() {
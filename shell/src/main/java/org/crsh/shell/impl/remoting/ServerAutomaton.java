@@ -27,33 +27,54 @@ import org.crsh.shell.ShellResponse;
 import org.crsh.util.CloseableList;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class ServerAutomaton implements Shell {
 
+  /** The period at which the size of a process context is checked, in milliseconds. */
+  static final long SIZE_CHECK_PERIOD = 250;
+
+  /** The failure delivered to the channels when the connection fails. */
+  private static final Object FAILURE = new Object();
+
   /** . */
   final Logger log = Logger.getLogger(ServerAutomaton.class.getName());
 
   /** . */
-  final ObjectInputStream in;
+  final MessageInput in;
 
   /** . */
-  final ObjectOutputStream out;
+  final MessageOutput out;
+
+  /** The responses of the connection channel. */
+  final BlockingQueue<Object> control;
+
+  /** The messages of the process channels by channel id. */
+  final ConcurrentHashMap<Integer, BlockingQueue<Object>> channels;
 
   /** . */
-  ServerProcess process;
+  private int nextChannel;
+
+  /** The thread reading and dispatching the messages to the channels. */
+  private Thread reader;
+
+  /** The failure of the reader. */
+  private volatile Exception failure;
 
   /** . */
   final CloseableList listeners;
 
-  public ServerAutomaton(ObjectOutputStream out, ObjectInputStream in) {
+  public ServerAutomaton(MessageOutput out, MessageInput in) {
     CloseableList listeners = new CloseableList();
     listeners.add(in);
     listeners.add(out);
@@ -61,11 +82,14 @@ public class ServerAutomaton implements Shell {
     //
     this.in = in;
     this.out = out;
+    this.control = new LinkedBlockingQueue<Object>();
+    this.channels = new ConcurrentHashMap<Integer, BlockingQueue<Object>>();
+    this.nextChannel = 1;
     this.listeners = listeners;
   }
 
   public ServerAutomaton(InputStream in, OutputStream out) throws IOException {
-    this(new ObjectOutputStream(out), new ObjectInputStream(in));
+    this(new MessageOutput(out), new MessageInput(in));
   }
 
   public ServerAutomaton addCloseListener(Closeable closeable) {
@@ -74,25 +98,11 @@ public class ServerAutomaton implements Shell {
   }
 
   public String getWelcome() {
-    try {
-      out.writeObject(new ClientMessage.GetWelcome());
-      out.flush();
-      return ((ServerMessage.Welcome)in.readObject()).value;
-    }
-    catch (Exception e) {
-      throw new UndeclaredThrowableException(e);
-    }
+    return request(new ClientMessage.GetWelcome(), ServerMessage.Welcome.class).value;
   }
 
   public String getPrompt() {
-    try {
-      out.writeObject(new ClientMessage.GetPrompt());
-      out.flush();
-      return ((ServerMessage.Prompt)in.readObject()).value;
-    }
-    catch (Exception e) {
-      throw new UndeclaredThrowableException(e);
-    }
+    return request(new ClientMessage.GetPrompt(), ServerMessage.Prompt.class).value;
   }
 
   public ShellProcess createProcess(String request) throws IllegalStateException {
@@ -100,46 +110,165 @@ public class ServerAutomaton implements Shell {
   }
 
   public CompletionMatch complete(String prefix) {
+    return request(new ClientMessage.GetCompletion(prefix), ServerMessage.Completion.class).value;
+  }
+
+  public void close() {
+    listeners.close();
+  }
+
+  /**
+   * Send a request on the connection channel and wait for its response, the requests are sent one at a time.
+   *
+   * @param request the request
+   * @param responseType the expected response type
+   * @param <R> the response type
+   * @return the response
+   */
+  private <R> R request(ClientMessage request, Class<R> responseType) {
+    synchronized (control) {
+      try {
+        start();
+        if (failure != null) {
+          throw failure;
+        }
+        out.write(0, request);
+        out.flush();
+        return responseType.cast(take(control));
+      }
+      catch (Exception e) {
+        throw new UndeclaredThrowableException(e);
+      }
+    }
+  }
+
+  private Object take(BlockingQueue<Object> queue) throws Exception {
+    Object o = queue.take();
+    if (o == FAILURE) {
+      throw failure;
+    }
+    return o;
+  }
+
+  private Object poll(BlockingQueue<Object> queue, long timeout) throws Exception {
+    Object o = queue.poll(timeout, TimeUnit.MILLISECONDS);
+    if (o == FAILURE) {
+      throw failure;
+    }
+    return o;
+  }
+
+  /**
+   * Start the reader thread if it is not yet started.
+   */
+  private synchronized void start() {
+    if (reader == null) {
+      reader = new Thread("CRaSH remoting reader") {
+        @Override
+        public void run() {
+          read();
+        }
+      };
+      reader.setDaemon(true);
+      reader.start();
+    }
+  }
+
+  private void read() {
     try {
-      out.writeObject(new ClientMessage.GetCompletion(prefix));
-      out.flush();
-      return ((ServerMessage.Completion)in.readObject()).value;
+      while (!listeners.isClosed()) {
+        Object msg = in.read();
+        int channel = in.getChannel();
+        if (channel == 0) {
+          control.add(msg);
+        } else {
+          BlockingQueue<Object> queue = channels.get(channel);
+          if (queue != null) {
+            queue.add(msg);
+          } else {
+            log.log(Level.FINE, "Discarding message " + msg + " of closed channel " + channel);
+          }
+        }
+      }
+      failure = new EOFException("Connection closed");
     }
     catch (Exception e) {
-      throw new UndeclaredThrowableException(e);
+      failure = e;
+    }
+    finally {
+      control.add(FAILURE);
+      for (BlockingQueue<Object> queue : channels.values()) {
+        queue.add(FAILURE);
+      }
     }
   }
 
-  public void close() {
-    listeners.close();
+  /**
+   * Allocate a channel for a process.
+   *
+   * @param queue the channel queue
+   * @return the channel id
+   * @throws IllegalStateException when all the channels are used
+   */
+  private synchronized int open(BlockingQueue<Object> queue) throws IllegalStateException {
+    for (int i = 0;i < MessageOutput.MAX_CHANNEL;i++) {
+      int channel = nextChannel;
+      nextChannel = nextChannel == MessageOutput.MAX_CHANNEL ? 1 : nextChannel + 1;
+      if (channels.putIfAbsent(channel, queue) == null) {
+        return channel;
+      }
+    }
+    throw new IllegalStateException("No channel available");
   }
 
   void execute(ServerProcess process, ShellProcessContext processContext) throws IllegalStateException {
 
-    if (this.process == null) {
-      this.process = process;
-    } else {
-      throw new IllegalStateException();
-    }
+    //
+    BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+    int channel = open(queue);
+    process.channel = channel;
 
     //
     ShellResponse response = null;
     try {
-      out.writeObject(new ClientMessage.Execute(processContext.getWidth(), processContext.getHeight(), process.line));
+      start();
+      if (failure != null) {
+        throw failure;
+      }
+      int width = processContext.getWidth();
+      int height = processContext.getHeight();
+      out.write(channel, new ClientMessage.Execute(width, height, process.line));
       out.flush();
 
       //
+      int consumed = 0;
+      long lastCheck = System.nanoTime();
       while (response == null) {
-        ServerMessage msg = (ServerMessage)in.readObject();
-        if (msg instanceof ServerMessage.GetSize) {
-          out.writeObject(new ClientMessage.SetSize(processContext.getWidth(), processContext.getHeight()));
-          out.flush();
+        ServerMessage msg = (ServerMessage)poll(queue, SIZE_CHECK_PERIOD);
+
+        // Push the size when it changes, the peer never asks for it
+        long now = System.nanoTime();
+        if (now - lastCheck >= TimeUnit.MILLISECONDS.toNanos(SIZE_CHECK_PERIOD)) {
+          lastCheck = now;
+          int w = processContext.getWidth();
+          int h = processContext.getHeight();
+          if (w != width || h != height) {
+            width = w;
+            height = h;
+            out.write(channel, new ClientMessage.SetSize(width, height));
+            out.flush();
+          }
+        }
+
+        //
+        if (msg == null) {
+          // Nothing received
         } else if (msg instanceof ServerMessage.ReadLine) {
 //            // This case should not really well supported ?
-//            String request = (String)in.readObject();
-//            boolean echo = (Boolean)in.readObject();
+//            String request = (String)in.read();
+//            boolean echo = (Boolean)in.read();
 //            String line = processContext.readLine(request, echo);
-//            out.writeObject(line);
+//            out.write(line);
 //            out.flush();
 //            break;
           throw new UnsupportedOperationException("Not handled");
@@ -150,7 +279,16 @@ public class ServerAutomaton implements Shell {
         } else if (msg instanceof ServerMessage.End) {
           response = ((ServerMessage.End)msg).response;
         } else if (msg instanceof ServerMessage.Chunk) {
-          processContext.write(((ServerMessage.Chunk)msg).payload);
+          org.crsh.text.Chunk payload = ((ServerMessage.Chunk)msg).payload;
+          processContext.write(payload);
+
+          // Update the window once the chunks are consumed
+          consumed += Window.sizeOf(payload);
+          if (consumed >= Window.DEFAULT_SIZE / 2) {
+            out.write(channel, new ClientMessage.WindowUpdate(consumed));
+            out.flush();
+            consumed = 0;
+          }
         } else if (msg instanceof ServerMessage.Flush) {
           processContext.flush();
         } else {
@@ -165,7 +303,8 @@ public class ServerAutomaton implements Shell {
     finally {
 
       //
-      this.process = null;
+      channels.remove(channel);
+      process.channel = 0;
 
       //
       if (response != null) {
@@ -177,10 +316,11 @@ public class ServerAutomaton implements Shell {
   }
 
   void cancel(ServerProcess process) throws IllegalStateException {
-    if (process == this.process) {
-      this.process = null;
+    int channel = process.channel;
+    if (channel != 0) {
+      process.channel = 0;
       try {
-        out.writeObject(new ClientMessage.Cancel());
+        out.write(channel, new ClientMessage.Cancel());
         out.flush();
       }
       catch (IOException ignore) {
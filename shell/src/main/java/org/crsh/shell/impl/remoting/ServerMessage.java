@@ -68,10 +68,6 @@ public class ServerMessage implements Serializable {
 
   }
 
-  public static class GetSize extends ServerMessage {
-
-  }
-
   public static class ReadLine extends ServerMessage {
 
   }
@@ -33,6 +33,9 @@ public class ServerProcess implements ShellProcess {
   /** . */
   private int status;
 
+  /** The channel of the process during its execution or 0. */
+  volatile int channel;
+
   ServerProcess(ServerAutomaton server, String line) {
     this.server = server;
     this.line = line;
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.remoting;
+
+import org.crsh.text.Chunk;
+import org.crsh.text.Text;
+
+import java.io.InterruptedIOException;
+
+/**
+ * The flow control window of a channel. The sender consumes the window with the chunks it sends and waits when the
+ * window is exhausted, the receiver grants the chunks back once it has consumed them. A slow receiver stalls its own
+ * channel only, the other channels of the connection keep flowing.
+ */
+final class Window {
+
+  /** The default window size. */
+  static final int DEFAULT_SIZE = 64 * 1024;
+
+  /**
+   * Returns the size of a chunk accounted by the window: the text length or 1 for the other chunks.
+   *
+   * @param chunk the chunk
+   * @return the chunk size
+   */
+  static int sizeOf(Chunk chunk) {
+    return chunk instanceof Text ? Math.max(1, ((Text)chunk).getText().length()) : 1;
+  }
+
+  /** . */
+  private int available;
+
+  /** . */
+  private boolean closed;
+
+  Window(int size) {
+    this.available = size;
+    this.closed = false;
+  }
+
+  /**
+   * Consume the window if it is not exhausted, the window can be overdrawn by the last chunk.
+   *
+   * @param size the consumed size
+   * @return true if the window was consumed
+   */
+  synchronized boolean tryAcquire(int size) {
+    if (closed || available > 0) {
+      available -= size;
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Wait until the window is not exhausted and consume it.
+   *
+   * @param size the consumed size
+   * @throws InterruptedIOException if the current thread is interrupted
+   */
+  synchronized void acquire(int size) throws InterruptedIOException {
+    while (!closed && available <= 0) {
+      try {
+        wait();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+    available -= size;
+  }
+
+  synchronized void grant(int size) {
+    available += size;
+    notifyAll();
+  }
+
+  /**
+   * Close the window, the waiting senders are released.
+   */
+  synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  synchronized int getAvailable() {
+    return available;
+  }
+}
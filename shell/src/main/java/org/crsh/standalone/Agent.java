@@ -26,6 +26,8 @@ import org.crsh.cli.Option;
 import org.crsh.cli.impl.lang.CommandFactory;
 import org.crsh.cli.impl.invocation.InvocationMatch;
 import org.crsh.cli.impl.invocation.InvocationMatcher;
+import org.crsh.plugin.PluginContext;
+import org.crsh.plugin.PropertyDescriptor;
 import org.crsh.shell.Shell;
 import org.crsh.shell.ShellFactory;
 import org.crsh.shell.impl.remoting.RemoteClient;
@@ -149,9 +151,15 @@ public class Agent {
     //
     if (port != null) {
       try {
-        ShellFactory factory = bootstrap.getContext().getPlugin(ShellFactory.class);
+        PluginContext context = bootstrap.getContext();
+        ShellFactory factory = context.getPlugin(ShellFactory.class);
         Shell shell = factory.create(null);
-        RemoteClient client = new RemoteClient(port, shell);
+        Integer compressionThreshold = context.getProperty(PropertyDescriptor.REMOTING_COMPRESSION_THRESHOLD);
+        RemoteClient client = new RemoteClient(
+            port,
+            shell,
+            context.getProperty(PropertyDescriptor.REMOTING_BATCH_SIZE),
+            compressionThreshold != null ? compressionThreshold : -1);
         log.log(Level.INFO, "Callback back remote on port " + port);
         client.connect();
         client.getRunnable().run();
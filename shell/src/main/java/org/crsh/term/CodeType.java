@@ -45,7 +45,11 @@ public enum CodeType {
 
   BEGINNING_OF_LINE,
 
-  END_OF_LINE;
+  END_OF_LINE,
+
+  PASTE_START,
+
+  PASTE_END;
 
   /** . */
   private static final CodeType[] ALL = values();
@@ -25,6 +25,7 @@ import org.crsh.term.TermEvent;
 import org.crsh.term.spi.TermIO;
 import org.crsh.text.CLS;
 import org.crsh.text.Chunk;
+import org.crsh.text.RunConsumer;
 import org.crsh.text.Style;
 import org.crsh.text.Text;
 
@@ -36,7 +37,7 @@ import java.util.logging.Logger;
 /**
  * Implements the {@link Term interface}.
  */
-public class ConsoleTerm implements Term {
+public class ConsoleTerm implements Term, RunConsumer {
 
   /** . */
   private final Logger log = Logger.getLogger(ConsoleTerm.class.getName());
@@ -59,6 +60,15 @@ public class ConsoleTerm implements Term {
   /** . */
   private final TermIOWriter writer;
 
+  /** . */
+  private final TermIOScreen screen;
+
+  /** True when the alternate buffer is used. */
+  private boolean alternate;
+
+  /** The text being pasted or null when no paste is in progress. */
+  private StringBuilder paste;
+
   public ConsoleTerm(final TermIO io) {
     this.history = new LinkedList<CharSequence>();
     this.historyBuffer = null;
@@ -66,6 +76,8 @@ public class ConsoleTerm implements Term {
     this.io = io;
     this.buffer = new TermIOBuffer(io);
     this.writer = new TermIOWriter(io);
+    this.screen = new TermIOScreen(io);
+    this.alternate = false;
   }
 
   public int getWidth() {
@@ -85,10 +97,15 @@ public class ConsoleTerm implements Term {
   }
 
   public boolean takeAlternateBuffer() throws IOException {
-    return io.takeAlternateBuffer();
+    return alternate = io.takeAlternateBuffer();
   }
 
   public boolean releaseAlternateBuffer() throws IOException {
+    if (screen.isActive()) {
+      screen.reset();
+      io.write(Style.reset);
+    }
+    alternate = false;
     return io.releaseAlternateBuffer();
   }
 
@@ -96,9 +113,38 @@ public class ConsoleTerm implements Term {
 
     //
     while (true) {
+
+      // Lines of a paste are returned one by one
+      if (buffer.hasNext()) {
+        return readLine();
+      }
+
+      //
       int code = io.read();
       CodeType type = io.decode(code);
+
+      // During a bracketed paste the chars are accumulated and inserted at once when it ends
+      if (paste != null) {
+        if (type == CodeType.PASTE_END) {
+          CharSequence s = paste;
+          paste = null;
+          buffer.append(s);
+        } else if (type == CodeType.CLOSE) {
+          paste = null;
+          return TermEvent.close();
+        } else if (code >= 0 && code < 128) {
+          paste.append((char)code);
+        }
+        continue;
+      }
+
+      //
       switch (type) {
+        case PASTE_START:
+          paste = new StringBuilder();
+          break;
+        case PASTE_END:
+          break;
         case CLOSE:
           return TermEvent.close();
         case BACKSPACE:
@@ -193,14 +239,18 @@ public class ConsoleTerm implements Term {
 
       //
       if (buffer.hasNext()) {
-        historyCursor = -1;
-        historyBuffer = null;
-        CharSequence input = buffer.next();
-        return TermEvent.readLine(input);
+        return readLine();
       }
     }
   }
 
+  private TermEvent readLine() {
+    historyCursor = -1;
+    historyBuffer = null;
+    CharSequence input = buffer.next();
+    return TermEvent.readLine(input);
+  }
+
   public Appendable getDirectBuffer() {
     return buffer;
   }
@@ -215,7 +265,11 @@ public class ConsoleTerm implements Term {
 
   public void flush() {
     try {
-      io.flush();
+      if (screen.isActive()) {
+        screen.flush();
+      } else {
+        io.flush();
+      }
     }
     catch (IOException e) {
       log.log(Level.FINE, "Exception thrown during term flush()", e);
@@ -244,9 +298,15 @@ public class ConsoleTerm implements Term {
     if (element == null) {
       throw new NullPointerException("No null chunk accepted");
     }
-    if (element instanceof Text) {
-      Text textChunk = (Text)element;
-      writer.write(textChunk.getText());
+    if (element instanceof CLS && alternate && screen.cls()) {
+      // The alternate buffer is redrawn frame by frame
+    } else if (element instanceof Text) {
+      CharSequence text = ((Text)element).getText();
+      provide(text, 0, text.length());
+    } else if (screen.isActive()) {
+      if (element instanceof Style) {
+        screen.write((Style)element);
+      }
     } else if (element instanceof Style) {
       io.write(((Style)element));
     } else if (element instanceof CLS) {
@@ -255,4 +315,12 @@ public class ConsoleTerm implements Term {
       throw new UnsupportedOperationException("todo");
     }
   }
-}
\ No newline at end of file
+
+  public void provide(CharSequence text, int start, int end) throws IOException {
+    if (screen.isActive()) {
+      screen.write(text, start, end);
+    } else {
+      writer.write(text, start, end);
+    }
+  }
+}
@@ -19,6 +19,7 @@
 
 package org.crsh.term.console;
 
+import org.crsh.term.spi.ExtendedTermIO;
 import org.crsh.term.spi.TermIO;
 
 import java.io.IOException;
@@ -26,16 +27,22 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
 
+/**
+ * The line editor, the edited line is stored in a gap buffer: the chars before the cursor are at the beginning of
+ * the array, the chars after the cursor are at the end of the array and the gap between them is where chars are
+ * inserted. Inserting or deleting at the cursor does not move the chars and moving the cursor moves only the chars
+ * that are crossed.
+ */
 final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
 
   /** . */
   private char[] buffer;
 
-  /** . */
-  private int size;
+  /** The gap start, it is also the cursor position. */
+  private int gapStart;
 
-  /** Cursor Position, always equal to {@link #size} unless the underlying *.IO class supports editing. */
-  private int curAt;
+  /** The gap end, the chars after the cursor are stored from this index to the end of the buffer. */
+  private int gapEnd;
 
   /** . */
   private LinkedList<CharSequence> lines;
@@ -51,8 +58,8 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
 
   TermIOBuffer(TermIO io) {
     this.buffer = new char[128];
-    this.size = 0;
-    this.curAt = 0;
+    this.gapStart = 0;
+    this.gapEnd = buffer.length;
     this.lines = new LinkedList<CharSequence>();
     this.previousCR = false;
     this.echoing = true;
@@ -64,8 +71,8 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
    */
   void clear() {
     this.previousCR = false;
-    this.curAt = 0;
-    this.size = 0;
+    this.gapStart = 0;
+    this.gapEnd = buffer.length;
   }
 
   /**
@@ -74,7 +81,7 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
    * @return the number of chars
    */
   int getSize() {
-    return size;
+    return gapStart + buffer.length - gapEnd;
   }
 
   /**
@@ -83,7 +90,7 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
    * @return the cursor position
    */
   int getCursor() {
-    return curAt;
+    return gapStart;
   }
 
   /**
@@ -97,14 +104,15 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
     if (index < 0) {
       throw new IndexOutOfBoundsException("No negative position accepted");
     }
+    int size = getSize();
     if (index >= size) {
       throw new IndexOutOfBoundsException("Cannot accept position greater than size:" + index + " >= " + size);
     }
-    return buffer[index];
+    return index < gapStart ? buffer[index] : buffer[index + gapEnd - gapStart];
   }
 
   CharSequence getBufferToCursor() {
-    return new String(buffer, 0, curAt);
+    return new String(buffer, 0, gapStart);
   }
 
   boolean isEchoing() {
@@ -190,7 +198,7 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
     }
     int delta = 0;
     while (delta < count) {
-      if (curAt + delta < size && io.moveRight(buffer[curAt + delta])) {
+      if (gapEnd + delta < buffer.length && io.moveRight(buffer[gapEnd + delta])) {
         delta++;
       } else {
         break;
@@ -198,7 +206,9 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
     }
     if (delta > 0) {
       io.flush();
-      curAt += delta;
+      System.arraycopy(buffer, gapEnd, buffer, gapStart, delta);
+      gapStart += delta;
+      gapEnd += delta;
     }
     return delta;
   }
@@ -207,17 +217,12 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
     if (count < 0) {
       throw new IllegalArgumentException("Cannot move with negative count " + count);
     }
-    int delta = 0;
-    while (delta < count) {
-      if (delta < curAt && io.moveLeft()) {
-        delta++;
-      } else {
-        break;
-      }
-    }
+    int delta = moveCursorLeft(Math.min(count, gapStart));
     if (delta > 0) {
       io.flush();
-      curAt -= delta;
+      gapStart -= delta;
+      gapEnd -= delta;
+      System.arraycopy(buffer, gapStart, buffer, gapEnd, delta);
     }
     return delta;
   }
@@ -250,8 +255,21 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
       throw new IndexOutOfBoundsException("Start cannot be greater than end");
     }
     boolean flush = false;
-    for (int i = start;i < end;i++) {
-      flush |= appendData(s.charAt(i));
+    while (start < end) {
+
+      // Find the run of chars that can be inserted at once
+      int to = start;
+      while (to < end && s.charAt(to) != '\r' && s.charAt(to) != '\n') {
+        to++;
+      }
+
+      //
+      if (to > start) {
+        flush |= insert(s, start, to);
+        start = to;
+      } else {
+        flush |= appendData(s.charAt(start++));
+      }
     }
     return flush;
   }
@@ -268,26 +286,53 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
       previousCR = false;
       return false;
     } else if (c == '\r' || c == '\n') {
+      StringBuilder line = new StringBuilder(getSize());
+      line.append(buffer, 0, gapStart);
+      line.append(buffer, gapEnd, buffer.length - gapEnd);
+      lines.add(line.toString());
+      clear();
       previousCR = c == '\r';
-      String line = new String(buffer, 0, size);
-      lines.add(line);
-      size = 0;
-      curAt = size;
       return echoCRLF();
     } else {
-      if (push(c)) {
-        return echo(c);
-      } else {
-        String disp = new String(buffer, curAt, size - curAt);
-        io.write(disp);
-        int amount = size - curAt - 1;
-        curAt++;
-        while (amount > 0) {
-          io.moveLeft();
-          amount--;
+      return insert(String.valueOf(c), 0, 1);
+    }
+  }
+
+  /**
+   * Insert a run of chars at the current cursor position, the terminal is updated at once by writing
+   * the run followed by the chars after the cursor and then moving back the cursor.
+   *
+   * @param s the chars
+   * @param start the start index
+   * @param end the end index
+   * @return true if flush is required
+   * @throws IOException any IOException
+   */
+  private boolean insert(CharSequence s, int start, int end) throws IOException {
+    int len = end - start;
+    ensureGap(len);
+    for (int i = start;i < end;i++) {
+      buffer[gapStart++] = s.charAt(i);
+    }
+    int amount = buffer.length - gapEnd;
+    if (amount == 0) {
+      if (echoing) {
+        if (len == 1) {
+          io.write(s.charAt(start));
+        } else {
+          io.write(s.subSequence(start, end));
         }
         return true;
+      } else {
+        return false;
       }
+    } else {
+      StringBuilder disp = new StringBuilder(len + amount);
+      disp.append(s, start, end);
+      disp.append(buffer, gapEnd, amount);
+      io.write(disp);
+      moveCursorLeft(amount);
+      return true;
     }
   }
 
@@ -300,7 +345,7 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
   private int appendDel() throws IOException {
 
     // If the cursor is at the most right position (i.e no more chars after)
-    if (curAt == size){
+    if (gapEnd == buffer.length){
       int popped = pop();
 
       //
@@ -318,7 +363,7 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
     } else {
       // We are editing the line
 
-      // Shift all the chars after the cursor
+      // Remove the char before the gap
       int popped = pop();
 
       //
@@ -327,14 +372,10 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
         // We move the cursor to left
         if (io.moveLeft()) {
           StringBuilder disp = new StringBuilder();
-          disp.append(buffer, curAt, size - curAt);
+          disp.append(buffer, gapEnd, buffer.length - gapEnd);
           disp.append(' ');
           io.write(disp);
-          int amount = size - curAt + 1;
-          while (amount > 0) {
-            io.moveLeft();
-            amount--;
-          }
+          moveCursorLeft(buffer.length - gapEnd + 1);
         } else {
           throw new UnsupportedOperationException("not implemented");
         }
@@ -345,22 +386,6 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
     }
   }
 
-  private boolean echo(char c) throws IOException {
-    if (echoing) {
-      io.write(c);
-      return true;
-    } else {
-      return false;
-    }
-  }
-
-  private void echo(String s) throws IOException {
-    if (echoing) {
-      io.write(s);
-      io.flush();
-    }
-  }
-
   private boolean echoDel() throws IOException {
     if (echoing) {
       io.writeDel();
@@ -379,56 +404,51 @@ final class TermIOBuffer implements Appendable, Iterator<CharSequence> {
     }
   }
 
+  /**
+   * Move the cursor left, one column at a time when the term io cannot move by several columns at once.
+   *
+   * @param n the number of columns
+   * @return the number of columns the cursor moved
+   * @throws IOException any IOException
+   */
+  private int moveCursorLeft(int n) throws IOException {
+    if (io instanceof ExtendedTermIO) {
+      return ((ExtendedTermIO)io).moveLeft(n) ? n : 0;
+    } else {
+      int moved = 0;
+      while (moved < n && io.moveLeft()) {
+        moved++;
+      }
+      return moved;
+    }
+  }
+
   /**
    * Popup one char from buffer at the current cursor position.
    *
    * @return the popped char or -1 if none was removed
    */
   private int pop() {
-    if (curAt > 0) {
-      char popped = buffer[curAt - 1];
-      if (curAt == size) {
-        buffer[curAt] = 0;
-        size = --curAt;
-        return popped;
-      } else {
-        for (int i = curAt;i < size;i++) {
-          buffer[i - 1] = buffer[i];
-        }
-        buffer[--size] = 0;
-        curAt--;
-      }
-      return popped;
+    if (gapStart > 0) {
+      return buffer[--gapStart];
     } else {
       return -1;
     }
   }
 
   /**
-   * Push  one char in the buffer at the current cursor position. This operation ensures that the buffer
-   * is large enough and it may increase the buffer capacity when required. The cursor position is incremented
-   * when a char is appended at the last position, otherwise the cursor position remains unchanged.
+   * Ensures that the gap can hold the specified amount of chars, the buffer capacity is increased when required.
    *
-   * @param c the char to push
-   * @return true if the cursor position was incremented
+   * @param amount the amount of chars
    */
-  private boolean push(char c) {
-    if (size >= buffer.length) {
-      char[] tmp = new char[buffer.length * 2 + 1];
-      System.arraycopy(buffer, 0, tmp, 0, buffer.length);
-      TermIOBuffer.this.buffer = tmp;
-    }
-    if (curAt == size) {
-      buffer[size++] = c;
-      curAt++;
-      return true;
-    } else {
-      for (int i = size - 1;i > curAt - 1;i--) {
-        buffer[i + 1] = buffer[i];
-      }
-      buffer[curAt] = c;
-      ++size;
-      return false;
+  private void ensureGap(int amount) {
+    if (gapEnd - gapStart < amount) {
+      int tail = buffer.length - gapEnd;
+      char[] tmp = new char[Math.max(buffer.length * 2 + 1, gapStart + tail + amount)];
+      System.arraycopy(buffer, 0, tmp, 0, gapStart);
+      System.arraycopy(buffer, gapEnd, tmp, tmp.length - tail, tail);
+      gapEnd = tmp.length - tail;
+      buffer = tmp;
     }
   }
-}
\ No newline at end of file
+}
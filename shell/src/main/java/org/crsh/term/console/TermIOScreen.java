@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.term.console;
+
+import org.crsh.term.spi.ExtendedTermIO;
+import org.crsh.term.spi.TermIO;
+import org.crsh.text.Color;
+import org.crsh.text.Style;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A virtual screen for commands redrawing the whole screen periodically such as <code>thread top</code>. A frame
+ * starts with a screen clear, the text written is laid out in a grid of cells and when the screen is flushed
+ * the grid is compared with what was previously drawn on the terminal, only the cells that changed are
+ * written using cursor positioning. The whole screen is drawn again when the terminal is resized. The screen
+ * requires an {@link ExtendedTermIO} to position the cursor, it is not used otherwise.
+ */
+class TermIOScreen {
+
+  /** . */
+  private static final Style.Composite PLAIN = Style.style();
+
+  /** . */
+  private final TermIO io;
+
+  /** The io positioning the cursor or null when the io cannot do it. */
+  private final ExtendedTermIO extended;
+
+  /** The frame being composed. */
+  private char[] chars;
+
+  /** . */
+  private Style[] styles;
+
+  /** What the terminal currently displays. */
+  private char[] shownChars;
+
+  /** . */
+  private Style[] shownStyles;
+
+  /** . */
+  private int width;
+
+  /** . */
+  private int height;
+
+  /** The frame cursor row. */
+  private int row;
+
+  /** The frame cursor column. */
+  private int col;
+
+  /** The current frame style. */
+  private Style.Composite style;
+
+  /** True when the next flush must draw the entire screen. */
+  private boolean redraw;
+
+  TermIOScreen(TermIO io) {
+    this.io = io;
+    this.extended = io instanceof ExtendedTermIO ? (ExtendedTermIO)io : null;
+  }
+
+  /**
+   * Returns true when a frame is being composed.
+   *
+   * @return the active status
+   */
+  boolean isActive() {
+    return chars != null;
+  }
+
+  /**
+   * Starts a new frame.
+   *
+   * @return false if the screen size cannot be determined or the cursor cannot be positioned
+   */
+  boolean cls() {
+    if (extended == null) {
+      return false;
+    }
+    int width = io.getWidth();
+    int height = io.getHeight();
+    if (width <= 0 || height <= 0) {
+      reset();
+      return false;
+    }
+    if (chars == null || width != this.width || height != this.height) {
+      int size = width * height;
+      this.width = width;
+      this.height = height;
+      this.chars = new char[size];
+      this.styles = new Style[size];
+      this.shownChars = new char[size];
+      this.shownStyles = new Style[size];
+      this.redraw = true;
+    }
+    Arrays.fill(chars, ' ');
+    Arrays.fill(styles, PLAIN);
+    row = 0;
+    col = 0;
+    return true;
+  }
+
+  /**
+   * Stops composing frames.
+   */
+  void reset() {
+    chars = null;
+    styles = null;
+    shownChars = null;
+    shownStyles = null;
+    style = null;
+  }
+
+  void write(Style s) {
+    if (s == Style.reset) {
+      style = PLAIN;
+    } else {
+      style = (Style.Composite)(style != null ? style : PLAIN).merge(s);
+    }
+  }
+
+  void write(CharSequence s) {
+    write(s, 0, s.length());
+  }
+
+  void write(CharSequence s, int start, int end) {
+    Style current = normalize(style);
+    for (int i = start;i < end;i++) {
+      char c = s.charAt(i);
+      if (c == '\r') {
+        col = 0;
+      } else if (c == '\n') {
+        col = 0;
+        row++;
+      } else {
+        if (col == width) {
+          col = 0;
+          row++;
+        }
+        if (row < height) {
+          int index = row * width + col;
+          chars[index] = c;
+          styles[index] = current;
+        }
+        col++;
+      }
+    }
+  }
+
+  /**
+   * Draw the changes of the current frame on the terminal.
+   *
+   * @throws IOException any io exception
+   */
+  void flush() throws IOException {
+    Style written = null;
+    int cursor = -1;
+    boolean changed = redraw;
+    if (redraw) {
+      io.cls();
+      Arrays.fill(shownChars, ' ');
+      Arrays.fill(shownStyles, PLAIN);
+      redraw = false;
+      cursor = 0;
+    }
+    for (int index = 0;index < chars.length;index++) {
+      char c = chars[index];
+      Style s = styles[index];
+      if (c != shownChars[index] || s != shownStyles[index]) {
+        if (cursor != index) {
+          extended.moveTo(index / width, index % width);
+        }
+        if (s != written) {
+          if (written != null || s != PLAIN) {
+            io.write(Style.reset);
+          }
+          if (s != PLAIN) {
+            io.write(s);
+          }
+          written = s;
+        }
+        io.write(c);
+        changed = true;
+        shownChars[index] = c;
+        shownStyles[index] = s;
+        // The cursor stays on the last column until the next char is written
+        cursor = (index + 1) % width == 0 ? -1 : index + 1;
+      }
+    }
+    if (written != null && written != PLAIN) {
+      io.write(Style.reset);
+    }
+    if (changed) {
+      extended.moveTo(Math.min(row, height - 1), Math.min(col, width - 1));
+    }
+    io.flush();
+  }
+
+  /**
+   * Turns a style into the absolute style of a cell, off values are represented by null so
+   * two styles displayed the same way are the same interned instance.
+   *
+   * @param style the style
+   * @return the normalized style
+   */
+  private static Style normalize(Style.Composite style) {
+    if (style == null) {
+      return PLAIN;
+    } else {
+      return Style.style(
+          Boolean.TRUE.equals(style.getBold()) ? Boolean.TRUE : null,
+          Boolean.TRUE.equals(style.getUnderline()) ? Boolean.TRUE : null,
+          Boolean.TRUE.equals(style.getBlink()) ? Boolean.TRUE : null,
+          style.getForeground() == Color.def ? null : style.getForeground(),
+          style.getBackground() == Color.def ? null : style.getBackground());
+    }
+  }
+}
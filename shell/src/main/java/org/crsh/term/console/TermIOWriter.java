@@ -46,12 +46,20 @@ class TermIOWriter {
    * @throws IOException any io exception
    */
   void write(CharSequence s) throws IOException {
-    int len = s.length();
-    if (len > 0) {
-      for (int i = 0;i < len;i++) {
-        char c = s.charAt(i);
-        writeNoFlush(c);
-      }
+    write(s, 0, s.length());
+  }
+
+  /**
+   * Write a range of a char sequence to the output.
+   *
+   * @param s the char sequence
+   * @param start the start index
+   * @param end the end index
+   * @throws IOException any io exception
+   */
+  void write(CharSequence s, int start, int end) throws IOException {
+    for (int i = start;i < end;i++) {
+      writeNoFlush(s.charAt(i));
     }
   }
 
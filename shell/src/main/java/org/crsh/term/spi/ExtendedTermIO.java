@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.term.spi;
+
+import java.io.IOException;
+
+/**
+ * The optional operations of a {@link TermIO}. A term io implementing this interface provides its connector name,
+ * positions the cursor on the screen and moves it more efficiently, the other term ios are used with the
+ * {@link TermIO} operations only.
+ */
+public interface ExtendedTermIO extends TermIO {
+
+  /**
+   * Returns the name of the connector of this term io, the commands are scheduled with the commands of the
+   * other term ios of the same connector.
+   *
+   * @return the connector name
+   */
+  String getConnector();
+
+  /**
+   * Move the cursor to an absolute position of the screen.
+   *
+   * @param row the zero based row
+   * @param col the zero based column
+   * @throws IOException any io exception
+   */
+  void moveTo(int row, int col) throws IOException;
+
+  /**
+   * Move the cursor left by several columns at once.
+   *
+   * @param n the positive number of columns
+   * @return true if the cursor moved
+   * @throws IOException any io exception
+   */
+  boolean moveLeft(int n) throws IOException;
+
+}
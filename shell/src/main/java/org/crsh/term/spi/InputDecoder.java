@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.term.spi;
+
+import org.crsh.term.CodeType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decodes the bytes received from a terminal into the codes returned by {@link TermIO#read()}: the chars, the
+ * arrow keys, the word moves and the bracketed pastes. The printable chars received together are returned as a
+ * paste so the term inserts them at once. It is shared by the connectors decoding the input of the terminal
+ * themselves.
+ */
+public abstract class InputDecoder {
+
+  /** Copied from net.wimpi.telnetd.io.TerminalIO. */
+  public static final int UP = 1001;
+
+  /** Copied from net.wimpi.telnetd.io.TerminalIO. */
+  public static final int DOWN = 1002;
+
+  /** Copied from net.wimpi.telnetd.io.TerminalIO. */
+  public static final int RIGHT = 1003;
+
+  /** Copied from net.wimpi.telnetd.io.TerminalIO. */
+  public static final int LEFT = 1004;
+
+  /** Copied from net.wimpi.telnetd.io.TerminalIO, returned at the end of the input. */
+  public static final int HANDLED = 1305;
+
+  /** . */
+  public static final int BACKWARD_WORD = -1;
+
+  /** . */
+  public static final int FORWARD_WORD = -2;
+
+  /** . */
+  public static final int PASTE_START = -3;
+
+  /** . */
+  public static final int PASTE_END = -4;
+
+  /** . */
+  private static final int STATUS_NORMAL = 0;
+
+  /** . */
+  private static final int STATUS_READ_ESC_1 = 1;
+
+  /** . */
+  private static final int STATUS_READ_ESC_2 = 2;
+
+  /** . */
+  private static final int STATUS_READ_ESC_PARAM = 3;
+
+  /** . */
+  private static final Logger log = Logger.getLogger(InputDecoder.class.getName());
+
+  /** . */
+  private final CharsetDecoder decoder;
+
+  /** The bytes received and not yet decoded. */
+  private final ByteBuffer bytes;
+
+  /** The chars decoded and not yet read. */
+  private final CharBuffer chars;
+
+  /** . */
+  private int status;
+
+  /** The numeric parameter of the escape sequence being read. */
+  private int param;
+
+  /** True when a bracketed paste sent by the client is in progress. */
+  private boolean pasting;
+
+  /** True when a run of decoded chars is being read as a paste. */
+  private boolean run;
+
+  /** True when the end of the input is reached. */
+  private boolean eof;
+
+  protected InputDecoder(Charset charset) {
+    this.decoder = charset.newDecoder().
+        onMalformedInput(CodingErrorAction.REPLACE).
+        onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.bytes = ByteBuffer.allocate(4096);
+    this.chars = CharBuffer.allocate(4096);
+    this.chars.flip();
+    this.status = STATUS_NORMAL;
+  }
+
+  /**
+   * Receive the bytes sent by the terminal, this method blocks until bytes are available.
+   *
+   * @param b the buffer
+   * @param off the offset
+   * @param len the max number of bytes
+   * @return the number of bytes received or -1 at the end of the input
+   * @throws IOException any io exception
+   */
+  protected abstract int receive(byte[] b, int off, int len) throws IOException;
+
+  /**
+   * Returns true for the chars that can be part of a run: the printable chars and the line separators.
+   *
+   * @param c the char
+   * @return true if the char can be part of a run
+   */
+  private static boolean isPlain(int c) {
+    return (c >= 32 && c != 127) || c == '\r' || c == '\n';
+  }
+
+  /**
+   * Receive and decode the available bytes, at the end of the input the bytes left by an incomplete sequence
+   * are decoded as a replacement char.
+   *
+   * @return false when all the input is decoded
+   * @throws IOException any io exception
+   */
+  private boolean fill() throws IOException {
+    chars.clear();
+    while (true) {
+      int n = eof ? -1 : receive(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+      if (n == -1) {
+        if (!eof) {
+          eof = true;
+          bytes.flip();
+          decoder.decode(bytes, chars, true);
+          decoder.flush(chars);
+          bytes.clear();
+        }
+        chars.flip();
+        return chars.hasRemaining();
+      }
+      bytes.position(bytes.position() + n);
+      bytes.flip();
+      decoder.decode(bytes, chars, false);
+      bytes.compact();
+      if (chars.position() > 0) {
+        chars.flip();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Read the next code.
+   *
+   * @return the code
+   * @throws IOException any io exception
+   */
+  public int read() throws IOException {
+    while (true) {
+      if (run) {
+        // A run of decoded chars is returned as a paste that the term inserts at once
+        if (chars.hasRemaining() && isPlain(chars.get(chars.position()))) {
+          return chars.get();
+        } else {
+          run = false;
+          return PASTE_END;
+        }
+      } else if (!chars.hasRemaining() && !fill()) {
+        return HANDLED;
+      } else {
+        int r = chars.get();
+        switch (status) {
+          case STATUS_NORMAL:
+            if (r == 27) {
+              status = STATUS_READ_ESC_1;
+            } else if (!pasting && isPlain(r) && chars.hasRemaining() && isPlain(chars.get(chars.position()))) {
+              chars.position(chars.position() - 1);
+              run = true;
+              return PASTE_START;
+            } else {
+              return r;
+            }
+            break;
+          case STATUS_READ_ESC_1:
+            if (r == '[' || r == 'O') {
+              status = STATUS_READ_ESC_2;
+            } else if (r == 'b') {
+              status = STATUS_NORMAL;
+              return BACKWARD_WORD;
+            } else if (r == 'f') {
+              status = STATUS_NORMAL;
+              return FORWARD_WORD;
+            } else {
+              status = STATUS_NORMAL;
+              log.log(Level.FINE, "Unrecognized stream data " + r + " after reading ESC code");
+            }
+            break;
+          case STATUS_READ_ESC_2:
+            if (r >= '0' && r <= '9') {
+              status = STATUS_READ_ESC_PARAM;
+              param = r - '0';
+            } else {
+              status = STATUS_NORMAL;
+              switch (r) {
+                case 'A':
+                  return UP;
+                case 'B':
+                  return DOWN;
+                case 'C':
+                  return RIGHT;
+                case 'D':
+                  return LEFT;
+                default:
+                  log.log(Level.FINE, "Unrecognized stream data " + r + " after reading ESC+91 code");
+                  break;
+              }
+            }
+            break;
+          case STATUS_READ_ESC_PARAM:
+            if (r >= '0' && r <= '9') {
+              param = param * 10 + r - '0';
+            } else {
+              status = STATUS_NORMAL;
+              if (r == '~' && param == 200) {
+                pasting = true;
+                return PASTE_START;
+              } else if (r == '~' && param == 201) {
+                pasting = false;
+                return PASTE_END;
+              } else {
+                log.log(Level.FINE, "Unrecognized stream data " + r + " after reading ESC+91+" + param + " code");
+              }
+            }
+            break;
+          default:
+            throw new AssertionError();
+        }
+      }
+    }
+  }
+
+  /**
+   * Decode a code returned by {@link #read()}, the erase chars are left to the connector as they depend on the
+   * terminal settings.
+   *
+   * @param code the code
+   * @return the code type
+   */
+  public CodeType decode(int code) {
+    switch (code) {
+      case HANDLED:
+        return CodeType.CLOSE;
+      case 1:
+        return CodeType.BEGINNING_OF_LINE;
+      case 5:
+        return CodeType.END_OF_LINE;
+      case 3:
+        return CodeType.BREAK;
+      case 9:
+        return CodeType.TAB;
+      case UP:
+        return CodeType.UP;
+      case DOWN:
+        return CodeType.DOWN;
+      case LEFT:
+        return CodeType.LEFT;
+      case RIGHT:
+        return CodeType.RIGHT;
+      case BACKWARD_WORD:
+        return CodeType.BACKWARD_WORD;
+      case FORWARD_WORD:
+        return CodeType.FORWARD_WORD;
+      case PASTE_START:
+        return CodeType.PASTE_START;
+      case PASTE_END:
+        return CodeType.PASTE_END;
+      default:
+        return CodeType.CHAR;
+    }
+  }
+}
@@ -23,13 +23,42 @@ import org.crsh.io.Consumer;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.NoSuchElementException;
 
+/**
+ * A buffer of chunks. The text is stored in a single growable char array and the chunks are encoded as runs,
+ * each run is a code (a style index, {@link #PLAIN} or {@link #CLEAR}) and the end offset of its text in the
+ * char array. Adjacent text runs that don't change the style are merged.
+ *
+ * <p>Only the {@link #writeTo(Consumer)} and {@link #flush()} methods avoid allocating per run, when the consumer
+ * is a {@link RunConsumer} they provide the text of the runs as ranges of a shared view without copying it. The
+ * iterator creates a {@link Text} chunk copying the text of each run since the returned chunks may outlive the
+ * buffer content.</p>
+ */
 public class ChunkBuffer implements Iterable<Chunk>, Serializable, Consumer<Chunk> {
 
-  /** . */
-  private final LinkedList<Chunk> chunks;
+  /** Run code of a text run that does not change the style. */
+  private static final int PLAIN = -1;
+
+  /** Run code of a screen clear, it has no text. */
+  private static final int CLEAR = -2;
+
+  /** The text of all the runs. */
+  private char[] chars;
+
+  /** The text length. */
+  private int length;
+
+  /** The run codes. */
+  private int[] codes;
+
+  /** The end offset of each run text. */
+  private int[] ends;
+
+  /** The number of runs. */
+  private int size;
 
   /** . */
   private Style current;
@@ -40,28 +69,82 @@ public class ChunkBuffer implements Iterable<Chunk>, Serializable, Consumer<Chun
   /** Where we flush. */
   private final Consumer<Chunk> out;
 
+  /** The view of the text provided to the run consumers. */
+  private transient Chars text;
+
   public ChunkBuffer() {
-    this.chunks = new LinkedList<Chunk>();
-    this.current = Style.style();
-    this.next = Style.style();
-    this.out = null;
+    this(null);
   }
 
   public ChunkBuffer(Consumer<Chunk> out) {
-    this.chunks = new LinkedList<Chunk>();
+    this.chars = new char[64];
+    this.length = 0;
+    this.codes = new int[8];
+    this.ends = new int[8];
+    this.size = 0;
     this.current = Style.style();
     this.next = Style.style();
     this.out = out;
   }
 
+  /**
+   * Returns an iterator over the chunks of this buffer, each text run is returned as a new {@link Text} chunk
+   * that remains valid after the buffer is cleared or modified.
+   *
+   * @return the chunk iterator
+   */
   public Iterator<Chunk> iterator() {
-    return chunks.iterator();
+    return new Iterator<Chunk>() {
+
+      /** The current run. */
+      int index = 0;
+
+      /** True when the style of the current run has been returned. */
+      boolean styled = false;
+
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      public Chunk next() {
+        if (index >= size) {
+          throw new NoSuchElementException();
+        }
+        int code = codes[index];
+        if (code == CLEAR) {
+          index++;
+          return CLS.INSTANCE;
+        } else if (code != PLAIN && !styled) {
+          styled = true;
+          return Style.indexed(code);
+        } else {
+          int start = index > 0 ? ends[index - 1] : 0;
+          int end = ends[index++];
+          styled = false;
+          return new Text(chars, start, end - start);
+        }
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
   }
 
   public void format(Format format, Appendable appendable) throws IOException {
-    Iterator<Chunk> iterator = iterator();
-    while (iterator.hasNext()) {
-      format.append(iterator.next(), appendable);
+    for (int index = 0, start = 0;index < size;index++) {
+      int code = codes[index];
+      int end = ends[index];
+      if (code >= 0) {
+        format.append(Style.indexed(code), appendable);
+      }
+      if (end > start) {
+        if (text == null) {
+          text = new Chars();
+        }
+        appendable.append(text, start, end);
+      }
+      start = end;
     }
   }
 
@@ -80,7 +163,7 @@ public class ChunkBuffer implements Iterable<Chunk>, Serializable, Consumer<Chun
   }
 
   public ChunkBuffer cls() {
-    chunks.addLast(CLS.INSTANCE);
+    run(CLEAR);
     return this;
   }
 
@@ -90,7 +173,10 @@ public class ChunkBuffer implements Iterable<Chunk>, Serializable, Consumer<Chun
   }
 
   public ChunkBuffer append(char c) {
-    last().buffer.append(c);
+    last();
+    ensureCapacity(1);
+    chars[length++] = c;
+    ends[size - 1] = length;
     return this;
   }
 
@@ -100,26 +186,65 @@ public class ChunkBuffer implements Iterable<Chunk>, Serializable, Consumer<Chun
 
   public ChunkBuffer append(CharSequence s, int start, int end) {
     if (end > start) {
-      last().buffer.append(s, start, end);
+      last();
+      int len = end - start;
+      ensureCapacity(len);
+      if (s instanceof String) {
+        ((String)s).getChars(start, end, chars, length);
+      } else if (s instanceof StringBuilder) {
+        ((StringBuilder)s).getChars(start, end, chars, length);
+      } else {
+        for (int i = start;i < end;i++) {
+          chars[length + i - start] = s.charAt(i);
+        }
+      }
+      length += len;
+      ends[size - 1] = length;
+    }
+    return this;
+  }
+
+  private ChunkBuffer append(char[] s, int start, int end) {
+    if (end > start) {
+      last();
+      int len = end - start;
+      ensureCapacity(len);
+      System.arraycopy(s, start, chars, length, len);
+      length += len;
+      ends[size - 1] = length;
     }
     return this;
   }
 
-  private Text last() {
+  /**
+   * Make the last run a text run, taking care of emitting the pending style.
+   */
+  private void last() {
+    int code = PLAIN;
     if (!next.equals(current)) {
       if (!Style.style().equals(next)) {
-        chunks.addLast(next);
+        code = Style.indexOf(next);
       }
       current = next;
       next = Style.style();
     }
-    Chunk last = chunks.peekLast();
-    if (last instanceof Text) {
-      return (Text)last;
-    } else {
-      Text text = new Text();
-      chunks.addLast(text);
-      return text;
+    if (code != PLAIN || size == 0 || codes[size - 1] == CLEAR) {
+      run(code);
+    }
+  }
+
+  private void run(int code) {
+    if (size == codes.length) {
+      codes = Arrays.copyOf(codes, size * 2);
+      ends = Arrays.copyOf(ends, size * 2);
+    }
+    codes[size] = code;
+    ends[size++] = length;
+  }
+
+  private void ensureCapacity(int len) {
+    if (length + len > chars.length) {
+      chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + len));
     }
   }
 
@@ -131,24 +256,66 @@ public class ChunkBuffer implements Iterable<Chunk>, Serializable, Consumer<Chun
     append(element);
   }
 
+  /**
+   * Write the chunks of this buffer to a consumer. When the consumer is a {@link RunConsumer} the text of the runs
+   * is provided as a range of the buffer text, otherwise a {@link Text} chunk is created for each run.
+   *
+   * @param consumer the consumer
+   * @throws IOException any io exception
+   */
+  public void writeTo(Consumer<Chunk> consumer) throws IOException {
+    RunConsumer runs = null;
+    if (consumer instanceof RunConsumer) {
+      runs = (RunConsumer)consumer;
+      if (text == null) {
+        text = new Chars();
+      }
+    }
+    for (int index = 0, start = 0;index < size;index++) {
+      int code = codes[index];
+      int end = ends[index];
+      if (code == CLEAR) {
+        consumer.provide(CLS.INSTANCE);
+      } else {
+        if (code != PLAIN) {
+          consumer.provide(Style.indexed(code));
+        }
+        if (runs != null) {
+          runs.provide(text, start, end);
+        } else {
+          consumer.provide(new Text(chars, start, end - start));
+        }
+      }
+      start = end;
+    }
+  }
+
   public void flush() throws IOException {
     if (out != null) {
-      for (Chunk chunk : chunks) {
-        out.provide(chunk);
-      }
+      writeTo(out);
     }
-    chunks.clear();
+    clear();
     if (out != null) {
       out.flush();
     }
   }
 
   public ChunkBuffer append(ChunkBuffer s) throws NullPointerException {
-    for (Chunk chunk : s.chunks) {
-      write(chunk);
+    for (int index = 0, start = 0, size = s.size;index < size;index++) {
+      int code = s.codes[index];
+      int end = s.ends[index];
+      if (code == CLEAR) {
+        cls();
+      } else {
+        if (code != PLAIN) {
+          append(Style.indexed(code));
+        }
+        append(s.chars, start, end);
+      }
+      start = end;
     }
     if (s.next != null && !s.next.equals(Style.style())) {
-      write(s.next);
+      append(s.next);
     }
     return this;
   }
@@ -188,16 +355,21 @@ public class ChunkBuffer implements Iterable<Chunk>, Serializable, Consumer<Chun
   }
 
   public boolean isEmpty() {
-    return chunks.isEmpty();
+    return size == 0;
   }
 
   public void clear() {
-    chunks.clear();
+    size = 0;
+    length = 0;
   }
 
   @Override
   public int hashCode() {
-    return toString().hashCode();
+    int hash = 0;
+    for (int i = 0;i < length;i++) {
+      hash = 31 * hash + chars[i];
+    }
+    return hash;
   }
 
   @Override
@@ -207,19 +379,43 @@ public class ChunkBuffer implements Iterable<Chunk>, Serializable, Consumer<Chun
     }
     if (obj instanceof ChunkBuffer) {
       ChunkBuffer that = (ChunkBuffer)obj;
-      return toString().equals(that.toString());
+      if (length == that.length) {
+        for (int i = 0;i < length;i++) {
+          if (chars[i] != that.chars[i]) {
+            return false;
+          }
+        }
+        return true;
+      }
     }
     return false;
   }
 
   @Override
   public String toString() {
-    StringBuilder sb = new StringBuilder();
-    try {
-      format(Format.TEXT, sb);
+    return new String(chars, 0, length);
+  }
+
+  /**
+   * A view of the buffer text.
+   */
+  private class Chars implements CharSequence {
+
+    public int length() {
+      return length;
+    }
+
+    public char charAt(int index) {
+      return chars[index];
     }
-    catch (IOException ignore) {
+
+    public CharSequence subSequence(int start, int end) {
+      return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars, 0, length);
     }
-    return sb.toString();
   }
 }
@@ -25,30 +25,28 @@ public enum Format {
 
   TEXT() {
     @Override
-    public void append(Chunk chunk, Appendable to) throws IOException {
-      if (chunk instanceof Text) {
-        Text text = (Text)chunk;
-        if (text.buffer.length() > 0) {
-          to.append(text.buffer);
-        }
-      }
+    void append(Style style, Appendable to) throws IOException {
     }
   },
 
   ANSI() {
     @Override
-    public void append(Chunk chunk, Appendable to) throws IOException {
-      if (chunk instanceof Text) {
-        Text text = (Text)chunk;
-        if (text.buffer.length() > 0) {
-          to.append(text.buffer);
-        }
-      } else if (chunk instanceof Style) {
-        ((Style)chunk).writeAnsiTo(to);
-      }
+    void append(Style style, Appendable to) throws IOException {
+      style.writeAnsiTo(to);
     }
   };
 
-  public abstract void append(Chunk chunk, Appendable to) throws IOException;
+  public void append(Chunk chunk, Appendable to) throws IOException {
+    if (chunk instanceof Text) {
+      Text text = (Text)chunk;
+      if (text.buffer.length() > 0) {
+        to.append(text.buffer);
+      }
+    } else if (chunk instanceof Style) {
+      append((Style)chunk, to);
+    }
+  }
+
+  abstract void append(Style style, Appendable to) throws IOException;
 
 }
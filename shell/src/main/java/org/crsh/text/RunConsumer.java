@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.text;
+
+import java.io.IOException;
+
+/**
+ * Implemented by the consumers of chunks that accept the text of a run as a range of a char sequence, a
+ * {@link ChunkBuffer} writes its runs this way instead of creating a {@link Text} chunk for each of them.
+ */
+public interface RunConsumer {
+
+  /**
+   * Provide the text of a run, the char sequence is only valid during the invocation.
+   *
+   * @param text the char sequence
+   * @param start the start index
+   * @param end the end index
+   * @throws IOException any io exception
+   */
+  void provide(CharSequence text, int start, int end) throws IOException;
+
+}
@@ -47,6 +47,15 @@ public abstract class Style extends Chunk implements Serializable {
     public void writeAnsiTo(Appendable appendable) throws IOException {
       appendable.append("\033[0m");
     }
+
+    @Override
+    public CharSequence toAnsiSequence() {
+      return "\033[0m";
+    }
+
+    private Object readResolve() {
+      return reset;
+    }
   };
 
   public static final class Composite extends Style {
@@ -66,12 +75,20 @@ public abstract class Style extends Chunk implements Serializable {
     /** . */
     protected final Color background;
 
-    private Composite(Boolean bold, Boolean underline, Boolean blink, Color foreground, Color background) {
+    /** The position of this style in the interned table. */
+    private final transient int index;
+
+    /** The precomputed ansi sequence. */
+    private final transient String ansi;
+
+    private Composite(int index, Boolean bold, Boolean underline, Boolean blink, Color foreground, Color background) {
+      this.index = index;
       this.bold = bold;
       this.underline = underline;
       this.blink = blink;
       this.foreground = foreground;
       this.background = background;
+      this.ansi = ansi(bold, underline, blink, foreground, background);
     }
 
     public Composite fg(Color color) {
@@ -162,12 +179,18 @@ public abstract class Style extends Chunk implements Serializable {
         return reset;
       } else {
         Style.Composite that = (Composite)s;
-        Boolean bold = Utils.notNull(that.getBold(), getBold());
-        Boolean underline = Utils.notNull(that.getUnderline(), getUnderline());
-        Boolean blink = Utils.notNull(that.getBlink(), getBlink());
-        Color foreground = Utils.notNull(that.getForeground(), getForeground());
-        Color background = Utils.notNull(that.getBackground(), getBackground());
-        return style(bold, underline, blink, foreground, background);
+        int key = index * SIZE + that.index;
+        int slot = (key ^ (key >>> 12)) & (MERGES.length - 1);
+        Merge merge = MERGES[slot];
+        if (merge == null || merge.key != key) {
+          Boolean bold = Utils.notNull(that.getBold(), getBold());
+          Boolean underline = Utils.notNull(that.getUnderline(), getUnderline());
+          Boolean blink = Utils.notNull(that.getBlink(), getBlink());
+          Color foreground = Utils.notNull(that.getForeground(), getForeground());
+          Color background = Utils.notNull(that.getBackground(), getBackground());
+          MERGES[slot] = merge = new Merge(key, style(bold, underline, blink, foreground, background));
+        }
+        return merge.value;
       }
     }
 
@@ -217,17 +240,57 @@ public abstract class Style extends Chunk implements Serializable {
       return false;
     }
 
+    private static String ansi(Boolean bold, Boolean underline, Boolean blink, Color foreground, Color background) {
+      StringBuilder sb = new StringBuilder();
+      try {
+        boolean appended = decoration(sb, Decoration.bold.code, Decoration.bold_off.code, bold, false);
+        appended |= decoration(sb, Decoration.underline.code, Decoration.underline_off.code, underline, appended);
+        appended |= decoration(sb, Decoration.blink.code, Decoration.blink_off.code, blink, appended);
+        appended |= color(sb, foreground, '3', appended);
+        appended |= color(sb, background, '4', appended);
+        if (appended) {
+          sb.append("m");
+        }
+      }
+      catch (IOException e) {
+        // Should not happen
+        throw new UndeclaredThrowableException(e);
+      }
+      return sb.toString();
+    }
+
     @Override
     public void writeAnsiTo(Appendable appendable) throws IOException {
-      boolean appended = decoration(appendable, Decoration.bold.code, Decoration.bold_off.code, bold, false);
-      appended |= decoration(appendable, Decoration.underline.code, Decoration.underline_off.code, underline, appended);
-      appended |= decoration(appendable, Decoration.blink.code, Decoration.blink_off.code, blink, appended);
-      appended |= color(appendable, foreground, '3', appended);
-      appended |= color(appendable, background, '4', appended);
-      if (appended) {
-        appendable.append("m");
+      if (ansi.length() > 0) {
+        appendable.append(ansi);
       }
     }
+
+    @Override
+    public CharSequence toAnsiSequence() {
+      return ansi;
+    }
+
+    private Object readResolve() {
+      return style(bold, underline, blink, foreground, background);
+    }
+  }
+
+  /**
+   * A merge of two interned styles, the key is the pair of the styles index.
+   */
+  private static final class Merge {
+
+    /** . */
+    final int key;
+
+    /** . */
+    final Composite value;
+
+    private Merge(int key, Composite value) {
+      this.key = key;
+      this.value = value;
+    }
   }
 
   /** . */
@@ -239,7 +302,17 @@ public abstract class Style extends Chunk implements Serializable {
   /** [bold][underline][blink][foreground][background]. */
   private static final Composite[][][][][] ALL;
 
+  /** The number of interned styles. */
+  private static final int SIZE;
+
+  /** Cache of the merged styles, entries are immutable so races only cost a recomputation. */
+  private static final Merge[] MERGES = new Merge[512];
+
+  /** The interned styles by index, the last slot is {@link #reset}. */
+  private static final Style[] INDEX;
+
   static {
+    int index = 0;
     ALL = new Composite[BOOLEANS.length][][][][];
     for (int bold = 0;bold < BOOLEANS.length;bold++) {
       ALL[bold] = new Composite[BOOLEANS.length][][][];
@@ -251,6 +324,7 @@ public abstract class Style extends Chunk implements Serializable {
             ALL[bold][underline][blink][foreground] = new Composite[COLORS.length];
             for (int background = 0;background < COLORS.length;background++) {
               ALL[bold][underline][blink][foreground][background] = new Composite(
+                  index++,
                   BOOLEANS[bold],
                   BOOLEANS[underline],
                   BOOLEANS[blink],
@@ -261,6 +335,40 @@ public abstract class Style extends Chunk implements Serializable {
         }
       }
     }
+    SIZE = index;
+    INDEX = new Style[SIZE + 1];
+    for (Composite[][][][] a : ALL) {
+      for (Composite[][][] b : a) {
+        for (Composite[][] c : b) {
+          for (Composite[] d : c) {
+            for (Composite e : d) {
+              INDEX[e.index] = e;
+            }
+          }
+        }
+      }
+    }
+    INDEX[SIZE] = reset;
+  }
+
+  /**
+   * Returns the index of an interned style, the index can be turned back into the style with {@link #indexed(int)}.
+   *
+   * @param style the style
+   * @return the style index
+   */
+  static int indexOf(Style style) {
+    return style == reset ? SIZE : ((Composite)style).index;
+  }
+
+  /**
+   * Returns the interned style for the specified index.
+   *
+   * @param index the style index
+   * @return the style
+   */
+  static Style indexed(int index) {
+    return INDEX[index];
   }
 
   public static Composite style(Color foreground) {
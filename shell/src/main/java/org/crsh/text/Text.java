@@ -25,6 +25,12 @@ public class Text extends Chunk {
     return new Text(s);
   }
 
+  public static Text create(CharSequence s, int start, int end) {
+    Text text = new Text();
+    text.buffer.append(s, start, end);
+    return text;
+  }
+
   /** . */
   final StringBuilder buffer;
 
@@ -36,6 +42,10 @@ public class Text extends Chunk {
     this.buffer = new StringBuilder().append(s);
   }
 
+  Text(char[] chars, int offset, int len) {
+    this.buffer = new StringBuilder(len).append(chars, offset, len);
+  }
+
   public CharSequence getText() {
     return buffer;
   }
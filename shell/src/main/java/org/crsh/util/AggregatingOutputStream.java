@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An output stream that aggregates the bytes written in a buffer and coalesces the flushes. The buffer is written
+ * to the underlying stream when it is full. A flush following a period of inactivity is performed immediately which
+ * keeps the latency low for interactive echo, flushes occuring in a burst are instead deferred and performed
+ * together after a short delay, similarly to the Nagle algorithm but under the control of the application.
+ *
+ * <p>The timer shared by the streams never performs the deferred flushes itself, it hands them to a pool of
+ * flusher threads so a peer slow to consume its output only blocks the writers of its own stream.</p>
+ */
+public class AggregatingOutputStream extends OutputStream {
+
+  /** The default flush delay: half a millisecond. */
+  public static final long DEFAULT_DELAY = TimeUnit.MICROSECONDS.toNanos(500);
+
+  /** The default buffer size. */
+  public static final int DEFAULT_SIZE = 8192;
+
+  /** The timer triggering the deferred flushes. */
+  private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "CRaSH output flush timer");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /** The threads performing the deferred flushes, a stream has at most one deferred flush at a time. */
+  private static final ExecutorService flushers = Executors.newCachedThreadPool(new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "CRaSH output flusher");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /** . */
+  private final OutputStream out;
+
+  /** . */
+  private final byte[] buffer;
+
+  /** . */
+  private int count;
+
+  /** The delay in nanoseconds. */
+  private final long delay;
+
+  /** The time of the last flush. */
+  private long lastFlush;
+
+  /** The deferred flush. */
+  private ScheduledFuture<?> pending;
+
+  /** A failure of the deferred flush reported to the writer. */
+  private IOException failure;
+
+  /** . */
+  private boolean closed;
+
+  /** . */
+  private final Runnable trigger = new Runnable() {
+    public void run() {
+      flushers.execute(flusher);
+    }
+  };
+
+  /** . */
+  private final Runnable flusher = new Runnable() {
+    public void run() {
+      synchronized (AggregatingOutputStream.this) {
+        pending = null;
+        if (!closed) {
+          try {
+            doFlush();
+          }
+          catch (IOException e) {
+            failure = e;
+          }
+        }
+      }
+    }
+  };
+
+  public AggregatingOutputStream(OutputStream out) {
+    this(out, DEFAULT_SIZE, DEFAULT_DELAY);
+  }
+
+  public AggregatingOutputStream(OutputStream out, int size, long delay) throws NullPointerException, IllegalArgumentException {
+    if (out == null) {
+      throw new NullPointerException("No null output stream accepted");
+    }
+    if (size < 1) {
+      throw new IllegalArgumentException("Buffer size must be positive");
+    }
+    if (delay < 0) {
+      throw new IllegalArgumentException("No negative delay accepted");
+    }
+    this.out = out;
+    this.buffer = new byte[size];
+    this.count = 0;
+    this.delay = delay;
+    this.lastFlush = System.nanoTime() - delay;
+  }
+
+  @Override
+  public synchronized void write(int b) throws IOException {
+    check();
+    if (count == buffer.length) {
+      drain();
+    }
+    buffer[count++] = (byte)b;
+  }
+
+  @Override
+  public synchronized void write(byte[] b, int off, int len) throws IOException {
+    check();
+    if (len >= buffer.length) {
+      drain();
+      out.write(b, off, len);
+    } else {
+      if (count + len > buffer.length) {
+        drain();
+      }
+      System.arraycopy(b, off, buffer, count, len);
+      count += len;
+    }
+  }
+
+  @Override
+  public synchronized void flush() throws IOException {
+    check();
+    if (System.nanoTime() - lastFlush >= delay) {
+      doFlush();
+    } else if (pending == null) {
+      pending = timer.schedule(trigger, delay, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      try {
+        doFlush();
+      }
+      finally {
+        closed = true;
+        out.close();
+      }
+    }
+  }
+
+  private void check() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (failure != null) {
+      IOException e = failure;
+      failure = null;
+      throw e;
+    }
+  }
+
+  private void drain() throws IOException {
+    if (count > 0) {
+      try {
+        out.write(buffer, 0, count);
+      }
+      finally {
+        count = 0;
+      }
+    }
+  }
+
+  private void doFlush() throws IOException {
+    if (pending != null) {
+      pending.cancel(false);
+      pending = null;
+    }
+    drain();
+    out.flush();
+    lastFlush = System.nanoTime();
+  }
+}
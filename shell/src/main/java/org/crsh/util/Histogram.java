@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of positive values with a bounded relative error in the spirit of the HDR histogram: each
+ * power of two range is divided into {@link #SUB_BUCKETS} linear buckets, so any recorded value is known with a
+ * relative precision of about 3%. Recording a value is lock free and does not allocate.
+ */
+public class Histogram {
+
+  /** . */
+  private static final int SUB_BITS = 5;
+
+  /** The number of linear buckets per power of two. */
+  public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+  /** . */
+  private static final int SIZE = (64 - SUB_BITS) * SUB_BUCKETS;
+
+  /** . */
+  private final AtomicLongArray buckets;
+
+  /** . */
+  private final AtomicLong count;
+
+  /** . */
+  private final AtomicLong sum;
+
+  /** . */
+  private final AtomicLong max;
+
+  public Histogram() {
+    this.buckets = new AtomicLongArray(SIZE);
+    this.count = new AtomicLong();
+    this.sum = new AtomicLong();
+    this.max = new AtomicLong();
+  }
+
+  /**
+   * Record a value, negative values are recorded as zero.
+   *
+   * @param value the value
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    buckets.incrementAndGet(index(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    while (true) {
+      long current = max.get();
+      if (value <= current || max.compareAndSet(current, value)) {
+        break;
+      }
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long c = count.get();
+    return c == 0 ? 0 : (double)sum.get() / c;
+  }
+
+  /**
+   * Returns the value at a percentile, the value is the middle of the bucket holding the percentile. The result
+   * is approximate when values are recorded concurrently.
+   *
+   * @param percentile the percentile between 0 and 100
+   * @return the value at the percentile or 0 when no value was recorded
+   * @throws IllegalArgumentException if the percentile is not between 0 and 100
+   */
+  public long getValueAtPercentile(double percentile) throws IllegalArgumentException {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile " + percentile + " should be between 0 and 100");
+    }
+    long total = 0;
+    for (int i = 0;i < SIZE;i++) {
+      total += buckets.get(i);
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long)Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0;i < SIZE;i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        return Math.min(middle(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Clear the recorded values.
+   */
+  public void reset() {
+    for (int i = 0;i < SIZE;i++) {
+      buckets.set(i, 0);
+    }
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+
+  static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int)value;
+    } else {
+      int exp = 63 - Long.numberOfLeadingZeros(value);
+      int sub = (int)(value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+      return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+  }
+
+  static long lowest(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    } else {
+      int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+      int sub = index % SUB_BUCKETS;
+      return (long)(SUB_BUCKETS + sub) << (exp - SUB_BITS);
+    }
+  }
+
+  private static long middle(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    } else {
+      int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+      return lowest(index) + ((1L << (exp - SUB_BITS)) >> 1);
+    }
+  }
+}
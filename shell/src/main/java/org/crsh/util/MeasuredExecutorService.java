@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.util;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An executor service that delegates to another executor service and maintains the counters of its tasks: the
+ * queue depth, the active tasks, the completed tasks and the rejected tasks.
+ */
+public class MeasuredExecutorService extends AbstractExecutorService {
+
+  /** . */
+  private final String name;
+
+  /** . */
+  private final ExecutorService delegate;
+
+  /** . */
+  private final AtomicInteger queued;
+
+  /** . */
+  private final AtomicInteger active;
+
+  /** . */
+  private final AtomicLong completed;
+
+  /** . */
+  private final AtomicLong rejected;
+
+  public MeasuredExecutorService(String name, ExecutorService delegate) throws NullPointerException {
+    if (name == null) {
+      throw new NullPointerException("No null name accepted");
+    }
+    if (delegate == null) {
+      throw new NullPointerException("No null delegate accepted");
+    }
+    this.name = name;
+    this.delegate = delegate;
+    this.queued = new AtomicInteger();
+    this.active = new AtomicInteger();
+    this.completed = new AtomicLong();
+    this.rejected = new AtomicLong();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the max number of tasks the delegate executes at the same time: the max pool size of a thread pool,
+   * the parallelism of a fork join pool and {@link Integer#MAX_VALUE} for any other executor, such as an executor
+   * starting a virtual thread per task.
+   *
+   * @return the capacity of the delegate executor
+   */
+  public int getCapacity() {
+    if (delegate instanceof ThreadPoolExecutor) {
+      return ((ThreadPoolExecutor)delegate).getMaximumPoolSize();
+    } else if (delegate.getClass().getName().equals("java.util.concurrent.ForkJoinPool")) {
+      try {
+        Method getParallelism = delegate.getClass().getMethod("getParallelism");
+        return (Integer)getParallelism.invoke(delegate);
+      }
+      catch (Exception ignore) {
+        // Should not happen
+      }
+    }
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * @return the number of tasks submitted and not yet started
+   */
+  public int getQueueDepth() {
+    return queued.get();
+  }
+
+  /**
+   * @return the number of tasks being executed
+   */
+  public int getActiveCount() {
+    return active.get();
+  }
+
+  /**
+   * @return the number of tasks executed
+   */
+  public long getCompletedCount() {
+    return completed.get();
+  }
+
+  /**
+   * @return the number of tasks rejected by the delegate executor
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  public void execute(final Runnable command) {
+    if (command == null) {
+      throw new NullPointerException("No null command accepted");
+    }
+    queued.incrementAndGet();
+    try {
+      delegate.execute(new Runnable() {
+        public void run() {
+          queued.decrementAndGet();
+          active.incrementAndGet();
+          try {
+            command.run();
+          }
+          finally {
+            active.decrementAndGet();
+            completed.incrementAndGet();
+          }
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      queued.decrementAndGet();
+      rejected.incrementAndGet();
+      throw e;
+    }
+  }
+
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  public List<Runnable> shutdownNow() {
+    List<Runnable> pending = delegate.shutdownNow();
+    queued.addAndGet(-pending.size());
+    return pending;
+  }
+
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+
+  @Override
+  public String toString() {
+    return "MeasuredExecutorService[name=" + name + ",queued=" + queued + ",active=" + active +
+        ",completed=" + completed + ",rejected=" + rejected + "]";
+  }
+}
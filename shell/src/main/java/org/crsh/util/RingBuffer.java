@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free ring buffer for many producers and a single consumer. Offering an element never blocks:
+ * when the buffer is full the element is dropped and counted.
+ *
+ * @param <E> the element generic type
+ */
+public class RingBuffer<E> {
+
+  /** . */
+  private final AtomicReferenceArray<E> slots;
+
+  /** The sequence of each slot, a slot can be written when its sequence is the tail and read when it is the head + 1. */
+  private final AtomicLongArray sequences;
+
+  /** . */
+  private final int mask;
+
+  /** . */
+  private final AtomicLong tail;
+
+  /** Only modified by the consumer. */
+  private volatile long head;
+
+  /** . */
+  private final AtomicLong dropped;
+
+  /**
+   * Create a ring buffer.
+   *
+   * @param capacity the capacity, it is rounded to the next power of two
+   * @throws IllegalArgumentException if the capacity is not positive
+   */
+  public RingBuffer(int capacity) throws IllegalArgumentException {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    this.slots = new AtomicReferenceArray<E>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0;i < size;i++) {
+      sequences.set(i, i);
+    }
+    this.mask = size - 1;
+    this.tail = new AtomicLong();
+    this.head = 0;
+    this.dropped = new AtomicLong();
+  }
+
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Offer an element, it is dropped when the buffer is full.
+   *
+   * @param element the element
+   * @return true if the element was added
+   * @throws NullPointerException if the element is null
+   */
+  public boolean offer(E element) throws NullPointerException {
+    if (element == null) {
+      throw new NullPointerException("No null element accepted");
+    }
+    while (true) {
+      long pos = tail.get();
+      int index = (int)pos & mask;
+      long delta = sequences.get(index) - pos;
+      if (delta == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          slots.lazySet(index, element);
+          sequences.lazySet(index, pos + 1);
+          return true;
+        }
+      } else if (delta < 0) {
+        dropped.incrementAndGet();
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Poll an element, it must be called by a single consumer thread.
+   *
+   * @return the polled element or null if the buffer is empty
+   */
+  public E poll() {
+    long pos = head;
+    int index = (int)pos & mask;
+    if (sequences.get(index) != pos + 1) {
+      return null;
+    }
+    E element = slots.get(index);
+    slots.lazySet(index, null);
+    sequences.lazySet(index, pos + mask + 1);
+    head = pos + 1;
+    return element;
+  }
+
+  /**
+   * @return the approximate number of elements in the buffer
+   */
+  public int size() {
+    return (int)Math.max(0, Math.min(tail.get() - head, mask + 1));
+  }
+
+  /**
+   * @return the number of elements dropped because the buffer was full
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+}
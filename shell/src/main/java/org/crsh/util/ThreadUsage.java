@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The cpu time and the allocated bytes of the current thread. The allocated bytes are provided by the
+ * <code>com.sun.management.ThreadMXBean</code> extension when the JVM supports it, a value is -1 when it is not
+ * available.
+ */
+public final class ThreadUsage {
+
+  /** . */
+  private static final Logger log = Logger.getLogger(ThreadUsage.class.getName());
+
+  /** . */
+  private static final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+  /** . */
+  private static final boolean cpuSupported;
+
+  /** . */
+  private static final boolean allocationSupported;
+
+  static {
+    boolean cpu = false;
+    try {
+      cpu = bean.isCurrentThreadCpuTimeSupported() && bean.isThreadCpuTimeEnabled();
+    }
+    catch (UnsupportedOperationException ignore) {
+    }
+    boolean allocation = false;
+    try {
+      allocation = Allocation.isSupported();
+    }
+    catch (LinkageError e) {
+      log.log(Level.FINE, "Thread allocated bytes not available", e);
+    }
+    cpuSupported = cpu;
+    allocationSupported = allocation;
+  }
+
+  /** Isolates the com.sun.management classes that may not be present. */
+  private static class Allocation {
+
+    static boolean isSupported() {
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+        return sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled();
+      } else {
+        return false;
+      }
+    }
+
+    static long getAllocatedBytes(long id) {
+      return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(id);
+    }
+  }
+
+  /**
+   * Returns the usage of the current thread.
+   *
+   * @return the current usage
+   */
+  public static ThreadUsage current() {
+    long cpu = cpuSupported ? bean.getCurrentThreadCpuTime() : -1;
+    long allocated = allocationSupported ? Allocation.getAllocatedBytes(Thread.currentThread().getId()) : -1;
+    return new ThreadUsage(cpu, allocated);
+  }
+
+  /** The cpu time in nanoseconds or -1. */
+  private final long cpuTime;
+
+  /** The allocated bytes or -1. */
+  private final long allocatedBytes;
+
+  private ThreadUsage(long cpuTime, long allocatedBytes) {
+    this.cpuTime = cpuTime;
+    this.allocatedBytes = allocatedBytes;
+  }
+
+  public long getCpuTime() {
+    return cpuTime;
+  }
+
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Returns the usage of the current thread since this usage was taken.
+   *
+   * @return the usage since this one
+   */
+  public ThreadUsage elapsed() {
+    ThreadUsage now = current();
+    return new ThreadUsage(
+        cpuTime != -1 && now.cpuTime != -1 ? now.cpuTime - cpuTime : -1,
+        allocatedBytes != -1 && now.allocatedBytes != -1 ? now.allocatedBytes - allocatedBytes : -1);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("cpu ");
+    if (cpuTime != -1) {
+      sb.append(String.format("%.3f", cpuTime / 1000000d)).append(" ms");
+    } else {
+      sb.append("n/a");
+    }
+    sb.append(", allocated ");
+    if (allocatedBytes != -1) {
+      sb.append(allocatedBytes).append(" bytes");
+    } else {
+      sb.append("n/a");
+    }
+    return sb.toString();
+  }
+}
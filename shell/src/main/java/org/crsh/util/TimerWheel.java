@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A hashed timer wheel for scheduling a large amount of short lived timeouts with a coarse precision. Scheduling and
+ * cancelling a timeout are constant time operations that do not lock, the timeouts are hashed in the slots of the
+ * wheel by a single thread that wakes up at each tick and fires the expired timeouts of the current slot. The
+ * thread is started on the first schedule and stopped by {@link #stop()}.
+ */
+public class TimerWheel {
+
+  /** . */
+  private static final Logger log = Logger.getLogger(TimerWheel.class.getName());
+
+  /** . */
+  private static final AtomicInteger count = new AtomicInteger();
+
+  /** . */
+  private static final int PENDING = 0, CANCELLED = 1, EXPIRED = 2;
+
+  /** A scheduled timeout. */
+  public final class Timeout {
+
+    /** . */
+    private final Runnable task;
+
+    /** . */
+    private final long deadline;
+
+    /** The remaining number of wheel turns before expiration. */
+    private long rounds;
+
+    /** . */
+    private Timeout next;
+
+    /** . */
+    private final AtomicInteger state;
+
+    private Timeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+      this.state = new AtomicInteger(PENDING);
+    }
+
+    /**
+     * Cancel the timeout, the task will not be executed unless it already expired.
+     *
+     * @return true if the timeout was cancelled
+     */
+    public boolean cancel() {
+      if (state.compareAndSet(PENDING, CANCELLED)) {
+        cancelled.incrementAndGet();
+        return true;
+      } else {
+        return false;
+      }
+    }
+
+    public boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state.get() == EXPIRED;
+    }
+  }
+
+  /** . */
+  private final long tick;
+
+  /** . */
+  private final Timeout[] wheel;
+
+  /** . */
+  private final int mask;
+
+  /** The timeouts scheduled and not yet hashed in the wheel. */
+  private final ConcurrentLinkedQueue<Timeout> pending;
+
+  /** . */
+  private final Object lock;
+
+  /** . */
+  private final AtomicLong scheduled;
+
+  /** . */
+  private final AtomicLong expired;
+
+  /** . */
+  private final AtomicLong cancelled;
+
+  /** . */
+  private Thread thread;
+
+  /** . */
+  private boolean stopped;
+
+  /** The start time in nanoseconds. */
+  private long start;
+
+  /**
+   * Create a timer wheel.
+   *
+   * @param tick the tick duration
+   * @param unit the tick duration unit
+   * @param size the number of slots of the wheel, it is rounded to the next power of two
+   * @throws IllegalArgumentException if the tick duration or the size is not positive
+   */
+  public TimerWheel(long tick, TimeUnit unit, int size) throws IllegalArgumentException {
+    if (tick <= 0) {
+      throw new IllegalArgumentException("Tick duration must be positive");
+    }
+    if (size <= 0) {
+      throw new IllegalArgumentException("Wheel size must be positive");
+    }
+    int length = 1;
+    while (length < size) {
+      length <<= 1;
+    }
+    this.tick = Math.max(1, unit.toNanos(tick));
+    this.wheel = new Timeout[length];
+    this.mask = length - 1;
+    this.pending = new ConcurrentLinkedQueue<Timeout>();
+    this.lock = new Object();
+    this.scheduled = new AtomicLong();
+    this.expired = new AtomicLong();
+    this.cancelled = new AtomicLong();
+    this.stopped = false;
+  }
+
+  /**
+   * Schedule a task after the specified delay, the task is executed by the timer thread and should be short.
+   *
+   * @param task the task
+   * @param delay the delay
+   * @param unit the delay unit
+   * @return the timeout
+   * @throws NullPointerException if the task is null
+   * @throws IllegalStateException if the timer is stopped
+   */
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) throws NullPointerException, IllegalStateException {
+    if (task == null) {
+      throw new NullPointerException("No null task accepted");
+    }
+    long now = ensureStarted();
+    Timeout timeout = new Timeout(task, now + Math.max(0, unit.toNanos(delay)));
+    scheduled.incrementAndGet();
+    pending.add(timeout);
+    return timeout;
+  }
+
+  /**
+   * @return the number of timeouts neither expired nor cancelled
+   */
+  public long getPendingCount() {
+    return scheduled.get() - expired.get() - cancelled.get();
+  }
+
+  /**
+   * @return the number of expired timeouts
+   */
+  public long getExpiredCount() {
+    return expired.get();
+  }
+
+  /**
+   * @return the number of cancelled timeouts
+   */
+  public long getCancelledCount() {
+    return cancelled.get();
+  }
+
+  /**
+   * Stop the timer thread, the pending timeouts are discarded.
+   */
+  public void stop() {
+    Thread t;
+    synchronized (lock) {
+      stopped = true;
+      t = thread;
+      thread = null;
+    }
+    if (t != null) {
+      t.interrupt();
+    }
+  }
+
+  private long ensureStarted() {
+    synchronized (lock) {
+      if (stopped) {
+        throw new IllegalStateException("Timer is stopped");
+      }
+      if (thread == null) {
+        start = System.nanoTime();
+        thread = new Thread("CRaSH timer #" + count.incrementAndGet()) {
+          @Override
+          public void run() {
+            loop();
+          }
+        };
+        thread.setDaemon(true);
+        thread.start();
+      }
+      return System.nanoTime() - start;
+    }
+  }
+
+  private void loop() {
+    long current = 0;
+    while (true) {
+
+      // Wait for the next tick
+      long deadline = (current + 1) * tick;
+      long sleep = deadline - (System.nanoTime() - start);
+      if (sleep > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleep);
+        }
+        catch (InterruptedException e) {
+          break;
+        }
+      }
+      synchronized (lock) {
+        if (stopped) {
+          break;
+        }
+      }
+
+      // Hash the new timeouts
+      for (Timeout timeout = pending.poll();timeout != null;timeout = pending.poll()) {
+        if (!timeout.isCancelled()) {
+          long expiration = Math.max(current, timeout.deadline / tick);
+          int slot = (int)(expiration & mask);
+          timeout.rounds = (expiration - current) / wheel.length;
+          timeout.next = wheel[slot];
+          wheel[slot] = timeout;
+        }
+      }
+
+      // Expire the timeouts of the current slot
+      int slot = (int)(current & mask);
+      Timeout previous = null;
+      for (Timeout timeout = wheel[slot];timeout != null;) {
+        Timeout next = timeout.next;
+        boolean remove;
+        if (timeout.isCancelled()) {
+          remove = true;
+        } else if (timeout.rounds > 0) {
+          timeout.rounds--;
+          remove = false;
+        } else {
+          remove = true;
+          if (timeout.state.compareAndSet(PENDING, EXPIRED)) {
+            expired.incrementAndGet();
+            try {
+              timeout.task.run();
+            }
+            catch (Throwable t) {
+              log.log(Level.WARNING, "Timer task failed", t);
+            }
+          }
+        }
+        if (remove) {
+          timeout.next = null;
+          if (previous == null) {
+            wheel[slot] = next;
+          } else {
+            previous.next = next;
+          }
+        } else {
+          previous = timeout;
+        }
+        timeout = next;
+      }
+
+      //
+      current++;
+    }
+  }
+}
@@ -32,6 +32,7 @@ import org.crsh.command.ScriptException
 import org.crsh.cli.Option
 import java.lang.reflect.InvocationTargetException
 import org.crsh.command.InvocationContext
+import org.crsh.command.Cancellation
 import org.crsh.util.Safe
 import java.sql.DatabaseMetaData
 import org.crsh.text.ui.UIBuilder
@@ -141,6 +142,7 @@ class jdbc implements Completer{
       if (sql.startsWith('"') && sql.endsWith('"') || sql.startsWith("'") && sql.endsWith("'"))
         sql = sql.substring(1, sql.length() - 1)
       Statement stmt = connection.createStatement();
+      Closeable cancellation = Cancellation.onCancel({ stmt.cancel() } as Runnable);
       try {
         stmt.execute(sql)
         ResultSet resultSet = stmt.getResultSet();
@@ -150,6 +152,7 @@ class jdbc implements Completer{
         return "Statement executed successfully\n";
       }
       finally {
+        Safe.close(cancellation);
         Safe.close(stmt);
       }
     }
@@ -171,6 +174,7 @@ class jdbc implements Completer{
       if (sql.startsWith('"') && sql.endsWith('"') || sql.startsWith("'") && sql.endsWith("'"))
         sql = sql.substring(1, sql.length() - 1)
       Statement stmt = connection.createStatement();
+      Closeable cancellation = Cancellation.onCancel({ stmt.cancel() } as Runnable);
       try {
         stmt.execute(sql)
         ResultSet resultSet = stmt.getResultSet();
@@ -194,6 +198,7 @@ class jdbc implements Completer{
         }
       }
       finally {
+        Safe.close(cancellation);
         Safe.close(stmt);
       }
     }
@@ -0,0 +1,123 @@
+package crash.commands.base;
+
+import org.crsh.cli.Argument;
+import org.crsh.cli.Command;
+import org.crsh.cli.Option;
+import org.crsh.cli.Usage;
+import org.crsh.command.BaseCommand;
+import org.crsh.command.InvocationContext;
+import org.crsh.shell.ShellFactory;
+import org.crsh.shell.impl.async.FairScheduler;
+import org.crsh.shell.impl.command.CRaSH;
+import org.crsh.shell.impl.command.CRaSHShellFactory;
+import org.crsh.shell.impl.command.CommandMetrics;
+import org.crsh.shell.impl.command.CommandStatistics;
+import org.crsh.text.Decoration;
+import org.crsh.text.Style;
+import org.crsh.text.ui.LabelElement;
+import org.crsh.text.ui.RowElement;
+import org.crsh.text.ui.TableElement;
+import org.crsh.util.MeasuredExecutorService;
+import org.crsh.util.TimerWheel;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+@Usage("command statistics")
+public class stats extends BaseCommand {
+
+  @Usage("display the counters, the cpu time and the latency percentiles in milliseconds of the invoked commands")
+  @Command
+  public void main(
+      InvocationContext<Object> context,
+      @Usage("clear the statistics")
+      @Option(names = {"r", "reset"})
+      Boolean reset,
+      @Usage("display the counters of the shared executor, the command scheduler and the timer instead")
+      @Option(names = {"e", "executor"})
+      Boolean executor,
+      @Usage("the command names")
+      @Argument
+      List<String> names) throws IOException {
+
+    //
+    CRaSH crash = (CRaSH)context.getSession().get("crash");
+    if (Boolean.TRUE.equals(executor)) {
+      MeasuredExecutorService shared = crash.getContext().getExecutorMetrics();
+      TableElement table = new TableElement().rightCellPadding(1);
+      table.add(row(new RowElement(true).style(Style.style(Decoration.bold)),
+          "NAME", "CAPACITY", "QUEUED", "ACTIVE", "COMPLETED", "REJECTED"));
+      int capacity = shared.getCapacity();
+      table.add(row(new RowElement(),
+          shared.getName(),
+          capacity == Integer.MAX_VALUE ? "unbounded" : Integer.toString(capacity),
+          Integer.toString(shared.getQueueDepth()),
+          Integer.toString(shared.getActiveCount()),
+          Long.toString(shared.getCompletedCount()),
+          Long.toString(shared.getRejectedCount())));
+      ShellFactory factory = crash.getContext().getPlugin(ShellFactory.class);
+      FairScheduler scheduler = factory instanceof CRaSHShellFactory ? ((CRaSHShellFactory)factory).getScheduler() : null;
+      if (scheduler != null) {
+        table.add(row(new RowElement(),
+            "scheduler",
+            scheduler.getCapacity() == Integer.MAX_VALUE ? "unbounded" : Integer.toString(scheduler.getCapacity()),
+            Integer.toString(scheduler.getQueued()),
+            Integer.toString(scheduler.getRunning()),
+            Long.toString(scheduler.getCompleted()),
+            Long.toString(scheduler.getRejected())));
+      }
+      TimerWheel timer = crash.getContext().getTimer();
+      table.add(row(new RowElement(),
+          "timer",
+          "unbounded",
+          Long.toString(timer.getPendingCount()),
+          "-",
+          Long.toString(timer.getExpiredCount()),
+          "-"));
+      context.provide(table);
+      return;
+    }
+    CommandStatistics statistics = crash.getStatistics();
+    if (Boolean.TRUE.equals(reset)) {
+      statistics.reset();
+      return;
+    }
+
+    //
+    TableElement table = new TableElement().rightCellPadding(1);
+    table.add(row(new RowElement(true).style(Style.style(Decoration.bold)),
+        "NAME", "COUNT", "ERRORS", "CANCELLED", "CHARS", "CPU", "ALLOCATED", "MEAN", "P50", "P90", "P99", "P99.9", "MAX"));
+    for (Map.Entry<String, CommandMetrics> entry : statistics.getAll().entrySet()) {
+      CommandMetrics metrics = entry.getValue();
+      if ((names == null || names.isEmpty() || names.contains(entry.getKey())) && metrics.getInvocations() > 0) {
+        table.add(row(new RowElement(),
+            entry.getKey(),
+            Long.toString(metrics.getInvocations()),
+            Long.toString(metrics.getErrors()),
+            Long.toString(metrics.getCancellations()),
+            Long.toString(metrics.getOutputChars()),
+            format(metrics.getCpuTime()),
+            Long.toString(metrics.getAllocatedBytes()),
+            format(metrics.getMeanLatency()),
+            format(metrics.getMedianLatency()),
+            format(metrics.get90thPercentileLatency()),
+            format(metrics.get99thPercentileLatency()),
+            format(metrics.get999thPercentileLatency()),
+            format(metrics.getMaxLatency())));
+      }
+    }
+    context.provide(table);
+  }
+
+  private static RowElement row(RowElement row, String... values) {
+    for (String value : values) {
+      row.add(new LabelElement(value));
+    }
+    return row;
+  }
+
+  private static String format(double millis) {
+    return String.format("%.3f", millis);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.lang.groovy;
+
+import org.crsh.AbstractTestCase;
+import org.crsh.lang.groovy.command.GroovyScriptCommand;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+public class ClassLoaderGenerationTestCase extends AbstractTestCase {
+
+  public void testShared() throws Exception {
+    GroovyClassFactory<Object> factory = create();
+    Class<?> a = factory.parse("a", "return 'a'");
+    Class<?> b = factory.parse("b", "return 'b'");
+    ClassLoaderGeneration generation = ClassLoaderGeneration.get(a);
+    assertNotNull(generation);
+    assertSame(generation, ClassLoaderGeneration.get(b));
+    assertSame(generation, factory.getGeneration());
+    assertEquals(3, generation.getReferences());
+  }
+
+  public void testReload() throws Exception {
+    GroovyClassFactory<Object> factory = create();
+    Class<?> a = factory.parse("a", "return 'a'");
+    factory.parse("b", "return 'b'");
+    ClassLoaderGeneration first = ClassLoaderGeneration.get(a);
+    Class<?> a2 = factory.parse("a", "return 'a2'");
+    ClassLoaderGeneration second = ClassLoaderGeneration.get(a2);
+    assertNotSame(first, second);
+    assertEquals(1, second.getId());
+    assertEquals(1, first.getReferences());
+    assertFalse(first.isReleased());
+    factory.parse("b", "return 'b2'");
+    assertTrue(first.isReleased());
+    assertFalse(first.acquire());
+    assertEquals(3, second.getReferences());
+  }
+
+  public void testInvocationInProgress() throws Exception {
+    GroovyClassFactory<Object> factory = create();
+    ClassLoaderGeneration first = ClassLoaderGeneration.get(factory.parse("a", "return 'a'"));
+    assertTrue(first.acquire());
+    factory.parse("a", "return 'a2'");
+    assertFalse(first.isReleased());
+    first.release();
+    assertTrue(first.isReleased());
+    try {
+      first.release();
+      fail();
+    }
+    catch (IllegalStateException expected) {
+    }
+  }
+
+  public void testCompilationFailure() throws Exception {
+    GroovyClassFactory<Object> factory = create();
+    Class<?> a = factory.parse("a", "return 'a'");
+    ClassLoaderGeneration first = ClassLoaderGeneration.get(a);
+    try {
+      factory.parse("a", "return (");
+      fail();
+    }
+    catch (Exception expected) {
+    }
+    assertEquals(1, first.getReferences());
+    assertFalse(first.isReleased());
+  }
+
+  public void testReloadDoesNotLeak() throws Exception {
+    GroovyClassFactory<Object> factory = create();
+    ArrayList<WeakReference<ClassLoader>> loaders = new ArrayList<WeakReference<ClassLoader>>();
+    ArrayList<ClassLoaderGeneration> generations = new ArrayList<ClassLoaderGeneration>();
+    for (int i = 0;i < 1000;i++) {
+      Class<?> clazz = factory.parse("a", "return " + i);
+      ClassLoaderGeneration generation = ClassLoaderGeneration.get(clazz);
+      generations.add(generation);
+      loaders.add(new WeakReference<ClassLoader>(generation.loader));
+    }
+    for (int i = 0;i < 999;i++) {
+      assertTrue(generations.get(i).isReleased());
+    }
+    assertFalse(generations.get(999).isReleased());
+    generations.clear();
+
+    //
+    int alive = loaders.size();
+    for (int i = 0;i < 20 && alive > 1;i++) {
+      System.gc();
+      Thread.sleep(50);
+      alive = 0;
+      for (WeakReference<ClassLoader> loader : loaders) {
+        if (loader.get() != null) {
+          alive++;
+        }
+      }
+    }
+    assertEquals(1, alive);
+  }
+
+  private GroovyClassFactory<Object> create() {
+    return new GroovyClassFactory<Object>(Thread.currentThread().getContextClassLoader(), Object.class, GroovyScriptCommand.class);
+  }
+}
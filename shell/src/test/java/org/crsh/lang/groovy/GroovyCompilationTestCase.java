@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.lang.groovy;
+
+import org.crsh.AbstractTestCase;
+import org.crsh.command.CommandCreationException;
+import org.crsh.lang.groovy.command.GroovyScriptCommand;
+
+public class GroovyCompilationTestCase extends AbstractTestCase {
+
+  public void testParse() {
+    GroovyCompilation compilation = GroovyCompilation.create("dynamic,thread=static, sort = type_checked", true, " java.util.concurrent.*, java.util.BitSet,");
+    assertEquals(GroovyCompilation.Mode.DYNAMIC, compilation.getMode("foo"));
+    assertEquals(GroovyCompilation.Mode.STATIC, compilation.getMode("thread"));
+    assertEquals(GroovyCompilation.Mode.TYPE_CHECKED, compilation.getMode("sort"));
+    assertTrue(compilation.isIndy());
+    assertEquals(2, compilation.getImports().size());
+    assertEquals(GroovyCompilation.Mode.STATIC, GroovyCompilation.create("static", false, null).getMode("foo"));
+  }
+
+  public void testInvalidMode() {
+    try {
+      GroovyCompilation.create("fast", false, null);
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+      assertEquals("Invalid groovy compilation mode fast", e.getMessage());
+    }
+  }
+
+  public void testImports() throws Exception {
+    if (!isAvailable("org.codehaus.groovy.control.customizers.ImportCustomizer")) {
+      // The default imports require groovy 1.8 or later
+      return;
+    }
+    GroovyClassFactory<Object> factory = create(GroovyCompilation.create(null, false, "java.util.concurrent.atomic.*,java.util.BitSet"));
+    Class<?> clazz = factory.parse("foo", "new AtomicInteger(); new BitSet()");
+    assertNotNull(clazz);
+  }
+
+  public void testStatic() throws Exception {
+    if (!isAvailable("groovy.transform.CompileStatic")) {
+      // The static mode requires groovy 2.0 or later
+      return;
+    }
+    GroovyClassFactory<Object> factory = create(GroovyCompilation.create("dynamic,foo=static", false, null));
+    String source = "def bar(String s) { s.juu() }";
+    assertNotNull(factory.parse("bar", source));
+    try {
+      factory.parse("foo", source);
+      fail();
+    }
+    catch (CommandCreationException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Could not compile command script foo in static mode:"));
+    }
+  }
+
+  public void testTypeChecked() throws Exception {
+    if (!isAvailable("groovy.transform.TypeChecked")) {
+      // The type checked mode requires groovy 2.0 or later
+      return;
+    }
+    GroovyClassFactory<Object> factory = create(GroovyCompilation.create("type_checked", false, null));
+    assertNotNull(factory.parse("foo", "int bar(String s) { s.length() }"));
+    try {
+      factory.parse("foo", "int bar(String s) { s.juu() }");
+      fail();
+    }
+    catch (CommandCreationException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Could not compile command script foo in type_checked mode:"));
+    }
+  }
+
+  public void testIndy() throws Exception {
+    GroovyClassFactory<Object> factory = create(GroovyCompilation.create(null, true, null));
+    assertNotNull(factory.parse("foo", "def bar(String s) { s.length() }"));
+  }
+
+  public void testUnsupportedMode() throws Exception {
+    if (isAvailable("groovy.transform.CompileStatic")) {
+      return;
+    }
+    GroovyClassFactory<Object> factory = create(GroovyCompilation.create("static", false, null));
+    try {
+      factory.parse("foo", "def bar(String s) { s.length() }");
+      fail();
+    }
+    catch (CommandCreationException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("requires groovy 2.0 or later"));
+    }
+  }
+
+  private static boolean isAvailable(String className) {
+    try {
+      GroovyCompilationTestCase.class.getClassLoader().loadClass(className);
+      return true;
+    }
+    catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  private GroovyClassFactory<Object> create(GroovyCompilation compilation) {
+    return new GroovyClassFactory<Object>(Thread.currentThread().getContextClassLoader(), Object.class, GroovyScriptCommand.class, compilation);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.lang.groovy;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.crsh.AbstractTestCase;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class ScriptCacheTestCase extends AbstractTestCase {
+
+  public void testReuse() {
+    ScriptCache cache = new ScriptCache(Thread.currentThread().getContextClassLoader(), 2);
+    Class<?> a = cache.getScriptClass("1 + 1");
+    assertSame(a, cache.getScriptClass("1 + 1"));
+    assertEquals(1, cache.getCompilations());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getSize());
+  }
+
+  public void testBinding() {
+    ScriptCache cache = new ScriptCache(Thread.currentThread().getContextClassLoader(), 2);
+    Class<?> clazz = cache.getScriptClass("a = a + 1");
+    HashMap<String, Object> s1 = new HashMap<String, Object>();
+    s1.put("a", 1);
+    HashMap<String, Object> s2 = new HashMap<String, Object>();
+    s2.put("a", 10);
+    Script script = InvokerHelper.createScript(clazz, new Binding(s1));
+    assertEquals(2, script.run());
+    script = InvokerHelper.createScript(clazz, new Binding(s2));
+    assertEquals(11, script.run());
+    assertEquals(2, s1.get("a"));
+    assertEquals(11, s2.get("a"));
+  }
+
+  public void testEviction() {
+    ScriptCache cache = new ScriptCache(Thread.currentThread().getContextClassLoader(), 2);
+    Class<?> a = cache.getScriptClass("'a'");
+    cache.getScriptClass("'b'");
+    cache.getScriptClass("'a'");
+    cache.getScriptClass("'c'");
+    assertEquals(1, cache.getEvictions());
+    assertEquals(2, cache.getSize());
+    assertSame(a, cache.getScriptClass("'a'"));
+    cache.getScriptClass("'b'");
+    assertEquals(4, cache.getCompilations());
+    assertEquals(2, cache.getEvictions());
+  }
+
+  public void testEvictedClassIsUnloadable() {
+    ScriptCache cache = new ScriptCache(Thread.currentThread().getContextClassLoader(), 1);
+    WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(cache.getScriptClass("'a'").getClassLoader());
+    cache.getScriptClass("'b'");
+    assertEquals(1, cache.getEvictions());
+
+    //
+    ArrayList<byte[]> garbage = new ArrayList<byte[]>();
+    for (int i = 0;i < 50 && ref.get() != null;i++) {
+      garbage.add(new byte[1024 * 1024]);
+      if (garbage.size() > 10) {
+        garbage.clear();
+      }
+      System.gc();
+    }
+    assertNull("The evicted class loader should be unreachable", ref.get());
+  }
+
+  public void testDeclaredClass() {
+    ScriptCache cache = new ScriptCache(Thread.currentThread().getContextClassLoader(), 2);
+    GroovyClassLoader session = new GroovyClassLoader(Thread.currentThread().getContextClassLoader());
+    Class<?> clazz = cache.getScriptClass("class Foo { def bar() { 'bar' } }; def juu = 'juu'", session);
+    assertEquals(0, cache.getSize());
+    assertTrue(Arrays.asList(session.getLoadedClasses()).contains(clazz));
+    Script script = InvokerHelper.createScript(cache.getScriptClass("new Foo().bar()", session), new Binding());
+    assertEquals("bar", script.run());
+    assertEquals(0, cache.getSize());
+
+    // Another session does not see the class
+    GroovyClassLoader other = new GroovyClassLoader(Thread.currentThread().getContextClassLoader());
+    try {
+      cache.getScriptClass("new Foo()", other);
+      fail();
+    }
+    catch (CompilationFailedException expected) {
+    }
+  }
+
+  public void testCompilationFailure() {
+    ScriptCache cache = new ScriptCache(Thread.currentThread().getContextClassLoader(), 2);
+    try {
+      cache.getScriptClass("def a = ");
+      fail();
+    }
+    catch (CompilationFailedException expected) {
+    }
+    assertEquals(0, cache.getSize());
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.plugin;
+
+import org.crsh.AbstractTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+public class PluginManagerTestCase extends AbstractTestCase {
+
+  /** . */
+  private static final List<String> initialized = Collections.synchronizedList(new ArrayList<String>());
+
+  public interface Service {}
+
+  public interface Connector {}
+
+  public static class Plugin<P> extends CRaSHPlugin<P> {
+
+    /** . */
+    final String name;
+
+    /** . */
+    final Class<?>[] dependencies;
+
+    /** . */
+    Runnable onInit;
+
+    public Plugin(String name, Class<?>... dependencies) {
+      this.name = name;
+      this.dependencies = dependencies;
+    }
+
+    @Override
+    public P getImplementation() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterable<Class<?>> getDependencies() {
+      return Arrays.asList(dependencies);
+    }
+
+    @Override
+    public void init() {
+      if (onInit != null) {
+        onInit.run();
+      }
+      initialized.add(name);
+    }
+  }
+
+  public static class ServicePlugin extends Plugin<Service> implements Service {
+    public ServicePlugin(String name, Class<?>... dependencies) {
+      super(name, dependencies);
+    }
+  }
+
+  public static class ConnectorPlugin extends Plugin<Connector> implements Connector {
+    public ConnectorPlugin(String name, Class<?>... dependencies) {
+      super(name, dependencies);
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    initialized.clear();
+  }
+
+  public void testDependencies() {
+    ConnectorPlugin connector = new ConnectorPlugin("connector", Service.class);
+    ServicePlugin service = new ServicePlugin("service");
+    PluginManager manager = new PluginManager(null, new SimplePluginDiscovery(connector, service));
+    manager.start();
+    assertEquals(Arrays.asList("service", "connector"), initialized);
+    assertEquals(CRaSHPlugin.INITIALIZED, connector.getStatus());
+    assertEquals(CRaSHPlugin.INITIALIZED, service.getStatus());
+  }
+
+  public void testParallel() throws Exception {
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    Runnable await = new Runnable() {
+      public void run() {
+        try {
+          barrier.await(10, TimeUnit.SECONDS);
+        }
+        catch (Exception e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    ConnectorPlugin c1 = new ConnectorPlugin("c1");
+    ConnectorPlugin c2 = new ConnectorPlugin("c2");
+    c1.onInit = await;
+    c2.onInit = await;
+    PluginManager manager = new PluginManager(null, new SimplePluginDiscovery(c1, c2));
+    manager.start();
+    assertEquals(CRaSHPlugin.INITIALIZED, c1.getStatus());
+    assertEquals(CRaSHPlugin.INITIALIZED, c2.getStatus());
+  }
+
+  public void testIndex() {
+    ConnectorPlugin connector = new ConnectorPlugin("connector");
+    ServicePlugin s1 = new ServicePlugin("s1");
+    ServicePlugin s2 = new ServicePlugin("s2");
+    PluginManager manager = new PluginManager(null, new SimplePluginDiscovery(s1, connector, s2));
+    manager.start();
+    assertEquals(Arrays.<Service>asList(s1, s2), manager.getPlugins(Service.class));
+    assertEquals(Arrays.<Connector>asList(connector), manager.getPlugins(Connector.class));
+    assertEquals(Arrays.<Object>asList(s1, connector, s2), manager.getPlugins(Object.class));
+    assertFalse(manager.getPlugins(Runnable.class).iterator().hasNext());
+  }
+
+  public void testFailure() {
+    ServicePlugin service = new ServicePlugin("service");
+    service.onInit = new Runnable() {
+      public void run() {
+        throw new RuntimeException();
+      }
+    };
+    ConnectorPlugin connector = new ConnectorPlugin("connector", Service.class);
+    PluginManager manager = new PluginManager(null, new SimplePluginDiscovery(service, connector));
+    manager.start();
+    assertEquals(CRaSHPlugin.FAILED, service.getStatus());
+    assertEquals(CRaSHPlugin.INITIALIZED, connector.getStatus());
+    assertFalse(manager.getPlugins(Service.class).iterator().hasNext());
+  }
+
+  public void testCycle() {
+    ServicePlugin service = new ServicePlugin("service", Connector.class);
+    ConnectorPlugin connector = new ConnectorPlugin("connector", Service.class);
+    ConnectorPlugin other = new ConnectorPlugin("other");
+    PluginManager manager = new PluginManager(null, new SimplePluginDiscovery(service, connector, other));
+    manager.start();
+    assertEquals("other", initialized.get(0));
+    assertEquals(3, initialized.size());
+  }
+
+  public void testUndeclaredCycle() throws Exception {
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    final ServicePlugin service = new ServicePlugin("service");
+    final ConnectorPlugin connector = new ConnectorPlugin("connector");
+    final PluginManager manager = new PluginManager(null, new SimplePluginDiscovery(service, connector));
+    class Lookup implements Runnable {
+      final Class<?> type;
+      Lookup(Class<?> type) {
+        this.type = type;
+      }
+      public void run() {
+        try {
+          barrier.await(10, TimeUnit.SECONDS);
+        }
+        catch (Exception e) {
+          throw new AssertionError(e);
+        }
+        manager.getPlugins(type).iterator();
+      }
+    }
+    service.onInit = new Lookup(Connector.class);
+    connector.onInit = new Lookup(Service.class);
+    Thread starter = new Thread() {
+      @Override
+      public void run() {
+        manager.start();
+      }
+    };
+    starter.start();
+    starter.join(10000);
+    assertFalse(starter.isAlive());
+    List<Integer> statuses = Arrays.asList(service.getStatus(), connector.getStatus());
+    assertTrue(statuses.contains(CRaSHPlugin.INITIALIZED));
+    assertTrue(statuses.contains(CRaSHPlugin.FAILED));
+    assertEquals(1, initialized.size());
+  }
+
+  public void testLazy() {
+    ConnectorPlugin connector = new ConnectorPlugin("connector");
+    ServicePlugin service = new ServicePlugin("service");
+    PluginManager manager = new PluginManager(null, new SimplePluginDiscovery(connector, service));
+    assertEquals(Arrays.<Service>asList(service), manager.getPlugins(Service.class));
+    assertEquals(Arrays.asList("service"), initialized);
+    assertEquals(CRaSHPlugin.CONSTRUCTED, connector.getStatus());
+  }
+}
@@ -21,6 +21,13 @@ package org.crsh.plugin;
 import org.crsh.AbstractTestCase;
 import org.crsh.auth.SimpleAuthenticationPlugin;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 public class PropertyManagerTestCase extends AbstractTestCase {
 
   class Foo {}
@@ -65,4 +72,79 @@ public class PropertyManagerTestCase extends AbstractTestCase {
     assertEquals(PropertyDescriptor.SECRET_DISPLAY_VALUE, secretProperty.getDisplayValue());
     assertEquals("the_password", secretProperty.getValue());
   }
+
+  public void testListener() {
+    PropertyManager mgr = new PropertyManager();
+    final ArrayList<Object> events = new ArrayList<Object>();
+    PropertyListener listener = new PropertyListener() {
+      public void propertyChanged(PropertyDescriptor<?> descriptor, Property<?> property) {
+        events.add(property != null ? property.getValue() : null);
+      }
+    };
+    mgr.addListener(PropertyDescriptor.VFS_REFRESH_PERIOD, listener);
+    mgr.setProperty(PropertyDescriptor.VFS_REFRESH_PERIOD, 4);
+    mgr.setProperty(PropertyDescriptor.VFS_REFRESH_PERIOD, 4);
+    mgr.parseProperty(PropertyDescriptor.VFS_REFRESH_PERIOD, "5");
+    mgr.setProperty(PropertyDescriptor.VFS_REFRESH_UNIT, TimeUnit.MINUTES);
+    mgr.setProperty(PropertyDescriptor.VFS_REFRESH_PERIOD, null);
+    mgr.setProperty(PropertyDescriptor.VFS_REFRESH_PERIOD, null);
+    assertEquals(Arrays.<Object>asList(4, 5, null), events);
+    mgr.removeListener(PropertyDescriptor.VFS_REFRESH_PERIOD, listener);
+    mgr.setProperty(PropertyDescriptor.VFS_REFRESH_PERIOD, 6);
+    assertEquals(3, events.size());
+  }
+
+  public void testListenerOrder() throws Exception {
+    final PropertyManager mgr = new PropertyManager();
+    final List<Object> events = Collections.synchronizedList(new ArrayList<Object>());
+    final CountDownLatch notifying = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    mgr.addListener(PropertyDescriptor.VFS_REFRESH_PERIOD, new PropertyListener() {
+      public void propertyChanged(PropertyDescriptor<?> descriptor, Property<?> property) {
+        if (property.getValue().equals(1)) {
+          notifying.countDown();
+          try {
+            release.await(10, TimeUnit.SECONDS);
+          }
+          catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        }
+        events.add(property.getValue());
+      }
+    });
+    Thread first = new Thread() {
+      @Override
+      public void run() {
+        mgr.setProperty(PropertyDescriptor.VFS_REFRESH_PERIOD, 1);
+      }
+    };
+    Thread second = new Thread() {
+      @Override
+      public void run() {
+        mgr.setProperty(PropertyDescriptor.VFS_REFRESH_PERIOD, 2);
+      }
+    };
+    first.start();
+    assertTrue(notifying.await(10, TimeUnit.SECONDS));
+    second.start();
+    while (second.getState() != Thread.State.BLOCKED && second.getState() != Thread.State.TERMINATED) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+    first.join(10000);
+    second.join(10000);
+    assertEquals(Arrays.<Object>asList(1, 2), events);
+    assertEquals((Integer)2, mgr.resolvePropertyValue(PropertyDescriptor.VFS_REFRESH_PERIOD));
+  }
+
+  public void testSameName() {
+    PropertyDescriptor<Integer> a = PropertyDescriptor.create("same_name", (Integer)null, "a");
+    PropertyDescriptor<Integer> b = PropertyDescriptor.create("same_name", (Integer)null, "b");
+    PropertyManager mgr = new PropertyManager();
+    mgr.setProperty(a, 3);
+    assertEquals((Integer)3, mgr.resolvePropertyValue(b));
+    assertEquals((Integer)3, mgr.resolvePropertyValue("same_name", Integer.class));
+    assertNull(mgr.resolvePropertyValue("unknown_name", Integer.class));
+  }
 }
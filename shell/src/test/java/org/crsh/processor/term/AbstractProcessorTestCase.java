@@ -106,6 +106,32 @@ public abstract class AbstractProcessorTestCase extends AbstractTestCase {
     assertJoin(thread);
   }
 
+  public void testBurst() throws Exception {
+    final StringBuilder executed = new StringBuilder();
+    final CountDownLatch done = new CountDownLatch(100);
+    for (int i = 0;i < 100;i++) {
+      term.publish(TermEvent.readLine("" + i));
+    }
+    for (int i = 0;i < 100;i++) {
+      final int index = i;
+      shell.publish(new ShellRunnable() {
+        public void run(ShellProcessContext context) throws Exception {
+          executed.append(index).append(' ');
+          context.end(ShellResponse.ok());
+          done.countDown();
+        }
+      });
+    }
+    done.await();
+    term.publish(TermEvent.close());
+    assertJoin(thread);
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0;i < 100;i++) {
+      expected.append(i).append(' ');
+    }
+    assertEquals(expected.toString(), executed.toString());
+  }
+
   protected abstract int getBarrierSize();
 
   public void testCancellation() throws Exception {
@@ -166,6 +166,14 @@ public class REPLTestCase extends AbstractCommandTestCase {
     assertTrue(result.startsWith("hello"));
   }
 
+  public void testDeclaredClass() {
+    assertOk("repl groovy");
+    assertOk("class Foo { def bar() { 'foo' } }; null");
+    assertOk("class Bar { def bar() { 'bar' } }; def juu = 'juu'");
+    assertTrue(assertOk("context << new Foo().bar()").startsWith("foo"));
+    assertTrue(assertOk("context << new Bar().bar()").startsWith("bar"));
+  }
+
   public void testPipe() {
     lifeCycle.bindClass("produce", Commands.ProduceString.class);
     lifeCycle.bindClass("consume", Commands.ConsumeString.class);
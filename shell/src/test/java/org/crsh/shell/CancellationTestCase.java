@@ -21,8 +21,12 @@ package org.crsh.shell;
 
 import org.crsh.AbstractTestCase;
 import org.crsh.BaseProcessContext;
+import org.crsh.command.Cancellation;
+import org.crsh.shell.impl.command.CRaSHShellFactory;
+import org.crsh.shell.impl.command.ExecutionLimit;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class CancellationTestCase extends AbstractCommandTestCase {
 
@@ -122,4 +126,66 @@ public class CancellationTestCase extends AbstractCommandTestCase {
     }
     loopInterrupted = Thread.currentThread().isInterrupted();
   }
+
+  public static void spinCallback() {
+    while (!Thread.currentThread().isInterrupted()) {
+      //
+    }
+  }
+
+  public void testTimeoutOption() throws Exception {
+    long time = System.currentTimeMillis();
+    ShellResponse resp = evaluate("--timeout=200ms invoke " + CancellationTestCase.class.getName() + " spinCallback");
+    assertEquals(ShellResponse.Error.class, resp.getClass());
+    assertTrue(((ShellResponse.Error)resp).getMessage().endsWith("timed out after 200ms"));
+    assertTrue(System.currentTimeMillis() - time >= 200);
+  }
+
+  public void testConfiguredTimeout() throws Exception {
+    lifeCycle.setProperty(CRaSHShellFactory.COMMAND_TIMEOUT, ExecutionLimit.parse("1h,invoke=200ms"));
+    ShellResponse resp = evaluate("invoke " + CancellationTestCase.class.getName() + " spinCallback");
+    assertEquals(ShellResponse.Error.class, resp.getClass());
+    assertTrue(((ShellResponse.Error)resp).getMessage().endsWith("timed out after 200ms"));
+  }
+
+  public void testCPUBudget() throws Exception {
+    ShellResponse resp = evaluate("--cpu-budget=200ms invoke " + CancellationTestCase.class.getName() + " spinCallback");
+    assertEquals(ShellResponse.Error.class, resp.getClass());
+    assertTrue(((ShellResponse.Error)resp).getMessage().endsWith("exceeded its cpu budget of 200ms"));
+  }
+
+  public void testParseLimit() throws Exception {
+    ExecutionLimit limit = ExecutionLimit.parse("60s, jdbc=5m,thread=500ms");
+    assertEquals(60000, limit.get("foo"));
+    assertEquals(300000, limit.get("jdbc"));
+    assertEquals(500, limit.get("thread"));
+    assertEquals(7200000, ExecutionLimit.parseDuration("2h"));
+  }
+
+  public void testInvalidTimeout() throws Exception {
+    ShellResponse resp = evaluate("--timeout=abc invoke " + CancellationTestCase.class.getName() + " spinCallback");
+    assertEquals(ShellResponse.Error.class, resp.getClass());
+  }
+
+  /** . */
+  private static CountDownLatch listenerLatch;
+
+  public static void listenerCallback() throws Exception {
+    Cancellation.onCancel(new Runnable() {
+      public void run() {
+        listenerLatch.countDown();
+      }
+    });
+    // Simulates a call that ignores interruption
+    while (!listenerLatch.await(10, TimeUnit.MILLISECONDS)) {
+      Thread.interrupted();
+    }
+  }
+
+  public void testCancellationListener() throws Exception {
+    listenerLatch = new CountDownLatch(1);
+    ShellResponse resp = evaluate("--timeout=200ms invoke " + CancellationTestCase.class.getName() + " listenerCallback");
+    assertEquals(0, listenerLatch.getCount());
+    assertEquals(ShellResponse.Error.class, resp.getClass());
+  }
 }
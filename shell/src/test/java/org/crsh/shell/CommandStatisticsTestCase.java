@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell;
+
+import org.crsh.shell.impl.command.CommandMetrics;
+import org.crsh.util.ThreadUsage;
+
+public class CommandStatisticsTestCase extends AbstractCommandTestCase {
+
+  public static void failCallback() {
+    throw new RuntimeException();
+  }
+
+  public void testRecord() throws Exception {
+    lifeCycle.bindGroovyClass("produce", Commands.ProduceString.class);
+    lifeCycle.bindGroovyClass("consume", Commands.ConsumeString.class);
+    assertEquals("foobar", assertOk("produce"));
+    assertEquals("foobar", assertOk("produce"));
+    assertOk("produce | consume");
+    CommandMetrics produce = shell.crash.getStatistics().get("produce");
+    assertEquals(3, produce.getInvocations());
+    assertEquals(0, produce.getErrors());
+    assertEquals(12, produce.getOutputChars());
+    assertTrue(produce.getMaxLatency() >= produce.getMedianLatency());
+    CommandMetrics consume = shell.crash.getStatistics().get("consume");
+    assertEquals(1, consume.getInvocations());
+    assertEquals(0, consume.getOutputChars());
+  }
+
+  public void testError() throws Exception {
+    assertEvalError("invoke " + CommandStatisticsTestCase.class.getName() + " failCallback");
+    CommandMetrics invoke = shell.crash.getStatistics().get("invoke");
+    assertEquals(1, invoke.getInvocations());
+    assertEquals(1, invoke.getErrors());
+  }
+
+  public void testUnknownCommand() throws Exception {
+    assertUnknownCommand("bilto");
+    assertNull(shell.crash.getStatistics().get("bilto"));
+  }
+
+  public void testExecutor() throws Exception {
+    String out = assertOk("stats -e");
+    assertTrue(out.contains("CAPACITY"));
+    assertTrue(out.contains(shell.crash.getContext().getExecutorMetrics().getName()));
+  }
+
+  public void testProfile() throws Exception {
+    lifeCycle.bindGroovyClass("produce", Commands.ProduceString.class);
+    String out = assertOk("--profile produce");
+    assertTrue(out.startsWith("foobar\n"));
+    assertTrue(out.contains(" elapsed, cpu "));
+    CommandMetrics produce = shell.crash.getStatistics().get("produce");
+    assertEquals(1, produce.getInvocations());
+    if (ThreadUsage.current().getAllocatedBytes() != -1) {
+      assertTrue(produce.getAllocatedBytes() > 0);
+    }
+  }
+}
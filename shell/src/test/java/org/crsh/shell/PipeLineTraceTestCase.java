@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell;
+
+import org.crsh.BaseProcessContext;
+
+public class PipeLineTraceTestCase extends AbstractCommandTestCase {
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    lifeCycle.bindGroovyClass("produce", Commands.ProduceString.class);
+    lifeCycle.bindGroovyClass("filter", Commands.Filter.class);
+    lifeCycle.bindGroovyClass("consume", Commands.ConsumeString.class);
+    Commands.list.clear();
+  }
+
+  public void testTrace() throws Exception {
+    String out = trace("--trace produce | filter | consume");
+    assertStage(out, "produce", 0, 2);
+    assertStage(out, "filter", 2, 2);
+    assertStage(out, "consume", 2, 0);
+    assertStage(out, "(render)", 4, 0);
+    assertEquals(2, Commands.list.size());
+  }
+
+  public void testToggle() throws Exception {
+    assertOk("trace on");
+    assertStage(trace("produce"), "produce", 0, 2);
+    assertOk("trace off");
+    assertEquals("foobar", trace("produce"));
+  }
+
+  private String trace(String request) {
+    BaseProcessContext ctx = create(request);
+    ctx.setWidth(200);
+    ctx.execute();
+    assertEquals(ShellResponse.Ok.class, ctx.getResponse().getClass());
+    return ctx.getOutput();
+  }
+
+  private void assertStage(String out, String name, int in, int produced) {
+    for (String line : out.split("\n")) {
+      String[] columns = line.trim().split("\\s+");
+      if (columns[0].equals(name)) {
+        assertEquals(Integer.toString(in), columns[1]);
+        assertEquals(Integer.toString(produced), columns[2]);
+        return;
+      }
+    }
+    fail("Stage " + name + " not found in " + out);
+  }
+}
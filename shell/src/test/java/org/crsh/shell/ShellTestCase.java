@@ -46,4 +46,13 @@ public class ShellTestCase extends AbstractCommandTestCase {
       session.put("prompt", prompt);
     }
   }
+
+  public void testPromptCached() {
+    groovyShell.evaluate("count = new java.util.concurrent.atomic.AtomicInteger(); prompt = { -> \"${count.incrementAndGet()}% \" }");
+    assertEquals("1% ", shell.getPrompt());
+    assertEquals("1% ", shell.getPrompt());
+    shell.getSession().put("foo", "bar");
+    assertEquals("2% ", shell.getPrompt());
+    assertEquals("2% ", shell.getPrompt());
+  }
 }
@@ -28,7 +28,13 @@ import org.crsh.CommandQueue;
 import org.crsh.shell.Shell;
 import org.crsh.shell.ShellResponse;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -74,4 +80,44 @@ public class FailureTestCase extends AbstractTestCase {
     //
     assertEquals(ShellResponse.Error.class, ctx.getResponse().getClass());
   }
+
+  public void testRejectedByExecutor() throws Exception {
+    AsyncShell asyncShell = new AsyncShell(new AbstractExecutorService() {
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+      public void shutdown() {
+      }
+      public List<Runnable> shutdownNow() {
+        return Collections.emptyList();
+      }
+      public boolean isShutdown() {
+        return false;
+      }
+      public boolean isTerminated() {
+        return false;
+      }
+      public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return false;
+      }
+    }, new BaseShell());
+    assertRejected(asyncShell);
+  }
+
+  public void testRejectedByScheduler() throws Exception {
+    Executor rejecting = new Executor() {
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+    FairScheduler scheduler = new FairScheduler(rejecting, 1, Integer.MAX_VALUE, Integer.MAX_VALUE, 1);
+    assertRejected(new AsyncShell(scheduler.getExecutor("foo", "ssh"), new BaseShell()));
+  }
+
+  private void assertRejected(AsyncShell asyncShell) throws Exception {
+    BaseProcessContext ctx = BaseProcessContext.create(asyncShell, "foo").execute();
+    assertEquals(Status.TERMINATED, ((AsyncProcess)ctx.getProcess()).getStatus());
+    assertEquals(ShellResponse.Error.class, ctx.getResponse().getClass());
+    assertTrue(asyncShell.processes.isEmpty());
+  }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.shell.impl.async;
+
+import junit.framework.TestCase;
+import org.crsh.shell.ConnectorShellFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class FairSchedulerTestCase extends TestCase {
+
+  /** . */
+  private ExecutorService executor;
+
+  @Override
+  protected void setUp() throws Exception {
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Submit a task blocking until the latch is released and that records its name.
+   */
+  private void submit(ExecutorService flow, final String name, final CountDownLatch latch, final List<String> done) {
+    flow.execute(new Runnable() {
+      public void run() {
+        try {
+          latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ignore) {
+        }
+        done.add(name);
+      }
+    });
+  }
+
+  private void await(FairScheduler scheduler) throws Exception {
+    for (int i = 0;i < 1000 && (scheduler.getRunning() > 0 || scheduler.getQueued() > 0);i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, scheduler.getRunning());
+    assertEquals(0, scheduler.getQueued());
+  }
+
+  public void testNoisyNeighbour() throws Exception {
+    FairScheduler scheduler = new FairScheduler(executor, 1, Integer.MAX_VALUE, Integer.MAX_VALUE, 1);
+    List<String> done = Collections.synchronizedList(new ArrayList<String>());
+    CountDownLatch latch = new CountDownLatch(1);
+    ExecutorService noisy = scheduler.getExecutor("noisy", "ssh");
+    ExecutorService interactive = scheduler.getExecutor("interactive", "ssh");
+    for (int i = 0;i < 10;i++) {
+      submit(noisy, "noisy", latch, done);
+    }
+    submit(interactive, "interactive", latch, done);
+    assertEquals(1, scheduler.getRunning());
+    assertEquals(10, scheduler.getQueued());
+    latch.countDown();
+    await(scheduler);
+
+    // The interactive task does not wait for all the noisy tasks
+    assertEquals(11, done.size());
+    assertEquals("interactive", done.get(1));
+    assertEquals(11, scheduler.getCompleted());
+    assertEquals(0, scheduler.getRejected());
+  }
+
+  public void testWeight() throws Exception {
+    FairScheduler scheduler = new FairScheduler(executor, 1, Integer.MAX_VALUE, Integer.MAX_VALUE, 3);
+    List<String> done = Collections.synchronizedList(new ArrayList<String>());
+    CountDownLatch latch = new CountDownLatch(1);
+    ExecutorService blocker = scheduler.getExecutor("blocker", "ssh");
+    ExecutorService user = scheduler.getExecutor("user", "ssh");
+    ExecutorService cron = scheduler.getExecutor(null, ConnectorShellFactory.CRON);
+    submit(blocker, "blocker", latch, done);
+    for (int i = 0;i < 8;i++) {
+      submit(user, "user", latch, done);
+      submit(cron, "cron", latch, done);
+    }
+    latch.countDown();
+    await(scheduler);
+
+    // Among the first 8 tasks after the blocker, the cron flow gets 3 times more executions
+    int count = 0;
+    for (String name : done.subList(1, 9)) {
+      if (name.equals("cron")) {
+        count++;
+      }
+    }
+    assertEquals(6, count);
+  }
+
+  public void testLimits() throws Exception {
+    FairScheduler scheduler = new FairScheduler(executor, 10, 2, 3, 1);
+    final AtomicInteger max = new AtomicInteger();
+    final AtomicInteger current = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(1);
+    Runnable task = new Runnable() {
+      public void run() {
+        int value = current.incrementAndGet();
+        while (true) {
+          int m = max.get();
+          if (value <= m || max.compareAndSet(m, value)) {
+            break;
+          }
+        }
+        try {
+          latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ignore) {
+        }
+        current.decrementAndGet();
+      }
+    };
+    ExecutorService foo = scheduler.getExecutor("foo", "ssh");
+    ExecutorService bar = scheduler.getExecutor("bar", "ssh");
+    ExecutorService juu = scheduler.getExecutor("juu", "telnet");
+    for (int i = 0;i < 5;i++) {
+      foo.execute(task);
+      bar.execute(task);
+      juu.execute(task);
+    }
+
+    // 3 tasks for the ssh connector and 2 tasks for the telnet user
+    assertEquals(5, scheduler.getRunning());
+    assertEquals(10, scheduler.getQueued());
+    latch.countDown();
+    await(scheduler);
+    assertEquals(5, max.get());
+  }
+
+  public void testRejection() throws Exception {
+    Executor rejecting = new Executor() {
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+    FairScheduler scheduler = new FairScheduler(rejecting, 1, Integer.MAX_VALUE, Integer.MAX_VALUE, 1);
+    final AtomicReference<RejectedExecutionException> rejected = new AtomicReference<RejectedExecutionException>();
+    ExecutorService foo = scheduler.getExecutor("foo", "ssh");
+    foo.execute(new FairScheduler.Task() {
+      public void rejected(RejectedExecutionException e) {
+        rejected.set(e);
+      }
+      public void run() {
+        fail();
+      }
+    });
+    assertNotNull(rejected.get());
+    Future<?> future = foo.submit(new Runnable() {
+      public void run() {
+        fail();
+      }
+    });
+    assertTrue(future.isCancelled());
+    assertEquals(0, scheduler.getRunning());
+    assertEquals(0, scheduler.getQueued());
+    assertEquals(0, scheduler.getCompleted());
+    assertEquals(2, scheduler.getRejected());
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.command;
+
+import org.crsh.AbstractTestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class AuditLogTestCase extends AbstractTestCase {
+
+  /** . */
+  private File dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = File.createTempFile("crash", "audit");
+    assertTrue(dir.delete());
+    assertTrue(dir.mkdir());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  public void testLog() throws Exception {
+    File file = new File(dir, "audit.log");
+    AuditLog log = new AuditLog(file, 1024 * 1024, 2, 16);
+    assertTrue(log.log("root", "ssh", "echo \"a\\b\"", 1500000, "ok", 5));
+    assertTrue(log.log(null, null, "foo", 0, "error.evaluation", 0));
+    log.stop();
+    List<String> lines = read(file);
+    assertEquals(2, lines.size());
+    assertTrue(lines.get(0).endsWith(",\"user\":\"root\",\"connector\":\"ssh\",\"line\":\"echo \\\"a\\\\b\\\"\",\"duration\":1.500,\"status\":\"ok\",\"chars\":5}"));
+    assertTrue(lines.get(1).contains("\"user\":null,\"connector\":null"));
+    assertFalse(log.log("root", "ssh", "bar", 0, "ok", 0));
+  }
+
+  public void testLogWithCommaDecimalLocale() throws Exception {
+    Locale locale = Locale.getDefault();
+    Locale.setDefault(Locale.FRANCE);
+    try {
+      File file = new File(dir, "audit.log");
+      AuditLog log = new AuditLog(file, 1024 * 1024, 2, 16);
+      assertTrue(log.log("root", "ssh", "foo\u0001", 1500000, "ok", 0));
+      log.stop();
+      List<String> lines = read(file);
+      assertEquals(1, lines.size());
+      assertTrue(lines.get(0).contains("\"line\":\"foo\\u0001\",\"duration\":1.500,"));
+    }
+    finally {
+      Locale.setDefault(locale);
+    }
+  }
+
+  public void testRoll() throws Exception {
+    File file = new File(dir, "audit.log");
+    AuditLog log = new AuditLog(file, 100, 2, 16);
+    for (int i = 0;i < 10;i++) {
+      assertTrue(log.log("root", "ssh", "command " + i, 0, "ok", 0));
+      Thread.sleep(60);
+    }
+    log.stop();
+    assertTrue(file.exists());
+    assertTrue(new File(dir, "audit.log.1").exists());
+    assertTrue(new File(dir, "audit.log.2").exists());
+    assertFalse(new File(dir, "audit.log.3").exists());
+    List<String> lines = read(file);
+    assertTrue(lines.get(lines.size() - 1).contains("\"line\":\"command 9\""));
+  }
+
+  public void testRollOnBytes() throws Exception {
+    File file = new File(dir, "audit.log");
+    AuditLog log = new AuditLog(file, 200, 2, 16);
+    StringBuilder line = new StringBuilder();
+    for (int i = 0;i < 60;i++) {
+      line.append('\u00e9');
+    }
+    assertTrue(log.log("root", "ssh", line.toString(), 0, "ok", 0));
+    Thread.sleep(120);
+    assertTrue(log.log("root", "ssh", "foo", 0, "ok", 0));
+    log.stop();
+    assertTrue(file.length() < 200);
+    assertEquals(1, read(new File(dir, "audit.log.1")).size());
+    List<String> lines = read(file);
+    assertEquals(1, lines.size());
+    assertTrue(lines.get(0).contains("\"line\":\"foo\""));
+  }
+
+  public void testWriteFailure() throws Exception {
+    File blocker = new File(dir, "logs");
+    assertTrue(blocker.createNewFile());
+    File file = new File(blocker, "audit.log");
+    AuditLog log = new AuditLog(file, 1024 * 1024, 2, 16);
+    try {
+      assertTrue(log.log("root", "ssh", "foo", 0, "ok", 0));
+      for (int i = 0;i < 100 && log.getDropped() == 0;i++) {
+        Thread.sleep(20);
+      }
+      assertEquals(1, log.getDropped());
+
+      // The file is opened again for the next event
+      assertTrue(blocker.delete());
+      assertTrue(log.log("root", "ssh", "bar", 0, "ok", 0));
+    }
+    finally {
+      log.stop();
+    }
+    List<String> lines = read(file);
+    assertEquals(2, lines.size());
+    assertTrue(lines.get(0).contains("\"line\":\"bar\""));
+    assertTrue(lines.get(1).endsWith(",\"dropped\":1}"));
+    assertTrue(file.delete());
+    assertTrue(blocker.delete());
+  }
+
+  public void testUTF8Length() {
+    assertEquals(3, AuditLog.utf8Length("abc"));
+    assertEquals(2, AuditLog.utf8Length("\u00e9"));
+    assertEquals(3, AuditLog.utf8Length("\u20ac"));
+    assertEquals(4, AuditLog.utf8Length("\ud83d\ude00"));
+  }
+
+  public void testQuote() {
+    StringBuilder sb = new StringBuilder();
+    AuditLog.quote("a\n\t\u0001", sb);
+    assertEquals("\"a\\n\\t\\u0001\"", sb.toString());
+  }
+
+  private List<String> read(File file) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      ArrayList<String> lines = new ArrayList<String>();
+      for (String line = reader.readLine();line != null;line = reader.readLine()) {
+        lines.add(line);
+      }
+      return lines;
+    }
+    finally {
+      reader.close();
+    }
+  }
+}
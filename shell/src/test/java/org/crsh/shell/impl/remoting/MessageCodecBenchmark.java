@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.remoting;
+
+import org.crsh.AbstractTestCase;
+import org.crsh.text.Text;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.logging.Logger;
+
+/**
+ * Compares the binary framing of the messages with the java serialization, this benchmark is not part of the
+ * default test run, to run it use "mvn test -Pbenchmark".
+ */
+public class MessageCodecBenchmark extends AbstractTestCase {
+
+  /** . */
+  private static final Logger log = Logger.getLogger(MessageCodecBenchmark.class.getName());
+
+  static ByteArrayOutputStream binary(int lines, int compressionThreshold) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    MessageOutput out = new MessageOutput(baos, MessageOutput.DEFAULT_BATCH_SIZE, compressionThreshold, 0);
+    for (int i = 0;i < lines;i++) {
+      out.write(new ServerMessage.Chunk(Text.create("line " + i + "\n")));
+    }
+    out.flush();
+    MessageInput in = new MessageInput(new ByteArrayInputStream(baos.toByteArray()));
+    for (int i = 0;i < lines;i++) {
+      in.read();
+    }
+    return baos;
+  }
+
+  static ByteArrayOutputStream serialized(int lines) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(baos);
+    for (int i = 0;i < lines;i++) {
+      oos.writeObject(new ServerMessage.Chunk(Text.create("line " + i + "\n")));
+    }
+    oos.flush();
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+    for (int i = 0;i < lines;i++) {
+      ois.readObject();
+    }
+    return baos;
+  }
+
+  public void testThroughput() throws Exception {
+    int lines = 1000000;
+
+    //
+    long time = System.currentTimeMillis();
+    int binarySize = binary(lines, -1).size();
+    long binary = System.currentTimeMillis() - time;
+
+    //
+    time = System.currentTimeMillis();
+    int deflatedSize = binary(lines, 1024).size();
+    long deflated = System.currentTimeMillis() - time;
+
+    // Java serialization as it used to be done
+    time = System.currentTimeMillis();
+    int serializedSize = serialized(lines).size();
+    long serialized = System.currentTimeMillis() - time;
+
+    //
+    log.info(lines + " lines binary framing: " + binary + "ms " + binarySize + " bytes, with compression: " +
+        deflated + "ms " + deflatedSize + " bytes, serialization: " + serialized + "ms " + serializedSize + " bytes");
+  }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.remoting;
+
+import org.crsh.AbstractTestCase;
+import org.crsh.cli.impl.Delimiter;
+import org.crsh.cli.impl.completion.CompletionMatch;
+import org.crsh.cli.spi.Completion;
+import org.crsh.shell.ErrorType;
+import org.crsh.shell.ShellResponse;
+import org.crsh.text.CLS;
+import org.crsh.text.Color;
+import org.crsh.text.Decoration;
+import org.crsh.text.Style;
+import org.crsh.text.Text;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Collections;
+
+public class MessageCodecTestCase extends AbstractTestCase {
+
+  private MessageInput roundtrip(Object... messages) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    MessageOutput out = new MessageOutput(baos, MessageOutput.DEFAULT_BATCH_SIZE, -1, 0);
+    for (Object message : messages) {
+      out.write(message);
+    }
+    out.flush();
+    return new MessageInput(new ByteArrayInputStream(baos.toByteArray()));
+  }
+
+  public void testControl() throws Exception {
+    MessageInput in = roundtrip(
+        new ClientMessage.GetWelcome(),
+        new ClientMessage.GetPrompt(),
+        new ClientMessage.Cancel(),
+        new ClientMessage.Close(),
+        new ServerMessage.UseMainBuffer(),
+        new ServerMessage.UseAlternateBuffer(),
+        new ServerMessage.Flush());
+    assertInstance(ClientMessage.GetWelcome.class, in.read());
+    assertInstance(ClientMessage.GetPrompt.class, in.read());
+    assertInstance(ClientMessage.Cancel.class, in.read());
+    assertInstance(ClientMessage.Close.class, in.read());
+    assertInstance(ServerMessage.UseMainBuffer.class, in.read());
+    assertInstance(ServerMessage.UseAlternateBuffer.class, in.read());
+    assertInstance(ServerMessage.Flush.class, in.read());
+  }
+
+  public void testValues() throws Exception {
+    MessageInput in = roundtrip(
+        new ClientMessage.SetSize(80, 24),
+        new ClientMessage.Execute(120, 40, "thread ls | sort -f name"),
+        new ClientMessage.GetCompletion("th\u00e9"),
+        new ServerMessage.Welcome(null),
+        new ServerMessage.Prompt("% "));
+    ClientMessage.SetSize size = assertInstance(ClientMessage.SetSize.class, in.read());
+    assertEquals(80, size.width);
+    assertEquals(24, size.height);
+    ClientMessage.Execute execute = assertInstance(ClientMessage.Execute.class, in.read());
+    assertEquals(120, execute.width);
+    assertEquals(40, execute.height);
+    assertEquals("thread ls | sort -f name", execute.line);
+    assertEquals("th\u00e9", assertInstance(ClientMessage.GetCompletion.class, in.read()).prefix);
+    assertNull(assertInstance(ServerMessage.Welcome.class, in.read()).value);
+    assertEquals("% ", assertInstance(ServerMessage.Prompt.class, in.read()).value);
+  }
+
+  public void testChunks() throws Exception {
+    Style style = Style.style(Decoration.bold, Color.red, null);
+    MessageInput in = roundtrip(
+        new ServerMessage.Chunk(Text.create("hello\n")),
+        new ServerMessage.Chunk(style),
+        new ServerMessage.Chunk(Style.reset),
+        new ServerMessage.Chunk(CLS.INSTANCE));
+    assertEquals(Text.create("hello\n"), assertInstance(ServerMessage.Chunk.class, in.read()).payload);
+    assertSame(style, assertInstance(ServerMessage.Chunk.class, in.read()).payload);
+    assertSame(Style.reset, assertInstance(ServerMessage.Chunk.class, in.read()).payload);
+    assertSame(CLS.INSTANCE, assertInstance(ServerMessage.Chunk.class, in.read()).payload);
+  }
+
+  public void testSerialized() throws Exception {
+    MessageInput in = roundtrip(
+        new ServerMessage.Completion(new CompletionMatch(Delimiter.DOUBLE_QUOTE, Completion.create("pref", "ix", true))),
+        new ServerMessage.End(ShellResponse.error(ErrorType.EVALUATION, "hell", new Exception("juu"))));
+    CompletionMatch completion = assertInstance(ServerMessage.Completion.class, in.read()).value;
+    assertEquals(Delimiter.DOUBLE_QUOTE, completion.getDelimiter());
+    assertEquals(Collections.singleton("ix"), completion.getValue().getValues());
+    ShellResponse.Error error = assertInstance(ShellResponse.Error.class, assertInstance(ServerMessage.End.class, in.read()).response);
+    assertEquals("hell", error.getMessage());
+    assertEquals("juu", error.getThrowable().getMessage());
+  }
+
+  public void testFrameSizeIsConstant() throws Exception {
+    final int[] count = {0};
+    MessageOutput out = new MessageOutput(new OutputStream() {
+      @Override
+      public void write(int b) {
+        count[0]++;
+      }
+      @Override
+      public void write(byte[] b, int off, int len) {
+        count[0] += len;
+      }
+    }, MessageOutput.DEFAULT_BATCH_SIZE, -1, 0);
+    out.flush();
+    count[0] = 0;
+    out.write(new ServerMessage.End(ShellResponse.ok()));
+    out.flush();
+    int size = count[0];
+    for (int i = 0;i < 10;i++) {
+      count[0] = 0;
+      out.write(new ServerMessage.End(ShellResponse.ok()));
+      out.flush();
+      assertEquals(size, count[0]);
+    }
+  }
+
+  public void testInvalidHeader() throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new ObjectOutputStream(baos).close();
+    try {
+      new MessageInput(new ByteArrayInputStream(baos.toByteArray())).read();
+      fail();
+    }
+    catch (StreamCorruptedException expected) {
+    }
+  }
+
+  public void testInvalidVersion() throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(baos);
+    out.writeInt(MessageCodec.MAGIC);
+    out.writeShort(MessageCodec.VERSION + 1);
+    out.close();
+    try {
+      new MessageInput(new ByteArrayInputStream(baos.toByteArray())).read();
+      fail();
+    }
+    catch (StreamCorruptedException expected) {
+    }
+  }
+
+  public void testBatch() throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    MessageOutput out = new MessageOutput(baos, 64, -1, 0);
+    out.flush();
+    int header = baos.size();
+
+    // Below the batch size nothing is sent until flush
+    out.write(new ServerMessage.Chunk(Text.create("a")));
+    out.write(new ServerMessage.Chunk(Text.create("b")));
+    assertEquals(header, baos.size());
+
+    // Reaching the batch size sends the batch
+    out.write(new ServerMessage.Chunk(Text.create("0123456789012345678901234567890123456789")));
+    out.flush();
+    int batch = baos.size();
+    assertTrue(batch > header);
+    out.write(new ServerMessage.Flush());
+    out.flush();
+
+    //
+    MessageInput in = new MessageInput(new ByteArrayInputStream(baos.toByteArray()));
+    assertEquals(Text.create("a"), assertInstance(ServerMessage.Chunk.class, in.read()).payload);
+    assertEquals(Text.create("b"), assertInstance(ServerMessage.Chunk.class, in.read()).payload);
+    assertEquals(Text.create("0123456789012345678901234567890123456789"), assertInstance(ServerMessage.Chunk.class, in.read()).payload);
+    assertInstance(ServerMessage.Flush.class, in.read());
+  }
+
+  public void testCompression() throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    MessageOutput out = new MessageOutput(baos, 8192, 256, 0);
+    out.flush();
+    int header = baos.size();
+    for (int i = 0;i < 100;i++) {
+      out.write(new ServerMessage.Chunk(Text.create("line " + i + " of a repetitive output\n")));
+    }
+    out.write(new ServerMessage.Chunk(Style.style(Color.blue)));
+    out.write(new ServerMessage.Flush());
+    out.flush();
+
+    // Small batches are not compressed
+    out.write(new ServerMessage.Prompt("% "));
+    out.flush();
+
+    //
+    assertTrue(baos.size() - header < 100 * 20);
+    MessageInput in = new MessageInput(new ByteArrayInputStream(baos.toByteArray()));
+    for (int i = 0;i < 100;i++) {
+      assertEquals(Text.create("line " + i + " of a repetitive output\n"), assertInstance(ServerMessage.Chunk.class, in.read()).payload);
+    }
+    assertSame(Style.style(Color.blue), assertInstance(ServerMessage.Chunk.class, in.read()).payload);
+    assertInstance(ServerMessage.Flush.class, in.read());
+    assertEquals("% ", assertInstance(ServerMessage.Prompt.class, in.read()).value);
+  }
+
+  public void testCorruptedCompression() throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(baos);
+    out.writeInt(MessageCodec.MAGIC);
+    out.writeShort(MessageCodec.VERSION);
+    out.writeInt(8);
+    out.writeByte(MessageCodec.DEFLATED_BATCH);
+    out.writeShort(0);
+    out.writeInt(100);
+    out.writeInt(0xCAFEBABE);
+    out.close();
+    try {
+      new MessageInput(new ByteArrayInputStream(baos.toByteArray())).read();
+      fail();
+    }
+    catch (StreamCorruptedException expected) {
+    }
+  }
+
+  public void testOversizedFrame() throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(baos);
+    out.writeInt(MessageCodec.MAGIC);
+    out.writeShort(MessageCodec.VERSION);
+    out.writeInt(Integer.MAX_VALUE);
+    out.writeByte(MessageCodec.BATCH);
+    out.writeShort(0);
+    out.close();
+    try {
+      new MessageInput(new ByteArrayInputStream(baos.toByteArray())).read();
+      fail();
+    }
+    catch (StreamCorruptedException expected) {
+    }
+  }
+
+  public void testOversizedCompression() throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(baos);
+    out.writeInt(MessageCodec.MAGIC);
+    out.writeShort(MessageCodec.VERSION);
+    out.writeInt(8);
+    out.writeByte(MessageCodec.DEFLATED_BATCH);
+    out.writeShort(0);
+    out.writeInt(Integer.MAX_VALUE);
+    out.writeInt(0xCAFEBABE);
+    out.close();
+    try {
+      new MessageInput(new ByteArrayInputStream(baos.toByteArray())).read();
+      fail();
+    }
+    catch (StreamCorruptedException expected) {
+    }
+  }
+
+  public void testOversizedMessage() throws Exception {
+    MessageOutput out = new MessageOutput(new ByteArrayOutputStream(), MessageOutput.DEFAULT_BATCH_SIZE, -1, 0);
+    char[] chars = new char[MessageCodec.MAX_FRAME_SIZE];
+    try {
+      out.write(new ServerMessage.Chunk(Text.create(new String(chars))));
+      fail();
+    }
+    catch (IOException expected) {
+    }
+  }
+
+  public void testClose() throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    MessageOutput out = new MessageOutput(baos, MessageOutput.DEFAULT_BATCH_SIZE, 0, 0);
+    out.write(new ServerMessage.Chunk(Text.create("hello\n")));
+    out.flush();
+    out.close();
+    out.close();
+    out.write(new ServerMessage.Chunk(Text.create("hello\n")));
+    try {
+      out.flush();
+      fail();
+    }
+    catch (IOException expected) {
+    }
+    MessageInput in = new MessageInput(new ByteArrayInputStream(baos.toByteArray()));
+    assertEquals(Text.create("hello\n"), assertInstance(ServerMessage.Chunk.class, in.read()).payload);
+    in.close();
+    try {
+      in.read();
+      fail();
+    }
+    catch (IOException expected) {
+    }
+  }
+
+  public void testSize() throws Exception {
+    int lines = 1000;
+    int binarySize = MessageCodecBenchmark.binary(lines, -1).size();
+    int deflatedSize = MessageCodecBenchmark.binary(lines, 1024).size();
+    int serializedSize = MessageCodecBenchmark.serialized(lines).size();
+    assertTrue(binarySize < serializedSize);
+    assertTrue(deflatedSize < binarySize);
+  }
+}
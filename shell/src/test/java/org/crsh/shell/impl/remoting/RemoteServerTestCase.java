@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.shell.impl.remoting;
+
+import org.crsh.AbstractTestCase;
+import org.crsh.BaseProcess;
+import org.crsh.BaseProcessContext;
+import org.crsh.BaseProcessFactory;
+import org.crsh.BaseShell;
+import org.crsh.shell.Shell;
+import org.crsh.shell.ShellProcess;
+import org.crsh.shell.ShellProcessContext;
+import org.crsh.shell.ShellResponse;
+import org.crsh.shell.impl.async.AsyncShell;
+import org.crsh.text.Chunk;
+import org.crsh.text.Text;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs several processes at the same time over a single socket connection.
+ */
+public class RemoteServerTestCase extends AbstractTestCase {
+
+  /** . */
+  private ExecutorService executor;
+
+  /** The shell executing the processes synchronously. */
+  private Shell local;
+
+  /** . */
+  private RemoteServer server;
+
+  /** . */
+  private Thread client;
+
+  /** Released at the end of the test. */
+  private CountDownLatch blocked;
+
+  /** The number of chunks provided by the flood process. */
+  private AtomicInteger provided;
+
+  @Override
+  protected void setUp() throws Exception {
+    executor = Executors.newCachedThreadPool();
+    blocked = new CountDownLatch(1);
+    provided = new AtomicInteger();
+
+    //
+    local = new BaseShell(new BaseProcessFactory() {
+      @Override
+      public BaseProcess create(String request) {
+        return new BaseProcess(request) {
+          @Override
+          public void process(String request, ShellProcessContext processContext) throws IOException {
+            if (request.equals("block")) {
+              try {
+                blocked.await();
+              }
+              catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            } else if (request.equals("size")) {
+              // Wait until the new size is pushed
+              long timeout = System.currentTimeMillis() + 10000;
+              while (processContext.getWidth() != 100 && System.currentTimeMillis() < timeout) {
+                try {
+                  Thread.sleep(10);
+                }
+                catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                  break;
+                }
+              }
+              processContext.write(Text.create(processContext.getWidth() + "x" + processContext.getHeight()));
+            } else if (request.equals("flood")) {
+              char[] line = new char[1000];
+              for (int i = 0;i < 200;i++) {
+                processContext.write(Text.create(new String(line)));
+                provided.incrementAndGet();
+              }
+            } else {
+              processContext.write(Text.create(request));
+            }
+            processContext.end(ShellResponse.ok());
+          }
+        };
+      }
+    });
+
+    //
+    server = new RemoteServer(0);
+    int port = server.bind();
+    RemoteClient remote = new RemoteClient(port, new AsyncShell(executor, local));
+    remote.connect();
+    server.accept();
+    client = new Thread(remote.getRunnable());
+    client.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    blocked.countDown();
+    server.getShell().close();
+    assertJoin(client);
+    executor.shutdownNow();
+  }
+
+  public void testConcurrentProcesses() throws Exception {
+    Shell shell = server.getShell();
+
+    // A process that does not end until it is cancelled
+    final BaseProcessContext block = BaseProcessContext.create(shell, "block");
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        block.execute();
+      }
+    };
+    t.start();
+
+    // Other processes run meanwhile
+    for (int i = 0;i < 3;i++) {
+      BaseProcessContext echo = BaseProcessContext.create(shell, "hello" + i).execute();
+      assertInstance(ShellResponse.Ok.class, echo.getResponse());
+      assertEquals("hello" + i, echo.getOutput());
+    }
+    assertTrue(t.isAlive());
+
+    // Cancel it independently
+    block.cancel();
+    assertInstance(ShellResponse.Cancelled.class, block.getResponse());
+    assertJoin(t);
+
+    // The connection is still usable
+    BaseProcessContext echo = BaseProcessContext.create(shell, "bye").execute();
+    assertInstance(ShellResponse.Ok.class, echo.getResponse());
+    assertEquals("bye", echo.getOutput());
+  }
+
+  public void testResize() throws Exception {
+    Shell shell = server.getShell();
+    final BaseProcessContext context = BaseProcessContext.create(shell, "size");
+    context.setWidth(80);
+    context.setHeight(24);
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        context.execute();
+      }
+    };
+    t.start();
+
+    // The new size is pushed while the process is running
+    Thread.sleep(100);
+    context.setHeight(50);
+    context.setWidth(100);
+    assertInstance(ShellResponse.Ok.class, context.getResponse());
+    assertEquals("100x50", context.getOutput());
+    assertJoin(t);
+  }
+
+  public void testSynchronousShell() throws Exception {
+    RemoteServer server = new RemoteServer(0);
+    int port = server.bind();
+    RemoteClient remote = new RemoteClient(port, local);
+    remote.connect();
+    server.accept();
+    Thread client = new Thread(remote.getRunnable());
+    client.start();
+    try {
+
+      // The output exceeds the window, the window updates are read while the process is executing
+      final BaseProcessContext context = BaseProcessContext.create(server.getShell(), "flood");
+      Thread t = new Thread() {
+        @Override
+        public void run() {
+          context.execute();
+        }
+      };
+      t.start();
+      assertJoin(t, 10000);
+      assertInstance(ShellResponse.Ok.class, context.getResponse());
+      assertEquals(200 * 1000, context.getOutput().length());
+    }
+    finally {
+      server.getShell().close();
+      assertJoin(client);
+    }
+  }
+
+  public void testFlowControl() throws Exception {
+    Shell shell = server.getShell();
+
+    // A receiver that does not consume the output until it is released
+    final CountDownLatch released = new CountDownLatch(1);
+    final AtomicInteger received = new AtomicInteger();
+    final BaseProcessContext context = BaseProcessContext.create(shell, "flood");
+    final ShellProcessContext slow = new ShellProcessContext() {
+      public int getWidth() { return 80; }
+      public int getHeight() { return 40; }
+      public boolean takeAlternateBuffer() { return false; }
+      public boolean releaseAlternateBuffer() { return false; }
+      public String getProperty(String name) { return null; }
+      public String readLine(String msg, boolean echo) { return null; }
+      public Class<Chunk> getConsumedType() { return Chunk.class; }
+      public void write(Chunk chunk) throws IOException { provide(chunk); }
+      public void provide(Chunk element) throws IOException {
+        try {
+          released.await();
+        }
+        catch (InterruptedException e) {
+          throw failure(e);
+        }
+        received.addAndGet(((Text)element).getText().length());
+      }
+      public void flush() { }
+      public void end(ShellResponse response) { context.end(response); }
+    };
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        context.getProcess().execute(slow);
+      }
+    };
+    t.start();
+
+    // Wait until the sender is stalled by the window
+    int last = -1;
+    while (provided.get() != last) {
+      last = provided.get();
+      Thread.sleep(200);
+    }
+    assertTrue("Was expecting the sender to stall instead of providing " + last + " chunks", last < 200);
+    assertTrue(last * 1000 <= Window.DEFAULT_SIZE + 1000);
+
+    // The stalled channel does not prevent other processes to run
+    BaseProcessContext echo = BaseProcessContext.create(shell, "hello").execute();
+    assertInstance(ShellResponse.Ok.class, echo.getResponse());
+    assertEquals("hello", echo.getOutput());
+
+    // Consume the output
+    released.countDown();
+    assertInstance(ShellResponse.Ok.class, context.getResponse());
+    assertEquals(200, provided.get());
+    assertEquals(200 * 1000, received.get());
+    assertJoin(t);
+  }
+}
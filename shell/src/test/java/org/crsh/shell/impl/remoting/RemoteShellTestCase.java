@@ -35,8 +35,6 @@ import org.crsh.shell.ShellResponse;
 import org.crsh.text.Text;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.Arrays;
@@ -50,15 +48,15 @@ public class RemoteShellTestCase extends AbstractTestCase {
   static class ClientProcessor extends Thread {
 
     /** . */
-    final ObjectInputStream in;
+    final MessageInput in;
 
     /** . */
-    final ObjectOutputStream out;
+    final MessageOutput out;
 
     /** . */
     final Shell shell;
 
-    ClientProcessor(ObjectInputStream in, ObjectOutputStream out, Shell shell) {
+    ClientProcessor(MessageInput in, MessageOutput out, Shell shell) {
       this.in = in;
       this.out = out;
       this.shell = shell;
@@ -72,16 +70,16 @@ public class RemoteShellTestCase extends AbstractTestCase {
   }
 
   /** . */
-  private ObjectInputStream serverOIS;
+  private MessageInput serverOIS;
 
   /** . */
-  private ObjectOutputStream clientOOS;
+  private MessageOutput clientOOS;
 
   /** . */
-  private ObjectInputStream clientOIS;
+  private MessageInput clientOIS;
 
   /** . */
-  private ObjectOutputStream serverOOS;
+  private MessageOutput serverOOS;
 
   @Override
   protected void setUp() throws Exception {
@@ -93,12 +91,10 @@ public class RemoteShellTestCase extends AbstractTestCase {
     PipedOutputStream d = new PipedOutputStream(c);
 
     //
-    ObjectOutputStream clientOOS = new ObjectOutputStream(b);
-    clientOOS.flush();
-    ObjectOutputStream serverOOS = new ObjectOutputStream(d);
-    serverOOS.flush();
-    ObjectInputStream serverOIS = new ObjectInputStream(a);
-    ObjectInputStream clientOIS = new ObjectInputStream(c);
+    MessageOutput clientOOS = new MessageOutput(b);
+    MessageOutput serverOOS = new MessageOutput(d);
+    MessageInput serverOIS = new MessageInput(a);
+    MessageInput clientOIS = new MessageInput(c);
 
     //
     this.clientOIS = clientOIS;
@@ -110,9 +106,9 @@ public class RemoteShellTestCase extends AbstractTestCase {
   public void testSerialization() throws Exception {
 
     ServerMessage message = new ServerMessage.Completion(new CompletionMatch(Delimiter.DOUBLE_QUOTE, Completion.create("pref", "ix", true)));
-    clientOOS.writeObject(message);
+    clientOOS.write(message);
     clientOOS.flush();
-    ServerMessage after = (ServerMessage)serverOIS.readObject();
+    ServerMessage after = (ServerMessage)serverOIS.read();
     System.out.println("after = " + after);
 
   }
@@ -224,14 +220,14 @@ public class RemoteShellTestCase extends AbstractTestCase {
     t.start();
 
     //
-    serverOOS.writeObject(new ClientMessage.Execute(32, 50, ""));
+    serverOOS.write(1, new ClientMessage.Execute(32, 50, ""));
     serverOOS.flush();
-    ServerMessage.End message = (ServerMessage.End)serverOIS.readObject();
+    ServerMessage.End message = (ServerMessage.End)serverOIS.read();
     assertInstance(ShellResponse.Close.class, message.response);
 
     // This should fail at some point
     try {
-      serverOIS.readObject();
+      serverOIS.read();
       fail();
     }
     catch (IOException e) {
@@ -279,11 +275,11 @@ public class RemoteShellTestCase extends AbstractTestCase {
     t.start();
 
     //
-    serverOOS.writeObject(new ClientMessage.Execute(32, 50, ""));
+    serverOOS.write(1, new ClientMessage.Execute(32, 50, ""));
     serverOOS.flush();
 
     //
-    ServerMessage.End message = (ServerMessage.End)serverOIS.readObject();
+    ServerMessage.End message = (ServerMessage.End)serverOIS.read();
     ShellResponse.Error error = assertInstance(ShellResponse.Error.class, message.response);
     assertEquals(ErrorType.INTERNAL, error.getType());
     assertInstance(Exception.class, error.getThrowable());
@@ -294,11 +290,11 @@ public class RemoteShellTestCase extends AbstractTestCase {
     latch.countDown();
 
     //
-    serverOOS.writeObject(new ClientMessage.Execute(32, 50, ""));
+    serverOOS.write(1, new ClientMessage.Execute(32, 50, ""));
     serverOOS.flush();
 
     //
-    message = (ServerMessage.End)serverOIS.readObject();
+    message = (ServerMessage.End)serverOIS.read();
     assertInstance(ShellResponse.Ok.class, message.response);
 
     //
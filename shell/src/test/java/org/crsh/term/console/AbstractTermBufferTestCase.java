@@ -73,6 +73,20 @@ public abstract class AbstractTermBufferTestCase extends TestCase {
     }
   }
 
+  public void testLargeLine() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0;i < 10000;i++) {
+      sb.append((char)('a' + i % 26));
+    }
+    String line = sb.toString();
+    buffer.append(line);
+    assertEquals(10000, buffer.getSize());
+    buffer.append("\n");
+    assertTrue(buffer.hasNext());
+    assertEquals(line, buffer.next());
+    assertEquals(0, buffer.getSize());
+  }
+
   public void testErase() throws IOException {
     resetConsole();
     buffer.append("a");
@@ -155,6 +155,30 @@ public class ConsoleTermTestCase extends TestCase {
     assertComplete("a");
   }
 
+  public void testPaste() throws Exception {
+    io.appendPasteStart();
+    io.append("ab\r\ncd\r\n");
+    io.appendPasteEnd();
+    assertLine("ab");
+    assertLine("cd");
+    io.assertChars("ab");
+    io.assertCRLF();
+    io.assertChars("cd");
+    io.assertCRLF();
+    io.assertFlush();
+    io.assertEmpty();
+  }
+
+  public void testPasteInsert() throws Exception {
+    io.append("ab");
+    io.appendMoveLeft();
+    io.appendPasteStart();
+    io.append("cd");
+    io.appendPasteEnd();
+    io.append("\r\n");
+    assertLine("acdb");
+  }
+
   public void testBufferInsert() throws Exception {
     io.append("a");
     io.moveLeft();
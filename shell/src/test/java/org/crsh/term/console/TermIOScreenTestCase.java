@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.term.console;
+
+import junit.framework.TestCase;
+import org.crsh.term.spi.TestTermIO;
+
+public class TermIOScreenTestCase extends TestCase {
+
+  /** . */
+  private TestTermIO io;
+
+  /** . */
+  private TermIOScreen screen;
+
+  @Override
+  protected void setUp() throws Exception {
+    io = new TestTermIO();
+    screen = new TermIOScreen(io);
+  }
+
+  public void testFirstFrame() throws Exception {
+    assertTrue(screen.cls());
+    assertTrue(screen.isActive());
+    screen.write("ab\ncd");
+    screen.flush();
+    io.assertCLS();
+    io.assertChars("ab");
+    io.assertMoveTo(1, 0);
+    io.assertChars("cd");
+    io.assertMoveTo(1, 2);
+    io.assertFlush();
+    io.assertEmpty();
+  }
+
+  public void testNoCursorPositioning() throws Exception {
+    TermIOScreen screen = new TermIOScreen(new SimpleTermIO(true));
+    assertFalse(screen.cls());
+    assertFalse(screen.isActive());
+  }
+
+  public void testDiff() throws Exception {
+    screen.cls();
+    screen.write("abc\ndef");
+    screen.flush();
+    io.assertCLS();
+    io.assertChars("abc");
+    io.assertMoveTo(1, 0);
+    io.assertChars("def");
+    io.assertMoveTo(1, 3);
+    io.assertFlush();
+
+    //
+    screen.cls();
+    screen.write("abd\ndef");
+    screen.flush();
+    io.assertMoveTo(0, 2);
+    io.assertChar('d');
+    io.assertMoveTo(1, 3);
+    io.assertFlush();
+    io.assertEmpty();
+
+    //
+    screen.cls();
+    screen.write("abd\ndef");
+    screen.flush();
+    io.assertFlush();
+    io.assertEmpty();
+
+    //
+    screen.cls();
+    screen.write("abd");
+    screen.flush();
+    io.assertMoveTo(1, 0);
+    io.assertChars("   ");
+    io.assertMoveTo(0, 3);
+    io.assertFlush();
+    io.assertEmpty();
+  }
+
+  public void testResize() throws Exception {
+    screen.cls();
+    screen.write("a");
+    screen.flush();
+    io.assertCLS();
+    io.assertChar('a');
+    io.assertMoveTo(0, 1);
+    io.assertFlush();
+
+    //
+    io.setWidth(16);
+    screen.cls();
+    screen.write("a");
+    screen.flush();
+    io.assertCLS();
+    io.assertChar('a');
+    io.assertMoveTo(0, 1);
+    io.assertFlush();
+    io.assertEmpty();
+  }
+
+  public void testWrap() throws Exception {
+    io.setWidth(2);
+    screen.cls();
+    screen.write("abc");
+    screen.flush();
+    io.assertCLS();
+    io.assertChars("ab");
+    io.assertMoveTo(1, 0);
+    io.assertChar('c');
+    io.assertMoveTo(1, 1);
+    io.assertFlush();
+    io.assertEmpty();
+  }
+
+  public void testReset() throws Exception {
+    screen.cls();
+    screen.reset();
+    assertFalse(screen.isActive());
+  }
+}
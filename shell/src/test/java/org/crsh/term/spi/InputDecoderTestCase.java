@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.term.spi;
+
+import junit.framework.TestCase;
+import org.crsh.term.CodeType;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+public class InputDecoderTestCase extends TestCase {
+
+  /** . */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static InputDecoder decoder(String... chunks) {
+    byte[][] bytes = new byte[chunks.length][];
+    for (int i = 0;i < chunks.length;i++) {
+      bytes[i] = chunks[i].getBytes(UTF_8);
+    }
+    return decoder(bytes);
+  }
+
+  private static InputDecoder decoder(byte[]... chunks) {
+    final LinkedList<byte[]> queue = new LinkedList<byte[]>(Arrays.asList(chunks));
+    return new InputDecoder(UTF_8) {
+      @Override
+      protected int receive(byte[] b, int off, int len) throws IOException {
+        if (queue.isEmpty()) {
+          return -1;
+        } else {
+          byte[] chunk = queue.removeFirst();
+          System.arraycopy(chunk, 0, b, off, chunk.length);
+          return chunk.length;
+        }
+      }
+    };
+  }
+
+  private static void assertCodes(InputDecoder decoder, int... expected) throws IOException {
+    int[] codes = new int[expected.length];
+    for (int i = 0;i < codes.length;i++) {
+      codes[i] = decoder.read();
+    }
+    assertEquals(Arrays.toString(expected), Arrays.toString(codes));
+  }
+
+  public void testChar() throws Exception {
+    assertCodes(decoder("a", "b"), 'a', 'b', InputDecoder.HANDLED);
+  }
+
+  public void testArrows() throws Exception {
+    assertCodes(decoder("\033[A", "\033[B", "\033OC", "\033[D"), InputDecoder.UP, InputDecoder.DOWN, InputDecoder.RIGHT, InputDecoder.LEFT);
+  }
+
+  public void testWords() throws Exception {
+    assertCodes(decoder("\033b", "\033f"), InputDecoder.BACKWARD_WORD, InputDecoder.FORWARD_WORD);
+  }
+
+  public void testBracketedPaste() throws Exception {
+    assertCodes(decoder("\033[200~a\tb\033[201~"), InputDecoder.PASTE_START, 'a', '\t', 'b', InputDecoder.PASTE_END);
+  }
+
+  public void testRun() throws Exception {
+    assertCodes(decoder("ab\033[Dc"), InputDecoder.PASTE_START, 'a', 'b', InputDecoder.PASTE_END, InputDecoder.LEFT, 'c', InputDecoder.HANDLED);
+  }
+
+  public void testEscapeSplitAcrossReceives() throws Exception {
+    assertCodes(decoder("\033", "[", "A"), InputDecoder.UP, InputDecoder.HANDLED);
+  }
+
+  public void testMultiByteSplitAcrossReceives() throws Exception {
+    byte[] bytes = "\u00e9".getBytes(UTF_8);
+    assertCodes(decoder(new byte[]{bytes[0]}, new byte[]{bytes[1]}), '\u00e9', InputDecoder.HANDLED);
+  }
+
+  public void testIncompleteSequenceAtEnd() throws Exception {
+    byte[] bytes = "\u00e9".getBytes(UTF_8);
+    assertCodes(decoder(new byte[]{'a'}, new byte[]{bytes[0]}), 'a', '\ufffd', InputDecoder.HANDLED, InputDecoder.HANDLED);
+  }
+
+  public void testDecode() throws Exception {
+    InputDecoder decoder = decoder(new byte[0][]);
+    assertEquals(CodeType.CLOSE, decoder.decode(InputDecoder.HANDLED));
+    assertEquals(CodeType.UP, decoder.decode(InputDecoder.UP));
+    assertEquals(CodeType.PASTE_START, decoder.decode(InputDecoder.PASTE_START));
+    assertEquals(CodeType.TAB, decoder.decode('\t'));
+    assertEquals(CodeType.CHAR, decoder.decode('a'));
+  }
+}
@@ -32,7 +32,7 @@ import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
-public class TestTermIO implements TermIO {
+public class TestTermIO implements ExtendedTermIO {
 
   /** . */
   private static final int TAB = -1;
@@ -67,6 +67,12 @@ public class TestTermIO implements TermIO {
   /** . */
   private static final int END_OF_LINE = -11;
 
+  /** . */
+  private static final int PASTE_START = -12;
+
+  /** . */
+  private static final int PASTE_END = -13;
+
   /** . */
   private final BlockingQueue<Integer> inner;
 
@@ -121,6 +127,10 @@ public class TestTermIO implements TermIO {
     return properties.get(name);
   }
 
+  public String getConnector() {
+    return "test";
+  }
+
   public boolean takeAlternateBuffer() {
     return false;
   }
@@ -180,6 +190,14 @@ public class TestTermIO implements TermIO {
     return append(END_OF_LINE);
   }
 
+  public TestTermIO appendPasteStart() {
+    return append(PASTE_START);
+  }
+
+  public TestTermIO appendPasteEnd() {
+    return append(PASTE_END);
+  }
+
   public TestTermIO append(char c) {
     return append((int)c);
   }
@@ -222,6 +240,10 @@ public class TestTermIO implements TermIO {
         return CodeType.BEGINNING_OF_LINE;
       case END_OF_LINE:
         return CodeType.END_OF_LINE;
+      case PASTE_START:
+        return CodeType.PASTE_START;
+      case PASTE_END:
+        return CodeType.PASTE_END;
       default:
         return CodeType.CHAR;
     }
@@ -259,6 +281,10 @@ public class TestTermIO implements TermIO {
     return assertRead("cls");
   }
 
+  public TestTermIO assertMoveTo(int row, int col) {
+    return assertRead("moveTo " + row + "," + col);
+  }
+
   public TestTermIO assertFlush() {
     return assertRead("flush");
   }
@@ -319,6 +345,10 @@ public class TestTermIO implements TermIO {
     outter.add("[cls]");
   }
 
+  public void moveTo(int row, int col) throws IOException {
+    outter.add("[moveTo " + row + "," + col + "]");
+  }
+
   public void writeDel() throws IOException {
     outter.add("[del]");
   }
@@ -336,4 +366,11 @@ public class TestTermIO implements TermIO {
     outter.add("[left]");
     return true;
   }
+
+  public boolean moveLeft(int n) throws IOException {
+    for (int i = 0;i < n;i++) {
+      outter.add("[left]");
+    }
+    return true;
+  }
 }
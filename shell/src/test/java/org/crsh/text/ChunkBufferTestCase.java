@@ -20,9 +20,12 @@
 package org.crsh.text;
 
 import org.crsh.AbstractTestCase;
+import org.crsh.io.Consumer;
 import org.crsh.util.Utils;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class ChunkBufferTestCase extends AbstractTestCase {
@@ -77,6 +80,97 @@ public class ChunkBufferTestCase extends AbstractTestCase {
     assertReader(new ChunkBuffer().append(Color.red.fg(),"foo", Color.red.fg(), "bar"), Color.red.fg(), Text.create("foobar"));
   }
 
+  public void testCLS() {
+    assertReader(new ChunkBuffer().append("a").cls().append("b"), Text.create("a"), CLS.INSTANCE, Text.create("b"));
+    assertReader(new ChunkBuffer().append(RED, "a").cls().append(RED, "b"), RED, Text.create("a"), CLS.INSTANCE, Text.create("b"));
+  }
+
+  public void testGrowth() {
+    ChunkBuffer buffer = new ChunkBuffer();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0;i < 1000;i++) {
+      buffer.append(i % 2 == 0 ? RED : BLUE, "" + i);
+      expected.append(i);
+    }
+    assertEquals(2000, Utils.list(buffer).size());
+    assertEquals(expected.toString(), buffer.toString());
+  }
+
+  public void testEquals() {
+    ChunkBuffer a = new ChunkBuffer().append(RED, "ab", BLUE, "c");
+    ChunkBuffer b = new ChunkBuffer().append("abc");
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertEquals("abc".hashCode(), a.hashCode());
+    assertFalse(a.equals(new ChunkBuffer().append("abd")));
+  }
+
+  public void testFlush() throws IOException {
+    final List<Chunk> chunks = new ArrayList<Chunk>();
+    ChunkBuffer buffer = new ChunkBuffer(new Consumer<Chunk>() {
+      public void provide(Chunk element) throws IOException {
+        chunks.add(element);
+      }
+      public Class<Chunk> getConsumedType() {
+        return Chunk.class;
+      }
+      public void flush() throws IOException {
+      }
+    });
+    buffer.append(RED, "a", "b").cls().append(BLUE, "c");
+    buffer.flush();
+    assertEquals(Arrays.<Chunk>asList(RED, Text.create("ab"), CLS.INSTANCE, BLUE, Text.create("c")), chunks);
+    assertTrue(buffer.isEmpty());
+    assertEquals("", buffer.toString());
+  }
+
+  public void testFlushRuns() throws IOException {
+    RunRecorder recorder = new RunRecorder();
+    ChunkBuffer buffer = new ChunkBuffer(recorder);
+    buffer.append(RED, "a", "b").cls().append(BLUE, "c");
+    buffer.flush();
+    assertEquals(Arrays.<Chunk>asList(RED, CLS.INSTANCE, BLUE), recorder.chunks);
+    assertEquals(Arrays.asList("ab", "c"), recorder.runs);
+    assertTrue(buffer.isEmpty());
+  }
+
+  public void testWriteToRuns() throws IOException {
+    ChunkBuffer buffer = new ChunkBuffer().append("foo", RED, "bar");
+    RunRecorder recorder = new RunRecorder();
+    buffer.writeTo(recorder);
+    assertEquals(Arrays.<Chunk>asList(RED), recorder.chunks);
+    assertEquals(Arrays.asList("foo", "bar"), recorder.runs);
+    assertEquals("foobar", buffer.toString());
+  }
+
+  public void testFormat() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    new ChunkBuffer().append(RED, "a", "b", Style.reset, "c").format(Format.ANSI, sb);
+    assertEquals("\033[41mab\033[0mc", sb.toString());
+  }
+
+  public void testFormatReuse() throws IOException {
+    ChunkBuffer buffer = new ChunkBuffer().append("foo");
+    RunRecorder recorder = new RunRecorder();
+    buffer.writeTo(recorder);
+    StringBuilder sb = new StringBuilder();
+    buffer.format(Format.TEXT, sb);
+    assertEquals("foo", sb.toString());
+    buffer.clear();
+    buffer.append("barjuu");
+    sb.setLength(0);
+    buffer.format(Format.TEXT, sb);
+    assertEquals("barjuu", sb.toString());
+  }
+
+  public void testIteratorCopies() {
+    ChunkBuffer buffer = new ChunkBuffer().append("foo");
+    List<Chunk> chunks = Utils.list(buffer);
+    buffer.clear();
+    buffer.append("bar");
+    assertEquals(Arrays.<Chunk>asList(Text.create("foo")), chunks);
+  }
+
   private void assertReader(ChunkBuffer reader, Chunk... expected) {
     List<Chunk> res = Utils.list(reader);
     assertEquals(expected.length, res.size());
@@ -84,4 +178,28 @@ public class ChunkBufferTestCase extends AbstractTestCase {
       assertEquals(expected[i], res.get(i));
     }
   }
+
+  private static class RunRecorder implements Consumer<Chunk>, RunConsumer {
+
+    /** . */
+    private final List<Chunk> chunks = new ArrayList<Chunk>();
+
+    /** . */
+    private final List<String> runs = new ArrayList<String>();
+
+    public void provide(Chunk element) throws IOException {
+      chunks.add(element);
+    }
+
+    public void provide(CharSequence text, int start, int end) throws IOException {
+      runs.add(text.subSequence(start, end).toString());
+    }
+
+    public Class<Chunk> getConsumedType() {
+      return Chunk.class;
+    }
+
+    public void flush() throws IOException {
+    }
+  }
 }
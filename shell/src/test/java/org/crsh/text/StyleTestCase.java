@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.text;
+
+import org.crsh.AbstractTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+public class StyleTestCase extends AbstractTestCase {
+
+  public void testInterned() {
+    assertSame(Style.style(Color.red), Style.style(null, Color.red, null));
+    assertSame(Style.style(Decoration.bold, Color.red), Color.red.fg().bold());
+  }
+
+  public void testMerge() {
+    Style.Composite red = Color.red.fg();
+    Style.Composite underline = Style.style(Decoration.underline);
+    assertSame(Style.style(Decoration.underline, Color.red), red.merge(underline));
+    assertSame(Style.style(Decoration.underline, Color.red), red.merge(underline));
+    assertSame(Color.blue.fg(), red.merge(Color.blue.fg()));
+    assertSame(Style.reset, red.merge(Style.reset));
+    assertSame(red, Style.reset.merge(red));
+  }
+
+  public void testAnsi() throws Exception {
+    assertEquals("", Style.style().toAnsiSequence().toString());
+    assertEquals("\033[31m", Color.red.fg().toAnsiSequence().toString());
+    assertEquals("\033[1;4;32;44m", Style.style(true, true, null, Color.green, Color.blue).toAnsiSequence().toString());
+    assertEquals("\033[0m", Style.reset.toAnsiSequence().toString());
+    StringBuilder sb = new StringBuilder();
+    Style.style(false, null, true, null, Color.def).writeAnsiTo(sb);
+    assertEquals("\033[22;5;49m", sb.toString());
+  }
+
+  public void testSerialization() throws Exception {
+    Style.Composite style = Style.style(Decoration.underline, Color.red, Color.black);
+    assertSame(style, serialize(style));
+    assertSame(Style.reset, serialize(Style.reset));
+    assertEquals("\033[4;31;40m", ((Style)serialize(style)).toAnsiSequence().toString());
+  }
+
+  private Object serialize(Object o) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(baos);
+    oos.writeObject(o);
+    oos.close();
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+    return ois.readObject();
+  }
+}
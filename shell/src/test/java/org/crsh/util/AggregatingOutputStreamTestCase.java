@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AggregatingOutputStreamTestCase extends TestCase {
+
+  /** . */
+  private final AtomicInteger flushes = new AtomicInteger();
+
+  /** . */
+  private final ByteArrayOutputStream bytes = new ByteArrayOutputStream() {
+    @Override
+    public void flush() throws IOException {
+      flushes.incrementAndGet();
+    }
+  };
+
+  public void testBuffering() throws Exception {
+    AggregatingOutputStream out = new AggregatingOutputStream(bytes, 4, TimeUnit.SECONDS.toNanos(10));
+    out.write('a');
+    out.write('b');
+    out.write('c');
+    assertEquals(0, bytes.size());
+    out.write(new byte[]{'d', 'e'});
+    assertEquals("abc", bytes.toString());
+    out.write(new byte[]{'f', 'g', 'h', 'i'});
+    assertEquals("abcdefghi", bytes.toString());
+    assertEquals(0, flushes.get());
+  }
+
+  public void testIdleFlushIsImmediate() throws Exception {
+    AggregatingOutputStream out = new AggregatingOutputStream(bytes, 16, TimeUnit.MILLISECONDS.toNanos(1));
+    out.write('a');
+    out.flush();
+    assertEquals("a", bytes.toString());
+    assertEquals(1, flushes.get());
+    Thread.sleep(5);
+    out.write('b');
+    out.flush();
+    assertEquals("ab", bytes.toString());
+    assertEquals(2, flushes.get());
+  }
+
+  public void testBurstFlushIsCoalesced() throws Exception {
+    AggregatingOutputStream out = new AggregatingOutputStream(bytes, 16, TimeUnit.MILLISECONDS.toNanos(200));
+    out.write('a');
+    out.flush();
+    assertEquals(1, flushes.get());
+    for (char c = 'b';c < 'f';c++) {
+      out.write(c);
+      out.flush();
+    }
+    assertEquals("a", bytes.toString());
+    assertEquals(1, flushes.get());
+    long timeout = System.currentTimeMillis() + 5000;
+    while (flushes.get() < 2 && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    assertEquals("abcde", bytes.toString());
+    assertEquals(2, flushes.get());
+  }
+
+  public void testSlowPeerDoesNotStallOtherStreams() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    ByteArrayOutputStream slow = new ByteArrayOutputStream() {
+      boolean first = true;
+      @Override
+      public void flush() throws IOException {
+        if (first) {
+          first = false;
+        } else {
+          blocked.countDown();
+          try {
+            release.await();
+          }
+          catch (InterruptedException e) {
+            throw new InterruptedIOException();
+          }
+        }
+      }
+    };
+    try {
+      AggregatingOutputStream slowOut = new AggregatingOutputStream(slow, 16, TimeUnit.MILLISECONDS.toNanos(200));
+      slowOut.write('a');
+      slowOut.flush();
+      slowOut.write('b');
+      slowOut.flush();
+      assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+      // The deferred flush of another stream still happens
+      AggregatingOutputStream out = new AggregatingOutputStream(bytes, 16, TimeUnit.MILLISECONDS.toNanos(200));
+      out.write('a');
+      out.flush();
+      out.write('b');
+      out.flush();
+      long timeout = System.currentTimeMillis() + 5000;
+      while (flushes.get() < 2 && System.currentTimeMillis() < timeout) {
+        Thread.sleep(10);
+      }
+      assertEquals("ab", bytes.toString());
+      assertEquals(2, flushes.get());
+    }
+    finally {
+      release.countDown();
+    }
+  }
+
+  public void testClose() throws Exception {
+    AggregatingOutputStream out = new AggregatingOutputStream(bytes, 16, TimeUnit.SECONDS.toNanos(10));
+    out.write('a');
+    out.close();
+    assertEquals("a", bytes.toString());
+    try {
+      out.write('b');
+      fail();
+    }
+    catch (IOException ignore) {
+    }
+  }
+}
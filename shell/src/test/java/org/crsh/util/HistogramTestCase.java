@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.util;
+
+import org.crsh.AbstractTestCase;
+
+public class HistogramTestCase extends AbstractTestCase {
+
+  public void testIndex() {
+    for (long value = 0;value < 100000;value++) {
+      int index = Histogram.index(value);
+      assertTrue(Histogram.lowest(index) <= value);
+      assertTrue(value < Histogram.lowest(index + 1));
+    }
+    assertEquals(Long.MAX_VALUE >> 57 << 57, Histogram.lowest(Histogram.index(Long.MAX_VALUE)));
+  }
+
+  public void testEmpty() {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    assertEquals(0d, histogram.getMean());
+  }
+
+  public void testPercentiles() {
+    Histogram histogram = new Histogram();
+    for (int i = 1;i <= 10000;i++) {
+      histogram.record(i);
+    }
+    assertEquals(10000, histogram.getCount());
+    assertEquals(10000, histogram.getMax());
+    assertEquals(5000.5d, histogram.getMean());
+    assertPrecision(5000, histogram.getValueAtPercentile(50));
+    assertPrecision(9000, histogram.getValueAtPercentile(90));
+    assertPrecision(9900, histogram.getValueAtPercentile(99));
+    assertEquals(10000, histogram.getValueAtPercentile(100));
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  private void assertPrecision(long expected, long value) {
+    assertTrue("Was expecting " + value + " to be close to " + expected, Math.abs(value - expected) <= expected / Histogram.SUB_BUCKETS);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.crsh.util;
+
+import junit.framework.TestCase;
+import org.crsh.plugin.ExecutionModel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class MeasuredExecutorServiceTestCase extends TestCase {
+
+  public void testCounters() throws Exception {
+    MeasuredExecutorService executor = new MeasuredExecutorService("test", ExecutionModel.BOUNDED.create(1, 2, Executors.defaultThreadFactory()));
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Runnable blocking = new Runnable() {
+      public void run() {
+        started.countDown();
+        try {
+          release.await();
+        }
+        catch (InterruptedException ignore) {
+        }
+      }
+    };
+    Future<?> first = executor.submit(blocking);
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    assertEquals(1, executor.getActiveCount());
+    Future<?> second = executor.submit(blocking);
+    Future<?> third = executor.submit(blocking);
+    assertEquals(2, executor.getQueueDepth());
+    try {
+      executor.submit(blocking);
+      fail();
+    }
+    catch (RejectedExecutionException expected) {
+    }
+    assertEquals(1, executor.getRejectedCount());
+    assertEquals(2, executor.getQueueDepth());
+    release.countDown();
+    first.get(10, TimeUnit.SECONDS);
+    second.get(10, TimeUnit.SECONDS);
+    third.get(10, TimeUnit.SECONDS);
+    assertEquals(0, executor.getQueueDepth());
+    assertEquals(3, executor.getCompletedCount());
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  public void testModels() throws Exception {
+    for (ExecutionModel model : ExecutionModel.values()) {
+      MeasuredExecutorService executor = new MeasuredExecutorService(model.name(), model.create(2, 10, Executors.defaultThreadFactory()));
+      assertEquals("ok", executor.submit(new Runnable() {
+        public void run() {
+        }
+      }, "ok").get(10, TimeUnit.SECONDS));
+      executor.shutdownNow();
+    }
+  }
+
+  public void testThreadFactory() throws Exception {
+    ThreadFactory factory = new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "named");
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+    Callable<String> name = new Callable<String>() {
+      public String call() throws Exception {
+        return Thread.currentThread().getName();
+      }
+    };
+    for (ExecutionModel model : ExecutionModel.values()) {
+      ExecutorService executor = model.create(2, 10, factory);
+      assertEquals(model.name(), "named", executor.submit(name).get(10, TimeUnit.SECONDS));
+      executor.shutdownNow();
+    }
+  }
+
+  public void testCapacity() throws Exception {
+    MeasuredExecutorService fixed = new MeasuredExecutorService("fixed", ExecutionModel.FIXED.create(3, 10, Executors.defaultThreadFactory()));
+    assertEquals(3, fixed.getCapacity());
+    fixed.shutdownNow();
+    MeasuredExecutorService provided = new MeasuredExecutorService("provided", Executors.newFixedThreadPool(4));
+    assertEquals(4, provided.getCapacity());
+    provided.shutdownNow();
+    MeasuredExecutorService stealing = new MeasuredExecutorService("stealing", ExecutionModel.WORK_STEALING.create(5, 10, Executors.defaultThreadFactory()));
+    assertEquals(5, stealing.getCapacity());
+    stealing.shutdownNow();
+    MeasuredExecutorService virtual = new MeasuredExecutorService("virtual", ExecutionModel.VIRTUAL.create(6, 10, Executors.defaultThreadFactory()));
+    // Falls back to the fixed model before virtual threads
+    int capacity = virtual.getCapacity();
+    assertTrue(capacity == 6 || capacity == Integer.MAX_VALUE);
+    virtual.shutdownNow();
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.util;
+
+import org.crsh.AbstractTestCase;
+
+import java.util.concurrent.CountDownLatch;
+
+public class RingBufferTestCase extends AbstractTestCase {
+
+  public void testOfferPoll() {
+    RingBuffer<String> buffer = new RingBuffer<String>(3);
+    assertEquals(4, buffer.getCapacity());
+    assertNull(buffer.poll());
+    for (int round = 0;round < 3;round++) {
+      assertTrue(buffer.offer("a"));
+      assertTrue(buffer.offer("b"));
+      assertTrue(buffer.offer("c"));
+      assertTrue(buffer.offer("d"));
+      assertFalse(buffer.offer("e"));
+      assertEquals(4, buffer.size());
+      assertEquals("a", buffer.poll());
+      assertEquals("b", buffer.poll());
+      assertEquals("c", buffer.poll());
+      assertEquals("d", buffer.poll());
+      assertNull(buffer.poll());
+    }
+    assertEquals(3, buffer.getDropped());
+  }
+
+  public void testConcurrentProducers() throws Exception {
+    final RingBuffer<Integer> buffer = new RingBuffer<Integer>(64);
+    final int producers = 4;
+    final int count = 10000;
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(producers);
+    for (int i = 0;i < producers;i++) {
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int j = 0;j < count;j++) {
+              buffer.offer(j);
+            }
+          }
+          catch (InterruptedException ignore) {
+          }
+          finally {
+            done.countDown();
+          }
+        }
+      }.start();
+    }
+    start.countDown();
+    long received = 0;
+    while (done.getCount() > 0 || buffer.size() > 0) {
+      if (buffer.poll() != null) {
+        received++;
+      }
+    }
+    for (Integer i = buffer.poll();i != null;i = buffer.poll()) {
+      received++;
+    }
+    assertEquals(producers * count, received + buffer.getDropped());
+  }
+}
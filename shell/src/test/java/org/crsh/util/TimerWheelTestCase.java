@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2012 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any earlyr version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.crsh.util;
+
+import org.crsh.AbstractTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimerWheelTestCase extends AbstractTestCase {
+
+  public void testSchedule() throws Exception {
+    TimerWheel timer = new TimerWheel(10, TimeUnit.MILLISECONDS, 8);
+    try {
+      final CountDownLatch latch = new CountDownLatch(1);
+      long time = System.nanoTime();
+      TimerWheel.Timeout timeout = timer.schedule(new Runnable() {
+        public void run() {
+          latch.countDown();
+        }
+      }, 100, TimeUnit.MILLISECONDS);
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+      assertTrue(System.nanoTime() - time >= TimeUnit.MILLISECONDS.toNanos(100));
+      assertTrue(timeout.isExpired());
+      assertFalse(timeout.cancel());
+    }
+    finally {
+      timer.stop();
+    }
+  }
+
+  public void testSeveralRounds() throws Exception {
+    TimerWheel timer = new TimerWheel(5, TimeUnit.MILLISECONDS, 4);
+    try {
+      final CountDownLatch latch = new CountDownLatch(1);
+      long time = System.nanoTime();
+      timer.schedule(new Runnable() {
+        public void run() {
+          latch.countDown();
+        }
+      }, 100, TimeUnit.MILLISECONDS);
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+      assertTrue(System.nanoTime() - time >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+    finally {
+      timer.stop();
+    }
+  }
+
+  public void testCancel() throws Exception {
+    TimerWheel timer = new TimerWheel(10, TimeUnit.MILLISECONDS, 8);
+    try {
+      final AtomicInteger count = new AtomicInteger();
+      final CountDownLatch latch = new CountDownLatch(1);
+      TimerWheel.Timeout timeout = timer.schedule(new Runnable() {
+        public void run() {
+          count.incrementAndGet();
+        }
+      }, 50, TimeUnit.MILLISECONDS);
+      assertTrue(timeout.cancel());
+      timer.schedule(new Runnable() {
+        public void run() {
+          latch.countDown();
+        }
+      }, 100, TimeUnit.MILLISECONDS);
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+      assertEquals(0, count.get());
+      assertTrue(timeout.isCancelled());
+      assertEquals(1, timer.getCancelledCount());
+      assertEquals(1, timer.getExpiredCount());
+      assertEquals(0, timer.getPendingCount());
+    }
+    finally {
+      timer.stop();
+    }
+  }
+
+  public void testOrder() throws Exception {
+    TimerWheel timer = new TimerWheel(1, TimeUnit.MILLISECONDS, 16);
+    try {
+      final CountDownLatch latch = new CountDownLatch(1000);
+      final AtomicInteger early = new AtomicInteger();
+      for (int i = 0;i < 1000;i++) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(i % 50);
+        timer.schedule(new Runnable() {
+          public void run() {
+            if (System.nanoTime() < deadline) {
+              early.incrementAndGet();
+            }
+            latch.countDown();
+          }
+        }, i % 50, TimeUnit.MILLISECONDS);
+      }
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+      assertEquals(0, early.get());
+    }
+    finally {
+      timer.stop();
+    }
+  }
+
+  public void testStop() throws Exception {
+    TimerWheel timer = new TimerWheel(10, TimeUnit.MILLISECONDS, 8);
+    timer.stop();
+    try {
+      timer.schedule(new Runnable() {
+        public void run() {
+        }
+      }, 10, TimeUnit.MILLISECONDS);
+      fail();
+    }
+    catch (IllegalStateException expected) {
+    }
+  }
+}